@@ -0,0 +1,126 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.chemistry;
+
+import java.io.Serializable;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Future;
+
+/**
+ * An asynchronous facade over {@link SPI} connections to a repository.
+ * <p>
+ * Each method returns immediately with a {@link Future} for the result of
+ * the corresponding {@link SPI} method, so that independent calls can be
+ * issued concurrently. Any SPI method can be called through
+ * {@link #submit}; the most common ones have their own shortcuts.
+ * <p>
+ * Cancelling a future with {@code mayInterruptIfRunning} aborts the call if
+ * it is in progress, as far as the underlying SPI allows it.
+ * <p>
+ * Implementations are thread-safe.
+ */
+public interface AsyncSPI {
+
+    /**
+     * A call to make on an {@link SPI} connection.
+     *
+     * @param <T> the result type
+     */
+    interface Call<T> {
+
+        /**
+         * Makes the call.
+         *
+         * @param spi the SPI connection, only to be used during this call
+         * @return the result, which must not depend on the SPI connection
+         *         once the call returns
+         */
+        T call(SPI spi) throws Exception;
+
+    }
+
+    /**
+     * Submits a call to run on an SPI connection.
+     *
+     * @param call the call
+     * @return the future result
+     */
+    <T> Future<T> submit(Call<T> call);
+
+    /**
+     * Closes this facade and the SPI connections it holds. Calls still
+     * running are cancelled.
+     */
+    void close();
+
+    /*
+     * ----- Shortcuts -----
+     */
+
+    /**
+     * @see SPI#getProperties
+     */
+    Future<ObjectEntry> getProperties(ObjectId object, Inclusion inclusion);
+
+    /**
+     * @see SPI#getObjectByPath
+     */
+    Future<ObjectEntry> getObjectByPath(String path, Inclusion inclusion);
+
+    /**
+     * @see SPI#getObjects
+     */
+    Future<List<ObjectEntry>> getObjects(Collection<ObjectId> objects,
+            Inclusion inclusion);
+
+    /**
+     * @see SPI#getChildren
+     */
+    Future<ListPage<ObjectEntry>> getChildren(ObjectId folder,
+            Inclusion inclusion, String orderBy, Paging paging);
+
+    /**
+     * @see SPI#getDescendants
+     */
+    Future<Tree<ObjectEntry>> getDescendants(ObjectId folder, int depth,
+            String orderBy, Inclusion inclusion);
+
+    /**
+     * The content stream is read into memory before the future completes.
+     *
+     * @see SPI#getContentStream
+     */
+    Future<ContentStream> getContentStream(ObjectId object,
+            String contentStreamId);
+
+    /**
+     * @see SPI#query
+     */
+    Future<ListPage<ObjectEntry>> query(String statement,
+            boolean searchAllVersions, Inclusion inclusion, Paging paging);
+
+    /**
+     * @see SPI#updateProperties(ObjectId, String, Map)
+     */
+    Future<ObjectId> updateProperties(ObjectId object, String changeToken,
+            Map<String, Serializable> properties);
+
+    /**
+     * @see SPI#deleteObject
+     */
+    Future<Void> deleteObject(ObjectId object, boolean allVersions);
+
+}
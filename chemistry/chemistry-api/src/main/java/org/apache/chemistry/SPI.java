@@ -389,6 +389,24 @@ public interface SPI {
      */
     ObjectEntry getObjectByPath(String path, Inclusion inclusion);
 
+    /**
+     * Gets the properties of several objects.
+     * <p>
+     * This is equivalent to calling {@link #getProperties} for each object,
+     * but implementations may fetch all the objects at once, for instance in
+     * a single network round trip.
+     *
+     * @param objects the objects
+     * @param inclusion the {@link Inclusion#properties properties} to include
+     *            in the result
+     * @return the properties of the objects, in the same order, with
+     *         {@code null} for the objects that are not found
+     *
+     * @throws FilterNotValidException if the filter is not valid
+     */
+    List<ObjectEntry> getObjects(Collection<ObjectId> objects,
+            Inclusion inclusion);
+
     /**
      * Gets the list of associated renditions for an object.
      * <p>
@@ -540,6 +558,26 @@ public interface SPI {
             Map<String, Serializable> properties)
             throws NameConstraintViolationException, UpdateConflictException;
 
+    /**
+     * Updates the properties of several objects.
+     * <p>
+     * This is equivalent to calling {@link #updateProperties(ObjectId, String,
+     * Map)} for each object without a change token, but implementations may
+     * apply all the updates at once. Implementations that can do so apply
+     * either all the updates or none of them.
+     *
+     * @param properties the properties to change for each object
+     * @return the resulting objects, in the iteration order of the map
+     *
+     * @throws ObjectNotFoundException if one of the objects is not found
+     * @throws ConstraintViolationException if the properties are not legal
+     * @throws NameConstraintViolationException if a name is not legal
+     * @throws UpdateConflictException if an object is no longer current
+     */
+    List<ObjectId> updateProperties(
+            Map<ObjectId, Map<String, Serializable>> properties)
+            throws NameConstraintViolationException, UpdateConflictException;
+
     /**
      * Moves the specified filed object from one folder to another.
      * <p>
@@ -589,6 +627,25 @@ public interface SPI {
     void deleteObject(ObjectId object, boolean allVersions)
             throws UpdateConflictException;
 
+    /**
+     * Deletes several objects.
+     * <p>
+     * This is equivalent to calling {@link #deleteObject} for each object, in
+     * order, but implementations may delete all the objects at once.
+     * Implementations that can do so delete either all the objects or none of
+     * them. A folder can be deleted together with its children if it comes
+     * after them.
+     *
+     * @param objects the objects to delete
+     * @param allVersions if {@code true}, then delete all versions as well
+     *
+     * @throws ObjectNotFoundException if one of the objects is not found
+     * @throws ConstraintViolationException if an object is a non-empty folder
+     * @throws UpdateConflictException if an object is no longer current
+     */
+    void deleteObjects(Collection<ObjectId> objects, boolean allVersions)
+            throws UpdateConflictException;
+
     /**
      * Deletes a tree of objects.
      * <p>
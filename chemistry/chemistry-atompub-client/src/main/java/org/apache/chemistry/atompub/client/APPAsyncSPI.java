@@ -0,0 +1,95 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.chemistry.atompub.client;
+
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+import org.apache.chemistry.atompub.client.transport.AbortHandle;
+import org.apache.chemistry.atompub.client.transport.AbstractHttpTransport;
+import org.apache.chemistry.impl.async.ExecutorAsyncSPI;
+
+/**
+ * An asynchronous SPI over {@link APPConnection}s.
+ * <p>
+ * Cancelling a running call with {@code mayInterruptIfRunning} aborts its
+ * HTTP request, closing the connection instead of waiting for the server.
+ * The HTTP transport is configured to allow as many connections to the
+ * server as there are threads.
+ */
+public class APPAsyncSPI extends ExecutorAsyncSPI {
+
+    public APPAsyncSPI(APPRepository repository,
+            Map<String, Serializable> params) {
+        this(repository, params, DEFAULT_THREADS, DEFAULT_MAX_QUEUED);
+    }
+
+    /**
+     * Creates an asynchronous SPI.
+     *
+     * @param repository the repository
+     * @param params the connection parameters
+     * @param threads the maximum number of concurrent requests
+     * @param maxQueued the maximum number of calls waiting for a thread
+     */
+    public APPAsyncSPI(APPRepository repository,
+            Map<String, Serializable> params, int threads, int maxQueued) {
+        super(repository, getConnectionParams(params, threads), threads,
+                maxQueued);
+    }
+
+    protected static Map<String, Serializable> getConnectionParams(
+            Map<String, Serializable> params, int threads) {
+        int max = AbstractHttpTransport.getIntParam(params,
+                AbstractHttpTransport.PARAM_MAX_CONNECTIONS_PER_HOST,
+                AbstractHttpTransport.DEFAULT_MAX_CONNECTIONS_PER_HOST);
+        if (max >= threads) {
+            return params;
+        }
+        Map<String, Serializable> p = new HashMap<String, Serializable>();
+        if (params != null) {
+            p.putAll(params);
+        }
+        p.put(AbstractHttpTransport.PARAM_MAX_CONNECTIONS_PER_HOST,
+                Integer.valueOf(threads));
+        return p;
+    }
+
+    @Override
+    protected <T> AsyncTask<T> newTask(final Callable<T> callable) {
+        final AbortHandle abortHandle = new AbortHandle();
+        return new AsyncTask<T>(new Callable<T>() {
+            public T call() throws Exception {
+                AbortHandle.setCurrent(abortHandle);
+                try {
+                    return callable.call();
+                } finally {
+                    AbortHandle.setCurrent(null);
+                }
+            }
+        }) {
+            @Override
+            public boolean cancel(boolean mayInterruptIfRunning) {
+                boolean cancelled = super.cancel(mayInterruptIfRunning);
+                if (cancelled && mayInterruptIfRunning) {
+                    abortHandle.abort();
+                }
+                return cancelled;
+            }
+        };
+    }
+
+}
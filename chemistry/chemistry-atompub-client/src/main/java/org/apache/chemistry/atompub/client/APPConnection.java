@@ -58,14 +58,17 @@ import org.apache.chemistry.SPI;
 import org.apache.chemistry.Tree;
 import org.apache.chemistry.Type;
 import org.apache.chemistry.Unfiling;
+import org.apache.chemistry.UpdateConflictException;
 import org.apache.chemistry.VersioningState;
 import org.apache.chemistry.atompub.AtomPub;
 import org.apache.chemistry.atompub.AtomPubCMIS;
 import org.apache.chemistry.atompub.URITemplate;
+import org.apache.chemistry.atompub.client.stax.PropertyFilter;
 import org.apache.chemistry.atompub.client.stax.XmlProperty;
+import org.apache.chemistry.atompub.client.transport.HttpTransport;
+import org.apache.chemistry.impl.base.BatchHelper;
 import org.apache.chemistry.impl.simple.SimpleListPage;
 import org.apache.chemistry.impl.simple.SimpleObjectId;
-import org.apache.commons.httpclient.Header;
 
 /**
  * A {@link Connection} and {@link SPI} using the AtomPub protocol to talk to a
@@ -73,6 +76,12 @@ import org.apache.commons.httpclient.Header;
  */
 public class APPConnection implements Connection, SPI {
 
+    /**
+     * Connection parameter giving the base URL of the JSON binding. If set,
+     * objects are read through the JSON binding instead of AtomPub.
+     */
+    public static final String PARAM_JSON_URL = "json.url";
+
     protected final APPRepository repository;
 
     protected final Connector connector;
@@ -82,8 +91,19 @@ public class APPConnection implements Connection, SPI {
     public APPConnection(APPRepository repository,
             Map<String, Serializable> params) {
         this.repository = repository;
-        connector = new Connector(repository.getClient(params), new APPContext(
-                this));
+        HttpTransport transport = repository.getTransport(params);
+        String jsonURL = params == null ? null
+                : (String) params.get(PARAM_JSON_URL);
+        URITemplate uriTemplate = repository.getURITemplate(AtomPubCMIS.URITMPL_OBJECT_BY_ID);
+        int i = uriTemplate == null ? -1
+                : uriTemplate.template.indexOf("/object/");
+        if (jsonURL == null || i == -1) {
+            connector = new Connector(transport, new APPContext(this));
+        } else {
+            // the JSON binding mirrors the AtomPub URL space
+            connector = new JSONConnector(transport, new APPContext(this),
+                    uriTemplate.template.substring(0, i), jsonURL);
+        }
     }
 
     public Connection getConnection() {
@@ -198,7 +218,8 @@ public class APPConnection implements Connection, SPI {
             params.add(AtomPubCMIS.PARAM_INCLUDE_ALLOWABLE_ACTIONS,
                     Boolean.toString(inclusion.allowableActions));
         }
-        return connector.getEntryFeedTree(href, params);
+        return connector.getEntryFeedTree(href, params,
+                PropertyFilter.fromInclusion(inclusion));
     }
 
     public Tree<ObjectEntry> getDescendants(ObjectId folder, int depth,
@@ -233,25 +254,34 @@ public class APPConnection implements Connection, SPI {
             params.add(AtomPubCMIS.PARAM_INCLUDE_ACL,
                     Boolean.toString(inclusion.acls));
         }
-        return connector.getEntryFeedTree(href, params);
+        return connector.getEntryFeedTree(href, params,
+                PropertyFilter.fromInclusion(inclusion));
     }
 
     public ListPage<ObjectEntry> getChildren(ObjectId folder,
             Inclusion inclusion, String orderBy, Paging paging) {
-        // TODO filter, includeRelationship, includeAllowableActions, orderBy
+        // TODO includeRelationship, orderBy
         String href = getFolderEntry(folder).getLink(AtomPub.LINK_DOWN,
                 AtomPub.MEDIA_TYPE_ATOM_FEED);
         if (href == null) {
             throw new CMISRuntimeException("Missing down link");
         }
         NameValuePairs params = new NameValuePairs();
+        if (inclusion != null) {
+            if (inclusion.properties != null) {
+                params.add(AtomPubCMIS.PARAM_FILTER, inclusion.properties);
+            }
+            params.add(AtomPubCMIS.PARAM_INCLUDE_ALLOWABLE_ACTIONS,
+                    Boolean.toString(inclusion.allowableActions));
+        }
         if (paging != null) {
             params.add(AtomPubCMIS.PARAM_MAX_ITEMS,
                     Integer.toString(paging.maxItems));
             params.add(AtomPubCMIS.PARAM_SKIP_COUNT,
                     Integer.toString(paging.skipCount));
         }
-        return connector.getEntryFeed(href, params);
+        return connector.getEntryFeed(href, params,
+                PropertyFilter.fromInclusion(inclusion));
     }
 
     public ObjectEntry getFolderParent(ObjectId folder, String filter) {
@@ -314,7 +344,8 @@ public class APPConnection implements Connection, SPI {
         String href = uriTemplate.template;
         href = replace(href, AtomPubCMIS.PARAM_ID, objectId.getId());
         href = replaceInclusion(href, inclusion);
-        return connector.getEntry(href, objectId.getId());
+        return connector.getEntry(href, objectId.getId(),
+                PropertyFilter.fromInclusion(inclusion));
     }
 
     protected APPObjectEntry getFolderEntry(ObjectId objectId) {
@@ -388,6 +419,12 @@ public class APPConnection implements Connection, SPI {
     protected APPObjectEntry createObject(String href,
             Map<String, Serializable> properties, ContentStream contentStream,
             BaseType baseType) {
+        return createObject(href, properties, contentStream, baseType, true);
+    }
+
+    protected APPObjectEntry createObject(String href,
+            Map<String, Serializable> properties, ContentStream contentStream,
+            BaseType baseType, boolean fullEntry) {
         String typeId = (String) properties.get(Property.TYPE_ID);
         if (typeId == null) {
             throw new IllegalArgumentException("Missing object type id");
@@ -404,7 +441,7 @@ public class APPConnection implements Connection, SPI {
         if (contentStream != null) {
             entry.setContentStream(contentStream);
         }
-        return connector.postEntry(href, null, entry);
+        return connector.postEntry(href, null, entry, fullEntry);
     }
 
     public ObjectId createDocumentFromSource(ObjectId source, ObjectId folder,
@@ -512,6 +549,41 @@ public class APPConnection implements Connection, SPI {
         }
     }
 
+    public List<ObjectEntry> getObjects(Collection<ObjectId> objects,
+            Inclusion inclusion) {
+        String href = getBatchHref(AtomPubCMIS.BATCH_GET, false, inclusion);
+        if (href == null) {
+            return BatchHelper.getObjects(this, objects, inclusion);
+        }
+        if (objects.isEmpty()) {
+            return new ArrayList<ObjectEntry>(0);
+        }
+        List<String> ids = new ArrayList<String>(objects.size());
+        for (ObjectId object : objects) {
+            ids.add(object.getId());
+        }
+        return new ArrayList<ObjectEntry>(connector.postBatch(href, ids,
+                PropertyFilter.fromInclusion(inclusion)));
+    }
+
+    /**
+     * Gets the URI of the batch endpoint for an operation, or {@code null} if
+     * the server does not advertise one.
+     */
+    protected String getBatchHref(String operation, boolean allVersions,
+            Inclusion inclusion) {
+        URITemplate uriTemplate = repository.getURITemplate(AtomPubCMIS.URITMPL_BATCH);
+        if (uriTemplate == null) {
+            return null;
+        }
+        String href = uriTemplate.template;
+        href = replace(href, AtomPubCMIS.PARAM_OPERATION, operation);
+        href = replace(href, AtomPubCMIS.PARAM_ALL_VERSIONS,
+                Boolean.toString(allVersions));
+        href = replaceInclusion(href, inclusion);
+        return href;
+    }
+
     public Folder getFolder(String path) {
         APPObjectEntry entry = (APPObjectEntry) getObjectByPath(path, null);
         if (entry == null) {
@@ -607,9 +679,61 @@ public class APPConnection implements Connection, SPI {
         // TODO proper title
         update._setValue(Property.NAME, current.getValue(Property.NAME));
 
-        Header header = new Header("Content-Type",
-                AtomPub.MEDIA_TYPE_ATOM_ENTRY);
-        return connector.putEntry(href, header, update);
+        return connector.putEntry(href, update);
+    }
+
+    public List<ObjectId> updateProperties(
+            Map<ObjectId, Map<String, Serializable>> properties)
+            throws NameConstraintViolationException, UpdateConflictException {
+        String href = getBatchHref(AtomPubCMIS.BATCH_UPDATE, false, null);
+        if (href == null) {
+            return BatchHelper.updateProperties(this, properties);
+        }
+        if (properties.isEmpty()) {
+            return new ArrayList<ObjectId>(0);
+        }
+        // fetch the entries we don't already have in a single request
+        List<ObjectId> missing = new ArrayList<ObjectId>();
+        for (ObjectId object : properties.keySet()) {
+            if (getObjectEntryOrNull(object) == null) {
+                missing.add(object);
+            }
+        }
+        Map<String, APPObjectEntry> fetched = new HashMap<String, APPObjectEntry>();
+        if (!missing.isEmpty()) {
+            List<ObjectEntry> entries = getObjects(missing, null);
+            for (int i = 0; i < missing.size(); i++) {
+                ObjectEntry entry = entries.get(i);
+                if (entry == null) {
+                    throw new ObjectNotFoundException(missing.get(i).getId());
+                }
+                fetched.put(entry.getId(), (APPObjectEntry) entry);
+            }
+        }
+        List<APPObjectEntry> updates = new ArrayList<APPObjectEntry>(
+                properties.size());
+        for (Entry<ObjectId, Map<String, Serializable>> es : properties.entrySet()) {
+            ObjectId object = es.getKey();
+            APPObjectEntry current = getObjectEntryOrNull(object);
+            if (current == null) {
+                current = fetched.get(object.getId());
+            }
+            APPObjectEntry update = newObjectEntry(current.getTypeId());
+            for (Entry<String, Serializable> pes : es.getValue().entrySet()) {
+                update._setValue(pes.getKey(), pes.getValue());
+            }
+            update._setValue(Property.ID, object.getId());
+            if (!es.getValue().containsKey(Property.NAME)) {
+                update._setValue(Property.NAME, current.getValue(Property.NAME));
+            }
+            updates.add(update);
+        }
+        List<APPObjectEntry> entries = connector.postBatch(href, updates, null);
+        List<ObjectId> ids = new ArrayList<ObjectId>(entries.size());
+        for (APPObjectEntry entry : entries) {
+            ids.add(new SimpleObjectId(entry.getId()));
+        }
+        return ids;
     }
 
     public ObjectId moveObject(ObjectId object, ObjectId targetFolder,
@@ -626,10 +750,27 @@ public class APPConnection implements Connection, SPI {
         String href = current.getLink(AtomPub.LINK_SELF);
         NameValuePairs params = new NameValuePairs();
         // TODO XXX allVersions not in spec
-        params.add("allVersions", String.valueOf(allVersions));
+        params.add(AtomPubCMIS.PARAM_ALL_VERSIONS, String.valueOf(allVersions));
         connector.delete(href, params, object.getId());
     }
 
+    public void deleteObjects(Collection<ObjectId> objects,
+            boolean allVersions) throws UpdateConflictException {
+        String href = getBatchHref(AtomPubCMIS.BATCH_DELETE, allVersions, null);
+        if (href == null) {
+            BatchHelper.deleteObjects(this, objects, allVersions);
+            return;
+        }
+        if (objects.isEmpty()) {
+            return;
+        }
+        List<String> ids = new ArrayList<String>(objects.size());
+        for (ObjectId object : objects) {
+            ids.add(object.getId());
+        }
+        connector.postBatch(href, ids, null);
+    }
+
     public Collection<ObjectId> deleteTree(ObjectId folder, Unfiling unfiling,
             boolean continueOnFailure) {
         APPObjectEntry current = getObjectEntry(folder);
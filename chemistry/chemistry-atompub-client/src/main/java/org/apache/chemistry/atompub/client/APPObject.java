@@ -41,7 +41,6 @@ import org.apache.chemistry.RelationshipDirection;
 import org.apache.chemistry.Type;
 import org.apache.chemistry.atompub.AtomPub;
 import org.apache.chemistry.impl.base.BaseObject;
-import org.apache.commons.httpclient.Header;
 
 /**
  *
@@ -247,9 +246,7 @@ public abstract class APPObject extends BaseObject {
         if (href == null) {
             throw new CMISRuntimeException("Missing edit link");
         }
-        Header header = new Header("Content-Type",
-                AtomPub.MEDIA_TYPE_ATOM_ENTRY);
-        entry = entry.connection.connector.putEntry(href, header, entry);
+        entry = entry.connection.connector.putEntry(href, entry);
     }
 
     /**
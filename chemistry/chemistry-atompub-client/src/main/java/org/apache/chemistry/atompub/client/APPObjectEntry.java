@@ -28,6 +28,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Pattern;
 
 import javax.xml.namespace.QName;
@@ -42,6 +43,7 @@ import org.apache.chemistry.PropertyDefinition;
 import org.apache.chemistry.Tree;
 import org.apache.chemistry.atompub.AtomPubCMIS;
 import org.apache.chemistry.atompub.ValueAdapter;
+import org.apache.chemistry.atompub.client.stax.Interner;
 import org.apache.chemistry.atompub.client.stax.XmlProperty;
 import org.apache.chemistry.impl.simple.SimpleContentStream;
 import org.apache.chemistry.xml.stax.XMLWriter;
@@ -92,6 +94,8 @@ public class APPObjectEntry implements ObjectEntry {
         public static final Pattern TYPE_EQ = Pattern.compile("type=",
                 Pattern.CASE_INSENSITIVE);
 
+        protected static final Map<String, String> canonicalTypes = new ConcurrentHashMap<String, String>();
+
         /**
          * Simplified version of RFC 2045 media type syntax.
          */
@@ -99,10 +103,19 @@ public class APPObjectEntry implements ObjectEntry {
             if (type == null) {
                 return null;
             }
-            type = type.replace("\"", "");
-            type = type.replace(" ", "");
-            type = TYPE_EQ.matcher(type).replaceAll("type=");
-            return type;
+            // the same few types are used by all links
+            String ctype = canonicalTypes.get(type);
+            if (ctype != null) {
+                return ctype;
+            }
+            ctype = type.replace("\"", "");
+            ctype = ctype.replace(" ", "");
+            ctype = TYPE_EQ.matcher(ctype).replaceAll("type=");
+            ctype = Interner.intern(ctype);
+            if (canonicalTypes.size() < 256) {
+                canonicalTypes.put(type, ctype);
+            }
+            return ctype;
         }
 
         @Override
@@ -226,9 +239,8 @@ public class APPObjectEntry implements ObjectEntry {
     public Map<String, Serializable> getValues() {
         Map<String, Serializable> map = new HashMap<String, Serializable>();
         for (Entry<String, XmlProperty> e : properties.entrySet()) {
-            String key = e.getKey();
-            XmlProperty p = properties.get(key);
-            map.put(key, p == null ? null : p.getValue());
+            XmlProperty p = e.getValue();
+            map.put(e.getKey(), p == null ? null : p.getValue());
         }
         return map;
     }
@@ -18,7 +18,6 @@
 package org.apache.chemistry.atompub.client;
 
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Set;
 
@@ -29,7 +28,10 @@ import org.apache.chemistry.ObjectEntry;
 import org.apache.chemistry.Tree;
 import org.apache.chemistry.atompub.AtomPub;
 import org.apache.chemistry.atompub.client.stax.AbstractObjectReader;
+import org.apache.chemistry.atompub.client.stax.Interner;
+import org.apache.chemistry.atompub.client.stax.PropertyFilter;
 import org.apache.chemistry.atompub.client.stax.XmlProperty;
+import org.apache.chemistry.atompub.client.stax.XmlPropertyMap;
 import org.apache.chemistry.xml.stax.StaxReader;
 
 /**
@@ -37,11 +39,18 @@ import org.apache.chemistry.xml.stax.StaxReader;
  */
 public class APPObjectEntryReader extends AbstractObjectReader<APPObjectEntry> {
 
+    public APPObjectEntryReader() {
+        super();
+    }
+
+    public APPObjectEntryReader(PropertyFilter filter) {
+        super(filter);
+    }
+
     @Override
     protected APPObjectEntry createObject(APPContext ctx) {
         APPConnection connection = (APPConnection) ctx.getConnection();
-        return new APPObjectEntry(connection,
-                new HashMap<String, XmlProperty>(), null);
+        return new APPObjectEntry(connection, new XmlPropertyMap(), null);
     }
 
     @Override
@@ -75,7 +84,9 @@ public class APPObjectEntryReader extends AbstractObjectReader<APPObjectEntry> {
             String type = reader.getAttributeValue(AtomPub.ATOM_NS, "type");
             object.addContentHref(href, type);
         } else if (AtomPub.ATOM_LINK.equals(name)) {
-            String rel = reader.getAttributeValue(AtomPub.ATOM_NS, "rel");
+            // rel and type repeat for all entries
+            String rel = Interner.intern(reader.getAttributeValue(
+                    AtomPub.ATOM_NS, "rel"));
             String href = reader.getAttributeValue(AtomPub.ATOM_NS, "href");
             String type = reader.getAttributeValue(AtomPub.ATOM_NS, "type");
             object.addLink(rel, href, type);
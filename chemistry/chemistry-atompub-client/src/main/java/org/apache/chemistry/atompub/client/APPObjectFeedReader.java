@@ -19,6 +19,7 @@ package org.apache.chemistry.atompub.client;
 import org.apache.chemistry.ListPage;
 import org.apache.chemistry.ObjectEntry;
 import org.apache.chemistry.atompub.client.stax.AbstractFeedReader;
+import org.apache.chemistry.atompub.client.stax.PropertyFilter;
 import org.apache.chemistry.impl.simple.SimpleListPage;
 import org.apache.chemistry.xml.stax.StaxReader;
 
@@ -32,6 +33,13 @@ public class APPObjectFeedReader extends
         super(new APPObjectEntryReader());
     }
 
+    /**
+     * Constructs a reader only keeping what the filter accepts.
+     */
+    public APPObjectFeedReader(PropertyFilter filter) {
+        super(new APPObjectEntryReader(filter));
+    }
+
     @Override
     protected ListPage<ObjectEntry> createFeed(StaxReader reader) {
         return new SimpleListPage<ObjectEntry>();
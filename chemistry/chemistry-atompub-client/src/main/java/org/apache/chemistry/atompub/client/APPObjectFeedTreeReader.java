@@ -22,6 +22,7 @@ import java.util.List;
 import org.apache.chemistry.ObjectEntry;
 import org.apache.chemistry.Tree;
 import org.apache.chemistry.atompub.client.stax.AbstractFeedReader;
+import org.apache.chemistry.atompub.client.stax.PropertyFilter;
 import org.apache.chemistry.impl.simple.SimpleTree;
 import org.apache.chemistry.xml.stax.StaxReader;
 
@@ -35,6 +36,13 @@ public class APPObjectFeedTreeReader extends
         super(new APPObjectEntryReader());
     }
 
+    /**
+     * Constructs a reader only keeping what the filter accepts.
+     */
+    public APPObjectFeedTreeReader(PropertyFilter filter) {
+        super(new APPObjectEntryReader(filter));
+    }
+
     @Override
     protected List<Tree<ObjectEntry>> createFeed(StaxReader reader) {
         return new ArrayList<Tree<ObjectEntry>>(5);
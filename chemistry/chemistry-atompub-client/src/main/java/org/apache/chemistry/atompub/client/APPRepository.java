@@ -36,8 +36,8 @@ import org.apache.chemistry.TypeManager;
 import org.apache.chemistry.atompub.AtomPub;
 import org.apache.chemistry.atompub.AtomPubCMIS;
 import org.apache.chemistry.atompub.URITemplate;
+import org.apache.chemistry.atompub.client.transport.HttpTransport;
 import org.apache.chemistry.impl.simple.SimpleTypeManager;
-import org.apache.commons.httpclient.HttpClient;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
@@ -68,7 +68,7 @@ public class APPRepository implements Repository {
 
     public APPRepository(APPRepositoryService rs, RepositoryInfo info) {
         this.rs = rs;
-        typesConnector = new Connector(rs.getDefaultClient(), new APPContext(
+        typesConnector = new Connector(rs.getDefaultTransport(), new APPContext(
                 this));
         this.info = info;
     }
@@ -77,8 +77,8 @@ public class APPRepository implements Repository {
         this.info = info;
     }
 
-    public HttpClient getClient(Map<String, Serializable> params) {
-        return rs.getClient(params);
+    public HttpTransport getTransport(Map<String, Serializable> params) {
+        return rs.getTransport(params);
     }
 
     public String getId() {
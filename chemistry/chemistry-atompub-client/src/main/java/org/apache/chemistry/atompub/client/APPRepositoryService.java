@@ -27,12 +27,10 @@ import java.util.Map;
 import org.apache.chemistry.Repository;
 import org.apache.chemistry.RepositoryEntry;
 import org.apache.chemistry.RepositoryService;
+import org.apache.chemistry.atompub.client.transport.AbstractHttpTransport;
+import org.apache.chemistry.atompub.client.transport.HttpTransport;
 import org.apache.commons.httpclient.Credentials;
-import org.apache.commons.httpclient.HttpClient;
-import org.apache.commons.httpclient.MultiThreadedHttpConnectionManager;
-import org.apache.commons.httpclient.UsernamePasswordCredentials;
 import org.apache.commons.httpclient.auth.AuthScheme;
-import org.apache.commons.httpclient.auth.AuthScope;
 import org.apache.commons.httpclient.auth.CredentialsProvider;
 
 /**
@@ -45,9 +43,10 @@ public class APPRepositoryService implements RepositoryService {
 
     protected final Map<String, Serializable> urlParams;
 
-    protected final List<HttpClient> clients = new ArrayList<HttpClient>(2);
+    protected final List<HttpTransport> transports = new ArrayList<HttpTransport>(
+            2);
 
-    protected final List<Map<String, Serializable>> clientParams = new ArrayList<Map<String, Serializable>>(
+    protected final List<Map<String, Serializable>> transportParams = new ArrayList<Map<String, Serializable>>(
             2);
 
     protected List<APPRepository> repos;
@@ -77,7 +76,7 @@ public class APPRepositoryService implements RepositoryService {
         if (repos != null) {
             return;
         }
-        Connector connector = new Connector(getDefaultClient(), new APPContext(
+        Connector connector = new Connector(getDefaultTransport(), new APPContext(
                 this));
         repos = connector.getServiceDocument(url);
     }
@@ -98,56 +97,36 @@ public class APPRepositoryService implements RepositoryService {
     }
 
     /**
-     * Gets a {@link HttpClient} for the given connection parameters.
+     * Gets a {@link HttpTransport} for the given connection parameters.
      *
      * @param params the connection parameters
-     * @return the client, which may be multi-threaded and retrieved from a
+     * @return the transport, which is multi-threaded and retrieved from a
      *         cache
      */
-    public synchronized HttpClient getClient(Map<String, Serializable> params) {
+    public synchronized HttpTransport getTransport(
+            Map<String, Serializable> params) {
         int i = 0;
-        for (Map<String, Serializable> p : clientParams) {
+        for (Map<String, Serializable> p : transportParams) {
             if ((params == null && p == null)
                     || (params != null && params.equals(p))) {
-                return clients.get(i);
+                return transports.get(i);
             }
             i++;
         }
-        // create a new client
-        HttpClient client = newClient(params);
-        clients.add(client);
-        clientParams.add(params);
-        return client;
+        // create a new transport
+        HttpTransport transport = newTransport(params);
+        transports.add(transport);
+        transportParams.add(params);
+        return transport;
     }
 
     // used to load types
-    protected HttpClient getDefaultClient() {
-        return getClient(urlParams);
-    }
-
-    protected HttpClient newClient(Map<String, Serializable> params) {
-        HttpClient client = new HttpClient();
-        client.setHttpConnectionManager(new MultiThreadedHttpConnectionManager());
-        Credentials credentials = getCredentials(params);
-        if (credentials != null) {
-            CredentialsProvider cp = new FixedCredentialsProvider(credentials);
-            client.getState().setCredentials(AuthScope.ANY, credentials);
-            client.getParams().setParameter(CredentialsProvider.PROVIDER, cp);
-            client.getParams().setAuthenticationPreemptive(true);
-        }
-        return client;
+    protected HttpTransport getDefaultTransport() {
+        return getTransport(urlParams);
     }
 
-    protected Credentials getCredentials(Map<String, Serializable> params) {
-        if (params == null) {
-            return null;
-        }
-        String username = (String) params.get(Repository.PARAM_USERNAME);
-        if (username == null) {
-            return null;
-        }
-        String password = (String) params.get(Repository.PARAM_PASSWORD);
-        return new UsernamePasswordCredentials(username, password);
+    protected HttpTransport newTransport(Map<String, Serializable> params) {
+        return AbstractHttpTransport.newTransport(params);
     }
 
     /**
@@ -0,0 +1,241 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.chemistry.atompub.client;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import org.apache.chemistry.BaseType;
+import org.apache.chemistry.CMISRuntimeException;
+import org.apache.chemistry.ListPage;
+import org.apache.chemistry.ObjectEntry;
+import org.apache.chemistry.ObjectId;
+import org.apache.chemistry.Paging;
+import org.apache.chemistry.Property;
+
+/**
+ * Downloads the documents of a folder subtree to a local directory, in
+ * parallel.
+ * <p>
+ * The folder tree is walked page by page from the calling thread, creating
+ * the local directories as they are found, while the content streams of the
+ * documents are copied to local files by the worker threads, without being
+ * held in memory.
+ */
+public class BulkExporter extends BulkOperation<BulkExporter.ExportItem, File> {
+
+    public static final int PAGE_SIZE = 100;
+
+    protected static final String UNSAFE_CHARS = "/\\:*?\"<>|";
+
+    protected static final Set<String> RESERVED_NAMES = new HashSet<String>(
+            Arrays.asList("CON", "PRN", "AUX", "NUL", "COM1", "COM2", "COM3",
+                    "COM4", "COM5", "COM6", "COM7", "COM8", "COM9", "LPT1",
+                    "LPT2", "LPT3", "LPT4", "LPT5", "LPT6", "LPT7", "LPT8",
+                    "LPT9"));
+
+    /**
+     * A document to download, and its local file.
+     */
+    public static class ExportItem {
+
+        public final APPObjectEntry entry;
+
+        public final File file;
+
+        public ExportItem(APPObjectEntry entry, File file) {
+            this.entry = entry;
+            this.file = file;
+        }
+    }
+
+    public BulkExporter(APPRepository repository,
+            Map<String, Serializable> params) {
+        this(repository, params, DEFAULT_CONNECTIONS, DEFAULT_MAX_IN_FLIGHT);
+    }
+
+    public BulkExporter(APPRepository repository,
+            Map<String, Serializable> params, int connections, int maxInFlight) {
+        super(repository, params, connections, maxInFlight);
+    }
+
+    /**
+     * Exports the documents of a folder subtree.
+     *
+     * @param folder the root of the subtree
+     * @param dir the local directory to export into
+     * @param listener the listener receiving per-document results, or
+     *            {@code null}
+     * @return the number of documents that failed
+     */
+    public int export(ObjectId folder, File dir,
+            BulkListener<ExportItem, File> listener)
+            throws InterruptedException {
+        APPConnection connection = (APPConnection) repository.getConnection(params);
+        try {
+            return run(new TreeIterator(connection, folder, dir), listener);
+        } finally {
+            connection.close();
+        }
+    }
+
+    @Override
+    protected File process(APPConnection connection, ExportItem item)
+            throws IOException {
+        String href = item.entry.getContentHref();
+        if (href == null) {
+            // no content stream, just create an empty file
+            item.file.createNewFile();
+            return item.file;
+        }
+        OutputStream out = new FileOutputStream(item.file);
+        try {
+            connection.connector.copyContentStream(href, out);
+        } finally {
+            out.close();
+        }
+        return item.file;
+    }
+
+    protected static String getFileName(ObjectEntry entry) {
+        String name = (String) entry.getValue(Property.CONTENT_STREAM_FILE_NAME);
+        if (name == null || name.length() == 0) {
+            name = (String) entry.getValue(Property.NAME);
+        }
+        if (name == null || name.length() == 0) {
+            name = entry.getId();
+        }
+        return getSafeName(name);
+    }
+
+    /**
+     * Turns a server-supplied name into a file name that is safe to use in
+     * the export directory: no path separators or characters that are
+     * invalid on common file systems, and no {@code .}, {@code ..}, empty
+     * or reserved device names.
+     */
+    protected static String getSafeName(String name) {
+        StringBuilder buf = new StringBuilder(name.length());
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            buf.append(c < 0x20 || UNSAFE_CHARS.indexOf(c) != -1 ? '_' : c);
+        }
+        name = buf.toString().trim();
+        // trailing dots and spaces are dropped by some file systems
+        while (name.endsWith(".") || name.endsWith(" ")) {
+            name = name.substring(0, name.length() - 1);
+        }
+        if (name.length() == 0) {
+            return "_";
+        }
+        int dot = name.indexOf('.');
+        String base = dot == -1 ? name : name.substring(0, dot);
+        if (RESERVED_NAMES.contains(base.toUpperCase())) {
+            name = '_' + name;
+        }
+        return name;
+    }
+
+    /**
+     * Makes a file name unique among the names already used in a directory,
+     * compared case-insensitively, by adding a counter before the extension.
+     */
+    protected static String getUniqueName(String name, Set<String> used) {
+        String unique = name;
+        int dot = name.lastIndexOf('.');
+        String base = dot <= 0 ? name : name.substring(0, dot);
+        String ext = dot <= 0 ? "" : name.substring(dot);
+        for (int i = 2; !used.add(unique.toLowerCase()); i++) {
+            unique = base + " (" + i + ")" + ext;
+        }
+        return unique;
+    }
+
+    /**
+     * Walks a folder tree breadth-first, one page of children at a time,
+     * returning the documents found.
+     */
+    protected static class TreeIterator implements Iterator<ExportItem> {
+
+        protected final APPConnection connection;
+
+        /** Folders still to walk. */
+        protected final LinkedList<ObjectId> folders = new LinkedList<ObjectId>();
+
+        /** Local directories of the folders still to walk. */
+        protected final LinkedList<File> dirs = new LinkedList<File>();
+
+        protected final LinkedList<ExportItem> next = new LinkedList<ExportItem>();
+
+        public TreeIterator(APPConnection connection, ObjectId folder, File dir) {
+            this.connection = connection;
+            folders.add(folder);
+            dirs.add(dir);
+        }
+
+        public boolean hasNext() {
+            while (next.isEmpty() && !folders.isEmpty()) {
+                walk(folders.removeFirst(), dirs.removeFirst());
+            }
+            return !next.isEmpty();
+        }
+
+        public ExportItem next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return next.removeFirst();
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+        protected void walk(ObjectId folder, File dir) {
+            if (!dir.isDirectory() && !dir.mkdirs()) {
+                throw new CMISRuntimeException("Cannot create directory: "
+                        + dir);
+            }
+            Set<String> used = new HashSet<String>();
+            int skip = 0;
+            ListPage<ObjectEntry> page;
+            do {
+                page = connection.getChildren(folder, null, null, new Paging(
+                        PAGE_SIZE, skip));
+                for (ObjectEntry child : page) {
+                    File file = new File(dir, getUniqueName(
+                            getFileName(child), used));
+                    if (child.getBaseType() == BaseType.FOLDER) {
+                        folders.add(child);
+                        dirs.add(file);
+                    } else if (child.getBaseType() == BaseType.DOCUMENT) {
+                        next.add(new ExportItem((APPObjectEntry) child, file));
+                    }
+                }
+                skip += page.size();
+            } while (page.getHasMoreItems() && !page.isEmpty());
+        }
+    }
+
+}
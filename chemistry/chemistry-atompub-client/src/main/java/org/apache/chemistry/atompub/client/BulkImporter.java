@@ -0,0 +1,77 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.chemistry.atompub.client;
+
+import java.io.Serializable;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.chemistry.ObjectId;
+import org.apache.chemistry.Property;
+import org.apache.chemistry.Type;
+import org.apache.chemistry.impl.simple.SimpleObjectId;
+
+/**
+ * Creates objects in bulk through AtomPub.
+ * <p>
+ * Each item is created with a single POST including its content stream. The
+ * "down" collection of each parent folder is only looked up once, and the
+ * entry returned by the server is trusted as long as it holds the new object
+ * id, so no additional round trip is done per item.
+ * <p>
+ * Note that retrying a create after an I/O error may create a duplicate if
+ * the first attempt actually reached the server.
+ */
+public class BulkImporter extends BulkOperation<BulkItem, ObjectId> {
+
+    /** Cache of parent folder id -> children collection href. */
+    protected final Map<String, String> postHrefs = new ConcurrentHashMap<String, String>();
+
+    public BulkImporter(APPRepository repository,
+            Map<String, Serializable> params) {
+        this(repository, params, DEFAULT_CONNECTIONS, DEFAULT_MAX_IN_FLIGHT);
+    }
+
+    public BulkImporter(APPRepository repository,
+            Map<String, Serializable> params, int connections, int maxInFlight) {
+        super(repository, params, connections, maxInFlight);
+    }
+
+    @Override
+    protected ObjectId process(APPConnection connection, BulkItem item) {
+        String typeId = (String) item.properties.get(Property.TYPE_ID);
+        if (typeId == null) {
+            throw new IllegalArgumentException("Missing object type id");
+        }
+        Type type = repository.getType(typeId);
+        if (type == null) {
+            throw new IllegalArgumentException(typeId);
+        }
+        String href = getPostHref(connection, item.parent);
+        APPObjectEntry entry = connection.createObject(href, item.properties,
+                item.contentStream, type.getBaseType(), false);
+        return new SimpleObjectId(entry.getId());
+    }
+
+    protected String getPostHref(APPConnection connection, ObjectId parent) {
+        String parentId = parent.getId();
+        String href = postHrefs.get(parentId);
+        if (href == null) {
+            href = connection.getPostHref(parent);
+            postHrefs.put(parentId, href);
+        }
+        return href;
+    }
+
+}
@@ -0,0 +1,47 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.chemistry.atompub.client;
+
+import java.io.Serializable;
+import java.util.Map;
+
+import org.apache.chemistry.ContentStream;
+import org.apache.chemistry.ObjectId;
+
+/**
+ * An object to create through a {@link BulkImporter}.
+ * <p>
+ * If the item may be retried, its content stream must be re-readable, i.e.
+ * {@link ContentStream#getStream} must return a new stream on each call (as
+ * {@link org.apache.chemistry.impl.simple.SimpleContentStream} does).
+ */
+public class BulkItem {
+
+    /** The properties of the object, including its type. */
+    public final Map<String, Serializable> properties;
+
+    /** The content stream, or {@code null}. */
+    public final ContentStream contentStream;
+
+    /** The parent folder. */
+    public final ObjectId parent;
+
+    public BulkItem(Map<String, Serializable> properties,
+            ContentStream contentStream, ObjectId parent) {
+        this.properties = properties;
+        this.contentStream = contentStream;
+        this.parent = parent;
+    }
+
+}
@@ -0,0 +1,235 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.chemistry.atompub.client;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.chemistry.atompub.client.transport.AbstractHttpTransport;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Base class for bulk operations processing a stream of items concurrently
+ * over a pool of {@link APPConnection}s.
+ * <p>
+ * Items are pulled lazily from the input iterator, and at most
+ * {@code maxInFlight} of them are being processed at any time, so that
+ * arbitrarily large inputs can be processed in bounded memory. Items failing
+ * with a transient error (an I/O error talking to the server) are retried up
+ * to {@code maxRetries} times, with a linear back-off.
+ *
+ * @param <T> the item type
+ * @param <R> the result type
+ */
+public abstract class BulkOperation<T, R> {
+
+    private static final Log log = LogFactory.getLog(BulkOperation.class);
+
+    public static final int DEFAULT_CONNECTIONS = 4;
+
+    public static final int DEFAULT_MAX_IN_FLIGHT = 16;
+
+    public static final int DEFAULT_MAX_RETRIES = 3;
+
+    public static final long DEFAULT_RETRY_DELAY = 500; // ms
+
+    protected final APPRepository repository;
+
+    protected final Map<String, Serializable> params;
+
+    protected final int connections;
+
+    protected final int maxInFlight;
+
+    protected int maxRetries = DEFAULT_MAX_RETRIES;
+
+    protected long retryDelay = DEFAULT_RETRY_DELAY;
+
+    /**
+     * Creates a bulk operation.
+     *
+     * @param repository the repository
+     * @param params the connection parameters
+     * @param connections the number of concurrent connections
+     * @param maxInFlight the maximum number of items being processed or
+     *            waiting for a connection
+     */
+    public BulkOperation(APPRepository repository,
+            Map<String, Serializable> params, int connections, int maxInFlight) {
+        if (connections < 1 || maxInFlight < 1) {
+            throw new IllegalArgumentException("connections=" + connections
+                    + " maxInFlight=" + maxInFlight);
+        }
+        this.repository = repository;
+        this.params = params;
+        this.connections = connections;
+        this.maxInFlight = maxInFlight;
+    }
+
+    public void setMaxRetries(int maxRetries) {
+        this.maxRetries = maxRetries;
+    }
+
+    public void setRetryDelay(long retryDelay) {
+        this.retryDelay = retryDelay;
+    }
+
+    /**
+     * Processes one item.
+     *
+     * @param connection the connection to use
+     * @param item the item
+     * @return the result
+     */
+    protected abstract R process(APPConnection connection, T item)
+            throws Exception;
+
+    /**
+     * Checks if an error is worth retrying.
+     */
+    protected boolean isTransient(Exception e) {
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (t instanceof IOException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Processes all the items.
+     *
+     * @param items the items
+     * @param listener the listener receiving per-item results, or
+     *            {@code null}
+     * @return the number of items that failed
+     * @throws InterruptedException if interrupted while waiting for items to
+     *             be processed
+     */
+    public int run(Iterator<T> items, final BulkListener<T, R> listener)
+            throws InterruptedException {
+        Map<String, Serializable> connectionParams = getConnectionParams();
+        final BlockingQueue<APPConnection> pool = new ArrayBlockingQueue<APPConnection>(
+                connections);
+        for (int i = 0; i < connections; i++) {
+            pool.add((APPConnection) repository.getConnection(connectionParams));
+        }
+        final Semaphore inFlight = new Semaphore(maxInFlight);
+        final AtomicInteger failures = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(connections,
+                new BulkThreadFactory(getClass().getSimpleName()));
+        try {
+            while (items.hasNext()) {
+                final T item = items.next();
+                inFlight.acquire();
+                executor.execute(new Runnable() {
+                    public void run() {
+                        try {
+                            BulkResult<T, R> result = execute(pool, item);
+                            if (!result.isSuccess()) {
+                                failures.incrementAndGet();
+                            }
+                            if (listener != null) {
+                                listener.done(result);
+                            }
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        } finally {
+                            inFlight.release();
+                        }
+                    }
+                });
+            }
+            // wait for completion
+            inFlight.acquire(maxInFlight);
+            inFlight.release(maxInFlight);
+        } finally {
+            executor.shutdownNow();
+            for (APPConnection connection : pool) {
+                connection.close();
+            }
+        }
+        return failures.get();
+    }
+
+    protected BulkResult<T, R> execute(BlockingQueue<APPConnection> pool,
+            T item) throws InterruptedException {
+        int attempts = 0;
+        while (true) {
+            attempts++;
+            APPConnection connection = pool.take();
+            try {
+                R result = process(connection, item);
+                return new BulkResult<T, R>(item, result, null, attempts);
+            } catch (Exception e) {
+                if (attempts > maxRetries || !isTransient(e)) {
+                    return new BulkResult<T, R>(item, null, e, attempts);
+                }
+                log.debug("Retrying after transient error: " + e);
+            } finally {
+                pool.put(connection);
+            }
+            Thread.sleep(retryDelay * attempts);
+        }
+    }
+
+    /**
+     * Gets the connection parameters, making sure the HTTP transport allows
+     * as many concurrent connections to the server as this operation uses.
+     */
+    protected Map<String, Serializable> getConnectionParams() {
+        int max = AbstractHttpTransport.getIntParam(params,
+                AbstractHttpTransport.PARAM_MAX_CONNECTIONS_PER_HOST,
+                AbstractHttpTransport.DEFAULT_MAX_CONNECTIONS_PER_HOST);
+        if (max >= connections) {
+            return params;
+        }
+        Map<String, Serializable> p = new HashMap<String, Serializable>();
+        if (params != null) {
+            p.putAll(params);
+        }
+        p.put(AbstractHttpTransport.PARAM_MAX_CONNECTIONS_PER_HOST,
+                Integer.valueOf(connections));
+        return p;
+    }
+
+    protected static class BulkThreadFactory implements ThreadFactory {
+
+        protected final String name;
+
+        protected final AtomicInteger count = new AtomicInteger();
+
+        public BulkThreadFactory(String name) {
+            this.name = name;
+        }
+
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, name + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+
+}
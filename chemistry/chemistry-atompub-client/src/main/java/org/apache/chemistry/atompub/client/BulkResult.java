@@ -0,0 +1,47 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.chemistry.atompub.client;
+
+/**
+ * The result of processing one item in a {@link BulkOperation}.
+ *
+ * @param <T> the item type
+ * @param <R> the result type
+ */
+public class BulkResult<T, R> {
+
+    /** The processed item. */
+    public final T item;
+
+    /** The result, or {@code null} if processing failed. */
+    public final R result;
+
+    /** The last error, or {@code null} if processing succeeded. */
+    public final Exception error;
+
+    /** The number of attempts made. */
+    public final int attempts;
+
+    public BulkResult(T item, R result, Exception error, int attempts) {
+        this.item = item;
+        this.result = result;
+        this.error = error;
+        this.attempts = attempts;
+    }
+
+    public boolean isSuccess() {
+        return error == null;
+    }
+
+}
@@ -21,8 +21,11 @@ package org.apache.chemistry.atompub.client;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
+import java.util.UUID;
 
 import javax.xml.namespace.QName;
 import javax.xml.stream.XMLStreamException;
@@ -38,60 +41,77 @@ import org.apache.chemistry.Paging;
 import org.apache.chemistry.Tree;
 import org.apache.chemistry.TypeManager;
 import org.apache.chemistry.atompub.AtomPub;
+import org.apache.chemistry.atompub.MultipartReader;
+import org.apache.chemistry.atompub.MultipartWriter;
 import org.apache.chemistry.atompub.client.stax.EntryReader;
 import org.apache.chemistry.atompub.client.stax.FeedReader;
+import org.apache.chemistry.atompub.client.stax.PropertyFilter;
 import org.apache.chemistry.atompub.client.stax.QueryWriter;
 import org.apache.chemistry.atompub.client.stax.XmlObjectWriter;
+import org.apache.chemistry.atompub.client.transport.CommonsHttpTransport;
+import org.apache.chemistry.atompub.client.transport.HttpRequest;
+import org.apache.chemistry.atompub.client.transport.HttpResponse;
+import org.apache.chemistry.atompub.client.transport.HttpTransport;
+import org.apache.chemistry.atompub.client.transport.RequestBody;
 import org.apache.chemistry.impl.simple.SimpleContentStream;
 import org.apache.chemistry.impl.simple.SimpleTree;
-import org.apache.commons.httpclient.Header;
 import org.apache.commons.httpclient.HttpClient;
-import org.apache.commons.httpclient.HttpMethod;
-import org.apache.commons.httpclient.HttpStatus;
-import org.apache.commons.httpclient.methods.DeleteMethod;
-import org.apache.commons.httpclient.methods.GetMethod;
-import org.apache.commons.httpclient.methods.InputStreamRequestEntity;
-import org.apache.commons.httpclient.methods.PostMethod;
-import org.apache.commons.httpclient.methods.PutMethod;
-import org.apache.commons.httpclient.methods.RequestEntity;
+import org.apache.commons.io.IOUtils;
 
 /**
  * Abstracts the HTTP or AtomPub operations.
  * <p>
- * A {@link Connector} is tied to a {@link HttpClient} that itself holds
+ * A {@link Connector} is tied to a {@link HttpTransport} that itself holds
  * potential connection authentication parameters.
  */
 public class Connector {
 
-    protected final HttpClient client;
+    protected final HttpTransport transport;
 
     protected final APPContext ctx;
 
-    public Connector(HttpClient client, APPContext ctx) {
-        this.client = client;
+    public Connector(HttpTransport transport, APPContext ctx) {
+        this.transport = transport;
         this.ctx = ctx;
     }
 
+    public Connector(HttpClient client, APPContext ctx) {
+        this(new CommonsHttpTransport(client), ctx);
+    }
+
+    public HttpTransport getTransport() {
+        return transport;
+    }
+
     public List<APPRepository> getServiceDocument(String uri) {
-        GetMethod method = new GetMethod(uri);
+        HttpResponse response = null;
         try {
-            client.executeMethod(method);
-            int status = method.getStatusCode();
-            if (status >= HttpStatus.SC_BAD_REQUEST) {
+            response = transport.execute(new HttpRequest(HttpRequest.GET,
+                    uri));
+            int status = response.getStatus();
+            if (status >= HttpURLConnection.HTTP_BAD_REQUEST) {
                 throw new CMISRuntimeException(
                         "Remote server returned error code: " + status);
             }
             return new APPServiceDocumentReader().read(ctx,
-                    method.getResponseBodyAsStream());
+                    response.getStream());
         } catch (IOException e) {
             throw new CMISRuntimeException(e);
         } finally {
-            method.releaseConnection();
+            release(response);
         }
     }
 
     public ListPage<ObjectEntry> getEntryFeed(String href, NameValuePairs params) {
-        return getObjectFeed(href, params, new APPObjectFeedReader());
+        return getEntryFeed(href, params, PropertyFilter.ALL);
+    }
+
+    /**
+     * Gets a feed of entries, only parsing what the filter accepts.
+     */
+    public ListPage<ObjectEntry> getEntryFeed(String href,
+            NameValuePairs params, PropertyFilter filter) {
+        return getObjectFeed(href, params, new APPObjectFeedReader(filter));
     }
 
     public TypeManager getTypeFeed(String href,
@@ -102,35 +122,43 @@ public class Connector {
 
     protected <T> T getObjectFeed(String href, NameValuePairs params,
             FeedReader<T> reader) {
-        HttpMethod method = new GetMethod(href);
+        HttpResponse response = null;
         try {
-            if (params != null) {
-                method.setQueryString(params.toArray());
-            }
-            client.executeMethod(method);
-            int status = method.getStatusCode();
-            if (status >= HttpStatus.SC_BAD_REQUEST) {
+            response = transport.execute(new HttpRequest(HttpRequest.GET,
+                    href, params));
+            int status = response.getStatus();
+            if (status >= HttpURLConnection.HTTP_BAD_REQUEST) {
                 throw new CMISRuntimeException(
                         "Remote server returned error code: " + status);
             }
-            return reader.read(ctx, method.getResponseBodyAsStream());
+            return reader.read(ctx, response.getStream());
         } catch (IOException e) {
             throw new CMISRuntimeException(e);
         } catch (XMLStreamException e) {
             throw new CMISRuntimeException(e);
         } finally {
-            method.releaseConnection();
+            release(response);
         }
     }
 
     public Tree<ObjectEntry> getEntryFeedTree(String href, NameValuePairs params) {
+        return getEntryFeedTree(href, params, PropertyFilter.ALL);
+    }
+
+    public Tree<ObjectEntry> getEntryFeedTree(String href,
+            NameValuePairs params, PropertyFilter filter) {
         List<Tree<ObjectEntry>> list = getObjectFeed(href, params,
-                new APPObjectFeedTreeReader());
+                new APPObjectFeedTreeReader(filter));
         return new SimpleTree<ObjectEntry>(null, list);
     }
 
     public APPObjectEntry getEntry(String href, String msg) {
-        return getObject(href, msg, new APPObjectEntryReader());
+        return getEntry(href, msg, PropertyFilter.ALL);
+    }
+
+    public APPObjectEntry getEntry(String href, String msg,
+            PropertyFilter filter) {
+        return getObject(href, msg, new APPObjectEntryReader(filter));
     }
 
     public APPType getType(String href, boolean includePropertyDefinitions,
@@ -140,209 +168,314 @@ public class Connector {
     }
 
     protected <T> T getObject(String href, String msg, EntryReader<T> reader) {
-        HttpMethod method = new GetMethod(href);
+        HttpResponse response = null;
         try {
-            client.executeMethod(method);
-            int status = method.getStatusCode();
-            if (status == HttpStatus.SC_NOT_FOUND) {
+            response = transport.execute(new HttpRequest(HttpRequest.GET,
+                    href));
+            int status = response.getStatus();
+            if (status == HttpURLConnection.HTTP_NOT_FOUND) {
                 throw new ObjectNotFoundException(msg);
             }
-            if (status == HttpStatus.SC_CONFLICT) {
+            if (status == HttpURLConnection.HTTP_CONFLICT) {
                 throw new ConstraintViolationException(msg);
             }
-            if (status >= HttpStatus.SC_BAD_REQUEST) {
+            if (status >= HttpURLConnection.HTTP_BAD_REQUEST) {
                 throw new CMISRuntimeException(
                         "Remote server returned error code: " + status);
             }
-            return reader.read(ctx, method.getResponseBodyAsStream());
+            return reader.read(ctx, response.getStream());
         } catch (IOException e) {
             throw new CMISRuntimeException(e);
         } catch (XMLStreamException e) {
             throw new CMISRuntimeException(e);
         } finally {
-            method.releaseConnection();
+            release(response);
         }
     }
 
+    /**
+     * Executes a GET for a content stream, checking the status.
+     */
+    protected HttpResponse getContent(String href) throws IOException {
+        HttpResponse response = transport.execute(new HttpRequest(
+                HttpRequest.GET, href));
+        int status = response.getStatus();
+        if (status == HttpURLConnection.HTTP_NOT_FOUND
+                || status == HttpURLConnection.HTTP_CONFLICT) {
+            response.release();
+            throw new ConstraintViolationException("No content stream");
+        }
+        if (status >= HttpURLConnection.HTTP_BAD_REQUEST) {
+            response.release();
+            throw new CMISRuntimeException(
+                    "Remote server returned error code: " + status);
+        }
+        return response;
+    }
+
     public ContentStream getContentStream(String href, String mimeType,
             String filename) throws IOException {
-        HttpMethod method = new GetMethod(href);
+        HttpResponse response = getContent(href);
         try {
-            client.executeMethod(method);
-            int status = method.getStatusCode();
-            if (status == HttpStatus.SC_NOT_FOUND
-                    || status == HttpStatus.SC_CONFLICT) {
-                throw new ConstraintViolationException("No content stream");
-            }
-            if (status >= HttpStatus.SC_BAD_REQUEST) {
-                throw new CMISRuntimeException(
-                        "Remote server returned error code: " + status);
-            }
-            InputStream is = method.getResponseBodyAsStream();
+            InputStream is = response.getStream();
             return new SimpleContentStream(is, mimeType, filename);
         } finally {
             // because of this, we have to consume the stream completely
             // therefore we must copy it (SimpleContentStream does it)
-            method.releaseConnection();
+            response.release();
         }
 
     }
 
+    /**
+     * Copies a remote content stream to an output stream, without holding it
+     * in memory.
+     *
+     * @param href the content URI
+     * @param out the output stream
+     * @return the number of bytes copied
+     */
+    public long copyContentStream(String href, OutputStream out)
+            throws IOException {
+        HttpResponse response = getContent(href);
+        try {
+            InputStream is = response.getStream();
+            return is == null ? 0 : IOUtils.copyLarge(is, out);
+        } finally {
+            response.release();
+        }
+    }
+
     public Set<QName> getAllowableActions(String href) {
         return getObject(href, "", new AllowableActionsReader());
     }
 
-    public APPObjectEntry putEntry(String href, Header header,
-            APPObjectEntry entry) {
-        RequestEntity requestEntity = new XmlObjectWriterRequestEntity<ObjectEntry>(
+    public APPObjectEntry putEntry(String href, APPObjectEntry entry) {
+        HttpRequest request = new HttpRequest(HttpRequest.PUT, href);
+        request.setHeader("Content-Type", AtomPub.MEDIA_TYPE_ATOM_ENTRY);
+        request.body = new XmlObjectWriterRequestEntity<ObjectEntry>(
                 new APPObjectEntryWriter(), entry);
-        return put(href, header, requestEntity);
+        return put(request, true);
     }
 
     public APPObjectEntry putStream(String href, ContentStream cs)
             throws IOException {
-        RequestEntity requestEntity = new InputStreamRequestEntity(
-                cs.getStream(), cs.getLength(), cs.getMimeType());
+        HttpRequest request = new HttpRequest(HttpRequest.PUT, href);
+        request.body = new ContentStreamRequestBody(cs);
         // Use Slug: header for filename
         String filename = cs.getFileName();
-        Header header = filename == null ? null : new Header(
-                AtomPub.HEADER_SLUG, filename);
-        return put(href, header, requestEntity);
+        if (filename != null) {
+            request.setHeader(AtomPub.HEADER_SLUG, filename);
+        }
+        // no answer expected for stream put
+        return put(request, false);
     }
 
-    protected APPObjectEntry put(String href, Header header,
-            RequestEntity requestEntity) {
-        PutMethod method = new PutMethod(href);
+    protected APPObjectEntry put(HttpRequest request, boolean readEntry) {
+        HttpResponse response = null;
         try {
-            if (header != null) {
-                method.addRequestHeader(header);
-            }
-            method.setRequestEntity(requestEntity);
-            method.setContentChunked(true);
-            client.executeMethod(method);
-            int status = method.getStatusCode();
-            if (status >= HttpStatus.SC_BAD_REQUEST) {
+            response = transport.execute(request);
+            int status = response.getStatus();
+            if (status >= HttpURLConnection.HTTP_BAD_REQUEST) {
                 throw new CMISRuntimeException(
                         "Remote server returned error code: " + status);
             }
-            if (requestEntity instanceof InputStreamRequestEntity) {
-                // no answer expected for stream put
+            if (!readEntry) {
                 return null;
-            } else {
-                return new APPObjectEntryReader().read(ctx,
-                        method.getResponseBodyAsStream());
             }
+            return new APPObjectEntryReader().read(ctx, response.getStream());
         } catch (IOException e) {
             throw new CMISRuntimeException(e);
         } catch (XMLStreamException e) {
             throw new CMISRuntimeException(e);
         } finally {
-            method.releaseConnection();
+            release(response);
         }
     }
 
     public APPObjectEntry postEntry(String href, NameValuePairs params,
             APPObjectEntry entry) {
-        PostMethod method = new PostMethod(href);
+        return postEntry(href, params, entry, true);
+    }
+
+    /**
+     * Posts an entry.
+     * <p>
+     * If the server does not flag the returned entry as complete (through a
+     * Content-Location equal to the Location), the entry is fetched again
+     * unless {@code fullEntry} is {@code false} and the returned entry at
+     * least holds an id, which saves a round trip for callers only interested
+     * in the id of the new object.
+     *
+     * @param href the collection URI
+     * @param params the query parameters, or {@code null}
+     * @param entry the entry to post
+     * @param fullEntry {@code true} if the returned entry must be complete
+     * @return the new entry
+     */
+    public APPObjectEntry postEntry(String href, NameValuePairs params,
+            APPObjectEntry entry, boolean fullEntry) {
+        HttpRequest request = new HttpRequest(HttpRequest.POST, href, params);
+        request.setHeader("Content-Type", AtomPub.MEDIA_TYPE_ATOM_ENTRY);
+        request.body = new XmlObjectWriterRequestEntity<ObjectEntry>(
+                new APPObjectEntryWriter(), entry);
+        APPObjectEntry newEntry;
+        String loc;
+        String cloc;
+        HttpResponse response = null;
         try {
-            if (params != null) {
-                method.setQueryString(params.toArray());
-            }
-            method.addRequestHeader("Content-Type",
-                    AtomPub.MEDIA_TYPE_ATOM_ENTRY);
-            method.setRequestEntity(new XmlObjectWriterRequestEntity<ObjectEntry>(
-                    new APPObjectEntryWriter(), entry));
-            method.setContentChunked(true);
-            client.executeMethod(method);
-            int status = method.getStatusCode();
-            if (status != HttpStatus.SC_CREATED) {
+            response = transport.execute(request);
+            int status = response.getStatus();
+            if (status != HttpURLConnection.HTTP_CREATED) {
                 throw new CMISRuntimeException(
                         "Remote server returned error code: " + status);
             }
-            APPObjectEntry newEntry = new APPObjectEntryReader().read(ctx,
-                    method.getResponseBodyAsStream());
-            // newEntry SHOULD be returned (AtomPub 9.2)...
-            Header loc = method.getResponseHeader("Location");
-            Header cloc = method.getResponseHeader("Content-Location");
-            if (loc == null) {
+            newEntry = new APPObjectEntryReader().read(ctx,
+                    response.getStream());
+            loc = response.getHeader("Location");
+            cloc = response.getHeader("Content-Location");
+        } catch (IOException e) {
+            throw new CMISRuntimeException(e);
+        } catch (XMLStreamException e) {
+            throw new CMISRuntimeException(e);
+        } finally {
+            release(response);
+        }
+        // newEntry SHOULD be returned (AtomPub 9.2)...
+        if (loc == null) {
+            throw new CMISRuntimeException(
+                    "Remote server failed to return a Location header");
+        }
+        boolean complete = loc.equals(cloc);
+        if (newEntry == null || (!complete && fullEntry)
+                || newEntry.getId() == null) {
+            // (Content-Location defined by AtomPub 9.2)
+            // fetch actual new entry from Location header
+            // TODO could fetch only a subset of the properties, if deemed
+            // ok
+            newEntry = getEntry(loc, loc);
+            if (newEntry == null) {
                 throw new CMISRuntimeException(
-                        "Remote server failed to return a Location header");
+                        "Remote server failed to return an entry for Location: "
+                                + loc);
             }
-            if (newEntry == null || !loc.equals(cloc)) {
-                // (Content-Location defined by AtomPub 9.2)
-                // fetch actual new entry from Location header
-                // TODO could fetch only a subset of the properties, if deemed
-                // ok
-                newEntry = getEntry(loc.getValue(), loc.getValue());
-                if (newEntry == null) {
-                    throw new CMISRuntimeException(
-                            "Remote server failed to return an entry for Location: "
-                                    + loc);
-                }
+        }
+        return newEntry;
+    }
+
+    public ListPage<ObjectEntry> postQuery(String href, String statement,
+            boolean searchAllVersions, Inclusion inclusion, Paging paging) {
+        HttpRequest request = new HttpRequest(HttpRequest.POST, href);
+        request.body = new XmlObjectWriterRequestEntity<String>(
+                new QueryWriter(searchAllVersions, inclusion, paging),
+                statement);
+        HttpResponse response = null;
+        try {
+            response = transport.execute(request);
+            int status = response.getStatus();
+            if (status >= HttpURLConnection.HTTP_BAD_REQUEST) {
+                throw new CMISRuntimeException(
+                        "Remote server returned error code: " + status);
             }
-            return newEntry;
+            return new APPObjectFeedReader(
+                    PropertyFilter.fromInclusion(inclusion)).read(ctx,
+                    response.getStream());
         } catch (IOException e) {
             throw new CMISRuntimeException(e);
         } catch (XMLStreamException e) {
             throw new CMISRuntimeException(e);
         } finally {
-            method.releaseConnection();
+            release(response);
         }
     }
 
-    public ListPage<ObjectEntry> postQuery(String href, String statement,
-            boolean searchAllVersions, Inclusion inclusion, Paging paging) {
-        PostMethod method = new PostMethod(href);
+    /**
+     * Posts a multipart batch request.
+     *
+     * @param href the batch URI, including the operation
+     * @param parts the parts of the request, either object ids as strings or
+     *            entries
+     * @param filter the properties to read from the returned entries
+     * @return the returned entries, with {@code null} for empty parts
+     */
+    public List<APPObjectEntry> postBatch(String href, List<?> parts,
+            PropertyFilter filter) {
+        HttpRequest request = new HttpRequest(HttpRequest.POST, href);
+        request.body = new MultipartRequestBody(parts);
+        HttpResponse response = null;
         try {
-            method.setRequestEntity(new XmlObjectWriterRequestEntity<String>(
-                    new QueryWriter(searchAllVersions, inclusion, paging),
-                    statement));
-            method.setContentChunked(true);
-            client.executeMethod(method);
-            int status = method.getStatusCode();
-            if (status >= HttpStatus.SC_BAD_REQUEST) {
+            response = transport.execute(request);
+            int status = response.getStatus();
+            if (status == HttpURLConnection.HTTP_NOT_FOUND) {
+                throw new ObjectNotFoundException(response.getStatusText());
+            }
+            if (status == HttpURLConnection.HTTP_CONFLICT) {
+                throw new ConstraintViolationException(
+                        response.getStatusText());
+            }
+            if (status >= HttpURLConnection.HTTP_BAD_REQUEST) {
                 throw new CMISRuntimeException(
                         "Remote server returned error code: " + status);
             }
-            return new APPObjectFeedReader().read(ctx,
-                    method.getResponseBodyAsStream());
+            List<APPObjectEntry> entries = new ArrayList<APPObjectEntry>(
+                    parts.size());
+            if (status == HttpURLConnection.HTTP_NO_CONTENT) {
+                return entries;
+            }
+            String boundary = MultipartReader.getBoundary(response.getHeader("Content-Type"));
+            if (boundary == null) {
+                throw new CMISRuntimeException(
+                        "Remote server did not return a multipart response");
+            }
+            MultipartReader reader = new MultipartReader(response.getStream(),
+                    boundary);
+            APPObjectEntryReader entryReader = new APPObjectEntryReader(filter);
+            while (reader.next()) {
+                entries.add(reader.getContentType() == null ? null
+                        : entryReader.read(ctx, reader.getStream()));
+            }
+            return entries;
         } catch (IOException e) {
             throw new CMISRuntimeException(e);
         } catch (XMLStreamException e) {
             throw new CMISRuntimeException(e);
         } finally {
-            method.releaseConnection();
+            release(response);
         }
     }
 
     public void delete(String href, NameValuePairs params, String msg) {
-        HttpMethod method = new DeleteMethod(href);
+        HttpResponse response = null;
         try {
-            if (params != null) {
-                method.setQueryString(params.toArray());
-            }
-            client.executeMethod(method);
-            int status = method.getStatusCode();
-            if (status == HttpStatus.SC_NOT_FOUND) {
+            response = transport.execute(new HttpRequest(HttpRequest.DELETE,
+                    href, params));
+            int status = response.getStatus();
+            if (status == HttpURLConnection.HTTP_NOT_FOUND) {
                 throw new ObjectNotFoundException(msg);
             }
-            if (status == HttpStatus.SC_CONFLICT) {
+            if (status == HttpURLConnection.HTTP_CONFLICT) {
                 throw new ConstraintViolationException(
-                        method.getStatusLine().getReasonPhrase());
+                        response.getStatusText());
             }
-            if (status >= HttpStatus.SC_BAD_REQUEST) {
+            if (status >= HttpURLConnection.HTTP_BAD_REQUEST) {
                 throw new CMISRuntimeException(
                         "Remote server returned error code: " + status);
             }
         } catch (IOException e) {
             throw new CMISRuntimeException(e);
         } finally {
-            method.releaseConnection();
+            release(response);
+        }
+    }
+
+    protected static void release(HttpResponse response) {
+        if (response != null) {
+            response.release();
         }
     }
 
     public static class XmlObjectWriterRequestEntity<T> implements
-            RequestEntity {
+            RequestBody {
 
         protected final XmlObjectWriter<T> writer;
 
@@ -362,12 +495,84 @@ public class Connector {
         }
 
         public boolean isRepeatable() {
-            return false;
+            return true;
         }
 
-        public void writeRequest(OutputStream out) throws IOException {
+        public void writeTo(OutputStream out) throws IOException {
             writer.write(obj, out);
         }
     }
 
+    /**
+     * A {@code multipart/mixed} body holding object ids as text and entries.
+     */
+    public static class MultipartRequestBody implements RequestBody {
+
+        protected final List<?> parts;
+
+        protected final String boundary = "chemistry-" + UUID.randomUUID();
+
+        public MultipartRequestBody(List<?> parts) {
+            this.parts = parts;
+        }
+
+        public long getContentLength() {
+            return -1;
+        }
+
+        public String getContentType() {
+            return MultipartWriter.getContentType(boundary);
+        }
+
+        public boolean isRepeatable() {
+            return true;
+        }
+
+        public void writeTo(OutputStream out) throws IOException {
+            MultipartWriter writer = new MultipartWriter(out, boundary);
+            APPObjectEntryWriter entryWriter = new APPObjectEntryWriter();
+            for (Object part : parts) {
+                if (part instanceof APPObjectEntry) {
+                    entryWriter.write((APPObjectEntry) part,
+                            writer.startPart(entryWriter.getContentType()));
+                } else {
+                    writer.startPart("text/plain;charset=UTF-8").write(
+                            part.toString().getBytes("UTF-8"));
+                }
+            }
+            writer.close();
+        }
+    }
+
+    public static class ContentStreamRequestBody implements RequestBody {
+
+        protected final ContentStream cs;
+
+        public ContentStreamRequestBody(ContentStream cs) {
+            this.cs = cs;
+        }
+
+        public long getContentLength() {
+            return cs.getLength();
+        }
+
+        public String getContentType() {
+            return cs.getMimeType();
+        }
+
+        public boolean isRepeatable() {
+            // the stream of a content stream may only be read once
+            return false;
+        }
+
+        public void writeTo(OutputStream out) throws IOException {
+            InputStream in = cs.getStream();
+            try {
+                IOUtils.copy(in, out);
+            } finally {
+                in.close();
+            }
+        }
+    }
+
 }
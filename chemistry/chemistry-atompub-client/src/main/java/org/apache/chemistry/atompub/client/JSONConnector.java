@@ -0,0 +1,326 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.chemistry.atompub.client;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.xml.namespace.QName;
+
+import org.apache.chemistry.BaseType;
+import org.apache.chemistry.CMIS;
+import org.apache.chemistry.CMISRuntimeException;
+import org.apache.chemistry.ConstraintViolationException;
+import org.apache.chemistry.Inclusion;
+import org.apache.chemistry.ListPage;
+import org.apache.chemistry.ObjectEntry;
+import org.apache.chemistry.ObjectNotFoundException;
+import org.apache.chemistry.Paging;
+import org.apache.chemistry.Property;
+import org.apache.chemistry.PropertyDefinition;
+import org.apache.chemistry.Tree;
+import org.apache.chemistry.atompub.AtomPub;
+import org.apache.chemistry.atompub.AtomPubCMIS;
+import org.apache.chemistry.atompub.JSONCMIS;
+import org.apache.chemistry.atompub.client.stax.Interner;
+import org.apache.chemistry.atompub.client.stax.PropertyFilter;
+import org.apache.chemistry.atompub.client.stax.XmlProperty;
+import org.apache.chemistry.atompub.client.stax.XmlPropertyMap;
+import org.apache.chemistry.atompub.client.transport.HttpRequest;
+import org.apache.chemistry.atompub.client.transport.HttpResponse;
+import org.apache.chemistry.atompub.client.transport.HttpTransport;
+import org.apache.chemistry.impl.simple.SimpleListPage;
+import org.apache.chemistry.impl.simple.SimpleTree;
+import org.apache.chemistry.json.JSONParser;
+
+/**
+ * A {@link Connector} reading objects through the JSON binding.
+ * <p>
+ * The JSON binding serves the AtomPub URL space under another base URL, so
+ * reads of objects, feeds, trees and queries are redirected to it and parsed
+ * from JSON. The AtomPub links of the returned entries are rebuilt from their
+ * ids, so that updates, content streams and everything else still go through
+ * AtomPub.
+ */
+public class JSONConnector extends Connector {
+
+    /** The base URL of the AtomPub resources, without trailing slash. */
+    protected final String atomBase;
+
+    /** The base URL of the JSON resources, without trailing slash. */
+    protected final String jsonBase;
+
+    public JSONConnector(HttpTransport transport, APPContext ctx,
+            String atomBase, String jsonBase) {
+        super(transport, ctx);
+        this.atomBase = stripSlash(atomBase);
+        this.jsonBase = stripSlash(jsonBase);
+    }
+
+    protected static String stripSlash(String base) {
+        return base.endsWith("/") ? base.substring(0, base.length() - 1)
+                : base;
+    }
+
+    /**
+     * Gets the JSON URL for an AtomPub URL.
+     *
+     * @return the JSON URL, or {@code null} if the resource is not served by
+     *         the JSON binding
+     */
+    protected String toJSON(String href) {
+        if (href == null || !href.startsWith(atomBase + '/')) {
+            return null;
+        }
+        return jsonBase + href.substring(atomBase.length());
+    }
+
+    @Override
+    public ListPage<ObjectEntry> getEntryFeed(String href,
+            NameValuePairs params, PropertyFilter filter) {
+        String json = toJSON(href);
+        if (json == null) {
+            return super.getEntryFeed(href, params, filter);
+        }
+        return readObjects(get(json, params, href), filter);
+    }
+
+    @Override
+    public Tree<ObjectEntry> getEntryFeedTree(String href,
+            NameValuePairs params, PropertyFilter filter) {
+        String json = toJSON(href);
+        if (json == null) {
+            return super.getEntryFeedTree(href, params, filter);
+        }
+        Map<String, Object> map = get(json, params, href);
+        return new SimpleTree<ObjectEntry>(null, readTrees(
+                getList(map, JSONCMIS.OBJECTS), filter));
+    }
+
+    @Override
+    public APPObjectEntry getEntry(String href, String msg,
+            PropertyFilter filter) {
+        String json = toJSON(href);
+        if (json == null) {
+            return super.getEntry(href, msg, filter);
+        }
+        return readObject(get(json, null, msg), filter);
+    }
+
+    @Override
+    public ListPage<ObjectEntry> postQuery(String href, String statement,
+            boolean searchAllVersions, Inclusion inclusion, Paging paging) {
+        String json = toJSON(href);
+        if (json == null) {
+            return super.postQuery(href, statement, searchAllVersions,
+                    inclusion, paging);
+        }
+        NameValuePairs params = new NameValuePairs();
+        params.add(AtomPubCMIS.PARAM_QUERY, statement);
+        params.add(AtomPubCMIS.PARAM_SEARCH_ALL_VERSIONS,
+                Boolean.toString(searchAllVersions));
+        if (inclusion != null) {
+            if (inclusion.properties != null) {
+                params.add(AtomPubCMIS.PARAM_FILTER, inclusion.properties);
+            }
+            params.add(AtomPubCMIS.PARAM_INCLUDE_ALLOWABLE_ACTIONS,
+                    Boolean.toString(inclusion.allowableActions));
+        }
+        if (paging != null) {
+            params.add(AtomPubCMIS.PARAM_MAX_ITEMS,
+                    Integer.toString(paging.maxItems));
+            params.add(AtomPubCMIS.PARAM_SKIP_COUNT,
+                    Integer.toString(paging.skipCount));
+        }
+        return readObjects(get(json, params, statement),
+                PropertyFilter.fromInclusion(inclusion));
+    }
+
+    /**
+     * Executes a GET on the JSON binding and parses the returned JSON object.
+     */
+    @SuppressWarnings("unchecked")
+    protected Map<String, Object> get(String href, NameValuePairs params,
+            String msg) {
+        HttpResponse response = null;
+        try {
+            response = transport.execute(new HttpRequest(HttpRequest.GET,
+                    href, params));
+            int status = response.getStatus();
+            if (status == HttpURLConnection.HTTP_NOT_FOUND) {
+                throw new ObjectNotFoundException(msg);
+            }
+            if (status == HttpURLConnection.HTTP_CONFLICT) {
+                throw new ConstraintViolationException(msg);
+            }
+            if (status >= HttpURLConnection.HTTP_BAD_REQUEST) {
+                throw new CMISRuntimeException(
+                        "Remote server returned error code: " + status);
+            }
+            Object json = new JSONParser(new InputStreamReader(
+                    response.getStream(), "UTF-8")).parse();
+            if (!(json instanceof Map)) {
+                throw new CMISRuntimeException("Not a JSON object: " + href);
+            }
+            return (Map<String, Object>) json;
+        } catch (IOException e) {
+            throw new CMISRuntimeException(e);
+        } finally {
+            release(response);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    protected static List<Object> getList(Map<String, Object> map, String key) {
+        List<Object> list = (List<Object>) map.get(key);
+        if (list == null) {
+            return Collections.emptyList();
+        }
+        return list;
+    }
+
+    @SuppressWarnings("unchecked")
+    protected ListPage<ObjectEntry> readObjects(Map<String, Object> map,
+            PropertyFilter filter) {
+        SimpleListPage<ObjectEntry> page = new SimpleListPage<ObjectEntry>();
+        for (Object o : getList(map, JSONCMIS.OBJECTS)) {
+            page.add(readObject((Map<String, Object>) o, filter));
+        }
+        page.setHasMoreItems(Boolean.TRUE.equals(map.get(JSONCMIS.HAS_MORE_ITEMS)));
+        Number numItems = (Number) map.get(JSONCMIS.NUM_ITEMS);
+        if (numItems != null) {
+            page.setNumItems(numItems.intValue());
+        }
+        return page;
+    }
+
+    @SuppressWarnings("unchecked")
+    protected List<Tree<ObjectEntry>> readTrees(List<Object> list,
+            PropertyFilter filter) {
+        List<Tree<ObjectEntry>> trees = new ArrayList<Tree<ObjectEntry>>(
+                list.size());
+        for (Object o : list) {
+            Map<String, Object> map = (Map<String, Object>) o;
+            List<Tree<ObjectEntry>> children = null;
+            if (map.containsKey(JSONCMIS.CHILDREN)) {
+                children = readTrees(getList(map, JSONCMIS.CHILDREN), filter);
+            }
+            trees.add(new SimpleTree<ObjectEntry>(readObject(map, filter),
+                    children));
+        }
+        return trees;
+    }
+
+    @SuppressWarnings("unchecked")
+    protected APPObjectEntry readObject(Map<String, Object> map,
+            PropertyFilter filter) {
+        APPObjectEntry entry = new APPObjectEntry(
+                (APPConnection) ctx.getConnection(), new XmlPropertyMap(),
+                null);
+        Map<String, Object> properties = (Map<String, Object>) map.get(JSONCMIS.PROPERTIES);
+        if (properties != null) {
+            for (Map.Entry<String, Object> e : properties.entrySet()) {
+                String id = e.getKey();
+                if (!filter.acceptProperty(id)) {
+                    continue;
+                }
+                PropertyDefinition def = ctx.getRepository().getPropertyDefinition(
+                        id);
+                if (def == null) {
+                    throw new CMISRuntimeException(
+                            "No such property definition: " + id);
+                }
+                Object value = e.getValue();
+                XmlProperty p;
+                if (value instanceof List) {
+                    List<Object> list = (List<Object>) value;
+                    List<String> strings = new ArrayList<String>(list.size());
+                    for (Object v : list) {
+                        strings.add(String.valueOf(v));
+                    }
+                    p = new XmlProperty(id, strings);
+                    p.setDefinition(def);
+                } else {
+                    // values are decoded from their string form lazily, as
+                    // for XML
+                    p = new XmlProperty(def, String.valueOf(value));
+                }
+                entry.properties.put(id, p);
+            }
+        }
+        List<Object> actions = (List<Object>) map.get(JSONCMIS.ALLOWABLE_ACTIONS);
+        if (actions != null && filter.acceptAllowableActions()) {
+            Set<QName> allowableActions = new HashSet<QName>();
+            for (Object action : actions) {
+                allowableActions.add(Interner.intern(CMIS.CMIS_NS,
+                        (String) action));
+            }
+            entry.allowableActions = Collections.unmodifiableSet(allowableActions);
+        }
+        entry.pathSegment = (String) map.get(JSONCMIS.PATH_SEGMENT);
+        addLinks(entry, (String) map.get(JSONCMIS.CONTENT_TYPE));
+        return entry;
+    }
+
+    /**
+     * Adds the links the AtomPub binding would have returned for an entry,
+     * as built by the server's CMISObjectsCollection.
+     */
+    protected void addLinks(APPObjectEntry entry, String contentType) {
+        String id = entry.getId();
+        String self = getLink(JSONCMIS.RES_OBJECT, id);
+        entry.addLink(AtomPub.LINK_SELF, self, AtomPub.MEDIA_TYPE_ATOM_ENTRY);
+        entry.addLink(AtomPub.LINK_EDIT, self, AtomPub.MEDIA_TYPE_ATOM_ENTRY);
+        entry.addLink(AtomPub.LINK_DESCRIBED_BY, getLink(JSONCMIS.RES_TYPE,
+                entry.getTypeId()), AtomPub.MEDIA_TYPE_ATOM_ENTRY);
+        BaseType baseType = entry.getBaseType();
+        if (baseType == BaseType.FOLDER) {
+            String pid = (String) entry.getValue(Property.PARENT_ID);
+            if (pid != null) {
+                entry.addLink(AtomPub.LINK_UP, getLink(JSONCMIS.RES_OBJECT,
+                        pid), AtomPub.MEDIA_TYPE_ATOM_ENTRY);
+            }
+            entry.addLink(AtomPub.LINK_DOWN, getLink(JSONCMIS.RES_CHILDREN,
+                    id), AtomPub.MEDIA_TYPE_ATOM_FEED);
+            entry.addLink(AtomPub.LINK_DOWN, getLink(
+                    JSONCMIS.RES_DESCENDANTS, id),
+                    AtomPubCMIS.MEDIA_TYPE_CMIS_TREE);
+            entry.addLink(AtomPubCMIS.LINK_FOLDER_TREE, getLink(
+                    JSONCMIS.RES_FOLDER_TREE, id), AtomPub.MEDIA_TYPE_ATOM_FEED);
+        } else if (baseType == BaseType.DOCUMENT) {
+            String media = getLink(JSONCMIS.RES_FILE, id);
+            entry.addLink(AtomPub.LINK_EDIT_MEDIA, media, null);
+            entry.addLink(AtomPub.LINK_UP, getLink(JSONCMIS.RES_PARENTS, id),
+                    AtomPub.MEDIA_TYPE_ATOM_FEED);
+            if (contentType != null) {
+                entry.addContentHref(media, contentType);
+            }
+        }
+        entry.addLink(AtomPubCMIS.LINK_ALLOWABLE_ACTIONS, getLink(
+                JSONCMIS.RES_ALLOWABLE_ACTIONS, id),
+                AtomPubCMIS.MEDIA_TYPE_CMIS_ALLOWABLE_ACTIONS);
+    }
+
+    protected String getLink(String resource, String id) {
+        return atomBase + '/' + resource + '/' + id;
+    }
+
+}
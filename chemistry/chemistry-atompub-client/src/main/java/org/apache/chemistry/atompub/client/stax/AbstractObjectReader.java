@@ -41,6 +41,16 @@ import org.apache.chemistry.xml.stax.StaxReader;
  */
 public abstract class AbstractObjectReader<T> extends AbstractEntryReader<T> {
 
+    protected final PropertyFilter filter;
+
+    protected AbstractObjectReader() {
+        this(PropertyFilter.ALL);
+    }
+
+    protected AbstractObjectReader(PropertyFilter filter) {
+        this.filter = filter == null ? PropertyFilter.ALL : filter;
+    }
+
     protected abstract void setProperty(T object, XmlProperty p);
 
     protected abstract void setAllowableActions(T object,
@@ -95,7 +105,7 @@ public abstract class AbstractObjectReader<T> extends AbstractEntryReader<T> {
 
     protected void readProperties(APPContext ctx, StaxReader reader, T object)
             throws XMLStreamException {
-        for (PropertyIterator it = new PropertyIterator(reader); it.hasNext();) {
+        for (PropertyIterator it = new PropertyIterator(reader, filter); it.hasNext();) {
             XmlProperty p = it.next();
             readPropertyWithType(ctx, reader, object, p);
         }
@@ -114,11 +124,16 @@ public abstract class AbstractObjectReader<T> extends AbstractEntryReader<T> {
 
     protected void readAllowableActions(APPContext ctx, StaxReader reader,
             T object) throws XMLStreamException {
+        if (!filter.acceptAllowableActions()) {
+            // skipped by the caller's navigator
+            return;
+        }
         Set<QName> allowableActions = new HashSet<QName>();
         ChildrenNavigator children = reader.getChildren();
         while (children.next()) {
             if (Boolean.parseBoolean(reader.getElementText())) {
-                allowableActions.add(reader.getName());
+                allowableActions.add(Interner.intern(
+                        reader.getNamespaceURI(), reader.getLocalName()));
             }
         }
         setAllowableActions(object, allowableActions);
@@ -142,8 +157,8 @@ public abstract class AbstractObjectReader<T> extends AbstractEntryReader<T> {
     protected void readChildren(APPContext ctx, StaxReader reader, T object)
             throws XMLStreamException {
         // TODO better use of generics
-        List<Tree<ObjectEntry>> list = new APPObjectFeedTreeReader().read(ctx,
-                reader);
+        List<Tree<ObjectEntry>> list = new APPObjectFeedTreeReader(filter).read(
+                ctx, reader);
         setChildren(object, list);
     }
 
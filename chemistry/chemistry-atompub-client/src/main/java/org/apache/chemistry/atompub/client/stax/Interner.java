@@ -0,0 +1,87 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.chemistry.atompub.client.stax;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.xml.namespace.QName;
+
+/**
+ * Shares the instances of strings and qualified names that repeat across
+ * all the entries of a feed (link relations and types, allowable action
+ * names), so that objects kept in memory don't each hold their own copy.
+ * <p>
+ * The caches are bounded; past that, values are returned as is.
+ */
+public class Interner {
+
+    protected static final int MAX_SIZE = 1024;
+
+    protected static final ConcurrentMap<String, String> strings = new ConcurrentHashMap<String, String>();
+
+    protected static final ConcurrentMap<String, ConcurrentMap<String, QName>> qnames = new ConcurrentHashMap<String, ConcurrentMap<String, QName>>();
+
+    // utility class
+    private Interner() {
+    }
+
+    public static String intern(String s) {
+        if (s == null) {
+            return null;
+        }
+        String i = strings.get(s);
+        if (i != null) {
+            return i;
+        }
+        if (strings.size() >= MAX_SIZE) {
+            return s;
+        }
+        i = strings.putIfAbsent(s, s);
+        return i == null ? s : i;
+    }
+
+    /**
+     * Gets a shared qualified name, without allocating it when already
+     * known.
+     */
+    public static QName intern(String nsUri, String localName) {
+        if (nsUri == null) {
+            nsUri = "";
+        }
+        ConcurrentMap<String, QName> ns = qnames.get(nsUri);
+        if (ns == null) {
+            if (qnames.size() >= MAX_SIZE) {
+                return new QName(nsUri, localName);
+            }
+            ns = new ConcurrentHashMap<String, QName>();
+            ConcurrentMap<String, QName> old = qnames.putIfAbsent(nsUri, ns);
+            if (old != null) {
+                ns = old;
+            }
+        }
+        QName name = ns.get(localName);
+        if (name == null) {
+            name = new QName(nsUri, localName);
+            if (ns.size() < MAX_SIZE) {
+                QName old = ns.putIfAbsent(localName, name);
+                if (old != null) {
+                    name = old;
+                }
+            }
+        }
+        return name;
+    }
+
+}
@@ -0,0 +1,115 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.chemistry.atompub.client.stax;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.apache.chemistry.Inclusion;
+import org.apache.chemistry.Property;
+
+/**
+ * The projection applied when reading objects: which properties are kept,
+ * and whether allowable actions are kept.
+ * <p>
+ * Elements not kept are skipped in the stream without being parsed. The
+ * properties needed to identify an object (id, type and base type) are
+ * always kept.
+ */
+public class PropertyFilter {
+
+    /** Filter keeping everything. */
+    public static final PropertyFilter ALL = new PropertyFilter(null, true);
+
+    protected static final String[] REQUIRED = { Property.ID,
+            Property.TYPE_ID, Property.BASE_TYPE_ID };
+
+    /** The kept property ids, or {@code null} for all. */
+    protected final Set<String> properties;
+
+    protected final boolean allowableActions;
+
+    /**
+     * Constructs a filter.
+     *
+     * @param properties the property ids to keep, or {@code null} for all
+     * @param allowableActions {@code true} if allowable actions are kept
+     */
+    public PropertyFilter(Set<String> properties, boolean allowableActions) {
+        if (properties != null) {
+            properties = new HashSet<String>(properties);
+            for (String id : REQUIRED) {
+                properties.add(id);
+            }
+        }
+        this.properties = properties;
+        this.allowableActions = allowableActions;
+    }
+
+    /**
+     * Gets the filter corresponding to an {@link Inclusion}.
+     *
+     * @param inclusion the inclusion, or {@code null}
+     * @return the filter
+     */
+    public static PropertyFilter fromInclusion(Inclusion inclusion) {
+        if (inclusion == null) {
+            return ALL;
+        }
+        Set<String> properties = parse(inclusion.properties);
+        if (properties == null && inclusion.allowableActions) {
+            return ALL;
+        }
+        return new PropertyFilter(properties, inclusion.allowableActions);
+    }
+
+    /**
+     * Parses a comma-separated property filter.
+     *
+     * @return the property ids, or {@code null} for all
+     */
+    protected static Set<String> parse(String filter) {
+        if (filter == null) {
+            return null;
+        }
+        filter = filter.trim();
+        if (filter.length() == 0 || Inclusion.ALL_PROPERTIES.equals(filter)) {
+            return null;
+        }
+        Set<String> set = new HashSet<String>();
+        for (String id : filter.split(",")) {
+            id = id.trim();
+            if (id.length() != 0) {
+                set.add(id);
+            }
+        }
+        return set;
+    }
+
+    public boolean acceptProperty(String id) {
+        return properties == null || properties.contains(id);
+    }
+
+    public boolean acceptAllowableActions() {
+        return allowableActions;
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + '('
+                + (properties == null ? "*" : properties.toString())
+                + ", allowableActions=" + allowableActions + ')';
+    }
+
+}
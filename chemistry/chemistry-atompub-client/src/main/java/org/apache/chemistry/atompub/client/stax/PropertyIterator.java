@@ -37,17 +37,35 @@ import org.apache.chemistry.xml.stax.StaxReader;
  * through the {@link XmlProperty#value} member. The caller must reset this
  * member to {@link XmlProperty#NULL} after the property definition has been set
  * on the property.
+ * <p>
+ * Properties not accepted by the {@link PropertyFilter} are skipped without
+ * reading their values.
  */
 public class PropertyIterator extends ChildrenIterator<XmlProperty> {
 
+    protected final PropertyFilter filter;
+
     public PropertyIterator(StaxReader sr) throws XMLStreamException {
+        this(sr, PropertyFilter.ALL);
+    }
+
+    public PropertyIterator(StaxReader sr, PropertyFilter filter)
+            throws XMLStreamException {
         super(sr);
+        this.filter = filter;
     }
 
     @Override
     protected boolean accept() {
-        return reader.getNamespaceURI().equals(CMIS.CMIS_NS)
-                && reader.getLocalName().startsWith("property");
+        if (!reader.getNamespaceURI().equals(CMIS.CMIS_NS)
+                || !reader.getLocalName().startsWith("property")) {
+            return false;
+        }
+        if (filter == PropertyFilter.ALL) {
+            return true;
+        }
+        String id = reader.getAttributeValue(CMIS.PDID);
+        return id == null || filter.acceptProperty(id);
     }
 
     @Override
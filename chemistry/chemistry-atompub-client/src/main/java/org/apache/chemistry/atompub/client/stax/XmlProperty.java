@@ -141,7 +141,7 @@ public class XmlProperty implements Property {
                         } else {
                             Serializable[] ar = va.createArray(list.size());
                             for (int i = 0; i < ar.length; i++) {
-                                ar[i] = va.readValue((String) xmlValue);
+                                ar[i] = va.readValue(list.get(i));
                             }
                             value = ar;
                         }
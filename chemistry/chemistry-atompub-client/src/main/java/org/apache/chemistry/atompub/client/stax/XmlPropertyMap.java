@@ -0,0 +1,256 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.chemistry.atompub.client.stax;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * A compact map of properties keyed by id, backed by parallel arrays.
+ * <p>
+ * Most objects have a small number of properties, for which a linear scan is
+ * as fast as hashing and avoids allocating a table and an entry per
+ * property. Keys are usually the ids of shared property definitions, so
+ * lookups mostly succeed on identity before falling back to {@code equals}.
+ * Above {@link #MAX_LINEAR_SIZE} properties, as with wide custom types, the
+ * positions of the keys are also indexed in a hash map. Iteration is in
+ * insertion order.
+ */
+public class XmlPropertyMap extends AbstractMap<String, XmlProperty> {
+
+    /** The maximum size up to which keys are found by a linear scan. */
+    public static final int MAX_LINEAR_SIZE = 16;
+
+    protected String[] keys;
+
+    protected XmlProperty[] values;
+
+    protected int size;
+
+    /** Positions of the keys when above {@link #MAX_LINEAR_SIZE}, or null. */
+    protected Map<String, Integer> index;
+
+    public XmlPropertyMap() {
+        this(16);
+    }
+
+    public XmlPropertyMap(int capacity) {
+        keys = new String[capacity];
+        values = new XmlProperty[capacity];
+    }
+
+    protected int indexOf(Object key) {
+        if (index != null) {
+            Integer i = index.get(key);
+            return i == null ? -1 : i.intValue();
+        }
+        for (int i = 0; i < size; i++) {
+            if (keys[i] == key) {
+                return i;
+            }
+        }
+        if (key != null) {
+            for (int i = 0; i < size; i++) {
+                if (key.equals(keys[i])) {
+                    return i;
+                }
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return indexOf(key) >= 0;
+    }
+
+    @Override
+    public XmlProperty get(Object key) {
+        int i = indexOf(key);
+        return i < 0 ? null : values[i];
+    }
+
+    @Override
+    public XmlProperty put(String key, XmlProperty value) {
+        int i = indexOf(key);
+        if (i >= 0) {
+            XmlProperty old = values[i];
+            values[i] = value;
+            return old;
+        }
+        if (size == keys.length) {
+            int capacity = size < 4 ? 8 : size * 2;
+            String[] k = new String[capacity];
+            XmlProperty[] v = new XmlProperty[capacity];
+            System.arraycopy(keys, 0, k, 0, size);
+            System.arraycopy(values, 0, v, 0, size);
+            keys = k;
+            values = v;
+        }
+        keys[size] = key;
+        values[size] = value;
+        if (index != null) {
+            index.put(key, Integer.valueOf(size));
+        }
+        size++;
+        if (index == null && size > MAX_LINEAR_SIZE) {
+            reindex();
+        }
+        return null;
+    }
+
+    protected void reindex() {
+        if (size > MAX_LINEAR_SIZE) {
+            index = new HashMap<String, Integer>(size * 2);
+            for (int i = 0; i < size; i++) {
+                index.put(keys[i], Integer.valueOf(i));
+            }
+        } else {
+            index = null;
+        }
+    }
+
+    @Override
+    public XmlProperty remove(Object key) {
+        int i = indexOf(key);
+        if (i < 0) {
+            return null;
+        }
+        XmlProperty old = values[i];
+        removeAt(i);
+        return old;
+    }
+
+    protected void removeAt(int i) {
+        int n = size - i - 1;
+        if (n > 0) {
+            System.arraycopy(keys, i + 1, keys, i, n);
+            System.arraycopy(values, i + 1, values, i, n);
+        }
+        size--;
+        keys[size] = null;
+        values[size] = null;
+        if (index != null) {
+            // following keys moved down
+            reindex();
+        }
+    }
+
+    @Override
+    public void clear() {
+        for (int i = 0; i < size; i++) {
+            keys[i] = null;
+            values[i] = null;
+        }
+        size = 0;
+        index = null;
+    }
+
+    @Override
+    public Set<Entry<String, XmlProperty>> entrySet() {
+        return new AbstractSet<Entry<String, XmlProperty>>() {
+            @Override
+            public int size() {
+                return size;
+            }
+
+            @Override
+            public Iterator<Entry<String, XmlProperty>> iterator() {
+                return new EntryIterator();
+            }
+        };
+    }
+
+    protected class EntryIterator implements
+            Iterator<Entry<String, XmlProperty>> {
+
+        protected int next;
+
+        protected int last = -1;
+
+        public boolean hasNext() {
+            return next < size;
+        }
+
+        public Entry<String, XmlProperty> next() {
+            if (next >= size) {
+                throw new NoSuchElementException();
+            }
+            last = next++;
+            return new ArrayEntry(last);
+        }
+
+        public void remove() {
+            if (last < 0) {
+                throw new IllegalStateException();
+            }
+            removeAt(last);
+            next = last;
+            last = -1;
+        }
+    }
+
+    protected class ArrayEntry implements Entry<String, XmlProperty> {
+
+        protected final int index;
+
+        protected ArrayEntry(int index) {
+            this.index = index;
+        }
+
+        public String getKey() {
+            return keys[index];
+        }
+
+        public XmlProperty getValue() {
+            return values[index];
+        }
+
+        public XmlProperty setValue(XmlProperty value) {
+            XmlProperty old = values[index];
+            values[index] = value;
+            return old;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Entry<?, ?>)) {
+                return false;
+            }
+            Entry<?, ?> e = (Entry<?, ?>) o;
+            Object k = getKey();
+            Object v = getValue();
+            return (k == null ? e.getKey() == null : k.equals(e.getKey()))
+                    && (v == null ? e.getValue() == null : v.equals(e.getValue()));
+        }
+
+        @Override
+        public int hashCode() {
+            Object k = getKey();
+            Object v = getValue();
+            return (k == null ? 0 : k.hashCode()) ^ (v == null ? 0 : v.hashCode());
+        }
+    }
+
+}
@@ -0,0 +1,94 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.chemistry.atompub.client.transport;
+
+import java.io.InterruptedIOException;
+
+/**
+ * Lets another thread abort the HTTP requests made by a thread.
+ * <p>
+ * Once a handle is set as the {@link #setCurrent current} one of a thread,
+ * the transports register with it each request they execute on that thread,
+ * until its response is released. {@link #abort} then closes the connection
+ * of the request in progress, making the thread fail with an I/O error, and
+ * makes any later request of the thread fail immediately.
+ */
+public class AbortHandle {
+
+    private static final ThreadLocal<AbortHandle> current = new ThreadLocal<AbortHandle>();
+
+    protected Runnable action;
+
+    protected boolean aborted;
+
+    /**
+     * Gets the handle of the current thread, or {@code null}.
+     */
+    public static AbortHandle getCurrent() {
+        return current.get();
+    }
+
+    /**
+     * Sets the handle of the current thread, or removes it if {@code null}.
+     */
+    public static void setCurrent(AbortHandle handle) {
+        if (handle == null) {
+            current.remove();
+        } else {
+            current.set(handle);
+        }
+    }
+
+    /**
+     * Registers the action aborting the request being executed.
+     *
+     * @throws InterruptedIOException if this handle was already aborted
+     */
+    public synchronized void begin(Runnable action)
+            throws InterruptedIOException {
+        if (aborted) {
+            throw new InterruptedIOException("Request aborted");
+        }
+        this.action = action;
+    }
+
+    /**
+     * Unregisters the action of a request whose response was released.
+     */
+    public synchronized void end(Runnable action) {
+        if (this.action == action) {
+            this.action = null;
+        }
+    }
+
+    /**
+     * Aborts the request in progress, if any, and all later ones.
+     */
+    public void abort() {
+        Runnable a;
+        synchronized (this) {
+            aborted = true;
+            a = action;
+            action = null;
+        }
+        if (a != null) {
+            a.run();
+        }
+    }
+
+    public synchronized boolean isAborted() {
+        return aborted;
+    }
+
+}
@@ -0,0 +1,185 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.chemistry.atompub.client.transport;
+
+import java.io.Serializable;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.util.Map;
+
+import org.apache.chemistry.Repository;
+import org.apache.chemistry.atompub.client.NameValuePairs;
+import org.apache.commons.httpclient.NameValuePair;
+
+/**
+ * Base class for {@link HttpTransport} implementations, configured through
+ * the connection parameters.
+ */
+public abstract class AbstractHttpTransport implements HttpTransport {
+
+    /**
+     * The connection parameter key for the transport implementation:
+     * {@value #TRANSPORT_COMMONS} (the default) or
+     * {@value #TRANSPORT_URLCONNECTION}.
+     */
+    public static final String PARAM_TRANSPORT = "http.transport";
+
+    /** The connection parameter key for the max connections per host. */
+    public static final String PARAM_MAX_CONNECTIONS_PER_HOST = "http.maxConnectionsPerHost";
+
+    /** The connection parameter key for the max total connections. */
+    public static final String PARAM_MAX_TOTAL_CONNECTIONS = "http.maxTotalConnections";
+
+    /** The connection parameter key for the connect timeout, in ms. */
+    public static final String PARAM_CONNECT_TIMEOUT = "http.connectTimeout";
+
+    /** The connection parameter key for the socket read timeout, in ms. */
+    public static final String PARAM_READ_TIMEOUT = "http.readTimeout";
+
+    /**
+     * The connection parameter key for the max time to wait for a pooled
+     * connection, in ms.
+     */
+    public static final String PARAM_POOL_TIMEOUT = "http.poolTimeout";
+
+    public static final String TRANSPORT_COMMONS = "commons";
+
+    public static final String TRANSPORT_URLCONNECTION = "urlconnection";
+
+    public static final int DEFAULT_MAX_CONNECTIONS_PER_HOST = 20;
+
+    public static final int DEFAULT_MAX_TOTAL_CONNECTIONS = 100;
+
+    protected final TransportMetrics metrics;
+
+    protected final String username;
+
+    protected final String password;
+
+    protected final int maxConnectionsPerHost;
+
+    protected final int maxTotalConnections;
+
+    protected final int connectTimeout;
+
+    protected final int readTimeout;
+
+    protected final int poolTimeout;
+
+    protected AbstractHttpTransport(Map<String, Serializable> params) {
+        metrics = newMetrics();
+        username = params == null ? null
+                : (String) params.get(Repository.PARAM_USERNAME);
+        password = params == null ? null
+                : (String) params.get(Repository.PARAM_PASSWORD);
+        maxConnectionsPerHost = getIntParam(params,
+                PARAM_MAX_CONNECTIONS_PER_HOST,
+                DEFAULT_MAX_CONNECTIONS_PER_HOST);
+        maxTotalConnections = Math.max(maxConnectionsPerHost, getIntParam(
+                params, PARAM_MAX_TOTAL_CONNECTIONS,
+                DEFAULT_MAX_TOTAL_CONNECTIONS));
+        connectTimeout = getIntParam(params, PARAM_CONNECT_TIMEOUT, 0);
+        readTimeout = getIntParam(params, PARAM_READ_TIMEOUT, 0);
+        poolTimeout = getIntParam(params, PARAM_POOL_TIMEOUT, 0);
+    }
+
+    /**
+     * Creates a transport of the kind specified by the
+     * {@link #PARAM_TRANSPORT} connection parameter.
+     *
+     * @param params the connection parameters
+     * @return the new transport
+     */
+    public static HttpTransport newTransport(Map<String, Serializable> params) {
+        String kind = params == null ? null
+                : (String) params.get(PARAM_TRANSPORT);
+        if (kind == null || TRANSPORT_COMMONS.equals(kind)) {
+            return new CommonsHttpTransport(params);
+        } else if (TRANSPORT_URLCONNECTION.equals(kind)) {
+            return new URLConnectionHttpTransport(params);
+        } else {
+            throw new IllegalArgumentException("Unknown HTTP transport: "
+                    + kind);
+        }
+    }
+
+    /**
+     * Gets an integer connection parameter, which may be specified as a
+     * number or a string.
+     */
+    public static int getIntParam(Map<String, Serializable> params,
+            String key, int def) {
+        Serializable value = params == null ? null : params.get(key);
+        if (value == null) {
+            return def;
+        }
+        if (value instanceof Number) {
+            return ((Number) value).intValue();
+        }
+        return Integer.parseInt(value.toString().trim());
+    }
+
+    protected TransportMetrics newMetrics() {
+        return new TransportMetrics();
+    }
+
+    public TransportMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Unregisters the abort action of a request from the handle of the thread
+     * that executed it.
+     */
+    protected static void endAbort(AbortHandle abortHandle,
+            Runnable abortAction) {
+        if (abortHandle != null) {
+            abortHandle.end(abortAction);
+        }
+    }
+
+    /**
+     * Encodes query parameters as a form-encoded query string.
+     */
+    public static String encodeQuery(NameValuePairs params) {
+        StringBuilder buf = new StringBuilder();
+        try {
+            for (NameValuePair p : params) {
+                if (buf.length() != 0) {
+                    buf.append('&');
+                }
+                buf.append(URLEncoder.encode(p.getName(), "UTF-8"));
+                buf.append('=');
+                if (p.getValue() != null) {
+                    buf.append(URLEncoder.encode(p.getValue(), "UTF-8"));
+                }
+            }
+        } catch (UnsupportedEncodingException e) {
+            throw new AssertionError(e); // UTF-8 always supported
+        }
+        return buf.toString();
+    }
+
+    /**
+     * Appends query parameters to a URI that may already have a query.
+     */
+    public static String appendQuery(String uri, NameValuePairs params) {
+        if (params == null || params.isEmpty()) {
+            return uri;
+        }
+        return uri + (uri.indexOf('?') == -1 ? '?' : '&')
+                + encodeQuery(params);
+    }
+
+}
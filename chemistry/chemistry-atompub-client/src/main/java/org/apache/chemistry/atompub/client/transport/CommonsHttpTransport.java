@@ -0,0 +1,261 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.chemistry.atompub.client.transport;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.chemistry.atompub.client.APPRepositoryService.FixedCredentialsProvider;
+import org.apache.commons.httpclient.ConnectionPoolTimeoutException;
+import org.apache.commons.httpclient.Credentials;
+import org.apache.commons.httpclient.Header;
+import org.apache.commons.httpclient.HostConfiguration;
+import org.apache.commons.httpclient.HttpClient;
+import org.apache.commons.httpclient.HttpConnection;
+import org.apache.commons.httpclient.HttpMethod;
+import org.apache.commons.httpclient.MultiThreadedHttpConnectionManager;
+import org.apache.commons.httpclient.UsernamePasswordCredentials;
+import org.apache.commons.httpclient.auth.AuthScope;
+import org.apache.commons.httpclient.auth.CredentialsProvider;
+import org.apache.commons.httpclient.methods.DeleteMethod;
+import org.apache.commons.httpclient.methods.EntityEnclosingMethod;
+import org.apache.commons.httpclient.methods.GetMethod;
+import org.apache.commons.httpclient.methods.PostMethod;
+import org.apache.commons.httpclient.methods.PutMethod;
+import org.apache.commons.httpclient.methods.RequestEntity;
+import org.apache.commons.httpclient.params.HttpConnectionManagerParams;
+
+/**
+ * HTTP transport using Commons HttpClient and its multi-threaded connection
+ * pool.
+ */
+public class CommonsHttpTransport extends AbstractHttpTransport {
+
+    protected final MeteredConnectionManager connectionManager;
+
+    protected final HttpClient client;
+
+    public CommonsHttpTransport(Map<String, Serializable> params) {
+        super(params);
+        connectionManager = new MeteredConnectionManager();
+        HttpConnectionManagerParams cmp = connectionManager.getParams();
+        cmp.setDefaultMaxConnectionsPerHost(maxConnectionsPerHost);
+        cmp.setMaxTotalConnections(maxTotalConnections);
+        cmp.setConnectionTimeout(connectTimeout);
+        cmp.setSoTimeout(readTimeout);
+        client = new HttpClient(connectionManager);
+        client.getParams().setConnectionManagerTimeout(poolTimeout);
+        if (username != null) {
+            Credentials credentials = new UsernamePasswordCredentials(
+                    username, password);
+            CredentialsProvider cp = new FixedCredentialsProvider(credentials);
+            client.getState().setCredentials(AuthScope.ANY, credentials);
+            client.getParams().setParameter(CredentialsProvider.PROVIDER, cp);
+            client.getParams().setAuthenticationPreemptive(true);
+        }
+    }
+
+    /**
+     * Wraps an existing client, whose connections won't be metered.
+     */
+    public CommonsHttpTransport(HttpClient client) {
+        super(null);
+        connectionManager = null;
+        this.client = client;
+    }
+
+    public HttpClient getClient() {
+        return client;
+    }
+
+    @Override
+    protected TransportMetrics newMetrics() {
+        return new TransportMetrics() {
+            @Override
+            public int getIdle() {
+                if (connectionManager == null) {
+                    return -1;
+                }
+                return Math.max(0, connectionManager.getConnectionsInPool()
+                        - connectionManager.checkedOut.get());
+            }
+        };
+    }
+
+    public HttpResponse execute(HttpRequest request) throws IOException {
+        final HttpMethod method = newMethod(request);
+        AbortHandle abortHandle = AbortHandle.getCurrent();
+        Runnable abortAction = null;
+        if (abortHandle != null) {
+            abortAction = new Runnable() {
+                public void run() {
+                    method.abort();
+                }
+            };
+            abortHandle.begin(abortAction);
+        }
+        metrics.requestStarted();
+        try {
+            client.executeMethod(method);
+        } catch (IOException e) {
+            method.releaseConnection();
+            metrics.requestEnded();
+            endAbort(abortHandle, abortAction);
+            throw e;
+        } catch (RuntimeException e) {
+            method.releaseConnection();
+            metrics.requestEnded();
+            endAbort(abortHandle, abortAction);
+            throw e;
+        }
+        CommonsHttpResponse response = new CommonsHttpResponse(method);
+        response.abortHandle = abortHandle;
+        response.abortAction = abortAction;
+        return response;
+    }
+
+    protected HttpMethod newMethod(HttpRequest request) {
+        String uri = appendQuery(request.uri, request.params);
+        HttpMethod method;
+        if (HttpRequest.GET.equals(request.method)) {
+            method = new GetMethod(uri);
+        } else if (HttpRequest.DELETE.equals(request.method)) {
+            method = new DeleteMethod(uri);
+        } else if (HttpRequest.PUT.equals(request.method)) {
+            method = new PutMethod(uri);
+        } else if (HttpRequest.POST.equals(request.method)) {
+            method = new PostMethod(uri);
+        } else {
+            throw new IllegalArgumentException("Unsupported method: "
+                    + request.method);
+        }
+        for (Map.Entry<String, String> es : request.headers.entrySet()) {
+            method.addRequestHeader(es.getKey(), es.getValue());
+        }
+        if (request.body != null) {
+            EntityEnclosingMethod eem = (EntityEnclosingMethod) method;
+            eem.setRequestEntity(new BodyRequestEntity(request.body));
+            eem.setContentChunked(request.body.getContentLength() < 0);
+        }
+        return method;
+    }
+
+    public void shutdown() {
+        if (connectionManager != null) {
+            connectionManager.shutdown();
+        }
+    }
+
+    /**
+     * Connection manager recording the time spent waiting for a connection.
+     */
+    protected class MeteredConnectionManager extends
+            MultiThreadedHttpConnectionManager {
+
+        protected final AtomicInteger checkedOut = new AtomicInteger();
+
+        @Override
+        public HttpConnection getConnectionWithTimeout(
+                HostConfiguration hostConfiguration, long timeout)
+                throws ConnectionPoolTimeoutException {
+            long start = System.nanoTime();
+            try {
+                HttpConnection connection = super.getConnectionWithTimeout(
+                        hostConfiguration, timeout);
+                checkedOut.incrementAndGet();
+                return connection;
+            } finally {
+                metrics.waited(System.nanoTime() - start);
+            }
+        }
+
+        @Override
+        public void releaseConnection(HttpConnection connection) {
+            super.releaseConnection(connection);
+            checkedOut.decrementAndGet();
+        }
+    }
+
+    protected static class BodyRequestEntity implements RequestEntity {
+
+        protected final RequestBody body;
+
+        public BodyRequestEntity(RequestBody body) {
+            this.body = body;
+        }
+
+        public long getContentLength() {
+            return body.getContentLength();
+        }
+
+        public String getContentType() {
+            return body.getContentType();
+        }
+
+        public boolean isRepeatable() {
+            return body.isRepeatable();
+        }
+
+        public void writeRequest(OutputStream out) throws IOException {
+            body.writeTo(out);
+        }
+    }
+
+    protected class CommonsHttpResponse implements HttpResponse {
+
+        protected final HttpMethod method;
+
+        protected AbortHandle abortHandle;
+
+        protected Runnable abortAction;
+
+        protected boolean released;
+
+        public CommonsHttpResponse(HttpMethod method) {
+            this.method = method;
+        }
+
+        public int getStatus() {
+            return method.getStatusCode();
+        }
+
+        public String getStatusText() {
+            return method.getStatusText();
+        }
+
+        public String getHeader(String name) {
+            Header header = method.getResponseHeader(name);
+            return header == null ? null : header.getValue();
+        }
+
+        public InputStream getStream() throws IOException {
+            return method.getResponseBodyAsStream();
+        }
+
+        public void release() {
+            if (released) {
+                return;
+            }
+            released = true;
+            method.releaseConnection();
+            metrics.requestEnded();
+            endAbort(abortHandle, abortAction);
+        }
+    }
+
+}
@@ -0,0 +1,68 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.chemistry.atompub.client.transport;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.chemistry.atompub.client.NameValuePairs;
+
+/**
+ * A request to execute through an {@link HttpTransport}.
+ */
+public class HttpRequest {
+
+    public static final String GET = "GET";
+
+    public static final String PUT = "PUT";
+
+    public static final String POST = "POST";
+
+    public static final String DELETE = "DELETE";
+
+    public final String method;
+
+    public final String uri;
+
+    public NameValuePairs params;
+
+    public final Map<String, String> headers = new LinkedHashMap<String, String>();
+
+    public RequestBody body;
+
+    public HttpRequest(String method, String uri) {
+        this.method = method;
+        this.uri = uri;
+    }
+
+    public HttpRequest(String method, String uri, NameValuePairs params) {
+        this(method, uri);
+        this.params = params;
+    }
+
+    public HttpRequest setHeader(String name, String value) {
+        headers.put(name, value);
+        return this;
+    }
+
+    /**
+     * Checks if the request may be sent again without changing its effect,
+     * which excludes {@code POST}.
+     */
+    public boolean isIdempotent() {
+        return GET.equals(method) || PUT.equals(method)
+                || DELETE.equals(method) || "HEAD".equals(method);
+    }
+
+}
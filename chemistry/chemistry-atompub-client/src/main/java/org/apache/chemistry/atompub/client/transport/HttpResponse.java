@@ -0,0 +1,48 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.chemistry.atompub.client.transport;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * The response to an {@link HttpRequest}.
+ */
+public interface HttpResponse {
+
+    int getStatus();
+
+    String getStatusText();
+
+    /**
+     * Gets the value of a response header.
+     *
+     * @param name the header name
+     * @return the header value, or {@code null} if absent
+     */
+    String getHeader(String name);
+
+    /**
+     * Gets the response body.
+     *
+     * @return the response body, or {@code null} if there is none
+     */
+    InputStream getStream() throws IOException;
+
+    /**
+     * Releases the underlying connection.
+     */
+    void release();
+
+}
@@ -0,0 +1,48 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.chemistry.atompub.client.transport;
+
+import java.io.IOException;
+
+/**
+ * The HTTP layer used by a {@link org.apache.chemistry.atompub.client.Connector
+ * Connector}.
+ * <p>
+ * Implementations are thread-safe and usually hold a pool of connections
+ * shared by all the connectors using them.
+ */
+public interface HttpTransport {
+
+    /**
+     * Executes a request.
+     * <p>
+     * The returned response must be {@link HttpResponse#release released}
+     * once its body has been consumed.
+     *
+     * @param request the request
+     * @return the response
+     */
+    HttpResponse execute(HttpRequest request) throws IOException;
+
+    /**
+     * Gets the metrics for the connections of this transport.
+     */
+    TransportMetrics getMetrics();
+
+    /**
+     * Releases all the resources held by this transport.
+     */
+    void shutdown();
+
+}
@@ -0,0 +1,40 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.chemistry.atompub.client.transport;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * The body of an {@link HttpRequest}, written when the request is sent.
+ */
+public interface RequestBody {
+
+    String getContentType();
+
+    /**
+     * Gets the content length, or {@code -1} if unknown in which case the
+     * body is sent chunked.
+     */
+    long getContentLength();
+
+    /**
+     * Checks if the body can be written again, so that the request can be
+     * retried.
+     */
+    boolean isRepeatable();
+
+    void writeTo(OutputStream out) throws IOException;
+
+}
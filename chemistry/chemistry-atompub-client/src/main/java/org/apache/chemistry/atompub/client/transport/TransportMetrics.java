@@ -0,0 +1,103 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.chemistry.atompub.client.transport;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Live metrics about the connections of an {@link HttpTransport}.
+ * <p>
+ * Wait times measure how long requests waited for a connection to be
+ * available in the pool, which is where a too small pool shows up.
+ */
+public class TransportMetrics {
+
+    protected final AtomicInteger inFlight = new AtomicInteger();
+
+    protected final AtomicLong requests = new AtomicLong();
+
+    protected final AtomicLong waits = new AtomicLong();
+
+    protected final AtomicLong waitNanos = new AtomicLong();
+
+    protected final AtomicLong maxWaitNanos = new AtomicLong();
+
+    public void requestStarted() {
+        inFlight.incrementAndGet();
+        requests.incrementAndGet();
+    }
+
+    public void requestEnded() {
+        inFlight.decrementAndGet();
+    }
+
+    public void waited(long nanos) {
+        waits.incrementAndGet();
+        waitNanos.addAndGet(nanos);
+        long max;
+        do {
+            max = maxWaitNanos.get();
+        } while (nanos > max && !maxWaitNanos.compareAndSet(max, nanos));
+    }
+
+    /**
+     * Gets the number of requests currently executing, including those
+     * waiting for a connection.
+     */
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    /**
+     * Gets the number of open connections not currently used, or {@code -1}
+     * if not known.
+     */
+    public int getIdle() {
+        return -1;
+    }
+
+    public long getRequestCount() {
+        return requests.get();
+    }
+
+    /**
+     * Gets the number of times a connection was obtained from the pool.
+     */
+    public long getWaitCount() {
+        return waits.get();
+    }
+
+    public long getTotalWaitMillis() {
+        return waitNanos.get() / 1000000;
+    }
+
+    public long getMaxWaitMillis() {
+        return maxWaitNanos.get() / 1000000;
+    }
+
+    public double getAverageWaitMillis() {
+        long n = waits.get();
+        return n == 0 ? 0 : waitNanos.get() / 1000000.0 / n;
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "(inFlight=" + getInFlight()
+                + ", idle=" + getIdle() + ", requests=" + getRequestCount()
+                + ", avgWaitMs=" + getAverageWaitMillis() + ", maxWaitMs="
+                + getMaxWaitMillis() + ')';
+    }
+
+}
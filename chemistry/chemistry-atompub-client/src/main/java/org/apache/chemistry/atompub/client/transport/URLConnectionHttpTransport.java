@@ -0,0 +1,258 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.chemistry.atompub.client.transport;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.io.UnsupportedEncodingException;
+import java.net.HttpURLConnection;
+import java.net.SocketException;
+import java.net.URL;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.codec.binary.Base64;
+
+/**
+ * HTTP transport using the JDK {@link HttpURLConnection}, which keeps
+ * connections alive in its own cache.
+ * <p>
+ * The number of concurrent requests is bounded by the max total connections,
+ * and the time spent waiting for a free slot is recorded as the pool wait
+ * time. An idempotent request failing on a socket error is retried if its
+ * body is repeatable, as cached connections may have been closed by the
+ * server, at most once per connection the JDK keeps alive to a host. A
+ * {@code POST} is never retried, as the server may have processed it before
+ * the connection failed.
+ */
+public class URLConnectionHttpTransport extends AbstractHttpTransport {
+
+    /** The JDK keeps alive at most this many connections to a host. */
+    protected static final int MAX_KEEP_ALIVE = Integer.getInteger(
+            "http.maxConnections", 5).intValue();
+
+    protected final Semaphore slots;
+
+    protected final String authorization;
+
+    public URLConnectionHttpTransport(Map<String, Serializable> params) {
+        super(params);
+        slots = new Semaphore(maxTotalConnections, true);
+        if (username == null) {
+            authorization = null;
+        } else {
+            String userpass = username + ':'
+                    + (password == null ? "" : password);
+            try {
+                authorization = "Basic "
+                        + new String(Base64.encodeBase64(userpass.getBytes("UTF-8")),
+                                "US-ASCII");
+            } catch (UnsupportedEncodingException e) {
+                throw new AssertionError(e);
+            }
+        }
+    }
+
+    public HttpResponse execute(HttpRequest request) throws IOException {
+        metrics.requestStarted();
+        try {
+            acquire();
+        } catch (IOException e) {
+            metrics.requestEnded();
+            throw e;
+        }
+        AbortHandle abortHandle = AbortHandle.getCurrent();
+        // a streamed body disables the JDK retry on a kept alive connection
+        // closed by the server, so retry until a new connection is used
+        int retries = 0;
+        if (request.isIdempotent()
+                && (request.body == null || request.body.isRepeatable())) {
+            retries = MAX_KEEP_ALIVE;
+        }
+        while (true) {
+            Runnable abortAction = null;
+            HttpURLConnection connection = null;
+            try {
+                connection = (HttpURLConnection) new URL(appendQuery(
+                        request.uri, request.params)).openConnection();
+                if (abortHandle != null) {
+                    final HttpURLConnection c = connection;
+                    abortAction = new Runnable() {
+                        public void run() {
+                            c.disconnect();
+                        }
+                    };
+                    abortHandle.begin(abortAction);
+                }
+                send(connection, request);
+                URLConnectionHttpResponse response = new URLConnectionHttpResponse(
+                        connection);
+                response.abortHandle = abortHandle;
+                response.abortAction = abortAction;
+                return response;
+            } catch (IOException e) {
+                if (connection != null) {
+                    connection.disconnect();
+                }
+                endAbort(abortHandle, abortAction);
+                if (retries > 0 && e instanceof SocketException) {
+                    retries--;
+                    continue;
+                }
+                slots.release();
+                metrics.requestEnded();
+                throw e;
+            } catch (RuntimeException e) {
+                if (connection != null) {
+                    connection.disconnect();
+                }
+                slots.release();
+                metrics.requestEnded();
+                endAbort(abortHandle, abortAction);
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Sends a request on a connection and reads the response status.
+     */
+    protected void send(HttpURLConnection connection, HttpRequest request)
+            throws IOException {
+        connection.setRequestMethod(request.method);
+        connection.setConnectTimeout(connectTimeout);
+        connection.setReadTimeout(readTimeout);
+        connection.setUseCaches(false);
+        if (authorization != null) {
+            connection.setRequestProperty("Authorization", authorization);
+        }
+        for (Map.Entry<String, String> es : request.headers.entrySet()) {
+            connection.setRequestProperty(es.getKey(), es.getValue());
+        }
+        RequestBody body = request.body;
+        if (body != null) {
+            connection.setDoOutput(true);
+            if (body.getContentType() != null
+                    && !request.headers.containsKey("Content-Type")) {
+                connection.setRequestProperty("Content-Type",
+                        body.getContentType());
+            }
+            long length = body.getContentLength();
+            if (length >= 0 && length <= Integer.MAX_VALUE) {
+                connection.setFixedLengthStreamingMode((int) length);
+            } else {
+                connection.setChunkedStreamingMode(0);
+            }
+            OutputStream out = connection.getOutputStream();
+            try {
+                body.writeTo(out);
+            } finally {
+                out.close();
+            }
+        }
+        connection.getResponseCode();
+    }
+
+    protected void acquire() throws IOException {
+        long start = System.nanoTime();
+        try {
+            if (poolTimeout <= 0) {
+                slots.acquire();
+            } else if (!slots.tryAcquire(poolTimeout, TimeUnit.MILLISECONDS)) {
+                throw new IOException("Timeout waiting for connection");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted waiting for connection");
+        } finally {
+            metrics.waited(System.nanoTime() - start);
+        }
+    }
+
+    public void shutdown() {
+        // connections are owned by the JDK keep-alive cache
+    }
+
+    protected class URLConnectionHttpResponse implements HttpResponse {
+
+        protected final HttpURLConnection connection;
+
+        protected InputStream stream;
+
+        protected AbortHandle abortHandle;
+
+        protected Runnable abortAction;
+
+        protected boolean released;
+
+        public URLConnectionHttpResponse(HttpURLConnection connection) {
+            this.connection = connection;
+        }
+
+        public int getStatus() {
+            try {
+                return connection.getResponseCode();
+            } catch (IOException e) {
+                return -1; // already read in execute
+            }
+        }
+
+        public String getStatusText() {
+            try {
+                return connection.getResponseMessage();
+            } catch (IOException e) {
+                return null;
+            }
+        }
+
+        public String getHeader(String name) {
+            return connection.getHeaderField(name);
+        }
+
+        public InputStream getStream() throws IOException {
+            if (stream == null) {
+                if (getStatus() >= HttpURLConnection.HTTP_BAD_REQUEST) {
+                    stream = connection.getErrorStream();
+                } else {
+                    stream = connection.getInputStream();
+                }
+            }
+            return stream;
+        }
+
+        public void release() {
+            if (released) {
+                return;
+            }
+            released = true;
+            try {
+                // closing the stream makes the connection reusable
+                InputStream is = getStream();
+                if (is != null) {
+                    is.close();
+                }
+            } catch (IOException e) {
+                connection.disconnect();
+            } finally {
+                slots.release();
+                metrics.requestEnded();
+                endAbort(abortHandle, abortAction);
+            }
+        }
+    }
+
+}
@@ -27,11 +27,14 @@ import junit.framework.TestCase;
 
 import org.apache.chemistry.BaseType;
 import org.apache.chemistry.ContentStreamPresence;
+import org.apache.chemistry.Inclusion;
 import org.apache.chemistry.ListPage;
 import org.apache.chemistry.ObjectEntry;
+import org.apache.chemistry.Property;
 import org.apache.chemistry.PropertyDefinition;
 import org.apache.chemistry.PropertyType;
 import org.apache.chemistry.Updatability;
+import org.apache.chemistry.atompub.client.stax.PropertyFilter;
 import org.apache.chemistry.impl.simple.SimplePropertyDefinition;
 import org.apache.chemistry.impl.simple.SimpleType;
 import org.apache.chemistry.impl.simple.SimpleTypeManager;
@@ -71,4 +74,22 @@ public class TestAPPObjectFeedReader extends TestCase {
         assertEquals("string1", list.get(0).getValue("string"));
         assertEquals("string2", list.get(1).getValue("string"));
     }
+
+    public void testReadAPPObjectFeedFiltered() throws Exception {
+        InputStream is = getClass().getResourceAsStream("/feed.xml");
+        PropertyFilter filter = PropertyFilter.fromInclusion(new Inclusion(
+                Property.NAME, null, null, false, false, false));
+        ListPage<ObjectEntry> list = new APPObjectFeedReader(filter).read(
+                getAPPContext(), is);
+        assertEquals(2, list.size());
+        APPObjectEntry entry = (APPObjectEntry) list.get(0);
+        // skipped
+        assertNull(entry.getValue("string"));
+        assertNull(entry.getAllowableActions());
+        // links are always read
+        assertEquals("http://host/self1", entry.getLink("self"));
+        assertSame(entry.getLinks()[1].type,
+                ((APPObjectEntry) list.get(1)).getLinks()[1].type);
+    }
+
 }
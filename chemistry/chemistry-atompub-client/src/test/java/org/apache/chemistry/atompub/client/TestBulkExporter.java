@@ -0,0 +1,45 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.chemistry.atompub.client;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+public class TestBulkExporter extends TestCase {
+
+    public void testSafeName() {
+        assertEquals("doc.txt", BulkExporter.getSafeName("doc.txt"));
+        assertEquals("_", BulkExporter.getSafeName("."));
+        assertEquals("_", BulkExporter.getSafeName(".."));
+        assertEquals("_", BulkExporter.getSafeName(" "));
+        assertEquals("_.._etc_passwd",
+                BulkExporter.getSafeName("/../etc/passwd"));
+        assertEquals("a_b_c", BulkExporter.getSafeName("a\\b:c"));
+        assertEquals("_con", BulkExporter.getSafeName("con"));
+        assertEquals("_nul.txt", BulkExporter.getSafeName("nul.txt"));
+        assertEquals("x", BulkExporter.getSafeName("x. "));
+    }
+
+    public void testUniqueName() {
+        Set<String> used = new HashSet<String>();
+        assertEquals("a.txt", BulkExporter.getUniqueName("a.txt", used));
+        assertEquals("A (2).txt", BulkExporter.getUniqueName("A.txt", used));
+        assertEquals("a (3).txt", BulkExporter.getUniqueName("a.txt", used));
+        assertEquals("b", BulkExporter.getUniqueName("b", used));
+        assertEquals("b (2)", BulkExporter.getUniqueName("b", used));
+    }
+
+}
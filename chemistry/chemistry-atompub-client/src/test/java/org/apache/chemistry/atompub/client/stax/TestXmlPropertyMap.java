@@ -0,0 +1,95 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.chemistry.atompub.client.stax;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map.Entry;
+
+import junit.framework.TestCase;
+
+public class TestXmlPropertyMap extends TestCase {
+
+    protected static List<String> keys(XmlPropertyMap map) {
+        List<String> keys = new ArrayList<String>();
+        for (String key : map.keySet()) {
+            keys.add(key);
+        }
+        return keys;
+    }
+
+    public void testSmall() throws Exception {
+        XmlPropertyMap map = new XmlPropertyMap(2);
+        for (int i = 0; i < 5; i++) {
+            map.put("p" + i, new XmlProperty("p" + i, "v" + i));
+        }
+        assertNull(map.index);
+        assertEquals(5, map.size());
+        // equal but not identical key
+        assertEquals("v3", map.get(new String("p3")).getXmlValue());
+        assertNull(map.get("p5"));
+        map.remove("p1");
+        assertEquals("[p0, p2, p3, p4]", keys(map).toString());
+    }
+
+    public void testWideEntry() throws Exception {
+        int n = 200;
+        XmlPropertyMap map = new XmlPropertyMap();
+        for (int i = 0; i < n; i++) {
+            assertNull(map.put("p" + i, new XmlProperty("p" + i, "v" + i)));
+        }
+        assertNotNull(map.index);
+        assertEquals(n, map.size());
+        for (int i = 0; i < n; i++) {
+            XmlProperty p = map.get(new String("p" + i));
+            assertEquals("v" + i, p.getXmlValue());
+        }
+        assertFalse(map.containsKey("p" + n));
+        // replacing keeps the position
+        map.put("p10", new XmlProperty("p10", "new"));
+        assertEquals(n, map.size());
+        assertEquals("new", map.get("p10").getXmlValue());
+        assertEquals("p10", keys(map).get(10));
+
+        // removal shifts the following positions
+        assertEquals("v0", map.remove("p0").getXmlValue());
+        assertNull(map.get("p0"));
+        assertEquals("v1", map.get("p1").getXmlValue());
+        assertEquals("v199", map.get("p199").getXmlValue());
+        assertEquals("p1", keys(map).get(0));
+        Iterator<Entry<String, XmlProperty>> it = map.entrySet().iterator();
+        while (it.hasNext()) {
+            if (!it.next().getKey().endsWith("5")) {
+                it.remove();
+            }
+        }
+        assertEquals(20, map.size());
+        assertEquals("v5", map.get("p5").getXmlValue());
+        assertEquals("v195", map.get("p195").getXmlValue());
+        assertNull(map.get("p1"));
+        assertEquals("p5", keys(map).get(0));
+        assertEquals("p195", keys(map).get(19));
+
+        // back to a linear scan
+        for (int i = 105; i < n; i += 10) {
+            assertNotNull(map.remove("p" + i));
+        }
+        assertEquals(10, map.size());
+        assertNull(map.index);
+        assertEquals("v95", map.get("p95").getXmlValue());
+        assertNull(map.get("p105"));
+    }
+
+}
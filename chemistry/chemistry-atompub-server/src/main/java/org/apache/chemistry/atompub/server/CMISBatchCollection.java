@@ -0,0 +1,261 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.chemistry.atompub.server;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.activation.MimeType;
+
+import org.apache.abdera.model.Document;
+import org.apache.abdera.model.Element;
+import org.apache.abdera.model.Entry;
+import org.apache.abdera.protocol.server.ProviderHelper;
+import org.apache.abdera.protocol.server.RequestContext;
+import org.apache.abdera.protocol.server.ResponseContext;
+import org.apache.abdera.protocol.server.Target;
+import org.apache.abdera.protocol.server.TargetType;
+import org.apache.abdera.protocol.server.context.EmptyResponseContext;
+import org.apache.abdera.protocol.server.context.MediaResponseContext;
+import org.apache.abdera.protocol.server.context.ResponseContextException;
+import org.apache.chemistry.ConstraintViolationException;
+import org.apache.chemistry.Inclusion;
+import org.apache.chemistry.ObjectEntry;
+import org.apache.chemistry.ObjectId;
+import org.apache.chemistry.ObjectNotFoundException;
+import org.apache.chemistry.Property;
+import org.apache.chemistry.RelationshipDirection;
+import org.apache.chemistry.Repository;
+import org.apache.chemistry.SPI;
+import org.apache.chemistry.atompub.AtomPub;
+import org.apache.chemistry.atompub.AtomPubCMIS;
+import org.apache.chemistry.atompub.MultipartReader;
+import org.apache.chemistry.atompub.MultipartWriter;
+import org.apache.chemistry.atompub.abdera.ObjectElement;
+
+/**
+ * Multipart batch requests, mapped to the batch methods of the {@link SPI}.
+ * <p>
+ * A batch is a POST of a {@code multipart/mixed} body whose operation is
+ * given by the {@value AtomPubCMIS#PARAM_OPERATION} parameter, see
+ * {@link AtomPubCMIS#BATCH_GET}, {@link AtomPubCMIS#BATCH_UPDATE} and
+ * {@link AtomPubCMIS#BATCH_DELETE}. The response parts are in the order of
+ * the request parts. Updates and deletions are done by a single SPI call, so
+ * a failure fails the whole request.
+ */
+public class CMISBatchCollection extends CMISObjectsCollection {
+
+    public static final TargetType TARGET_TYPE_CMIS_BATCH = TargetType.get(
+            "CMISBATCH", true);
+
+    public CMISBatchCollection(Repository repository) {
+        super(AtomPubCMIS.URITMPL_BATCH, "batch", null, repository);
+    }
+
+    @Override
+    public String getId(RequestContext request) {
+        return "urn:x-batch";
+    }
+
+    @Override
+    public ResponseContext getFeed(RequestContext request) {
+        // batches are only posted
+        return ProviderHelper.notsupported(request);
+    }
+
+    @Override
+    // unused, see getFeed
+    public Iterable<ObjectEntry> getEntries(RequestContext request) {
+        return Collections.emptyList();
+    }
+
+    // called by AbstractProvider.process if unknown TargetType
+    @Override
+    public ResponseContext extensionRequest(RequestContext request) {
+        if (request.getTarget().getType() != TARGET_TYPE_CMIS_BATCH) {
+            return ProviderHelper.notsupported(request);
+        }
+        if (!request.getMethod().equalsIgnoreCase("POST")) {
+            return ProviderHelper.notallowed(request, new String[] { "POST" });
+        }
+        return postBatch(request);
+    }
+
+    protected ResponseContext postBatch(RequestContext request) {
+        SPI spi = getSPI(request);
+        try {
+            MimeType contentType = request.getContentType();
+            String boundary = contentType == null ? null
+                    : contentType.getParameter("boundary");
+            if (boundary == null) {
+                throw new ResponseContextException("Missing multipart body",
+                        400);
+            }
+            MultipartReader reader = new MultipartReader(
+                    request.getInputStream(), boundary);
+            String operation = request.getTarget().getParameter(
+                    AtomPubCMIS.PARAM_OPERATION);
+            if (AtomPubCMIS.BATCH_GET.equals(operation)) {
+                List<ObjectId> ids = readIds(reader, spi);
+                return buildBatchResponse(request, spi, spi.getObjects(ids,
+                        getInclusion(request)));
+            } else if (AtomPubCMIS.BATCH_UPDATE.equals(operation)) {
+                Map<ObjectId, Map<String, Serializable>> properties = readUpdates(
+                        request, reader, spi);
+                List<ObjectId> ids = spi.updateProperties(properties);
+                return buildBatchResponse(request, spi, spi.getObjects(ids,
+                        null));
+            } else if (AtomPubCMIS.BATCH_DELETE.equals(operation)) {
+                boolean allVersions = getParameter(request,
+                        AtomPubCMIS.PARAM_ALL_VERSIONS, false);
+                spi.deleteObjects(readIds(reader, spi), allVersions);
+                return new EmptyResponseContext(204);
+            } else {
+                throw new ResponseContextException("Invalid operation: "
+                        + operation, 400);
+            }
+        } catch (ResponseContextException e) {
+            return createErrorResponse(e);
+        } catch (ObjectNotFoundException e) {
+            return createErrorResponse(new ResponseContextException(404, e));
+        } catch (IllegalArgumentException e) {
+            return createErrorResponse(new ResponseContextException(400, e));
+        } catch (ConstraintViolationException e) {
+            return createErrorResponse(new ResponseContextException(409, e));
+        } catch (Exception e) {
+            return createErrorResponse(new ResponseContextException(500, e));
+        } finally {
+            spi.close();
+        }
+    }
+
+    protected Inclusion getInclusion(RequestContext request) {
+        Target target = request.getTarget();
+        String rel = target.getParameter(AtomPubCMIS.PARAM_INCLUDE_RELATIONSHIPS);
+        return new Inclusion(target.getParameter(AtomPubCMIS.PARAM_FILTER),
+                target.getParameter(AtomPubCMIS.PARAM_RENDITION_FILTER),
+                RelationshipDirection.fromInclusion(rel), getParameter(
+                        request, AtomPubCMIS.PARAM_INCLUDE_ALLOWABLE_ACTIONS,
+                        false), getParameter(request,
+                        AtomPubCMIS.PARAM_INCLUDE_POLICY_IDS, false),
+                getParameter(request, AtomPubCMIS.PARAM_INCLUDE_ACL, false));
+    }
+
+    protected static String readString(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buf = new byte[1024];
+        int n;
+        while ((n = in.read(buf)) != -1) {
+            out.write(buf, 0, n);
+        }
+        return out.toString("UTF-8");
+    }
+
+    protected List<ObjectId> readIds(MultipartReader reader, SPI spi)
+            throws IOException {
+        List<ObjectId> ids = new ArrayList<ObjectId>();
+        while (reader.next()) {
+            String id = readString(reader.getStream()).trim();
+            ids.add(spi.newObjectId(id));
+        }
+        return ids;
+    }
+
+    /**
+     * Reads the updated entries, checking that each object is updated once,
+     * exists and has the type given in its entry.
+     */
+    protected Map<ObjectId, Map<String, Serializable>> readUpdates(
+            RequestContext request, MultipartReader reader, SPI spi)
+            throws IOException, ResponseContextException {
+        Map<ObjectId, Map<String, Serializable>> properties = new LinkedHashMap<ObjectId, Map<String, Serializable>>();
+        // object id -> type id given in the entry
+        Map<String, String> typeIds = new HashMap<String, String>();
+        while (reader.next()) {
+            Document<Entry> doc = request.getAbdera().getParser().parse(
+                    reader.getStream());
+            Entry entry = doc.getRoot();
+            Element obb = entry.getFirstChild(AtomPubCMIS.OBJECT);
+            if (obb == null) {
+                throw new ResponseContextException("Missing cmisra:object",
+                        400);
+            }
+            Map<String, Serializable> values = new ObjectElement(obb,
+                    repository).getProperties(null);
+            String id = (String) values.get(Property.ID);
+            if (id == null) {
+                throw new ResponseContextException("Missing id", 400);
+            }
+            String typeId = (String) values.get(Property.TYPE_ID);
+            if (typeIds.containsKey(id)) {
+                throw new ResponseContextException("Duplicate id: " + id, 400);
+            }
+            typeIds.put(id, typeId);
+            properties.put(spi.newObjectId(id), extractCMISProperties(entry,
+                    typeId).properties);
+        }
+        List<ObjectEntry> current = spi.getObjects(properties.keySet(), null);
+        int i = 0;
+        for (ObjectId object : properties.keySet()) {
+            ObjectEntry entry = current.get(i++);
+            if (entry == null) {
+                throw new ObjectNotFoundException(object.getId());
+            }
+            String typeId = typeIds.get(object.getId());
+            if (!entry.getTypeId().equals(typeId)) {
+                throw new ResponseContextException("Invalid type: " + typeId,
+                        400);
+            }
+        }
+        return properties;
+    }
+
+    protected ResponseContext buildBatchResponse(RequestContext request,
+            SPI spi, List<ObjectEntry> objects) throws IOException,
+            ResponseContextException {
+        // the SPI is closed when the response is written, so buffer it
+        ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        MultipartWriter writer = new MultipartWriter(buf);
+        for (ObjectEntry object : objects) {
+            if (object == null) {
+                writer.startPart(null);
+                continue;
+            }
+            OutputStream out = writer.startPart(AtomPub.MEDIA_TYPE_ATOM_ENTRY);
+            Entry entry = request.getAbdera().getFactory().newEntry();
+            addEntryDetails(request, entry, null, object);
+            if (isMediaEntry(object, spi)) {
+                addMediaContent(null, entry, object, request);
+            } else {
+                addContent(entry, object, request);
+            }
+            entry.writeTo(out);
+        }
+        writer.close();
+        MediaResponseContext response = new MediaResponseContext(
+                buf.toByteArray(), 200);
+        response.setContentType(writer.getContentType());
+        return response;
+    }
+
+}
@@ -329,8 +329,17 @@ public abstract class CMISObjectsCollection extends CMISCollection<ObjectEntry>
      */
     protected PropertiesAndStream extractCMISProperties(RequestContext request,
             String typeId) throws ResponseContextException {
+        return extractCMISProperties(getEntryFromRequest(request), typeId);
+    }
+
+    /**
+     * Finds properties and stream from a parsed entry.
+     *
+     * @param typeId is null for a POST, existing type for a PUT
+     */
+    protected PropertiesAndStream extractCMISProperties(Entry entry,
+            String typeId) throws ResponseContextException {
         boolean isNew = typeId == null;
-        Entry entry = getEntryFromRequest(request);
         if (entry == null) {
             throw new ResponseContextException("Missing entry", 400);
         }
@@ -651,8 +660,8 @@ public abstract class CMISObjectsCollection extends CMISCollection<ObjectEntry>
                 spi.deleteTree(object, unfileObjects, continueOnFailure);
             } else {
                 // TODO XXX allVersions not in spec
-                boolean allVersions = getParameter(request, "allVersions",
-                        false);
+                boolean allVersions = getParameter(request,
+                        AtomPubCMIS.PARAM_ALL_VERSIONS, false);
                 spi.deleteObject(object, allVersions);
             }
         } catch (ObjectNotFoundException e) {
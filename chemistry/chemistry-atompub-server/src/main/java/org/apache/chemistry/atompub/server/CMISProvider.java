@@ -90,6 +90,8 @@ public class CMISProvider extends AbstractProvider {
         targetResolver.setPattern("/unfiled", TargetType.TYPE_COLLECTION);
         targetResolver.setPattern("/query(\\?.*)?",
                 CMISQueryFeed.TARGET_TYPE_CMIS_QUERY);
+        targetResolver.setPattern("/batch(\\?.*)?",
+                CMISBatchCollection.TARGET_TYPE_CMIS_BATCH);
         targetResolver.setPattern("/typechildren(\\?.*)?", //
                 TargetType.TYPE_COLLECTION);
         // per-object collections
@@ -182,6 +184,17 @@ public class CMISProvider extends AbstractProvider {
         list.add(new URITemplate(AtomPubCMIS.URITMPL_TYPE_BY_ID, //
                 AtomPub.MEDIA_TYPE_ATOM_FEED, //
                 base + "/type/{id}"));
+        list.add(new URITemplate(AtomPubCMIS.URITMPL_BATCH, //
+                AtomPubCMIS.MEDIA_TYPE_MULTIPART_MIXED,
+                addURITemplateParameters(base + "/batch", //
+                        AtomPubCMIS.PARAM_OPERATION,
+                        AtomPubCMIS.PARAM_ALL_VERSIONS,
+                        AtomPubCMIS.PARAM_FILTER,
+                        AtomPubCMIS.PARAM_RENDITION_FILTER,
+                        AtomPubCMIS.PARAM_INCLUDE_RELATIONSHIPS,
+                        AtomPubCMIS.PARAM_INCLUDE_ALLOWABLE_ACTIONS,
+                        AtomPubCMIS.PARAM_INCLUDE_POLICY_IDS,
+                        AtomPubCMIS.PARAM_INCLUDE_ACL)));
         return list;
     }
 
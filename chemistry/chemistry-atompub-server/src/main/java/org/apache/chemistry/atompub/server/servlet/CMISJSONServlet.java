@@ -0,0 +1,397 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.chemistry.atompub.server.servlet;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Serializable;
+import java.io.Writer;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.xml.namespace.QName;
+
+import org.apache.chemistry.BaseType;
+import org.apache.chemistry.ConstraintViolationException;
+import org.apache.chemistry.Inclusion;
+import org.apache.chemistry.ListPage;
+import org.apache.chemistry.ObjectEntry;
+import org.apache.chemistry.ObjectNotFoundException;
+import org.apache.chemistry.Paging;
+import org.apache.chemistry.Property;
+import org.apache.chemistry.PropertyDefinition;
+import org.apache.chemistry.RelationshipDirection;
+import org.apache.chemistry.Repository;
+import org.apache.chemistry.SPI;
+import org.apache.chemistry.Tree;
+import org.apache.chemistry.Type;
+import org.apache.chemistry.atompub.AtomPubCMIS;
+import org.apache.chemistry.atompub.JSONCMIS;
+import org.apache.chemistry.json.JSONWriter;
+
+/**
+ * Servlet for the JSON binding.
+ * <p>
+ * It serves the read-only resources of the AtomPub binding (objects,
+ * children, descendants, folder trees, parents, queries and types) under the
+ * same paths and with the same parameters as {@link CMISServlet}, as compact
+ * JSON documents streamed while they are generated. Updates still go through
+ * the AtomPub binding.
+ */
+public class CMISJSONServlet extends HttpServlet {
+
+    private static final long serialVersionUID = 1L;
+
+    protected Repository repository;
+
+    /**
+     * Empty constructor required by servlet spec.
+     */
+    public CMISJSONServlet() {
+    }
+
+    public CMISJSONServlet(Repository repository) {
+        this.repository = repository;
+    }
+
+    /**
+     * Return the repository. Allows subclasses to create the repository if
+     * necessary.
+     *
+     * @return repository
+     */
+    protected Repository getRepository() {
+        return repository;
+    }
+
+    protected Map<String, Serializable> getConnectionParams(
+            HttpServletRequest req) {
+        return null; // TODO username, password
+    }
+
+    @Override
+    protected void doPost(HttpServletRequest req, HttpServletResponse resp)
+            throws ServletException, IOException {
+        // queries may be too long for a GET
+        doGet(req, resp);
+    }
+
+    @Override
+    protected void doGet(HttpServletRequest req, HttpServletResponse resp)
+            throws ServletException, IOException {
+        String path = req.getPathInfo();
+        if (path == null) {
+            path = "";
+        } else if (path.startsWith("/")) {
+            path = path.substring(1);
+        }
+        int i = path.indexOf('/');
+        String resource = i == -1 ? path : path.substring(0, i);
+        String id = i == -1 ? null : path.substring(i + 1);
+        if (id != null && id.length() == 0) {
+            id = null;
+        }
+        SPI spi = getRepository().getSPI(getConnectionParams(req));
+        try {
+            Object result = getResult(resource, id, req, spi);
+            if (result == null) {
+                resp.sendError(HttpServletResponse.SC_NOT_FOUND);
+                return;
+            }
+            resp.setContentType(JSONCMIS.MEDIA_TYPE_JSON);
+            resp.setCharacterEncoding("UTF-8");
+            Writer writer = new OutputStreamWriter(resp.getOutputStream(),
+                    "UTF-8");
+            JSONWriter jw = new JSONWriter(writer);
+            write(jw, resource, result, req, spi);
+            jw.flush();
+        } catch (ObjectNotFoundException e) {
+            resp.sendError(HttpServletResponse.SC_NOT_FOUND, e.getMessage());
+        } catch (ConstraintViolationException e) {
+            resp.sendError(HttpServletResponse.SC_CONFLICT, e.getMessage());
+        } catch (IllegalArgumentException e) {
+            resp.sendError(HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+        } finally {
+            spi.close();
+        }
+    }
+
+    /**
+     * Calls the SPI for a resource. Done before anything is written so that
+     * errors can still be reported with a proper status.
+     *
+     * @return an {@link ObjectEntry}, a {@link Type}, a {@link Tree} or a
+     *         collection of them, or {@code null} for an unknown resource
+     */
+    protected Object getResult(String resource, String id,
+            HttpServletRequest req, SPI spi) {
+        Inclusion inclusion = getInclusion(req);
+        if (JSONCMIS.RES_OBJECT.equals(resource)) {
+            if (id == null) {
+                String path = req.getParameter(AtomPubCMIS.PARAM_PATH);
+                if (path == null) {
+                    throw new IllegalArgumentException("Missing id and path");
+                }
+                return getObjectByPath(path, inclusion, spi);
+            }
+            return spi.getProperties(spi.newObjectId(id), inclusion);
+        } else if (JSONCMIS.RES_PATH.equals(resource)) {
+            return getObjectByPath(id == null ? "" : id, inclusion, spi);
+        } else if (JSONCMIS.RES_CHILDREN.equals(resource)) {
+            Paging paging = new Paging(getParameter(req,
+                    AtomPubCMIS.PARAM_MAX_ITEMS, 0), getParameter(req,
+                    AtomPubCMIS.PARAM_SKIP_COUNT, 0));
+            return spi.getChildren(spi.newObjectId(id), inclusion,
+                    req.getParameter(AtomPubCMIS.PARAM_ORDER_BY), paging);
+        } else if (JSONCMIS.RES_DESCENDANTS.equals(resource)) {
+            return spi.getDescendants(spi.newObjectId(id), getParameter(req,
+                    AtomPubCMIS.PARAM_DEPTH, -1),
+                    req.getParameter(AtomPubCMIS.PARAM_ORDER_BY), inclusion);
+        } else if (JSONCMIS.RES_FOLDER_TREE.equals(resource)) {
+            return spi.getFolderTree(spi.newObjectId(id), getParameter(req,
+                    AtomPubCMIS.PARAM_DEPTH, -1), inclusion);
+        } else if (JSONCMIS.RES_PARENTS.equals(resource)) {
+            return spi.getObjectParents(spi.newObjectId(id),
+                    req.getParameter(AtomPubCMIS.PARAM_FILTER));
+        } else if (JSONCMIS.RES_QUERY.equals(resource)) {
+            String statement = req.getParameter(AtomPubCMIS.PARAM_QUERY);
+            if (statement == null) {
+                throw new IllegalArgumentException("Missing query");
+            }
+            Paging paging = new Paging(getParameter(req,
+                    AtomPubCMIS.PARAM_MAX_ITEMS, 0), getParameter(req,
+                    AtomPubCMIS.PARAM_SKIP_COUNT, 0));
+            return spi.query(statement, getParameter(req,
+                    AtomPubCMIS.PARAM_SEARCH_ALL_VERSIONS, false), inclusion,
+                    paging);
+        } else if (JSONCMIS.RES_TYPE.equals(resource)) {
+            return id == null ? null : getRepository().getType(id);
+        } else if (JSONCMIS.RES_TYPE_CHILDREN.equals(resource)) {
+            Paging paging = new Paging(getParameter(req,
+                    AtomPubCMIS.PARAM_MAX_ITEMS, 0), getParameter(req,
+                    AtomPubCMIS.PARAM_SKIP_COUNT, 0));
+            return getRepository().getTypeChildren(id, getParameter(req,
+                    AtomPubCMIS.PARAM_INCLUDE_PROPERTY_DEFINITIONS, false),
+                    paging);
+        } else if (JSONCMIS.RES_TYPE_DESCENDANTS.equals(resource)) {
+            return getRepository().getTypeDescendants(id, getParameter(req,
+                    AtomPubCMIS.PARAM_DEPTH, -1), getParameter(req,
+                    AtomPubCMIS.PARAM_INCLUDE_PROPERTY_DEFINITIONS, false));
+        }
+        return null;
+    }
+
+    protected ObjectEntry getObjectByPath(String path, Inclusion inclusion,
+            SPI spi) {
+        if (!path.startsWith("/")) {
+            path = "/" + path;
+        }
+        return spi.getObjectByPath(path, inclusion);
+    }
+
+    protected Inclusion getInclusion(HttpServletRequest req) {
+        String properties = req.getParameter(AtomPubCMIS.PARAM_FILTER);
+        String renditions = req.getParameter(AtomPubCMIS.PARAM_RENDITION_FILTER);
+        RelationshipDirection relationships = RelationshipDirection.fromInclusion(req.getParameter(AtomPubCMIS.PARAM_INCLUDE_RELATIONSHIPS));
+        boolean allowableActions = getParameter(req,
+                AtomPubCMIS.PARAM_INCLUDE_ALLOWABLE_ACTIONS, false);
+        boolean policies = getParameter(req,
+                AtomPubCMIS.PARAM_INCLUDE_POLICY_IDS, false);
+        boolean acls = getParameter(req, AtomPubCMIS.PARAM_INCLUDE_ACL, false);
+        return new Inclusion(properties, renditions, relationships,
+                allowableActions, policies, acls);
+    }
+
+    public static int getParameter(HttpServletRequest req, String name,
+            int def) {
+        String value = req.getParameter(name);
+        return value == null ? def : Integer.parseInt(value);
+    }
+
+    public static boolean getParameter(HttpServletRequest req, String name,
+            boolean def) {
+        String value = req.getParameter(name);
+        return value == null ? def : Boolean.parseBoolean(value);
+    }
+
+    /*
+     * ----- Writing -----
+     */
+
+    @SuppressWarnings("unchecked")
+    protected void write(JSONWriter jw, String resource, Object result,
+            HttpServletRequest req, SPI spi) throws IOException {
+        if (result instanceof ObjectEntry) {
+            writeObject(jw, (ObjectEntry) result, spi);
+        } else if (result instanceof Type) {
+            writeType(jw, (Type) result, true);
+        } else if (result instanceof Tree) {
+            jw.startObject();
+            jw.key(JSONCMIS.OBJECTS);
+            writeObjectTrees(jw, ((Tree<ObjectEntry>) result).getChildren(),
+                    spi);
+            jw.endObject();
+        } else {
+            Collection<?> list = (Collection<?>) result;
+            boolean types = JSONCMIS.RES_TYPE_CHILDREN.equals(resource)
+                    || JSONCMIS.RES_TYPE_DESCENDANTS.equals(resource);
+            jw.startObject();
+            jw.key(types ? JSONCMIS.TYPES : JSONCMIS.OBJECTS);
+            jw.startArray();
+            if (types) {
+                boolean includePropertyDefinitions = getParameter(req,
+                        AtomPubCMIS.PARAM_INCLUDE_PROPERTY_DEFINITIONS, false);
+                for (Type type : (Collection<Type>) list) {
+                    writeType(jw, type, includePropertyDefinitions);
+                }
+            } else {
+                for (ObjectEntry object : (Collection<ObjectEntry>) list) {
+                    writeObject(jw, object, spi);
+                }
+            }
+            jw.endArray();
+            if (list instanceof ListPage<?>) {
+                ListPage<?> page = (ListPage<?>) list;
+                jw.key(JSONCMIS.HAS_MORE_ITEMS).value(page.getHasMoreItems());
+                if (page.getNumItems() != -1) {
+                    jw.key(JSONCMIS.NUM_ITEMS).value(page.getNumItems());
+                }
+            }
+            jw.endObject();
+        }
+    }
+
+    protected void writeObjectTrees(JSONWriter jw,
+            List<Tree<ObjectEntry>> trees, SPI spi) throws IOException {
+        jw.startArray();
+        for (Tree<ObjectEntry> tree : trees) {
+            List<Tree<ObjectEntry>> children = tree.getChildren();
+            if (children == null || children.isEmpty()) {
+                writeObject(jw, tree.getNode(), spi);
+            } else {
+                startObject(jw, tree.getNode(), spi);
+                jw.key(JSONCMIS.CHILDREN);
+                writeObjectTrees(jw, children, spi);
+                jw.endObject();
+            }
+        }
+        jw.endArray();
+    }
+
+    protected void writeObject(JSONWriter jw, ObjectEntry object, SPI spi)
+            throws IOException {
+        startObject(jw, object, spi);
+        jw.endObject();
+    }
+
+    /**
+     * Writes an object, leaving the JSON object open for additional keys.
+     */
+    protected void startObject(JSONWriter jw, ObjectEntry object, SPI spi)
+            throws IOException {
+        jw.startObject();
+        jw.key(JSONCMIS.PROPERTIES);
+        jw.startObject();
+        Map<String, Serializable> values = object.getValues();
+        Type type = getRepository().getType(object.getTypeId());
+        if (type == null) {
+            // a query result set
+            for (Map.Entry<String, Serializable> e : values.entrySet()) {
+                Serializable value = e.getValue();
+                if (value != null) {
+                    jw.key(e.getKey()).value(value);
+                }
+            }
+        } else {
+            for (PropertyDefinition pd : type.getPropertyDefinitions()) {
+                Serializable value = values.get(pd.getId());
+                if (value != null) {
+                    jw.key(pd.getId()).value(value);
+                }
+            }
+        }
+        jw.endObject();
+        Set<QName> allowableActions = object.getAllowableActions();
+        if (allowableActions != null) {
+            jw.key(JSONCMIS.ALLOWABLE_ACTIONS);
+            jw.startArray();
+            for (QName qname : allowableActions) {
+                jw.value(qname.getLocalPart());
+            }
+            jw.endArray();
+        }
+        String pathSegment = object.getPathSegment();
+        if (pathSegment != null) {
+            jw.key(JSONCMIS.PATH_SEGMENT).value(pathSegment);
+        }
+        if (object.getBaseType() == BaseType.DOCUMENT) {
+            // same condition as CMISObjectsCollection.isMediaEntry
+            String mimeType = (String) object.getValue(Property.CONTENT_STREAM_MIME_TYPE);
+            if (mimeType != null
+                    && object.getValue(Property.CONTENT_STREAM_LENGTH) != null
+                    && spi.hasContentStream(object)) {
+                jw.key(JSONCMIS.CONTENT_TYPE).value(mimeType);
+            }
+        }
+    }
+
+    protected void writeType(JSONWriter jw, Type type,
+            boolean includePropertyDefinitions) throws IOException {
+        jw.startObject();
+        jw.key(JSONCMIS.ID).value(type.getId());
+        jw.key(JSONCMIS.QUERY_NAME).value(type.getQueryName());
+        jw.key(JSONCMIS.DISPLAY_NAME).value(type.getDisplayName());
+        jw.key(JSONCMIS.DESCRIPTION).value(type.getDescription());
+        jw.key(JSONCMIS.BASE_ID).value(type.getBaseType().getId());
+        if (type.getParentId() != null) {
+            jw.key(JSONCMIS.PARENT_ID).value(type.getParentId());
+        }
+        jw.key(JSONCMIS.CREATABLE).value(type.isCreatable());
+        jw.key(JSONCMIS.FILEABLE).value(type.isFileable());
+        jw.key(JSONCMIS.QUERYABLE).value(type.isQueryable());
+        if (type.getBaseType() == BaseType.DOCUMENT) {
+            jw.key(JSONCMIS.VERSIONABLE).value(type.isVersionable());
+            jw.key(JSONCMIS.CONTENT_STREAM_ALLOWED).value(
+                    type.getContentStreamAllowed().toString());
+        }
+        if (includePropertyDefinitions) {
+            jw.key(JSONCMIS.PROPERTY_DEFINITIONS);
+            jw.startArray();
+            for (PropertyDefinition pd : type.getPropertyDefinitions()) {
+                jw.startObject();
+                jw.key(JSONCMIS.ID).value(pd.getId());
+                jw.key(JSONCMIS.QUERY_NAME).value(pd.getQueryName());
+                jw.key(JSONCMIS.DISPLAY_NAME).value(pd.getDisplayName());
+                jw.key(JSONCMIS.PROPERTY_TYPE).value(pd.getType().toString());
+                jw.key(JSONCMIS.MULTI_VALUED).value(pd.isMultiValued());
+                jw.key(JSONCMIS.REQUIRED).value(pd.isRequired());
+                jw.key(JSONCMIS.UPDATABILITY).value(
+                        pd.getUpdatability().toString());
+                if (pd.getDefaultValue() != null) {
+                    jw.key(JSONCMIS.DEFAULT_VALUE).value(pd.getDefaultValue());
+                }
+                jw.endObject();
+            }
+            jw.endArray();
+        }
+        jw.endObject();
+    }
+
+}
@@ -24,13 +24,37 @@ import org.apache.abdera.protocol.server.Provider;
 import org.apache.abdera.protocol.server.servlet.AbderaServlet;
 import org.apache.chemistry.Repository;
 import org.apache.chemistry.atompub.server.CMISProvider;
+import org.apache.chemistry.impl.cache.CachingRepository;
+import org.apache.chemistry.impl.metrics.InstrumentedRepository;
 
 public class CMISServlet extends AbderaServlet {
 
     private static final long serialVersionUID = 1L;
 
+    /**
+     * Init parameter enabling the recording of metrics about each SPI call,
+     * exposed through JMX.
+     */
+    public static final String PARAM_INSTRUMENT = "instrument";
+
+    /**
+     * Init parameter enabling a read-through cache in front of the
+     * repository, holding at most this number of objects.
+     */
+    public static final String PARAM_CACHE_SIZE = "cacheSize";
+
+    /**
+     * Init parameter giving the time to live of cached data, in
+     * milliseconds. Defaults to 0, no expiration.
+     */
+    public static final String PARAM_CACHE_TTL = "cacheTTL";
+
     protected Repository repository;
 
+    protected CachingRepository cachingRepository;
+
+    protected InstrumentedRepository instrumentedRepository;
+
     /**
      * Empty constructor required by servlet spec.
      */
@@ -43,7 +67,21 @@ public class CMISServlet extends AbderaServlet {
 
     @Override
     protected Provider createProvider() {
-        Provider provider = new CMISProvider(getRepository());
+        Repository repository = getRepository();
+        String cacheSize = getInitParameter(PARAM_CACHE_SIZE);
+        if (cacheSize != null) {
+            String ttl = getInitParameter(PARAM_CACHE_TTL);
+            cachingRepository = new CachingRepository(repository,
+                    Integer.parseInt(cacheSize.trim()), ttl == null ? 0
+                            : Long.parseLong(ttl.trim()));
+            repository = cachingRepository;
+        }
+        if (Boolean.parseBoolean(getInitParameter(PARAM_INSTRUMENT))) {
+            instrumentedRepository = new InstrumentedRepository(repository);
+            instrumentedRepository.registerMBeans();
+            repository = instrumentedRepository;
+        }
+        Provider provider = new CMISProvider(repository);
         Abdera abdera = new Abdera();
         Map<String, String> properties = new HashMap<String, String>();
         provider.init(abdera, properties);
@@ -58,4 +96,34 @@ public class CMISServlet extends AbderaServlet {
     protected Repository getRepository() {
         return repository;
     }
+
+    /**
+     * Returns the instrumented repository if the {@value #PARAM_INSTRUMENT}
+     * init parameter is set, or {@code null}.
+     */
+    public InstrumentedRepository getInstrumentedRepository() {
+        return instrumentedRepository;
+    }
+
+    /**
+     * Returns the caching repository if the {@value #PARAM_CACHE_SIZE} init
+     * parameter is set, or {@code null}.
+     */
+    public CachingRepository getCachingRepository() {
+        return cachingRepository;
+    }
+
+    @Override
+    public void destroy() {
+        if (cachingRepository != null) {
+            cachingRepository.dispose();
+            cachingRepository = null;
+        }
+        if (instrumentedRepository != null) {
+            instrumentedRepository.unregisterMBeans();
+            instrumentedRepository = null;
+        }
+        super.destroy();
+    }
+
 }
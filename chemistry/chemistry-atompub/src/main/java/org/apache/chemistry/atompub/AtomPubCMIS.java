@@ -162,6 +162,11 @@ public class AtomPubCMIS {
 
     public static final String PARAM_SOURCE_FOLDER_ID = "sourceFolderId";
 
+    public static final String PARAM_ALL_VERSIONS = "allVersions";
+
+    /** Chemistry extension: the operation of a batch request. */
+    public static final String PARAM_OPERATION = "operation";
+
     /*
      * ----- URI Template Types -----
      */
@@ -174,6 +179,31 @@ public class AtomPubCMIS {
 
     public static final String URITMPL_TYPE_BY_ID = "typebyid";
 
+    /** Chemistry extension: multipart batch requests. */
+    public static final String URITMPL_BATCH = "batch";
+
+    /*
+     * ----- Batch Operations -----
+     */
+
+    /**
+     * Gets objects. Each request part holds an object id as text, each
+     * response part the entry of the object, or nothing if it is not found.
+     */
+    public static final String BATCH_GET = "get";
+
+    /**
+     * Updates objects. Each request part holds an entry with the id and the
+     * changed properties of an object, each response part the updated entry.
+     */
+    public static final String BATCH_UPDATE = "update";
+
+    /**
+     * Deletes objects. Each request part holds an object id as text, the
+     * response has no content.
+     */
+    public static final String BATCH_DELETE = "delete";
+
     /*
      * ----- Media Types -----
      */
@@ -184,4 +214,6 @@ public class AtomPubCMIS {
 
     public static final String MEDIA_TYPE_CMIS_TREE = "application/cmistree+xml";
 
+    public static final String MEDIA_TYPE_MULTIPART_MIXED = "multipart/mixed";
+
 }
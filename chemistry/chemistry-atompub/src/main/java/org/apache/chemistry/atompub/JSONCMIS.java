@@ -0,0 +1,125 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.chemistry.atompub;
+
+/**
+ * Utility class providing the constants of the JSON binding.
+ * <p>
+ * The JSON binding serves the same resources as the AtomPub binding, under
+ * the same paths relative to its base URL, but returns compact JSON
+ * documents instead of Atom entries and feeds. Objects don't carry links:
+ * they are derived by clients from the object id and the URL space.
+ */
+public class JSONCMIS {
+
+    // utility class
+    private JSONCMIS() {
+    }
+
+    public static final String MEDIA_TYPE_JSON = "application/json";
+
+    /*
+     * ----- Object Keys -----
+     */
+
+    public static final String PROPERTIES = "properties";
+
+    public static final String ALLOWABLE_ACTIONS = "allowableActions";
+
+    public static final String PATH_SEGMENT = "pathSegment";
+
+    /** Mime type of the content stream, if the document has one. */
+    public static final String CONTENT_TYPE = "contentType";
+
+    public static final String CHILDREN = "children";
+
+    /*
+     * ----- List Keys -----
+     */
+
+    public static final String OBJECTS = "objects";
+
+    public static final String TYPES = "types";
+
+    public static final String HAS_MORE_ITEMS = "hasMoreItems";
+
+    public static final String NUM_ITEMS = "numItems";
+
+    /*
+     * ----- Type Keys -----
+     */
+
+    public static final String ID = "id";
+
+    public static final String QUERY_NAME = "queryName";
+
+    public static final String DISPLAY_NAME = "displayName";
+
+    public static final String DESCRIPTION = "description";
+
+    public static final String BASE_ID = "baseId";
+
+    public static final String PARENT_ID = "parentId";
+
+    public static final String CREATABLE = "creatable";
+
+    public static final String FILEABLE = "fileable";
+
+    public static final String QUERYABLE = "queryable";
+
+    public static final String VERSIONABLE = "versionable";
+
+    public static final String CONTENT_STREAM_ALLOWED = "contentStreamAllowed";
+
+    public static final String PROPERTY_DEFINITIONS = "propertyDefinitions";
+
+    public static final String PROPERTY_TYPE = "propertyType";
+
+    public static final String MULTI_VALUED = "multiValued";
+
+    public static final String REQUIRED = "required";
+
+    public static final String UPDATABILITY = "updatability";
+
+    public static final String DEFAULT_VALUE = "defaultValue";
+
+    /*
+     * ----- Resources -----
+     */
+
+    public static final String RES_OBJECT = "object";
+
+    public static final String RES_PATH = "path";
+
+    public static final String RES_CHILDREN = "children";
+
+    public static final String RES_DESCENDANTS = "descendants";
+
+    public static final String RES_FOLDER_TREE = "foldertree";
+
+    public static final String RES_PARENTS = "parents";
+
+    public static final String RES_QUERY = "query";
+
+    public static final String RES_TYPE = "type";
+
+    public static final String RES_TYPE_CHILDREN = "typechildren";
+
+    public static final String RES_TYPE_DESCENDANTS = "typedescendants";
+
+    public static final String RES_FILE = "file";
+
+    public static final String RES_ALLOWABLE_ACTIONS = "allowableactions";
+
+}
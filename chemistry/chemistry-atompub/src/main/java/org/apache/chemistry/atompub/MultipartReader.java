@@ -0,0 +1,224 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.chemistry.atompub;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.io.SequenceInputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Reads a {@code multipart/mixed} body (RFC 2046) part by part, without
+ * buffering it.
+ * <p>
+ * The stream of a part is only valid until the next call to {@link #next}.
+ */
+public class MultipartReader {
+
+    protected final PushbackInputStream in;
+
+    /** CRLF, two hyphens and the boundary. */
+    protected final byte[] delimiter;
+
+    protected final Map<String, String> headers = new HashMap<String, String>();
+
+    protected PartInputStream part;
+
+    protected boolean done;
+
+    public MultipartReader(InputStream in, String boundary) throws IOException {
+        delimiter = ("\r\n--" + boundary).getBytes("US-ASCII");
+        // the first delimiter is not preceded by a CRLF if there is no
+        // preamble
+        this.in = new PushbackInputStream(new SequenceInputStream(
+                new ByteArrayInputStream(new byte[] { '\r', '\n' }), in),
+                delimiter.length);
+        // skip the preamble
+        part = new PartInputStream();
+    }
+
+    /**
+     * Gets the boundary parameter of a multipart content type.
+     *
+     * @return the boundary, or {@code null} if there is none
+     */
+    public static String getBoundary(String contentType) {
+        if (contentType == null) {
+            return null;
+        }
+        for (String param : contentType.split(";")) {
+            param = param.trim();
+            if (param.toLowerCase().startsWith("boundary=")) {
+                String boundary = param.substring("boundary=".length());
+                if (boundary.length() > 1 && boundary.startsWith("\"")
+                        && boundary.endsWith("\"")) {
+                    boundary = boundary.substring(1, boundary.length() - 1);
+                }
+                return boundary;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Moves to the next part, skipping what is left of the current one.
+     *
+     * @return {@code false} if there are no more parts
+     */
+    public boolean next() throws IOException {
+        if (part != null) {
+            while (part.read() != -1) {
+                // skip
+            }
+            // after the delimiter, either -- for the end or CRLF
+            int c1 = in.read();
+            int c2 = in.read();
+            if (c1 == '-' && c2 == '-') {
+                done = true;
+            } else {
+                // skip transport padding
+                while (c1 != '\r' || c2 != '\n') {
+                    if (c2 == -1) {
+                        throw new EOFException("Truncated multipart body");
+                    }
+                    c1 = c2;
+                    c2 = in.read();
+                }
+            }
+            part = null;
+        }
+        if (done) {
+            return false;
+        }
+        headers.clear();
+        String line;
+        while ((line = readLine()).length() != 0) {
+            int i = line.indexOf(':');
+            if (i > 0) {
+                headers.put(line.substring(0, i).trim().toLowerCase(),
+                        line.substring(i + 1).trim());
+            }
+        }
+        part = new PartInputStream();
+        return true;
+    }
+
+    /**
+     * Gets a header of the current part.
+     *
+     * @param name the header name, case-insensitive
+     * @return the header value, or {@code null}
+     */
+    public String getHeader(String name) {
+        return headers.get(name.toLowerCase());
+    }
+
+    /**
+     * Gets the content type of the current part.
+     *
+     * @return the content type, or {@code null} for an empty part
+     */
+    public String getContentType() {
+        return getHeader("Content-Type");
+    }
+
+    /**
+     * Gets the content of the current part.
+     */
+    public InputStream getStream() {
+        return part;
+    }
+
+    protected String readLine() throws IOException {
+        ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        int c;
+        while ((c = in.read()) != '\n') {
+            if (c == -1) {
+                throw new EOFException("Truncated multipart body");
+            }
+            if (c != '\r') {
+                buf.write(c);
+            }
+        }
+        return buf.toString("US-ASCII");
+    }
+
+    /**
+     * The content of a part, up to the next delimiter.
+     */
+    protected class PartInputStream extends InputStream {
+
+        protected final byte[] buf = new byte[delimiter.length - 1];
+
+        protected boolean eof;
+
+        @Override
+        public int read() throws IOException {
+            if (eof) {
+                return -1;
+            }
+            int c = in.read();
+            if (c == -1) {
+                throw new EOFException("Truncated multipart body");
+            }
+            if (c != delimiter[0]) {
+                return c;
+            }
+            // check if the delimiter follows
+            int n = 0;
+            while (n < buf.length) {
+                int r = in.read(buf, n, buf.length - n);
+                if (r == -1) {
+                    break;
+                }
+                n += r;
+            }
+            boolean match = n == buf.length;
+            for (int i = 0; match && i < n; i++) {
+                match = buf[i] == delimiter[i + 1];
+            }
+            if (match) {
+                eof = true;
+                return -1;
+            }
+            in.unread(buf, 0, n);
+            return c;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            int n = 0;
+            while (n < len) {
+                int c = read();
+                if (c == -1) {
+                    break;
+                }
+                b[off + n++] = (byte) c;
+                if (in.available() == 0) {
+                    break;
+                }
+            }
+            return n == 0 ? -1 : n;
+        }
+    }
+
+}
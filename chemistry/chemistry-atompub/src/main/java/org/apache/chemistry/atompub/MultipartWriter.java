@@ -0,0 +1,109 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.chemistry.atompub;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.UUID;
+
+/**
+ * Writes a {@code multipart/mixed} body (RFC 2046), as used by batch
+ * requests and responses.
+ * <p>
+ * Each part is written to the stream returned by {@link #startPart}, which
+ * must be completely written before the next part is started. Closing it has
+ * no effect.
+ */
+public class MultipartWriter {
+
+    protected static final byte[] CRLF = { '\r', '\n' };
+
+    protected final OutputStream out;
+
+    protected final String boundary;
+
+    protected boolean started;
+
+    public MultipartWriter(OutputStream out) {
+        this(out, "chemistry-" + UUID.randomUUID());
+    }
+
+    public MultipartWriter(OutputStream out, String boundary) {
+        this.out = out;
+        this.boundary = boundary;
+    }
+
+    /**
+     * Gets the content type of the body, including its boundary.
+     */
+    public String getContentType() {
+        return getContentType(boundary);
+    }
+
+    public static String getContentType(String boundary) {
+        return AtomPubCMIS.MEDIA_TYPE_MULTIPART_MIXED + "; boundary=\""
+                + boundary + '"';
+    }
+
+    /**
+     * Starts a new part.
+     *
+     * @param contentType the content type of the part, or {@code null} for an
+     *            empty part
+     * @return the stream to which the part content is written
+     */
+    public OutputStream startPart(String contentType) throws IOException {
+        if (started) {
+            out.write(CRLF);
+        }
+        started = true;
+        write("--" + boundary);
+        out.write(CRLF);
+        if (contentType != null) {
+            write("Content-Type: " + contentType);
+            out.write(CRLF);
+        }
+        out.write(CRLF);
+        return new FilterOutputStream(out) {
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                out.write(b, off, len);
+            }
+
+            @Override
+            public void close() throws IOException {
+                out.flush();
+            }
+        };
+    }
+
+    /**
+     * Writes the final boundary. The underlying stream is flushed but not
+     * closed.
+     */
+    public void close() throws IOException {
+        if (started) {
+            out.write(CRLF);
+        }
+        write("--" + boundary + "--");
+        out.write(CRLF);
+        out.flush();
+    }
+
+    protected void write(String s) throws IOException {
+        out.write(s.getBytes("US-ASCII"));
+    }
+
+}
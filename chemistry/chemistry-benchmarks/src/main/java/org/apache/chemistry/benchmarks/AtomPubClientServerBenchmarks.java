@@ -0,0 +1,136 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.chemistry.benchmarks;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.chemistry.ObjectEntry;
+import org.apache.chemistry.ObjectId;
+import org.apache.chemistry.Paging;
+import org.apache.chemistry.SPI;
+import org.apache.chemistry.atompub.client.APPRepositoryService;
+import org.mortbay.jetty.Server;
+
+/**
+ * End-to-end benchmarks of the AtomPub client talking to the AtomPub server
+ * over HTTP, both running in-process.
+ */
+public class AtomPubClientServerBenchmarks {
+
+    // Utility class
+    private AtomPubClientServerBenchmarks() {
+    }
+
+    /**
+     * Base class, starts a server for a repository of {@code size} documents
+     * and connects to it.
+     */
+    public abstract static class ClientServerBenchmark extends Benchmark {
+
+        protected int size;
+
+        protected Server server;
+
+        protected SPI spi;
+
+        protected List<String> paths;
+
+        protected int next;
+
+        @Override
+        public Map<String, String[]> getDefaultParameters() {
+            return Collections.singletonMap("size", new String[] { "1000" });
+        }
+
+        @Override
+        public void setUp(Map<String, String> params) throws Exception {
+            super.setUp(params);
+            size = getIntParameter("size");
+            server = BenchmarkHelper.startServer(BenchmarkHelper.makeRepository(size));
+            spi = new APPRepositoryService(
+                    BenchmarkHelper.getServiceUrl(server), null).getDefaultRepository().getSPI(
+                    null);
+            paths = BenchmarkHelper.samplePaths(size, Math.min(size,
+                    SimpleRepositoryBenchmarks.SAMPLES));
+        }
+
+        @Override
+        public void tearDown() throws Exception {
+            spi.close();
+            server.stop();
+        }
+
+        protected int nextIndex() {
+            int n = next++;
+            if (next == paths.size()) {
+                next = 0;
+            }
+            return n;
+        }
+
+    }
+
+    public static class GetChildren extends ClientServerBenchmark {
+
+        protected ObjectId folder;
+
+        @Override
+        public void setUp(Map<String, String> params) throws Exception {
+            super.setUp(params);
+            folder = spi.getObjectByPath(BenchmarkHelper.folderPath(0), null);
+        }
+
+        @Override
+        public void run(Blackhole bh) throws Exception {
+            List<ObjectEntry> children = spi.getChildren(folder, null, null,
+                    new Paging(BenchmarkHelper.DOCUMENTS_PER_FOLDER, 0));
+            for (ObjectEntry child : children) {
+                bh.consume(child.getId());
+            }
+        }
+    }
+
+    public static class GetObjectByPath extends ClientServerBenchmark {
+        @Override
+        public void run(Blackhole bh) throws Exception {
+            bh.consume(spi.getObjectByPath(paths.get(nextIndex()), null));
+        }
+    }
+
+    /**
+     * Creates then deletes a document, keeping the repository size constant.
+     */
+    public static class CreateDeleteDocument extends ClientServerBenchmark {
+
+        protected ObjectId folder;
+
+        @Override
+        public void setUp(Map<String, String> params) throws Exception {
+            super.setUp(params);
+            folder = spi.getObjectByPath(BenchmarkHelper.folderPath(0), null);
+        }
+
+        @Override
+        public void run(Blackhole bh) throws Exception {
+            Map<String, Serializable> props = BenchmarkHelper.documentProperties(size);
+            ObjectId id = spi.createDocument(props, folder, null, null);
+            spi.deleteObject(id, true);
+            bh.consume(id);
+        }
+    }
+
+}
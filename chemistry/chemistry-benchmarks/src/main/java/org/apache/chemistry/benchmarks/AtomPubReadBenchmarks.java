@@ -0,0 +1,143 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.chemistry.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.chemistry.ObjectEntry;
+import org.apache.chemistry.Repository;
+import org.apache.chemistry.atompub.AtomPub;
+import org.apache.chemistry.atompub.AtomPubCMIS;
+import org.apache.chemistry.atompub.client.APPConnection;
+import org.apache.chemistry.atompub.client.APPContext;
+import org.apache.chemistry.atompub.client.APPObjectEntry;
+import org.apache.chemistry.atompub.client.APPObjectEntryReader;
+import org.apache.chemistry.atompub.client.APPObjectFeedReader;
+import org.apache.chemistry.atompub.client.APPRepositoryService;
+import org.apache.commons.io.IOUtils;
+import org.mortbay.jetty.Server;
+
+/**
+ * Benchmarks of the client-side parsing of AtomPub documents.
+ * <p>
+ * The feeds and entries are recorded from an in-process server at setup,
+ * then parsed from memory so that only parsing is measured.
+ */
+public class AtomPubReadBenchmarks {
+
+    // Utility class
+    private AtomPubReadBenchmarks() {
+    }
+
+    /**
+     * Base class, starts a server and connects to it.
+     */
+    public abstract static class ReadBenchmark extends Benchmark {
+
+        protected Server server;
+
+        protected APPConnection connection;
+
+        protected APPContext context;
+
+        protected byte[] bytes;
+
+        @Override
+        public Map<String, String[]> getDefaultParameters() {
+            return Collections.singletonMap("entries", new String[] { "10",
+                    "100" });
+        }
+
+        @Override
+        public void setUp(Map<String, String> params) throws Exception {
+            super.setUp(params);
+            int entries = getIntParameter("entries");
+            server = BenchmarkHelper.startServer(BenchmarkHelper.makeRepository(entries));
+            Repository repository = new APPRepositoryService(
+                    BenchmarkHelper.getServiceUrl(server), null).getDefaultRepository();
+            connection = (APPConnection) repository.getSPI(null);
+            context = new APPContext(connection);
+            bytes = record();
+        }
+
+        protected abstract byte[] record() throws Exception;
+
+        protected byte[] fetch(String href) throws Exception {
+            InputStream in = new URL(href).openStream();
+            try {
+                return IOUtils.toByteArray(in);
+            } finally {
+                in.close();
+            }
+        }
+
+        @Override
+        public void tearDown() throws Exception {
+            connection.close();
+            server.stop();
+        }
+
+    }
+
+    /**
+     * Parses the children feed of a folder.
+     */
+    public static class ReadObjectFeed extends ReadBenchmark {
+
+        @Override
+        protected byte[] record() throws Exception {
+            APPObjectEntry folder = (APPObjectEntry) connection.getObjectByPath(
+                    BenchmarkHelper.folderPath(0), null);
+            String href = folder.getLink(AtomPub.LINK_DOWN,
+                    AtomPub.MEDIA_TYPE_ATOM_FEED);
+            return fetch(href + '?' + AtomPubCMIS.PARAM_MAX_ITEMS + '='
+                    + getIntParameter("entries"));
+        }
+
+        @Override
+        public void run(Blackhole bh) throws Exception {
+            List<ObjectEntry> list = new APPObjectFeedReader().read(context,
+                    new ByteArrayInputStream(bytes));
+            for (ObjectEntry entry : list) {
+                bh.consume(entry.getValue("title"));
+            }
+        }
+    }
+
+    /**
+     * Parses a document entry.
+     */
+    public static class ReadObjectEntry extends ReadBenchmark {
+
+        @Override
+        protected byte[] record() throws Exception {
+            APPObjectEntry doc = (APPObjectEntry) connection.getObjectByPath(
+                    BenchmarkHelper.documentPath(0), null);
+            return fetch(doc.getLink(AtomPub.LINK_SELF));
+        }
+
+        @Override
+        public void run(Blackhole bh) throws Exception {
+            ObjectEntry entry = new APPObjectEntryReader().read(context,
+                    new ByteArrayInputStream(bytes));
+            bh.consume(entry.getValue("title"));
+        }
+    }
+
+}
@@ -0,0 +1,91 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.chemistry.benchmarks;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Map;
+
+import org.apache.abdera.Abdera;
+import org.apache.abdera.factory.Factory;
+import org.apache.chemistry.ObjectEntry;
+import org.apache.chemistry.Repository;
+import org.apache.chemistry.SPI;
+import org.apache.chemistry.Type;
+import org.apache.chemistry.atompub.abdera.ObjectElement;
+import org.apache.chemistry.atompub.abdera.PropertiesElement;
+
+/**
+ * Benchmarks of the server-side serialization of objects to AtomPub.
+ */
+public class AtomPubWriteBenchmarks {
+
+    // Utility class
+    private AtomPubWriteBenchmarks() {
+    }
+
+    /**
+     * Base class, gets a document entry to serialize.
+     */
+    public abstract static class WriteBenchmark extends Benchmark {
+
+        protected Factory factory;
+
+        protected ObjectEntry entry;
+
+        protected Type type;
+
+        protected ByteArrayOutputStream out;
+
+        @Override
+        public void setUp(Map<String, String> params) throws Exception {
+            super.setUp(params);
+            factory = new Abdera().getFactory();
+            Repository repository = BenchmarkHelper.makeRepository(1);
+            SPI spi = repository.getSPI(null);
+            try {
+                entry = spi.getObjectByPath(BenchmarkHelper.documentPath(0),
+                        null);
+                // load all values before the entry is detached
+                entry.getValues();
+            } finally {
+                spi.close();
+            }
+            type = repository.getType(entry.getTypeId());
+            out = new ByteArrayOutputStream(4096);
+        }
+
+    }
+
+    public static class WritePropertiesElement extends WriteBenchmark {
+        @Override
+        public void run(Blackhole bh) throws Exception {
+            PropertiesElement el = new PropertiesElement(factory);
+            el.setProperties(entry.getValues(), type);
+            out.reset();
+            el.writeTo(out);
+            bh.consume(out.size());
+        }
+    }
+
+    public static class WriteObjectElement extends WriteBenchmark {
+        @Override
+        public void run(Blackhole bh) throws Exception {
+            ObjectElement el = new ObjectElement(factory, entry, type);
+            out.reset();
+            el.writeTo(out);
+            bh.consume(out.size());
+        }
+    }
+
+}
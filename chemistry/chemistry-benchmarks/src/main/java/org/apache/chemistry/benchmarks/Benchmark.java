@@ -0,0 +1,75 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.chemistry.benchmarks;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * A single benchmarked operation.
+ * <p>
+ * The {@link BenchmarkRunner} calls {@link #setUp} once per parameter
+ * combination, then calls {@link #run} repeatedly during the warmup and
+ * measurement iterations, and finally calls {@link #tearDown}. Each call to
+ * {@link #run} counts as one operation.
+ * <p>
+ * Subclasses must have a public no-arg constructor.
+ */
+public abstract class Benchmark {
+
+    protected Map<String, String> params;
+
+    /**
+     * The benchmark name, used for filtering and reporting.
+     */
+    public String getName() {
+        String name = getClass().getName();
+        return name.substring(name.lastIndexOf('.') + 1).replace('$', '.');
+    }
+
+    /**
+     * The parameters of this benchmark and their default values. Each
+     * parameter may have several values, the benchmark is run for every
+     * combination.
+     */
+    public Map<String, String[]> getDefaultParameters() {
+        return Collections.emptyMap();
+    }
+
+    public void setUp(Map<String, String> params) throws Exception {
+        this.params = params;
+    }
+
+    /**
+     * Runs one operation. Results should be consumed by the blackhole so that
+     * the JIT cannot eliminate the work.
+     */
+    public abstract void run(Blackhole bh) throws Exception;
+
+    public void tearDown() throws Exception {
+    }
+
+    protected String getParameter(String name) {
+        String value = params.get(name);
+        if (value == null) {
+            throw new IllegalArgumentException("Missing parameter: " + name);
+        }
+        return value;
+    }
+
+    protected int getIntParameter(String name) {
+        return Integer.parseInt(getParameter(name));
+    }
+
+}
@@ -0,0 +1,130 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.chemistry.benchmarks;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.chemistry.ObjectId;
+import org.apache.chemistry.Property;
+import org.apache.chemistry.Repository;
+import org.apache.chemistry.SPI;
+import org.apache.chemistry.atompub.server.servlet.CMISServlet;
+import org.apache.chemistry.test.BasicHelper;
+import org.mortbay.jetty.Connector;
+import org.mortbay.jetty.Server;
+import org.mortbay.jetty.bio.SocketConnector;
+import org.mortbay.jetty.servlet.Context;
+import org.mortbay.jetty.servlet.ServletHolder;
+
+/**
+ * Helper to build the repositories and servers used by the benchmarks.
+ */
+public class BenchmarkHelper {
+
+    // Utility class
+    private BenchmarkHelper() {
+    }
+
+    public static final int DOCUMENTS_PER_FOLDER = 100;
+
+    public static final String HOST = "127.0.0.1";
+
+    public static final String SERVLET_PATH = "/cmis";
+
+    public static final String CMIS_SERVICE = "/repository";
+
+    /**
+     * Creates an in-memory repository holding the given number of documents,
+     * spread over folders {@code /f0}, {@code /f1}... of
+     * {@link #DOCUMENTS_PER_FOLDER} documents each. Document {@code i} is
+     * named {@code d<i>} and has title {@code title <i>}.
+     */
+    public static Repository makeRepository(int size) throws Exception {
+        Repository repository = BasicHelper.makeSimpleRepository(null);
+        SPI spi = repository.getSPI(null);
+        try {
+            ObjectId root = repository.getInfo().getRootFolderId();
+            ObjectId folder = null;
+            for (int i = 0; i < size; i++) {
+                if (i % DOCUMENTS_PER_FOLDER == 0) {
+                    Map<String, Serializable> props = new HashMap<String, Serializable>();
+                    props.put(Property.TYPE_ID, "fold");
+                    props.put(Property.NAME, "f" + (i / DOCUMENTS_PER_FOLDER));
+                    folder = spi.createFolder(props, root);
+                }
+                spi.createDocument(documentProperties(i), folder, null, null);
+            }
+        } finally {
+            spi.close();
+        }
+        return repository;
+    }
+
+    public static Map<String, Serializable> documentProperties(int i) {
+        Map<String, Serializable> props = new HashMap<String, Serializable>();
+        props.put(Property.TYPE_ID, "doc");
+        props.put(Property.NAME, "d" + i);
+        props.put("title", "title " + i);
+        props.put("description", "description of document " + i);
+        return props;
+    }
+
+    public static String documentPath(int i) {
+        return "/f" + (i / DOCUMENTS_PER_FOLDER) + "/d" + i;
+    }
+
+    public static String folderPath(int i) {
+        return "/f" + i;
+    }
+
+    /**
+     * Lists the paths of {@code count} documents spread evenly over a
+     * repository of the given size, so that lookups do not all hit the same
+     * object.
+     */
+    public static List<String> samplePaths(int size, int count) {
+        List<String> paths = new ArrayList<String>(count);
+        for (int i = 0; i < count; i++) {
+            paths.add(documentPath((int) ((long) i * size / count)));
+        }
+        return paths;
+    }
+
+    /**
+     * Starts an AtomPub server for the repository on a free local port.
+     */
+    public static Server startServer(Repository repository) throws Exception {
+        Server server = new Server();
+        Connector connector = new SocketConnector();
+        connector.setHost(HOST);
+        connector.setPort(0);
+        server.setConnectors(new Connector[] { connector });
+        ServletHolder servletHolder = new ServletHolder(new CMISServlet(
+                repository));
+        Context context = new Context(server, SERVLET_PATH, Context.SESSIONS);
+        context.addServlet(servletHolder, "/*");
+        server.start();
+        return server;
+    }
+
+    public static String getServiceUrl(Server server) {
+        int port = server.getConnectors()[0].getLocalPort();
+        return "http://" + HOST + ':' + port + SERVLET_PATH + CMIS_SERVICE;
+    }
+
+}
@@ -0,0 +1,153 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.chemistry.benchmarks;
+
+import java.util.Map;
+
+/**
+ * The measured throughput of one benchmark for one parameter combination.
+ */
+public class BenchmarkResult {
+
+    /**
+     * Two-sided 99.9% quantile of the normal distribution, used for the score
+     * error like other harnesses do.
+     */
+    protected static final double Z_999 = 3.291;
+
+    public final String benchmark;
+
+    public final Map<String, String> params;
+
+    public final int warmupIterations;
+
+    /** Operations per second measured for each iteration. */
+    public final double[] rawData;
+
+    public BenchmarkResult(String benchmark, Map<String, String> params,
+            int warmupIterations, double[] rawData) {
+        this.benchmark = benchmark;
+        this.params = params;
+        this.warmupIterations = warmupIterations;
+        this.rawData = rawData;
+    }
+
+    public double getScore() {
+        double sum = 0;
+        for (double d : rawData) {
+            sum += d;
+        }
+        return sum / rawData.length;
+    }
+
+    /**
+     * Half-width of the 99.9% confidence interval of the score.
+     */
+    public double getScoreError() {
+        int n = rawData.length;
+        if (n < 2) {
+            return Double.NaN;
+        }
+        double mean = getScore();
+        double sq = 0;
+        for (double d : rawData) {
+            sq += (d - mean) * (d - mean);
+        }
+        double stddev = Math.sqrt(sq / (n - 1));
+        return Z_999 * stddev / Math.sqrt(n);
+    }
+
+    /**
+     * Appends the JSON form of this result, using the same layout as JMH so
+     * that existing tooling can compare runs.
+     */
+    public void toJSON(StringBuilder buf) {
+        buf.append("  {\n");
+        buf.append("    \"benchmark\" : ").append(quote(benchmark)).append(
+                ",\n");
+        buf.append("    \"mode\" : \"thrpt\",\n");
+        buf.append("    \"jdkVersion\" : ").append(
+                quote(System.getProperty("java.version"))).append(",\n");
+        buf.append("    \"vmName\" : ").append(
+                quote(System.getProperty("java.vm.name"))).append(",\n");
+        buf.append("    \"warmupIterations\" : ").append(warmupIterations).append(
+                ",\n");
+        buf.append("    \"measurementIterations\" : ").append(rawData.length).append(
+                ",\n");
+        buf.append("    \"params\" : {");
+        boolean first = true;
+        for (Map.Entry<String, String> es : params.entrySet()) {
+            buf.append(first ? "\n" : ",\n");
+            first = false;
+            buf.append("      ").append(quote(es.getKey())).append(" : ").append(
+                    quote(es.getValue()));
+        }
+        buf.append(first ? "},\n" : "\n    },\n");
+        buf.append("    \"primaryMetric\" : {\n");
+        buf.append("      \"score\" : ").append(number(getScore())).append(
+                ",\n");
+        buf.append("      \"scoreError\" : ").append(number(getScoreError())).append(
+                ",\n");
+        buf.append("      \"scoreUnit\" : \"ops/s\",\n");
+        buf.append("      \"rawData\" : [ [ ");
+        for (int i = 0; i < rawData.length; i++) {
+            if (i > 0) {
+                buf.append(", ");
+            }
+            buf.append(number(rawData[i]));
+        }
+        buf.append(" ] ]\n");
+        buf.append("    }\n");
+        buf.append("  }");
+    }
+
+    protected static String number(double d) {
+        if (Double.isNaN(d) || Double.isInfinite(d)) {
+            return "\"NaN\"";
+        }
+        return Double.toString(d);
+    }
+
+    protected static String quote(String s) {
+        StringBuilder buf = new StringBuilder(s.length() + 2);
+        buf.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+            case '"':
+            case '\\':
+                buf.append('\\').append(c);
+                break;
+            case '\n':
+                buf.append("\\n");
+                break;
+            case '\r':
+                buf.append("\\r");
+                break;
+            case '\t':
+                buf.append("\\t");
+                break;
+            default:
+                if (c < 0x20) {
+                    buf.append(String.format("\\u%04x", Integer.valueOf(c)));
+                } else {
+                    buf.append(c);
+                }
+            }
+        }
+        buf.append('"');
+        return buf.toString();
+    }
+
+}
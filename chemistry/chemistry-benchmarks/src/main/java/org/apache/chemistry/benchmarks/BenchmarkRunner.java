@@ -0,0 +1,271 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.chemistry.benchmarks;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
+
+/**
+ * Runs the benchmarks and reports their throughput.
+ * <p>
+ * Usage:
+ *
+ * <pre>
+ * BenchmarkRunner [-l] [-wi N] [-i N] [-r ms] [-p name=v1,v2...] [-o file.json] [regexp...]
+ * </pre>
+ *
+ * <ul>
+ * <li>-l lists the benchmarks and their default parameters,</li>
+ * <li>-wi is the number of warmup iterations (default 3),</li>
+ * <li>-i is the number of measurement iterations (default 5),</li>
+ * <li>-r is the duration of each iteration in milliseconds (default 1000),</li>
+ * <li>-p overrides the values of a parameter, for instance
+ * {@code -p size=1000,100000,1000000},</li>
+ * <li>-o writes the results as JSON to the given file,</li>
+ * <li>the remaining arguments are regular expressions, only the benchmarks
+ * whose name contains a match are run.</li>
+ * </ul>
+ * The JSON output has the same layout as JMH's, so results from two releases
+ * can be compared with the usual tools.
+ * <p>
+ * To run from the module directory:
+ *
+ * <pre>
+ * mvn dependency:build-classpath -Dmdep.outputFile=target/classpath.txt
+ * java -cp target/classes:`cat target/classpath.txt` \
+ *     org.apache.chemistry.benchmarks.BenchmarkRunner -o target/results.json
+ * </pre>
+ */
+public class BenchmarkRunner {
+
+    public static final List<Class<? extends Benchmark>> BENCHMARKS = new ArrayList<Class<? extends Benchmark>>();
+
+    static {
+        BENCHMARKS.add(SimpleRepositoryBenchmarks.CreateDeleteDocument.class);
+        BENCHMARKS.add(SimpleRepositoryBenchmarks.GetProperties.class);
+        BENCHMARKS.add(SimpleRepositoryBenchmarks.UpdateProperties.class);
+        BENCHMARKS.add(SimpleRepositoryBenchmarks.GetChildren.class);
+        BENCHMARKS.add(SimpleRepositoryBenchmarks.GetObjectByPath.class);
+        BENCHMARKS.add(SimpleRepositoryBenchmarks.Query.class);
+        BENCHMARKS.add(ValueBenchmarks.CalendarFromAtomPub.class);
+        BENCHMARKS.add(ValueBenchmarks.CalendarToAtomPub.class);
+        BENCHMARKS.add(ValueBenchmarks.ValueAdapterRead.class);
+        BENCHMARKS.add(ValueBenchmarks.ValueAdapterWrite.class);
+        BENCHMARKS.add(AtomPubWriteBenchmarks.WritePropertiesElement.class);
+        BENCHMARKS.add(AtomPubWriteBenchmarks.WriteObjectElement.class);
+        BENCHMARKS.add(AtomPubReadBenchmarks.ReadObjectFeed.class);
+        BENCHMARKS.add(AtomPubReadBenchmarks.ReadObjectEntry.class);
+        BENCHMARKS.add(AtomPubClientServerBenchmarks.GetChildren.class);
+        BENCHMARKS.add(AtomPubClientServerBenchmarks.GetObjectByPath.class);
+        BENCHMARKS.add(AtomPubClientServerBenchmarks.CreateDeleteDocument.class);
+    }
+
+    protected int warmupIterations = 3;
+
+    protected int iterations = 5;
+
+    protected long iterationMillis = 1000;
+
+    protected final Map<String, String[]> parameters = new HashMap<String, String[]>();
+
+    protected final List<Pattern> includes = new ArrayList<Pattern>();
+
+    public static void main(String[] args) throws Exception {
+        BenchmarkRunner runner = new BenchmarkRunner();
+        File output = null;
+        boolean list = false;
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (arg.equals("-l")) {
+                list = true;
+            } else if (arg.equals("-wi")) {
+                runner.warmupIterations = Integer.parseInt(args[++i]);
+            } else if (arg.equals("-i")) {
+                runner.iterations = Integer.parseInt(args[++i]);
+            } else if (arg.equals("-r")) {
+                runner.iterationMillis = Long.parseLong(args[++i]);
+            } else if (arg.equals("-p")) {
+                String p = args[++i];
+                int eq = p.indexOf('=');
+                if (eq <= 0) {
+                    throw new IllegalArgumentException("Bad parameter: " + p);
+                }
+                runner.parameters.put(p.substring(0, eq),
+                        p.substring(eq + 1).split(","));
+            } else if (arg.equals("-o")) {
+                output = new File(args[++i]);
+            } else if (arg.startsWith("-")) {
+                throw new IllegalArgumentException("Unknown option: " + arg);
+            } else {
+                runner.includes.add(Pattern.compile(arg));
+            }
+        }
+        if (list) {
+            for (Benchmark benchmark : runner.getBenchmarks()) {
+                System.out.println(benchmark.getName() + " "
+                        + toString(benchmark.getDefaultParameters()));
+            }
+            return;
+        }
+        List<BenchmarkResult> results = runner.run();
+        if (output != null) {
+            writeJSON(results, output);
+        }
+    }
+
+    public List<Benchmark> getBenchmarks() throws Exception {
+        List<Benchmark> list = new ArrayList<Benchmark>();
+        for (Class<? extends Benchmark> klass : BENCHMARKS) {
+            Benchmark benchmark = klass.newInstance();
+            if (includes.isEmpty()) {
+                list.add(benchmark);
+                continue;
+            }
+            for (Pattern pattern : includes) {
+                if (pattern.matcher(benchmark.getName()).find()) {
+                    list.add(benchmark);
+                    break;
+                }
+            }
+        }
+        return list;
+    }
+
+    public List<BenchmarkResult> run() throws Exception {
+        List<BenchmarkResult> results = new ArrayList<BenchmarkResult>();
+        for (Benchmark benchmark : getBenchmarks()) {
+            for (Map<String, String> params : getCombinations(benchmark)) {
+                BenchmarkResult result = run(
+                        benchmark.getClass().newInstance(), params);
+                results.add(result);
+                System.out.println(String.format("%-50s %-25s %15.3f +- %.3f ops/s",
+                        result.benchmark, params.toString(),
+                        Double.valueOf(result.getScore()),
+                        Double.valueOf(result.getScoreError())));
+            }
+        }
+        return results;
+    }
+
+    protected BenchmarkResult run(Benchmark benchmark,
+            Map<String, String> params) throws Exception {
+        Blackhole bh = new Blackhole();
+        benchmark.setUp(params);
+        try {
+            for (int i = 0; i < warmupIterations; i++) {
+                iteration(benchmark, bh);
+            }
+            double[] rawData = new double[iterations];
+            for (int i = 0; i < iterations; i++) {
+                rawData[i] = iteration(benchmark, bh);
+            }
+            return new BenchmarkResult(benchmark.getName(), params,
+                    warmupIterations, rawData);
+        } finally {
+            benchmark.tearDown();
+        }
+    }
+
+    /**
+     * Runs the benchmark for one iteration and returns the number of
+     * operations per second.
+     */
+    protected double iteration(Benchmark benchmark, Blackhole bh)
+            throws Exception {
+        long duration = iterationMillis * 1000000L;
+        long start = System.nanoTime();
+        long end = start + duration;
+        long ops = 0;
+        long now;
+        do {
+            benchmark.run(bh);
+            ops++;
+            now = System.nanoTime();
+        } while (now < end);
+        return ops * 1e9 / (now - start);
+    }
+
+    /**
+     * Computes all the combinations of parameter values for a benchmark,
+     * applying the values given on the command line.
+     */
+    protected List<Map<String, String>> getCombinations(Benchmark benchmark) {
+        List<Map<String, String>> combinations = new ArrayList<Map<String, String>>();
+        combinations.add(new LinkedHashMap<String, String>());
+        Map<String, String[]> defaults = new TreeMap<String, String[]>(
+                benchmark.getDefaultParameters());
+        for (Map.Entry<String, String[]> es : defaults.entrySet()) {
+            String name = es.getKey();
+            String[] values = parameters.get(name);
+            if (values == null) {
+                values = es.getValue();
+            }
+            List<Map<String, String>> next = new ArrayList<Map<String, String>>();
+            for (Map<String, String> combination : combinations) {
+                for (String value : values) {
+                    Map<String, String> map = new LinkedHashMap<String, String>(
+                            combination);
+                    map.put(name, value);
+                    next.add(map);
+                }
+            }
+            combinations = next;
+        }
+        return combinations;
+    }
+
+    public static void writeJSON(List<BenchmarkResult> results, File file)
+            throws Exception {
+        StringBuilder buf = new StringBuilder();
+        buf.append("[\n");
+        for (int i = 0; i < results.size(); i++) {
+            if (i > 0) {
+                buf.append(",\n");
+            }
+            results.get(i).toJSON(buf);
+        }
+        buf.append("\n]\n");
+        Writer writer = new OutputStreamWriter(new FileOutputStream(file),
+                "UTF-8");
+        try {
+            writer.write(buf.toString());
+        } finally {
+            writer.close();
+        }
+    }
+
+    protected static String toString(Map<String, String[]> params) {
+        StringBuilder buf = new StringBuilder();
+        for (Map.Entry<String, String[]> es : new TreeMap<String, String[]>(
+                params).entrySet()) {
+            if (buf.length() > 0) {
+                buf.append(' ');
+            }
+            buf.append(es.getKey()).append('=').append(
+                    Arrays.asList(es.getValue()));
+        }
+        return buf.toString();
+    }
+
+}
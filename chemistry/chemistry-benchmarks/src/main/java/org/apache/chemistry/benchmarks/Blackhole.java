@@ -0,0 +1,57 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.chemistry.benchmarks;
+
+/**
+ * Consumes benchmark results so that the JIT cannot treat the benchmarked
+ * code as dead.
+ */
+public class Blackhole {
+
+    private volatile int sink;
+
+    private int count;
+
+    public void consume(Object o) {
+        count++;
+        if (o != null) {
+            sink ^= System.identityHashCode(o);
+        }
+    }
+
+    public void consume(int i) {
+        count++;
+        sink ^= i;
+    }
+
+    public void consume(long l) {
+        count++;
+        sink ^= (int) (l ^ (l >>> 32));
+    }
+
+    public void consume(boolean b) {
+        count++;
+        if (b) {
+            sink ^= 1;
+        }
+    }
+
+    /**
+     * The number of values consumed so far.
+     */
+    public int getCount() {
+        return count;
+    }
+
+}
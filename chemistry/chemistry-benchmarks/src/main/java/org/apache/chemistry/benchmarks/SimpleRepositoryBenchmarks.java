@@ -0,0 +1,182 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.chemistry.benchmarks;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.chemistry.ObjectEntry;
+import org.apache.chemistry.ObjectId;
+import org.apache.chemistry.Paging;
+import org.apache.chemistry.Repository;
+import org.apache.chemistry.SPI;
+
+/**
+ * Benchmarks of the in-memory repository, called directly through the SPI.
+ */
+public class SimpleRepositoryBenchmarks {
+
+    // Utility class
+    private SimpleRepositoryBenchmarks() {
+    }
+
+    public static final int SAMPLES = 1000;
+
+    /**
+     * Base class, sets up a repository of {@code size} documents.
+     */
+    public abstract static class RepositoryBenchmark extends Benchmark {
+
+        protected int size;
+
+        protected Repository repository;
+
+        protected SPI spi;
+
+        protected List<String> paths;
+
+        protected List<ObjectId> ids;
+
+        protected int next;
+
+        @Override
+        public Map<String, String[]> getDefaultParameters() {
+            return Collections.singletonMap("size", new String[] { "1000",
+                    "100000" });
+        }
+
+        @Override
+        public void setUp(Map<String, String> params) throws Exception {
+            super.setUp(params);
+            size = getIntParameter("size");
+            repository = BenchmarkHelper.makeRepository(size);
+            spi = repository.getSPI(null);
+            paths = BenchmarkHelper.samplePaths(size, Math.min(size, SAMPLES));
+            ids = new ArrayList<ObjectId>(paths.size());
+            for (String path : paths) {
+                ids.add(spi.getObjectByPath(path, null));
+            }
+        }
+
+        @Override
+        public void tearDown() throws Exception {
+            spi.close();
+        }
+
+        protected int nextIndex() {
+            int n = next++;
+            if (next == paths.size()) {
+                next = 0;
+            }
+            return n;
+        }
+
+    }
+
+    /**
+     * Creates then deletes a document, keeping the repository size constant.
+     */
+    public static class CreateDeleteDocument extends RepositoryBenchmark {
+
+        protected ObjectId folder;
+
+        @Override
+        public void setUp(Map<String, String> params) throws Exception {
+            super.setUp(params);
+            folder = spi.getObjectByPath(BenchmarkHelper.folderPath(0), null);
+        }
+
+        @Override
+        public void run(Blackhole bh) throws Exception {
+            Map<String, Serializable> props = BenchmarkHelper.documentProperties(size);
+            ObjectId id = spi.createDocument(props, folder, null, null);
+            spi.deleteObject(id, true);
+            bh.consume(id);
+        }
+    }
+
+    public static class GetProperties extends RepositoryBenchmark {
+        @Override
+        public void run(Blackhole bh) throws Exception {
+            bh.consume(spi.getProperties(ids.get(nextIndex()), null));
+        }
+    }
+
+    public static class UpdateProperties extends RepositoryBenchmark {
+        @Override
+        public void run(Blackhole bh) throws Exception {
+            int n = nextIndex();
+            Map<String, Serializable> props = Collections.singletonMap(
+                    "title", (Serializable) ("new title " + n));
+            bh.consume(spi.updateProperties(ids.get(n), null, props));
+        }
+    }
+
+    /**
+     * Lists a full folder of {@link BenchmarkHelper#DOCUMENTS_PER_FOLDER}
+     * documents.
+     */
+    public static class GetChildren extends RepositoryBenchmark {
+
+        protected List<ObjectId> folders;
+
+        @Override
+        public void setUp(Map<String, String> params) throws Exception {
+            super.setUp(params);
+            folders = new ArrayList<ObjectId>();
+            int n = (size + BenchmarkHelper.DOCUMENTS_PER_FOLDER - 1)
+                    / BenchmarkHelper.DOCUMENTS_PER_FOLDER;
+            for (int i = 0; i < n && i < SAMPLES; i++) {
+                folders.add(spi.getObjectByPath(
+                        BenchmarkHelper.folderPath(i), null));
+            }
+        }
+
+        @Override
+        public void run(Blackhole bh) throws Exception {
+            ObjectId folder = folders.get(nextIndex() % folders.size());
+            List<ObjectEntry> children = spi.getChildren(folder, null, null,
+                    new Paging(BenchmarkHelper.DOCUMENTS_PER_FOLDER, 0));
+            for (ObjectEntry child : children) {
+                bh.consume(child.getId());
+            }
+        }
+    }
+
+    public static class GetObjectByPath extends RepositoryBenchmark {
+        @Override
+        public void run(Blackhole bh) throws Exception {
+            bh.consume(spi.getObjectByPath(paths.get(nextIndex()), null));
+        }
+    }
+
+    /**
+     * Queries a document by title, this scans the whole repository.
+     */
+    public static class Query extends RepositoryBenchmark {
+        @Override
+        public void run(Blackhole bh) throws Exception {
+            String title = "title " + (nextIndex() * (long) size / paths.size());
+            String statement = "SELECT * FROM doc WHERE title = '" + title
+                    + "'";
+            List<ObjectEntry> res = spi.query(statement, false, null,
+                    new Paging(10, 0));
+            bh.consume(res.size());
+        }
+    }
+
+}
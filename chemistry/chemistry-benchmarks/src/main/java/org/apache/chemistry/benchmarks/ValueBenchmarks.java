@@ -0,0 +1,99 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.chemistry.benchmarks;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.util.Calendar;
+
+import org.apache.chemistry.atompub.ValueAdapter;
+import org.apache.chemistry.util.GregorianCalendar;
+
+/**
+ * Benchmarks of the value conversions done for every property on the wire.
+ */
+public class ValueBenchmarks {
+
+    // Utility class
+    private ValueBenchmarks() {
+    }
+
+    protected static final String[] DATES = { "2009-03-17T17:55:08+01:00",
+            "2009-03-17T17:55:08.123Z", "2010-01-01T00:00:00.000-05:00",
+            "2009-12-31T23:59:59.999+14:00" };
+
+    public static class CalendarFromAtomPub extends Benchmark {
+
+        protected int next;
+
+        @Override
+        public void run(Blackhole bh) throws Exception {
+            bh.consume(GregorianCalendar.fromAtomPub(DATES[next++ & 3]));
+        }
+    }
+
+    public static class CalendarToAtomPub extends Benchmark {
+
+        protected final Calendar[] calendars = new Calendar[DATES.length];
+
+        protected int next;
+
+        public CalendarToAtomPub() {
+            for (int i = 0; i < DATES.length; i++) {
+                calendars[i] = GregorianCalendar.fromAtomPub(DATES[i]);
+            }
+        }
+
+        @Override
+        public void run(Blackhole bh) throws Exception {
+            bh.consume(GregorianCalendar.toAtomPub(calendars[next++ & 3]));
+        }
+    }
+
+    /**
+     * Reads one value of each common property type.
+     */
+    public static class ValueAdapterRead extends Benchmark {
+        @Override
+        public void run(Blackhole bh) throws Exception {
+            bh.consume(ValueAdapter.STRING.readValue("some string"));
+            bh.consume(ValueAdapter.INTEGER.readValue("123456"));
+            bh.consume(ValueAdapter.DECIMAL.readValue("1234.5678"));
+            bh.consume(ValueAdapter.BOOLEAN.readValue("true"));
+            bh.consume(ValueAdapter.DATETIME.readValue(DATES[1]));
+            bh.consume(ValueAdapter.ID.readValue("1234-5678-9abc"));
+        }
+    }
+
+    /**
+     * Writes one value of each common property type.
+     */
+    public static class ValueAdapterWrite extends Benchmark {
+
+        protected final Serializable date = GregorianCalendar.fromAtomPub(DATES[1]);
+
+        protected final Serializable decimal = new BigDecimal("1234.5678");
+
+        @Override
+        public void run(Blackhole bh) throws Exception {
+            bh.consume(ValueAdapter.STRING.writeValue("some string"));
+            bh.consume(ValueAdapter.INTEGER.writeValue(Integer.valueOf(123456)));
+            bh.consume(ValueAdapter.DECIMAL.writeValue(decimal));
+            bh.consume(ValueAdapter.BOOLEAN.writeValue(Boolean.TRUE));
+            bh.consume(ValueAdapter.DATETIME.writeValue(date));
+            bh.consume(ValueAdapter.ID.writeValue("1234-5678-9abc"));
+        }
+    }
+
+}
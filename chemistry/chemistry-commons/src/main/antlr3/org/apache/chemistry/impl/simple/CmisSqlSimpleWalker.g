@@ -49,6 +49,7 @@ options {
 package org.apache.chemistry.impl.simple;
 
 import java.math.BigDecimal;
+import java.util.Map;
 
 import org.apache.chemistry.impl.simple.SimpleData;
 import org.apache.chemistry.util.GregorianCalendar;
@@ -57,6 +58,9 @@ import org.apache.chemistry.util.GregorianCalendar;
 @members {
     public SimpleData data;
 
+    /** For a join, the data of each table by qualifier, or null. */
+    public Map<String, SimpleData> datas;
+
     public SimpleConnection connection;
 
     public String errorMessage;
@@ -72,9 +76,10 @@ import org.apache.chemistry.util.GregorianCalendar;
     }
 }
 
-query [SimpleData d, SimpleConnection conn] returns [String tableName, boolean matches]
+query [SimpleData d, Map<String, SimpleData> ds, SimpleConnection conn] returns [String tableName, boolean matches]
 @init {
     data = $d;
+    datas = $ds;
     connection = $conn;
 }:
     ^(SELECT DISTINCT? select_list from_clause where_clause order_by_clause?)
@@ -111,8 +116,13 @@ column_reference returns [Object value]:
     ^(COL qualifier? column_name)
       {
           String col = $column_name.start.getText();
+          SimpleData d = data;
+          if ($qualifier.start != null && datas != null) {
+              // null for the missing side of an outer join
+              d = datas.get($qualifier.start.getText().toLowerCase());
+          }
           // TODO should use query name
-          $value = data.getIgnoreCase(col); // TODO error if unknown prop
+          $value = d == null ? null : connection.getQueryValue(d, col); // TODO error if unknown prop
       }
     ;
 
@@ -134,8 +144,8 @@ from_clause returns [String tableName]:
 table_reference returns [String tableName]:
     one_table table_join*
       {
+          // joins are done by SimpleConnection
           $tableName = $one_table.tableName;
-          // TODO joins
       }
     ;
 
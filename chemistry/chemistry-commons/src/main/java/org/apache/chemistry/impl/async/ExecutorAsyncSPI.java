@@ -0,0 +1,320 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.chemistry.impl.async;
+
+import java.io.InputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.chemistry.AsyncSPI;
+import org.apache.chemistry.ContentStream;
+import org.apache.chemistry.Inclusion;
+import org.apache.chemistry.ListPage;
+import org.apache.chemistry.ObjectEntry;
+import org.apache.chemistry.ObjectId;
+import org.apache.chemistry.Paging;
+import org.apache.chemistry.Repository;
+import org.apache.chemistry.SPI;
+import org.apache.chemistry.Tree;
+import org.apache.chemistry.impl.simple.SimpleContentStream;
+
+/**
+ * An {@link AsyncSPI} running the calls on a bounded thread pool, each with
+ * one of a pool of {@link SPI} connections to the repository.
+ * <p>
+ * SPI connections are opened as needed and reused by later calls, so there
+ * are never more of them than calls running at the same time. With the
+ * pool owned by this class, at most {@code threads} calls run at once and
+ * at most {@code maxQueued} wait for a thread; further calls are rejected
+ * with a {@link RejectedExecutionException}.
+ */
+public class ExecutorAsyncSPI implements AsyncSPI {
+
+    public static final int DEFAULT_THREADS = 8;
+
+    public static final int DEFAULT_MAX_QUEUED = 1000;
+
+    protected final Repository repository;
+
+    protected final Map<String, Serializable> params;
+
+    protected final ExecutorService executor;
+
+    protected final boolean ownExecutor;
+
+    /** SPI connections not used by a running call. */
+    protected final Queue<SPI> idle = new ConcurrentLinkedQueue<SPI>();
+
+    /** Calls submitted and not yet done. */
+    protected final Map<AsyncTask<?>, Boolean> tasks = new ConcurrentHashMap<AsyncTask<?>, Boolean>();
+
+    protected volatile boolean closed;
+
+    public ExecutorAsyncSPI(Repository repository,
+            Map<String, Serializable> params) {
+        this(repository, params, DEFAULT_THREADS, DEFAULT_MAX_QUEUED);
+    }
+
+    /**
+     * Creates an asynchronous SPI running calls on its own thread pool.
+     *
+     * @param repository the repository
+     * @param params the connection parameters
+     * @param threads the maximum number of calls running at the same time
+     * @param maxQueued the maximum number of calls waiting for a thread
+     */
+    public ExecutorAsyncSPI(Repository repository,
+            Map<String, Serializable> params, int threads, int maxQueued) {
+        if (threads < 1 || maxQueued < 1) {
+            throw new IllegalArgumentException("threads=" + threads
+                    + " maxQueued=" + maxQueued);
+        }
+        this.repository = repository;
+        this.params = params;
+        executor = new ThreadPoolExecutor(threads, threads, 0,
+                TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(
+                        maxQueued), new AsyncThreadFactory(
+                        getClass().getSimpleName()));
+        ownExecutor = true;
+    }
+
+    /**
+     * Creates an asynchronous SPI running calls on an existing executor,
+     * which is not shut down when this is closed.
+     *
+     * @param repository the repository
+     * @param params the connection parameters
+     * @param executor the executor
+     */
+    public ExecutorAsyncSPI(Repository repository,
+            Map<String, Serializable> params, ExecutorService executor) {
+        this.repository = repository;
+        this.params = params;
+        this.executor = executor;
+        ownExecutor = false;
+    }
+
+    public <T> Future<T> submit(final Call<T> call) {
+        if (closed) {
+            throw new IllegalStateException("Closed");
+        }
+        AsyncTask<T> task = newTask(new Callable<T>() {
+            public T call() throws Exception {
+                SPI spi = acquire();
+                try {
+                    return call.call(spi);
+                } finally {
+                    release(spi);
+                }
+            }
+        });
+        tasks.put(task, Boolean.TRUE);
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            tasks.remove(task);
+            throw e;
+        }
+        return task;
+    }
+
+    /**
+     * Creates the future for a call. Subclasses may hook into the execution
+     * or cancellation of calls here.
+     */
+    protected <T> AsyncTask<T> newTask(Callable<T> callable) {
+        return new AsyncTask<T>(callable);
+    }
+
+    protected SPI acquire() {
+        SPI spi = idle.poll();
+        return spi == null ? repository.getSPI(params) : spi;
+    }
+
+    protected void release(SPI spi) {
+        idle.add(spi);
+        // close may have drained the queue before we added to it
+        if (closed && idle.remove(spi)) {
+            spi.close();
+        }
+    }
+
+    public void close() {
+        closed = true;
+        if (ownExecutor) {
+            executor.shutdown();
+        }
+        for (AsyncTask<?> task : new ArrayList<AsyncTask<?>>(tasks.keySet())) {
+            task.cancel(true);
+        }
+        SPI spi;
+        while ((spi = idle.poll()) != null) {
+            spi.close();
+        }
+    }
+
+    /*
+     * ----- Shortcuts -----
+     */
+
+    public Future<ObjectEntry> getProperties(final ObjectId object,
+            final Inclusion inclusion) {
+        return submit(new Call<ObjectEntry>() {
+            public ObjectEntry call(SPI spi) {
+                return spi.getProperties(object, inclusion);
+            }
+        });
+    }
+
+    public Future<ObjectEntry> getObjectByPath(final String path,
+            final Inclusion inclusion) {
+        return submit(new Call<ObjectEntry>() {
+            public ObjectEntry call(SPI spi) {
+                return spi.getObjectByPath(path, inclusion);
+            }
+        });
+    }
+
+    public Future<List<ObjectEntry>> getObjects(
+            final Collection<ObjectId> objects, final Inclusion inclusion) {
+        return submit(new Call<List<ObjectEntry>>() {
+            public List<ObjectEntry> call(SPI spi) {
+                return spi.getObjects(objects, inclusion);
+            }
+        });
+    }
+
+    public Future<ListPage<ObjectEntry>> getChildren(final ObjectId folder,
+            final Inclusion inclusion, final String orderBy,
+            final Paging paging) {
+        return submit(new Call<ListPage<ObjectEntry>>() {
+            public ListPage<ObjectEntry> call(SPI spi) {
+                return spi.getChildren(folder, inclusion, orderBy, paging);
+            }
+        });
+    }
+
+    public Future<Tree<ObjectEntry>> getDescendants(final ObjectId folder,
+            final int depth, final String orderBy, final Inclusion inclusion) {
+        return submit(new Call<Tree<ObjectEntry>>() {
+            public Tree<ObjectEntry> call(SPI spi) {
+                return spi.getDescendants(folder, depth, orderBy, inclusion);
+            }
+        });
+    }
+
+    public Future<ContentStream> getContentStream(final ObjectId object,
+            final String contentStreamId) {
+        return submit(new Call<ContentStream>() {
+            public ContentStream call(SPI spi) throws Exception {
+                ContentStream cs = spi.getContentStream(object,
+                        contentStreamId);
+                if (cs == null) {
+                    return null;
+                }
+                // the stream may still be read from the connection, which
+                // goes back to the pool when this returns
+                InputStream in = cs.getStream();
+                try {
+                    return new SimpleContentStream(in, cs.getMimeType(),
+                            cs.getFileName());
+                } finally {
+                    if (in != null) {
+                        in.close();
+                    }
+                }
+            }
+        });
+    }
+
+    public Future<ListPage<ObjectEntry>> query(final String statement,
+            final boolean searchAllVersions, final Inclusion inclusion,
+            final Paging paging) {
+        return submit(new Call<ListPage<ObjectEntry>>() {
+            public ListPage<ObjectEntry> call(SPI spi) {
+                return spi.query(statement, searchAllVersions, inclusion,
+                        paging);
+            }
+        });
+    }
+
+    public Future<ObjectId> updateProperties(final ObjectId object,
+            final String changeToken,
+            final Map<String, Serializable> properties) {
+        return submit(new Call<ObjectId>() {
+            public ObjectId call(SPI spi) throws Exception {
+                return spi.updateProperties(object, changeToken, properties);
+            }
+        });
+    }
+
+    public Future<Void> deleteObject(final ObjectId object,
+            final boolean allVersions) {
+        return submit(new Call<Void>() {
+            public Void call(SPI spi) throws Exception {
+                spi.deleteObject(object, allVersions);
+                return null;
+            }
+        });
+    }
+
+    /**
+     * The future of a submitted call.
+     */
+    protected class AsyncTask<T> extends FutureTask<T> {
+
+        public AsyncTask(Callable<T> callable) {
+            super(callable);
+        }
+
+        @Override
+        protected void done() {
+            tasks.remove(this);
+        }
+    }
+
+    protected static class AsyncThreadFactory implements ThreadFactory {
+
+        protected final String name;
+
+        protected final AtomicInteger count = new AtomicInteger();
+
+        public AsyncThreadFactory(String name) {
+            this.name = name;
+        }
+
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, name + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+
+}
@@ -160,6 +160,16 @@ public abstract class BaseRepository implements Repository, RepositoryInfo,
         return typeManager.getType(typeId);
     }
 
+    /**
+     * Gets the version of the type system, which changes each time a type is
+     * added.
+     *
+     * @return the type system version
+     */
+    public long getTypesVersion() {
+        return ((SimpleTypeManager) typeManager).getVersion();
+    }
+
     public PropertyDefinition getPropertyDefinition(String id) {
         return typeManager.getPropertyDefinition(id);
     }
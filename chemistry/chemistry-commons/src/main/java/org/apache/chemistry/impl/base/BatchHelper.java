@@ -0,0 +1,64 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.chemistry.impl.base;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.chemistry.Inclusion;
+import org.apache.chemistry.NameConstraintViolationException;
+import org.apache.chemistry.ObjectEntry;
+import org.apache.chemistry.ObjectId;
+import org.apache.chemistry.SPI;
+import org.apache.chemistry.UpdateConflictException;
+
+/**
+ * Implementations of the batch methods of {@link SPI} calling the
+ * single-object methods in turn, for SPIs that cannot do better.
+ */
+public class BatchHelper {
+
+    private BatchHelper() {
+    }
+
+    public static List<ObjectEntry> getObjects(SPI spi,
+            Collection<ObjectId> objects, Inclusion inclusion) {
+        List<ObjectEntry> res = new ArrayList<ObjectEntry>(objects.size());
+        for (ObjectId object : objects) {
+            res.add(spi.getProperties(object, inclusion));
+        }
+        return res;
+    }
+
+    public static List<ObjectId> updateProperties(SPI spi,
+            Map<ObjectId, Map<String, Serializable>> properties)
+            throws NameConstraintViolationException, UpdateConflictException {
+        List<ObjectId> res = new ArrayList<ObjectId>(properties.size());
+        for (Map.Entry<ObjectId, Map<String, Serializable>> es : properties.entrySet()) {
+            res.add(spi.updateProperties(es.getKey(), null, es.getValue()));
+        }
+        return res;
+    }
+
+    public static void deleteObjects(SPI spi, Collection<ObjectId> objects,
+            boolean allVersions) throws UpdateConflictException {
+        for (ObjectId object : objects) {
+            spi.deleteObject(object, allVersions);
+        }
+    }
+
+}
@@ -0,0 +1,122 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.chemistry.impl.base;
+
+import java.io.Serializable;
+import java.net.URI;
+import java.util.Collection;
+import java.util.Map;
+
+import org.apache.chemistry.Connection;
+import org.apache.chemistry.ListPage;
+import org.apache.chemistry.Paging;
+import org.apache.chemistry.PropertyDefinition;
+import org.apache.chemistry.Repository;
+import org.apache.chemistry.RepositoryInfo;
+import org.apache.chemistry.SPI;
+import org.apache.chemistry.Type;
+
+/**
+ * A {@link Repository} forwarding all calls to another {@link Repository}.
+ * <p>
+ * Subclasses override the methods they want to decorate, usually
+ * {@link #getSPI} to return a {@link DelegatingSPI}.
+ */
+public class DelegatingRepository implements Repository {
+
+    protected final Repository repository;
+
+    public DelegatingRepository(Repository repository) {
+        this.repository = repository;
+    }
+
+    public Repository getDelegate() {
+        return repository;
+    }
+
+    /**
+     * Gets the innermost repository, unwrapping all delegating repositories.
+     */
+    public static Repository unwrap(Repository repository) {
+        while (repository instanceof DelegatingRepository) {
+            repository = ((DelegatingRepository) repository).getDelegate();
+        }
+        return repository;
+    }
+
+    public String getId() {
+        return repository.getId();
+    }
+
+    public String getName() {
+        return repository.getName();
+    }
+
+    public URI getThinClientURI() {
+        return repository.getThinClientURI();
+    }
+
+    public RepositoryInfo getInfo() {
+        return repository.getInfo();
+    }
+
+    public Connection getConnection(Map<String, Serializable> params) {
+        return repository.getConnection(params);
+    }
+
+    public SPI getSPI(Map<String, Serializable> params) {
+        return repository.getSPI(params);
+    }
+
+    public <T> T getExtension(Class<T> klass) {
+        return repository.getExtension(klass);
+    }
+
+    /*
+     * ----- TypeManager -----
+     */
+
+    public void addType(Type type) {
+        repository.addType(type);
+    }
+
+    public Type getType(String typeId) {
+        return repository.getType(typeId);
+    }
+
+    public PropertyDefinition getPropertyDefinition(String id) {
+        return repository.getPropertyDefinition(id);
+    }
+
+    public Collection<Type> getTypes() {
+        return repository.getTypes();
+    }
+
+    public Collection<Type> getTypeDescendants(String typeId) {
+        return repository.getTypeDescendants(typeId);
+    }
+
+    public ListPage<Type> getTypeChildren(String typeId,
+            boolean includePropertyDefinitions, Paging paging) {
+        return repository.getTypeChildren(typeId, includePropertyDefinitions,
+                paging);
+    }
+
+    public Collection<Type> getTypeDescendants(String typeId, int depth,
+            boolean includePropertyDefinitions) {
+        return repository.getTypeDescendants(typeId, depth,
+                includePropertyDefinitions);
+    }
+
+}
@@ -0,0 +1,335 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.chemistry.impl.base;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.xml.namespace.QName;
+
+import org.apache.chemistry.ACE;
+import org.apache.chemistry.ACLPropagation;
+import org.apache.chemistry.ContentAlreadyExistsException;
+import org.apache.chemistry.ContentStream;
+import org.apache.chemistry.Inclusion;
+import org.apache.chemistry.ListPage;
+import org.apache.chemistry.NameConstraintViolationException;
+import org.apache.chemistry.ObjectEntry;
+import org.apache.chemistry.ObjectId;
+import org.apache.chemistry.Paging;
+import org.apache.chemistry.Rendition;
+import org.apache.chemistry.Repository;
+import org.apache.chemistry.SPI;
+import org.apache.chemistry.Tree;
+import org.apache.chemistry.Unfiling;
+import org.apache.chemistry.UpdateConflictException;
+import org.apache.chemistry.VersioningState;
+
+/**
+ * An {@link SPI} forwarding all calls to another {@link SPI}.
+ * <p>
+ * Subclasses override the methods they want to decorate.
+ */
+public class DelegatingSPI implements SPI {
+
+    protected final SPI spi;
+
+    protected final Repository repository;
+
+    /**
+     * Creates a delegating SPI.
+     *
+     * @param spi the SPI to delegate to
+     * @param repository the repository returned by {@link #getRepository},
+     *            usually the one that created this SPI
+     */
+    public DelegatingSPI(SPI spi, Repository repository) {
+        this.spi = spi;
+        this.repository = repository;
+    }
+
+    public SPI getDelegate() {
+        return spi;
+    }
+
+    public Repository getRepository() {
+        return repository;
+    }
+
+    public void close() {
+        spi.close();
+    }
+
+    public ObjectId newObjectId(String id) {
+        return spi.newObjectId(id);
+    }
+
+    public ObjectEntry newObjectEntry(String typeId) {
+        return spi.newObjectEntry(typeId);
+    }
+
+    /*
+     * ----- Navigation Services -----
+     */
+
+    public Tree<ObjectEntry> getFolderTree(ObjectId folder, int depth,
+            Inclusion inclusion) {
+        return spi.getFolderTree(folder, depth, inclusion);
+    }
+
+    public Tree<ObjectEntry> getDescendants(ObjectId folder, int depth,
+            String orderBy, Inclusion inclusion) {
+        return spi.getDescendants(folder, depth, orderBy, inclusion);
+    }
+
+    public ListPage<ObjectEntry> getChildren(ObjectId folder,
+            Inclusion inclusion, String orderBy, Paging paging) {
+        return spi.getChildren(folder, inclusion, orderBy, paging);
+    }
+
+    public ObjectEntry getFolderParent(ObjectId folder, String filter) {
+        return spi.getFolderParent(folder, filter);
+    }
+
+    public Collection<ObjectEntry> getObjectParents(ObjectId object,
+            String filter) {
+        return spi.getObjectParents(object, filter);
+    }
+
+    public ListPage<ObjectEntry> getCheckedOutDocuments(ObjectId folder,
+            Inclusion inclusion, Paging paging) {
+        return spi.getCheckedOutDocuments(folder, inclusion, paging);
+    }
+
+    /*
+     * ----- Object Services -----
+     */
+
+    public ObjectId createDocument(Map<String, Serializable> properties,
+            ObjectId folder, ContentStream contentStream,
+            VersioningState versioningState)
+            throws NameConstraintViolationException {
+        return spi.createDocument(properties, folder, contentStream,
+                versioningState);
+    }
+
+    public ObjectId createDocumentFromSource(ObjectId source, ObjectId folder,
+            Map<String, Serializable> properties,
+            VersioningState versioningState)
+            throws NameConstraintViolationException {
+        return spi.createDocumentFromSource(source, folder, properties,
+                versioningState);
+    }
+
+    public ObjectId createFolder(Map<String, Serializable> properties,
+            ObjectId folder) throws NameConstraintViolationException {
+        return spi.createFolder(properties, folder);
+    }
+
+    public ObjectId createRelationship(Map<String, Serializable> properties) {
+        return spi.createRelationship(properties);
+    }
+
+    public ObjectId createPolicy(Map<String, Serializable> properties,
+            ObjectId folder) {
+        return spi.createPolicy(properties, folder);
+    }
+
+    public Set<QName> getAllowableActions(ObjectId object) {
+        return spi.getAllowableActions(object);
+    }
+
+    public ObjectEntry getObject(ObjectId object, Inclusion inclusion) {
+        return spi.getObject(object, inclusion);
+    }
+
+    public ObjectEntry getProperties(ObjectId object, Inclusion inclusion) {
+        return spi.getProperties(object, inclusion);
+    }
+
+    public ObjectEntry getObjectByPath(String path, Inclusion inclusion) {
+        return spi.getObjectByPath(path, inclusion);
+    }
+
+    public List<ObjectEntry> getObjects(Collection<ObjectId> objects,
+            Inclusion inclusion) {
+        return spi.getObjects(objects, inclusion);
+    }
+
+    public List<Rendition> getRenditions(ObjectId object, Inclusion inclusion,
+            Paging paging) {
+        return spi.getRenditions(object, inclusion, paging);
+    }
+
+    public boolean hasContentStream(ObjectId document) {
+        return spi.hasContentStream(document);
+    }
+
+    public ContentStream getContentStream(ObjectId object,
+            String contentStreamId) throws IOException {
+        return spi.getContentStream(object, contentStreamId);
+    }
+
+    public ObjectId setContentStream(ObjectId document,
+            ContentStream contentStream, boolean overwrite)
+            throws IOException, ContentAlreadyExistsException,
+            UpdateConflictException {
+        return spi.setContentStream(document, contentStream, overwrite);
+    }
+
+    public ObjectId deleteContentStream(ObjectId document)
+            throws UpdateConflictException {
+        return spi.deleteContentStream(document);
+    }
+
+    public ObjectId updateProperties(ObjectId object, String changeToken,
+            Map<String, Serializable> properties)
+            throws NameConstraintViolationException, UpdateConflictException {
+        return spi.updateProperties(object, changeToken, properties);
+    }
+
+    public List<ObjectId> updateProperties(
+            Map<ObjectId, Map<String, Serializable>> properties)
+            throws NameConstraintViolationException, UpdateConflictException {
+        return spi.updateProperties(properties);
+    }
+
+    public ObjectId moveObject(ObjectId object, ObjectId targetFolder,
+            ObjectId sourceFolder) throws NameConstraintViolationException,
+            UpdateConflictException {
+        return spi.moveObject(object, targetFolder, sourceFolder);
+    }
+
+    public void deleteObject(ObjectId object, boolean allVersions)
+            throws UpdateConflictException {
+        spi.deleteObject(object, allVersions);
+    }
+
+    public void deleteObjects(Collection<ObjectId> objects,
+            boolean allVersions) throws UpdateConflictException {
+        spi.deleteObjects(objects, allVersions);
+    }
+
+    public Collection<ObjectId> deleteTree(ObjectId folder, Unfiling unfiling,
+            boolean continueOnFailure) throws UpdateConflictException {
+        return spi.deleteTree(folder, unfiling, continueOnFailure);
+    }
+
+    /*
+     * ----- Multi-filing Services -----
+     */
+
+    public void addObjectToFolder(ObjectId object, ObjectId folder) {
+        spi.addObjectToFolder(object, folder);
+    }
+
+    public void removeObjectFromFolder(ObjectId object, ObjectId folder) {
+        spi.removeObjectFromFolder(object, folder);
+    }
+
+    /*
+     * ----- Discovery Services -----
+     */
+
+    public ListPage<ObjectEntry> query(String statement,
+            boolean searchAllVersions, Inclusion inclusion, Paging paging) {
+        return spi.query(statement, searchAllVersions, inclusion, paging);
+    }
+
+    public ListPage<ObjectEntry> getChangeLog(String changeLogToken,
+            boolean includeProperties, Paging paging,
+            String[] latestChangeLogToken) {
+        return spi.getChangeLog(changeLogToken, includeProperties, paging,
+                latestChangeLogToken);
+    }
+
+    /*
+     * ----- Versioning Services -----
+     */
+
+    public ObjectId checkOut(ObjectId document, boolean[] contentCopied)
+            throws UpdateConflictException {
+        return spi.checkOut(document, contentCopied);
+    }
+
+    public void cancelCheckOut(ObjectId document)
+            throws UpdateConflictException {
+        spi.cancelCheckOut(document);
+    }
+
+    public ObjectId checkIn(ObjectId document,
+            Map<String, Serializable> properties, ContentStream contentStream,
+            boolean major, String comment) throws UpdateConflictException {
+        return spi.checkIn(document, properties, contentStream, major, comment);
+    }
+
+    public Map<String, Serializable> getPropertiesOfLatestVersion(
+            String versionSeriesId, boolean major, String filter) {
+        return spi.getPropertiesOfLatestVersion(versionSeriesId, major, filter);
+    }
+
+    public Collection<ObjectEntry> getAllVersions(String versionSeriesId,
+            String filter) {
+        return spi.getAllVersions(versionSeriesId, filter);
+    }
+
+    /*
+     * ----- Relationship Services -----
+     */
+
+    public ListPage<ObjectEntry> getRelationships(ObjectId object,
+            String typeId, boolean includeSubRelationshipTypes,
+            Inclusion inclusion, Paging paging) {
+        return spi.getRelationships(object, typeId,
+                includeSubRelationshipTypes, inclusion, paging);
+    }
+
+    /*
+     * ----- Policy Services -----
+     */
+
+    public void applyPolicy(ObjectId object, ObjectId policy) {
+        spi.applyPolicy(object, policy);
+    }
+
+    public void removePolicy(ObjectId object, ObjectId policy) {
+        spi.removePolicy(object, policy);
+    }
+
+    public Collection<ObjectEntry> getAppliedPolicies(ObjectId object,
+            String filter) {
+        return spi.getAppliedPolicies(object, filter);
+    }
+
+    /*
+     * ----- ACL Services -----
+     */
+
+    public List<ACE> getACL(ObjectId object, boolean onlyBasicPermissions,
+            boolean[] exact) {
+        return spi.getACL(object, onlyBasicPermissions, exact);
+    }
+
+    public List<ACE> applyACL(ObjectId object, List<ACE> addACEs,
+            List<ACE> removeACEs, ACLPropagation propagation, boolean[] exact,
+            String[] changeToken) {
+        return spi.applyACL(object, addACEs, removeACEs, propagation, exact,
+                changeToken);
+    }
+
+}
@@ -0,0 +1,257 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.chemistry.impl.base;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.antlr.runtime.ANTLRStringStream;
+import org.antlr.runtime.CommonTokenStream;
+import org.antlr.runtime.RecognitionException;
+import org.antlr.runtime.tree.CommonTree;
+import org.antlr.runtime.tree.Tree;
+import org.apache.chemistry.CMISRuntimeException;
+import org.apache.chemistry.ObjectEntry;
+import org.apache.chemistry.PropertyDefinition;
+import org.apache.chemistry.Type;
+import org.apache.chemistry.TypeManager;
+import org.apache.chemistry.cmissql.CmisSqlLexer;
+import org.apache.chemistry.cmissql.CmisSqlParser;
+
+/**
+ * Compares entries on the values of a list of properties, each in ascending
+ * or descending order. Null values sort first, strings are compared in their
+ * natural order, which may differ from the collation of a backend.
+ */
+public class EntryComparator implements Comparator<ObjectEntry> {
+
+    protected final String[] columns;
+
+    protected final boolean[] descending;
+
+    /**
+     * Creates a comparator.
+     *
+     * @param columns the ids of the properties to compare
+     * @param descending for each property, whether the order is descending
+     */
+    public EntryComparator(List<String> columns, List<Boolean> descending) {
+        int size = columns.size();
+        this.columns = columns.toArray(new String[size]);
+        this.descending = new boolean[size];
+        for (int i = 0; i < size; i++) {
+            this.descending[i] = descending.get(i).booleanValue();
+        }
+    }
+
+    /**
+     * Gets the ids of the properties compared.
+     */
+    public List<String> getColumns() {
+        return Arrays.asList(columns);
+    }
+
+    /**
+     * Creates a comparator from a CMIS {@code orderBy} specification, a
+     * comma-separated list of property ids each optionally followed by
+     * {@code ASC} or {@code DESC}.
+     *
+     * @return the comparator, or {@code null} if the specification is empty
+     */
+    public static EntryComparator fromOrderBy(String orderBy) {
+        return fromOrderBy(orderBy, null);
+    }
+
+    /**
+     * Creates a comparator from a CMIS {@code orderBy} specification, a
+     * comma-separated list of property query names each optionally followed
+     * by {@code ASC} or {@code DESC}.
+     *
+     * @param types the types defining the query names, or {@code null} if
+     *            the specification uses property ids
+     * @return the comparator, or {@code null} if the specification is empty
+     * @throws CMISRuntimeException if a query name is not defined
+     */
+    public static EntryComparator fromOrderBy(String orderBy,
+            TypeManager types) {
+        if (orderBy == null || orderBy.trim().length() == 0) {
+            return null;
+        }
+        List<String> columns = new ArrayList<String>();
+        List<Boolean> descending = new ArrayList<Boolean>();
+        for (String spec : orderBy.split(",")) {
+            String[] words = spec.trim().split("\\s+");
+            columns.add(types == null ? words[0] : getPropertyId(words[0],
+                    types));
+            descending.add(Boolean.valueOf(words.length > 1
+                    && "DESC".equalsIgnoreCase(words[1])));
+        }
+        return new EntryComparator(columns, descending);
+    }
+
+    /**
+     * Creates a comparator from the {@code ORDER BY} clause of a CMIS SQL
+     * statement.
+     *
+     * @param types the types defining the query names of the columns
+     * @param selectedOnly {@code true} if the ordering columns must be
+     *            selected by the statement, when the values to compare are
+     *            those of the entries it returns
+     * @return the comparator, or {@code null} if the statement has no
+     *         {@code ORDER BY} clause
+     * @throws CMISRuntimeException if an ordering column is not defined, or
+     *             is required but not selected
+     */
+    public static EntryComparator fromQuery(String statement,
+            TypeManager types, boolean selectedOnly) {
+        CommonTree tree;
+        try {
+            CommonTokenStream tokens = new CommonTokenStream(new CmisSqlLexer(
+                    new ANTLRStringStream(statement)));
+            CmisSqlParser parser = new CmisSqlParser(tokens);
+            CmisSqlParser.query_return query = parser.query();
+            if (parser.errorMessage != null) {
+                throw new CMISRuntimeException("Cannot parse query: "
+                        + statement + " (" + parser.errorMessage + ")");
+            }
+            tree = (CommonTree) query.getTree();
+        } catch (RecognitionException e) {
+            throw new CMISRuntimeException("Cannot parse query: " + statement,
+                    e);
+        }
+        // unqualified names of the selected columns, null for all
+        Set<String> selected = selectedOnly ? new HashSet<String>() : null;
+        for (int i = 0; selected != null && i < tree.getChildCount(); i++) {
+            Tree child = tree.getChild(i);
+            if (child.getType() == CmisSqlParser.STAR) {
+                selected = null;
+            } else if (child.getType() == CmisSqlParser.LIST) {
+                for (int j = 0; j < child.getChildCount(); j++) {
+                    Tree col = child.getChild(j);
+                    if (col.getType() == CmisSqlParser.STAR) {
+                        selected = null;
+                        break;
+                    }
+                    if (col.getType() == CmisSqlParser.COL) {
+                        selected.add(col.getChild(col.getChildCount() - 1).getText());
+                    }
+                }
+            }
+        }
+        for (int i = 0; i < tree.getChildCount(); i++) {
+            Tree order = tree.getChild(i);
+            if (order.getType() != CmisSqlParser.ORDER_BY) {
+                continue;
+            }
+            List<String> columns = new ArrayList<String>();
+            List<Boolean> descending = new ArrayList<Boolean>();
+            for (int j = 0; j < order.getChildCount(); j += 2) {
+                Tree col = order.getChild(j);
+                // unqualified column name
+                String name = col.getChild(col.getChildCount() - 1).getText();
+                if (selected != null && !selected.contains(name)) {
+                    throw new CMISRuntimeException(
+                            "Cannot merge results ordered by a column that is not selected: "
+                                    + name);
+                }
+                columns.add(getPropertyId(name, types));
+                String direction = order.getChild(j + 1).getText();
+                descending.add(Boolean.valueOf("DESC".equalsIgnoreCase(direction)));
+            }
+            return new EntryComparator(columns, descending);
+        }
+        return null;
+    }
+
+    /**
+     * Gets the id of the property having a query name.
+     *
+     * @throws CMISRuntimeException if no type defines the query name
+     */
+    protected static String getPropertyId(String queryName, TypeManager types) {
+        for (Type type : types.getTypes()) {
+            for (PropertyDefinition pd : type.getPropertyDefinitions()) {
+                if (queryName.equals(pd.getQueryName())) {
+                    return pd.getId();
+                }
+            }
+        }
+        throw new CMISRuntimeException("Cannot order by unknown property: "
+                + queryName);
+    }
+
+    /**
+     * Merges lists each already in the order of this comparator, keeping the
+     * order of each list between entries this comparator considers equal, or
+     * that a backend ordered with another collation.
+     */
+    public List<ObjectEntry> merge(List<List<ObjectEntry>> lists) {
+        int size = 0;
+        for (List<ObjectEntry> list : lists) {
+            size += list.size();
+        }
+        List<ObjectEntry> res = new ArrayList<ObjectEntry>(size);
+        int[] next = new int[lists.size()];
+        while (res.size() < size) {
+            int min = -1;
+            for (int i = 0; i < next.length; i++) {
+                if (next[i] == lists.get(i).size()) {
+                    continue;
+                }
+                if (min == -1
+                        || compare(lists.get(i).get(next[i]),
+                                lists.get(min).get(next[min])) < 0) {
+                    min = i;
+                }
+            }
+            res.add(lists.get(min).get(next[min]++));
+        }
+        return res;
+    }
+
+    public int compare(ObjectEntry e1, ObjectEntry e2) {
+        for (int i = 0; i < columns.length; i++) {
+            int cmp = compareValues(e1.getValue(columns[i]),
+                    e2.getValue(columns[i]));
+            if (cmp != 0) {
+                return descending[i] ? -cmp : cmp;
+            }
+        }
+        return 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    protected static int compareValues(Serializable v1, Serializable v2) {
+        if (v1 == null) {
+            return v2 == null ? 0 : -1;
+        }
+        if (v2 == null) {
+            return 1;
+        }
+        if (v1 instanceof Comparable) {
+            try {
+                return ((Comparable<Object>) v1).compareTo(v2);
+            } catch (ClassCastException e) {
+                // fall through
+            }
+        }
+        return v1.toString().compareTo(v2.toString());
+    }
+
+}
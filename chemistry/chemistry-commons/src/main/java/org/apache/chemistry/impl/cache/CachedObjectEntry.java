@@ -0,0 +1,136 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.chemistry.impl.cache;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.xml.namespace.QName;
+
+import org.apache.chemistry.BaseType;
+import org.apache.chemistry.ChangeInfo;
+import org.apache.chemistry.ObjectEntry;
+
+/**
+ * A read-only snapshot of an {@link ObjectEntry}, detached from the
+ * connection that produced it so that it can be shared between connections.
+ * Values, allowable actions and relationships are all copied, the latter as
+ * snapshots themselves.
+ */
+public class CachedObjectEntry implements ObjectEntry {
+
+    protected final String id;
+
+    protected final String typeId;
+
+    protected final BaseType baseType;
+
+    protected final ChangeInfo changeInfo;
+
+    protected final String pathSegment;
+
+    protected final Map<String, Serializable> values;
+
+    protected final Set<QName> allowableActions;
+
+    protected final Collection<ObjectEntry> relationships;
+
+    /**
+     * Takes a snapshot of an entry.
+     *
+     * @param entry the entry
+     * @param withRelationships {@code true} if the relationships were
+     *            requested and must be copied
+     */
+    public CachedObjectEntry(ObjectEntry entry, boolean withRelationships) {
+        id = entry.getId();
+        typeId = entry.getTypeId();
+        baseType = entry.getBaseType();
+        changeInfo = entry.getChangeInfo();
+        pathSegment = entry.getPathSegment();
+        values = Collections.unmodifiableMap(new HashMap<String, Serializable>(
+                entry.getValues()));
+        Set<QName> aa = entry.getAllowableActions();
+        allowableActions = aa == null ? null
+                : Collections.unmodifiableSet(new HashSet<QName>(aa));
+        Collection<ObjectEntry> rels = withRelationships ? entry.getRelationships()
+                : null;
+        if (rels == null) {
+            relationships = null;
+        } else {
+            List<ObjectEntry> list = new ArrayList<ObjectEntry>(rels.size());
+            for (ObjectEntry rel : rels) {
+                list.add(new CachedObjectEntry(rel, false));
+            }
+            relationships = Collections.unmodifiableList(list);
+        }
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getTypeId() {
+        return typeId;
+    }
+
+    public BaseType getBaseType() {
+        return baseType;
+    }
+
+    public ChangeInfo getChangeInfo() {
+        return changeInfo;
+    }
+
+    public String getPathSegment() {
+        return pathSegment;
+    }
+
+    public Serializable getValue(String id) {
+        return values.get(id);
+    }
+
+    public Map<String, Serializable> getValues() {
+        return values;
+    }
+
+    public void setValue(String id, Serializable value) {
+        throw new UnsupportedOperationException("Cached entry is read-only");
+    }
+
+    public void setValues(Map<String, Serializable> values) {
+        throw new UnsupportedOperationException("Cached entry is read-only");
+    }
+
+    public Set<QName> getAllowableActions() {
+        return allowableActions;
+    }
+
+    public Collection<ObjectEntry> getRelationships() {
+        return relationships;
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + '(' + typeId + ',' + id + ')';
+    }
+
+}
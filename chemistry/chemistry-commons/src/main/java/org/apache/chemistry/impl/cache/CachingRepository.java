@@ -0,0 +1,131 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.chemistry.impl.cache;
+
+import java.io.Serializable;
+import java.io.UnsupportedEncodingException;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Map;
+
+import org.apache.chemistry.Repository;
+import org.apache.chemistry.SPI;
+import org.apache.chemistry.impl.base.DelegatingRepository;
+
+/**
+ * A {@link Repository} whose SPI connections read through a
+ * {@link RepositoryCache} shared by all of them.
+ * <p>
+ * The data read by a connection is only served again to connections opened
+ * with the same credentials, see {@link #getPrincipal}.
+ * <p>
+ * Changes made through the SPI of this repository invalidate the cache.
+ * Changes made by other means are only seen once the cached data expires,
+ * unless the underlying repository provides an {@link InvalidationSource}
+ * extension, in which case they invalidate the cache as they happen.
+ * Connections obtained through {@link #getConnection} are those of the
+ * underlying repository and bypass the cache.
+ *
+ * @see CachingSPI
+ */
+public class CachingRepository extends DelegatingRepository {
+
+    protected final RepositoryCache cache;
+
+    protected final InvalidationSource invalidationSource;
+
+    /**
+     * Random salt of the password digests in principal keys.
+     */
+    protected final byte[] salt = new byte[16];
+
+    /**
+     * Creates a caching repository.
+     *
+     * @param repository the underlying repository
+     * @param maxSize the maximum number of objects, paths, and folders whose
+     *            children are cached
+     * @param ttlMillis the time to live of cached data, in milliseconds, or 0
+     *            for no expiration
+     */
+    public CachingRepository(Repository repository, int maxSize,
+            long ttlMillis) {
+        super(repository);
+        cache = new RepositoryCache(maxSize, ttlMillis);
+        new SecureRandom().nextBytes(salt);
+        invalidationSource = repository.getExtension(InvalidationSource.class);
+        if (invalidationSource != null) {
+            invalidationSource.addInvalidationListener(cache);
+        }
+    }
+
+    public RepositoryCache getCache() {
+        return cache;
+    }
+
+    @Override
+    public SPI getSPI(Map<String, Serializable> params) {
+        SPI spi = repository.getSPI(params);
+        return new CachingSPI(spi, this, cache, getPrincipal(params));
+    }
+
+    /**
+     * Computes the key identifying the credentials of connection parameters,
+     * made of the user name and of a salted digest of the password, so that
+     * data read with some credentials is never served to other ones.
+     *
+     * @param params the connection parameters, may be {@code null}
+     * @return the principal key
+     */
+    protected String getPrincipal(Map<String, Serializable> params) {
+        Serializable username = null;
+        Serializable password = null;
+        if (params != null) {
+            username = params.get(PARAM_USERNAME);
+            password = params.get(PARAM_PASSWORD);
+        }
+        StringBuilder buf = new StringBuilder();
+        if (username != null) {
+            buf.append(username);
+        }
+        buf.append('\0');
+        if (password != null) {
+            try {
+                MessageDigest md = MessageDigest.getInstance("SHA-256");
+                md.update(salt);
+                md.update(password.toString().getBytes("UTF-8"));
+                for (byte b : md.digest()) {
+                    buf.append(Character.forDigit((b >> 4) & 0xf, 16));
+                    buf.append(Character.forDigit(b & 0xf, 16));
+                }
+            } catch (GeneralSecurityException e) {
+                throw new RuntimeException(e);
+            } catch (UnsupportedEncodingException e) {
+                throw new RuntimeException(e);
+            }
+        }
+        return buf.toString();
+    }
+
+    /**
+     * Stops listening to invalidations from the underlying repository.
+     */
+    public void dispose() {
+        if (invalidationSource != null) {
+            invalidationSource.removeInvalidationListener(cache);
+        }
+    }
+
+}
@@ -0,0 +1,550 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.chemistry.impl.cache;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.xml.namespace.QName;
+
+import org.apache.chemistry.ACE;
+import org.apache.chemistry.ACLPropagation;
+import org.apache.chemistry.ContentAlreadyExistsException;
+import org.apache.chemistry.ContentStream;
+import org.apache.chemistry.Inclusion;
+import org.apache.chemistry.ListPage;
+import org.apache.chemistry.NameConstraintViolationException;
+import org.apache.chemistry.ObjectEntry;
+import org.apache.chemistry.ObjectId;
+import org.apache.chemistry.Paging;
+import org.apache.chemistry.Property;
+import org.apache.chemistry.Repository;
+import org.apache.chemistry.SPI;
+import org.apache.chemistry.Unfiling;
+import org.apache.chemistry.UpdateConflictException;
+import org.apache.chemistry.VersioningState;
+import org.apache.chemistry.impl.base.DelegatingSPI;
+import org.apache.chemistry.impl.simple.SimpleListPage;
+
+/**
+ * An {@link SPI} reading objects, paths, children and allowable actions
+ * through a {@link RepositoryCache}, and invalidating it on each mutation.
+ * <p>
+ * Entries returned from the cache are read-only snapshots. Data is cached
+ * per principal, so that a connection never sees data read with other
+ * credentials, but invalidations apply to all principals.
+ */
+public class CachingSPI extends DelegatingSPI {
+
+    protected final RepositoryCache cache;
+
+    protected final String principal;
+
+    /**
+     * Creates a caching SPI.
+     *
+     * @param spi the underlying SPI
+     * @param repository the repository of this SPI
+     * @param cache the cache
+     * @param principal the key of the credentials of the underlying SPI,
+     *            identifying the data it may read
+     */
+    public CachingSPI(SPI spi, Repository repository, RepositoryCache cache,
+            String principal) {
+        super(spi, repository);
+        this.cache = cache;
+        this.principal = principal;
+    }
+
+    /**
+     * Computes the part of a cache key identifying an inclusion.
+     */
+    protected static String key(Inclusion inclusion) {
+        if (inclusion == null) {
+            return "";
+        }
+        StringBuilder buf = new StringBuilder();
+        buf.append(inclusion.properties);
+        buf.append('|').append(inclusion.renditions);
+        buf.append('|').append(inclusion.relationships);
+        buf.append('|').append(inclusion.allowableActions ? 'a' : '-');
+        buf.append(inclusion.policies ? 'p' : '-');
+        buf.append(inclusion.acls ? 'c' : '-');
+        return buf.toString();
+    }
+
+    /**
+     * Computes the variant under which the results of a method are cached.
+     */
+    protected String variant(String method, Inclusion inclusion) {
+        return principal + '|' + method + '|' + key(inclusion);
+    }
+
+    protected static ObjectEntry snapshot(ObjectEntry entry,
+            Inclusion inclusion) {
+        return new CachedObjectEntry(entry, inclusion != null
+                && inclusion.relationships != null);
+    }
+
+    protected static String getId(ObjectId object) {
+        return object == null ? null : object.getId();
+    }
+
+    protected void invalidate(ObjectId object) {
+        if (object != null) {
+            cache.invalidate(object.getId());
+        }
+    }
+
+    protected void invalidateChildren(ObjectId folder) {
+        if (folder != null) {
+            cache.invalidateChildren(folder.getId());
+        }
+    }
+
+    /*
+     * ----- Navigation Services -----
+     */
+
+    @Override
+    public ListPage<ObjectEntry> getChildren(ObjectId folder,
+            Inclusion inclusion, String orderBy, Paging paging) {
+        String folderId = folder.getId();
+        String entryVariant = variant("children", inclusion);
+        String variant = entryVariant + '|' + orderBy + '|'
+                + (paging == null ? "" : paging.maxItems + "|"
+                        + paging.skipCount);
+        ListPage<ObjectEntry> page = cache.getChildren(folderId, variant,
+                entryVariant);
+        if (page != null) {
+            return page;
+        }
+        long gen = cache.getGeneration();
+        page = super.getChildren(folder, inclusion, orderBy, paging);
+        SimpleListPage<ObjectEntry> res = new SimpleListPage<ObjectEntry>(
+                page.size());
+        for (ObjectEntry entry : page) {
+            ObjectEntry cached = snapshot(entry, inclusion);
+            cache.putEntry(gen, cached.getId(), entryVariant, cached);
+            res.add(cached);
+        }
+        res.setHasMoreItems(page.getHasMoreItems());
+        res.setNumItems(page.getNumItems());
+        cache.putChildren(gen, folderId, variant, res);
+        return res;
+    }
+
+    /*
+     * ----- Object Services -----
+     */
+
+    @Override
+    public ObjectEntry getObject(ObjectId object, Inclusion inclusion) {
+        String variant = variant("object", inclusion);
+        ObjectEntry entry = cache.getEntry(object.getId(), variant);
+        if (entry != null) {
+            return entry;
+        }
+        long gen = cache.getGeneration();
+        entry = super.getObject(object, inclusion);
+        if (entry == null) {
+            return null;
+        }
+        entry = snapshot(entry, inclusion);
+        cache.putEntry(gen, entry.getId(), variant, entry);
+        return entry;
+    }
+
+    @Override
+    public ObjectEntry getProperties(ObjectId object, Inclusion inclusion) {
+        String variant = variant("properties", inclusion);
+        ObjectEntry entry = cache.getEntry(object.getId(), variant);
+        if (entry != null) {
+            return entry;
+        }
+        long gen = cache.getGeneration();
+        entry = super.getProperties(object, inclusion);
+        if (entry == null) {
+            return null;
+        }
+        entry = snapshot(entry, inclusion);
+        cache.putEntry(gen, entry.getId(), variant, entry);
+        return entry;
+    }
+
+    /**
+     * Serves the cached objects from the cache, and fetches the others with a
+     * single batch call.
+     */
+    @Override
+    public List<ObjectEntry> getObjects(Collection<ObjectId> objects,
+            Inclusion inclusion) {
+        String variant = variant("properties", inclusion);
+        List<ObjectEntry> res = new ArrayList<ObjectEntry>(objects.size());
+        List<ObjectId> missing = new ArrayList<ObjectId>();
+        List<Integer> positions = new ArrayList<Integer>();
+        for (ObjectId object : objects) {
+            ObjectEntry entry = cache.getEntry(object.getId(), variant);
+            if (entry == null) {
+                missing.add(object);
+                positions.add(Integer.valueOf(res.size()));
+            }
+            res.add(entry);
+        }
+        if (missing.isEmpty()) {
+            return res;
+        }
+        long gen = cache.getGeneration();
+        List<ObjectEntry> fetched = super.getObjects(missing, inclusion);
+        for (int i = 0; i < fetched.size(); i++) {
+            ObjectEntry entry = fetched.get(i);
+            if (entry == null) {
+                continue;
+            }
+            entry = snapshot(entry, inclusion);
+            cache.putEntry(gen, entry.getId(), variant, entry);
+            res.set(positions.get(i).intValue(), entry);
+        }
+        return res;
+    }
+
+    @Override
+    public ObjectEntry getObjectByPath(String path, Inclusion inclusion) {
+        String variant = variant("path", inclusion);
+        String pathKey = principal + '|' + path;
+        String id = cache.getPathId(pathKey);
+        if (id != null) {
+            ObjectEntry entry = cache.getEntry(id, variant);
+            if (entry != null) {
+                return entry;
+            }
+        }
+        long gen = cache.getGeneration();
+        ObjectEntry entry = super.getObjectByPath(path, inclusion);
+        if (entry == null) {
+            return null;
+        }
+        entry = snapshot(entry, inclusion);
+        cache.putEntry(gen, entry.getId(), variant, entry);
+        cache.putPathId(gen, pathKey, entry.getId());
+        return entry;
+    }
+
+    @Override
+    public Set<QName> getAllowableActions(ObjectId object) {
+        Set<QName> actions = cache.getAllowableActions(object.getId(),
+                principal);
+        if (actions != null) {
+            return actions;
+        }
+        long gen = cache.getGeneration();
+        actions = super.getAllowableActions(object);
+        if (actions != null) {
+            actions = Collections.unmodifiableSet(new HashSet<QName>(actions));
+            cache.putAllowableActions(gen, object.getId(), principal, actions);
+        }
+        return actions;
+    }
+
+    /*
+     * ----- Mutations -----
+     */
+
+    @Override
+    public ObjectId createDocument(Map<String, Serializable> properties,
+            ObjectId folder, ContentStream contentStream,
+            VersioningState versioningState)
+            throws NameConstraintViolationException {
+        try {
+            return super.createDocument(properties, folder, contentStream,
+                    versioningState);
+        } finally {
+            invalidateChildren(folder);
+        }
+    }
+
+    @Override
+    public ObjectId createDocumentFromSource(ObjectId source, ObjectId folder,
+            Map<String, Serializable> properties,
+            VersioningState versioningState)
+            throws NameConstraintViolationException {
+        try {
+            return super.createDocumentFromSource(source, folder, properties,
+                    versioningState);
+        } finally {
+            invalidateChildren(folder);
+        }
+    }
+
+    @Override
+    public ObjectId createFolder(Map<String, Serializable> properties,
+            ObjectId folder) throws NameConstraintViolationException {
+        try {
+            return super.createFolder(properties, folder);
+        } finally {
+            invalidateChildren(folder);
+        }
+    }
+
+    @Override
+    public ObjectId createRelationship(Map<String, Serializable> properties) {
+        // relationships are only visible through entries of their ends
+        try {
+            return super.createRelationship(properties);
+        } finally {
+            cache.invalidateAll();
+        }
+    }
+
+    @Override
+    public ObjectId createPolicy(Map<String, Serializable> properties,
+            ObjectId folder) {
+        try {
+            return super.createPolicy(properties, folder);
+        } finally {
+            invalidateChildren(folder);
+        }
+    }
+
+    @Override
+    public ObjectId setContentStream(ObjectId document,
+            ContentStream contentStream, boolean overwrite)
+            throws IOException, ContentAlreadyExistsException,
+            UpdateConflictException {
+        ObjectId res = null;
+        try {
+            res = super.setContentStream(document, contentStream, overwrite);
+            return res;
+        } finally {
+            invalidate(document);
+            invalidate(res);
+        }
+    }
+
+    @Override
+    public ObjectId deleteContentStream(ObjectId document)
+            throws UpdateConflictException {
+        ObjectId res = null;
+        try {
+            res = super.deleteContentStream(document);
+            return res;
+        } finally {
+            invalidate(document);
+            invalidate(res);
+        }
+    }
+
+    @Override
+    public ObjectId updateProperties(ObjectId object, String changeToken,
+            Map<String, Serializable> properties)
+            throws NameConstraintViolationException, UpdateConflictException {
+        ObjectId res = null;
+        try {
+            res = super.updateProperties(object, changeToken, properties);
+            return res;
+        } finally {
+            if (properties.containsKey(Property.NAME)) {
+                // paths of the object and of its descendants changed
+                cache.invalidateAll();
+            } else {
+                invalidate(object);
+                invalidate(res);
+            }
+        }
+    }
+
+    @Override
+    public List<ObjectId> updateProperties(
+            Map<ObjectId, Map<String, Serializable>> properties)
+            throws NameConstraintViolationException, UpdateConflictException {
+        List<ObjectId> res = null;
+        try {
+            res = super.updateProperties(properties);
+            return res;
+        } finally {
+            boolean renamed = false;
+            for (Map<String, Serializable> props : properties.values()) {
+                if (props.containsKey(Property.NAME)) {
+                    renamed = true;
+                    break;
+                }
+            }
+            if (renamed) {
+                // paths of the objects and of their descendants changed
+                cache.invalidateAll();
+            } else {
+                for (ObjectId object : properties.keySet()) {
+                    invalidate(object);
+                }
+                if (res != null) {
+                    for (ObjectId object : res) {
+                        invalidate(object);
+                    }
+                }
+            }
+        }
+    }
+
+    @Override
+    public ObjectId moveObject(ObjectId object, ObjectId targetFolder,
+            ObjectId sourceFolder) throws NameConstraintViolationException,
+            UpdateConflictException {
+        try {
+            return super.moveObject(object, targetFolder, sourceFolder);
+        } finally {
+            cache.invalidateAll();
+        }
+    }
+
+    @Override
+    public void deleteObject(ObjectId object, boolean allVersions)
+            throws UpdateConflictException {
+        try {
+            super.deleteObject(object, allVersions);
+        } finally {
+            // pages containing it will miss its entry
+            invalidate(object);
+        }
+    }
+
+    @Override
+    public void deleteObjects(Collection<ObjectId> objects,
+            boolean allVersions) throws UpdateConflictException {
+        try {
+            super.deleteObjects(objects, allVersions);
+        } finally {
+            for (ObjectId object : objects) {
+                invalidate(object);
+            }
+        }
+    }
+
+    @Override
+    public Collection<ObjectId> deleteTree(ObjectId folder, Unfiling unfiling,
+            boolean continueOnFailure) throws UpdateConflictException {
+        try {
+            return super.deleteTree(folder, unfiling, continueOnFailure);
+        } finally {
+            cache.invalidateAll();
+        }
+    }
+
+    /*
+     * ----- Multi-filing Services -----
+     */
+
+    @Override
+    public void addObjectToFolder(ObjectId object, ObjectId folder) {
+        try {
+            super.addObjectToFolder(object, folder);
+        } finally {
+            invalidate(object);
+            invalidateChildren(folder);
+        }
+    }
+
+    @Override
+    public void removeObjectFromFolder(ObjectId object, ObjectId folder) {
+        try {
+            super.removeObjectFromFolder(object, folder);
+        } finally {
+            invalidate(object);
+            invalidateChildren(folder);
+        }
+    }
+
+    /*
+     * ----- Versioning Services -----
+     */
+
+    @Override
+    public ObjectId checkOut(ObjectId document, boolean[] contentCopied)
+            throws UpdateConflictException {
+        // the private working copy may be filed in the document's folders
+        try {
+            return super.checkOut(document, contentCopied);
+        } finally {
+            cache.invalidateAll();
+        }
+    }
+
+    @Override
+    public void cancelCheckOut(ObjectId document)
+            throws UpdateConflictException {
+        try {
+            super.cancelCheckOut(document);
+        } finally {
+            cache.invalidateAll();
+        }
+    }
+
+    @Override
+    public ObjectId checkIn(ObjectId document,
+            Map<String, Serializable> properties, ContentStream contentStream,
+            boolean major, String comment) throws UpdateConflictException {
+        try {
+            return super.checkIn(document, properties, contentStream, major,
+                    comment);
+        } finally {
+            cache.invalidateAll();
+        }
+    }
+
+    /*
+     * ----- Policy Services -----
+     */
+
+    @Override
+    public void applyPolicy(ObjectId object, ObjectId policy) {
+        try {
+            super.applyPolicy(object, policy);
+        } finally {
+            invalidate(object);
+        }
+    }
+
+    @Override
+    public void removePolicy(ObjectId object, ObjectId policy) {
+        try {
+            super.removePolicy(object, policy);
+        } finally {
+            invalidate(object);
+        }
+    }
+
+    /*
+     * ----- ACL Services -----
+     */
+
+    @Override
+    public List<ACE> applyACL(ObjectId object, List<ACE> addACEs,
+            List<ACE> removeACEs, ACLPropagation propagation, boolean[] exact,
+            String[] changeToken) {
+        try {
+            return super.applyACL(object, addACEs, removeACEs, propagation,
+                    exact, changeToken);
+        } finally {
+            // propagated ACLs change the allowable actions of descendants
+            cache.invalidateAll();
+        }
+    }
+
+}
@@ -0,0 +1,43 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.chemistry.impl.cache;
+
+/**
+ * Receives notifications that cached data about objects is stale.
+ *
+ * @see InvalidationSource
+ */
+public interface InvalidationListener {
+
+    /**
+     * Notifies that an object changed or was removed.
+     *
+     * @param id the object id
+     */
+    void invalidate(String id);
+
+    /**
+     * Notifies that the set of children of a folder changed.
+     *
+     * @param folderId the folder id
+     */
+    void invalidateChildren(String folderId);
+
+    /**
+     * Notifies that any object may have changed, for instance after a move or
+     * when events were lost.
+     */
+    void invalidateAll();
+
+}
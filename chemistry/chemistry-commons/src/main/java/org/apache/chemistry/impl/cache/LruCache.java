@@ -0,0 +1,121 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.chemistry.impl.cache;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A thread-safe map bounded in size, evicting the least recently used
+ * entries, and whose entries expire after a time to live.
+ */
+public class LruCache<K, V> {
+
+    protected static class Holder<V> {
+        protected final V value;
+
+        protected final long expires;
+
+        protected Holder(V value, long expires) {
+            this.value = value;
+            this.expires = expires;
+        }
+    }
+
+    protected final int maxSize;
+
+    protected final long ttlMillis;
+
+    protected final LinkedHashMap<K, Holder<V>> map;
+
+    /**
+     * Creates a cache.
+     *
+     * @param maxSize the maximum number of entries
+     * @param ttlMillis the time to live of the entries, in milliseconds, or 0
+     *            for no expiration
+     */
+    public LruCache(final int maxSize, long ttlMillis) {
+        this.maxSize = maxSize;
+        this.ttlMillis = ttlMillis;
+        map = new LinkedHashMap<K, Holder<V>>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, Holder<V>> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    public synchronized V get(K key) {
+        Holder<V> holder = map.get(key);
+        if (holder == null) {
+            return null;
+        }
+        if (holder.expires != 0 && holder.expires < System.currentTimeMillis()) {
+            map.remove(key);
+            return null;
+        }
+        return holder.value;
+    }
+
+    public synchronized void put(K key, V value) {
+        map.put(key, new Holder<V>(value, expiration()));
+    }
+
+    /**
+     * Puts a value if there is none for the key.
+     *
+     * @return the value in the cache after the call
+     */
+    public synchronized V putIfAbsent(K key, V value) {
+        V old = get(key);
+        if (old != null) {
+            return old;
+        }
+        put(key, value);
+        return value;
+    }
+
+    public synchronized V remove(K key) {
+        Holder<V> holder = map.remove(key);
+        return holder == null ? null : holder.value;
+    }
+
+    /**
+     * Removes the entry for a key only if it has the given value.
+     */
+    public synchronized boolean remove(K key, V value) {
+        Holder<V> holder = map.get(key);
+        if (holder == null || holder.value != value) {
+            return false;
+        }
+        map.remove(key);
+        return true;
+    }
+
+    public synchronized void clear() {
+        map.clear();
+    }
+
+    public synchronized int size() {
+        return map.size();
+    }
+
+    protected long expiration() {
+        return ttlMillis <= 0 ? 0 : System.currentTimeMillis() + ttlMillis;
+    }
+
+}
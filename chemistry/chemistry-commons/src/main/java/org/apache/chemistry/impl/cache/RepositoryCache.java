@@ -0,0 +1,217 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.chemistry.impl.cache;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.xml.namespace.QName;
+
+import org.apache.chemistry.ListPage;
+import org.apache.chemistry.ObjectEntry;
+import org.apache.chemistry.impl.simple.SimpleListPage;
+
+/**
+ * Caches of object entries, path to id mappings, children pages and
+ * allowable actions, shared by all the connections of a
+ * {@link CachingRepository}.
+ * <p>
+ * Entries are cached per object id and per variant, the variant identifying
+ * the principal, method and {@link org.apache.chemistry.Inclusion} used to
+ * get them, so that invalidating an object drops all its variants at once,
+ * for all principals. Callers likewise include the principal in the paths
+ * and children variants they use, and in the allowable actions variants. Children pages
+ * only hold the ids of the children, whose entries are looked up in the entry
+ * cache: a page containing an invalidated object is therefore a miss without
+ * having to track which pages contain it.
+ * <p>
+ * A read-through that raced with an invalidation does not populate the cache:
+ * callers get the {@link #getGeneration generation} before reading from the
+ * backend and pass it when storing the result.
+ */
+public class RepositoryCache implements InvalidationListener {
+
+    /**
+     * The ids of a page of children and its paging information.
+     */
+    protected static class CachedPage {
+        protected final String[] ids;
+
+        protected final boolean hasMoreItems;
+
+        protected final int numItems;
+
+        protected CachedPage(ListPage<ObjectEntry> page) {
+            ids = new String[page.size()];
+            for (int i = 0; i < ids.length; i++) {
+                ids[i] = page.get(i).getId();
+            }
+            hasMoreItems = page.getHasMoreItems();
+            numItems = page.getNumItems();
+        }
+    }
+
+    protected final AtomicLong generation = new AtomicLong();
+
+    /** Object id -> variant -> entry. */
+    protected final LruCache<String, ConcurrentMap<String, ObjectEntry>> entries;
+
+    /** Path -> object id. */
+    protected final LruCache<String, String> paths;
+
+    /** Folder id -> variant -> page. */
+    protected final LruCache<String, ConcurrentMap<String, CachedPage>> children;
+
+    /** Object id -> variant -> allowable actions. */
+    protected final LruCache<String, ConcurrentMap<String, Set<QName>>> allowableActions;
+
+    /**
+     * Creates the caches.
+     *
+     * @param maxSize the maximum number of objects, paths, and folders whose
+     *            children are cached
+     * @param ttlMillis the time to live of cached data, in milliseconds, or 0
+     *            for no expiration
+     */
+    public RepositoryCache(int maxSize, long ttlMillis) {
+        entries = new LruCache<String, ConcurrentMap<String, ObjectEntry>>(
+                maxSize, ttlMillis);
+        paths = new LruCache<String, String>(maxSize, ttlMillis);
+        children = new LruCache<String, ConcurrentMap<String, CachedPage>>(
+                maxSize, ttlMillis);
+        allowableActions = new LruCache<String, ConcurrentMap<String, Set<QName>>>(
+                maxSize, ttlMillis);
+    }
+
+    /**
+     * Gets the current generation, incremented by each invalidation.
+     */
+    public long getGeneration() {
+        return generation.get();
+    }
+
+    public ObjectEntry getEntry(String id, String variant) {
+        ConcurrentMap<String, ObjectEntry> variants = entries.get(id);
+        return variants == null ? null : variants.get(variant);
+    }
+
+    public void putEntry(long gen, String id, String variant,
+            ObjectEntry entry) {
+        ConcurrentMap<String, ObjectEntry> variants = entries.putIfAbsent(id,
+                new ConcurrentHashMap<String, ObjectEntry>());
+        variants.put(variant, entry);
+        if (generation.get() != gen) {
+            variants.remove(variant, entry);
+        }
+    }
+
+    public String getPathId(String path) {
+        return paths.get(path);
+    }
+
+    public void putPathId(long gen, String path, String id) {
+        paths.put(path, id);
+        if (generation.get() != gen) {
+            paths.remove(path, id);
+        }
+    }
+
+    /**
+     * Gets a cached page of children.
+     *
+     * @return the page, or {@code null} if the page or one of its entries is
+     *         not cached
+     */
+    public ListPage<ObjectEntry> getChildren(String folderId, String variant,
+            String entryVariant) {
+        ConcurrentMap<String, CachedPage> pages = children.get(folderId);
+        if (pages == null) {
+            return null;
+        }
+        CachedPage page = pages.get(variant);
+        if (page == null) {
+            return null;
+        }
+        SimpleListPage<ObjectEntry> list = new SimpleListPage<ObjectEntry>(
+                page.ids.length);
+        for (String id : page.ids) {
+            ObjectEntry entry = getEntry(id, entryVariant);
+            if (entry == null) {
+                return null;
+            }
+            list.add(entry);
+        }
+        list.setHasMoreItems(page.hasMoreItems);
+        list.setNumItems(page.numItems);
+        return list;
+    }
+
+    /**
+     * Caches a page of children, whose entries must have been cached with
+     * {@link #putEntry}.
+     */
+    public void putChildren(long gen, String folderId, String variant,
+            ListPage<ObjectEntry> page) {
+        ConcurrentMap<String, CachedPage> pages = children.putIfAbsent(
+                folderId, new ConcurrentHashMap<String, CachedPage>());
+        CachedPage cached = new CachedPage(page);
+        pages.put(variant, cached);
+        if (generation.get() != gen) {
+            pages.remove(variant, cached);
+        }
+    }
+
+    public Set<QName> getAllowableActions(String id, String variant) {
+        ConcurrentMap<String, Set<QName>> variants = allowableActions.get(id);
+        return variants == null ? null : variants.get(variant);
+    }
+
+    public void putAllowableActions(long gen, String id, String variant,
+            Set<QName> actions) {
+        ConcurrentMap<String, Set<QName>> variants = allowableActions.putIfAbsent(
+                id, new ConcurrentHashMap<String, Set<QName>>());
+        variants.put(variant, actions);
+        if (generation.get() != gen) {
+            variants.remove(variant, actions);
+        }
+    }
+
+    /*
+     * ----- InvalidationListener -----
+     */
+
+    public void invalidate(String id) {
+        generation.incrementAndGet();
+        entries.remove(id);
+        allowableActions.remove(id);
+        // a folder's children may have been deleted with it
+        children.remove(id);
+    }
+
+    public void invalidateChildren(String folderId) {
+        generation.incrementAndGet();
+        children.remove(folderId);
+    }
+
+    public void invalidateAll() {
+        generation.incrementAndGet();
+        entries.clear();
+        paths.clear();
+        children.clear();
+        allowableActions.clear();
+    }
+
+}
@@ -0,0 +1,165 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.chemistry.impl.federated;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import javax.xml.namespace.QName;
+
+import org.apache.chemistry.BaseType;
+import org.apache.chemistry.ChangeInfo;
+import org.apache.chemistry.ObjectEntry;
+import org.apache.chemistry.Property;
+
+/**
+ * An {@link ObjectEntry} of a shard seen through a
+ * {@link FederatedRepository}: ids are prefixed with the shard id and paths
+ * start at the mount path of the shard.
+ */
+public class FederatedObjectEntry implements ObjectEntry {
+
+    /**
+     * The properties holding object ids.
+     */
+    public static final Set<String> ID_PROPERTIES = new HashSet<String>(
+            Arrays.asList(Property.ID, Property.PARENT_ID,
+                    Property.VERSION_SERIES_ID,
+                    Property.VERSION_SERIES_CHECKED_OUT_ID, Property.SOURCE_ID,
+                    Property.TARGET_ID));
+
+    protected final ObjectEntry entry;
+
+    protected final Shard shard;
+
+    protected final Map<String, Serializable> overrides;
+
+    /**
+     * Wraps an entry of a shard.
+     *
+     * @param entry the backend entry
+     * @param shard the shard
+     * @param overrides values replacing those of the backend entry, used for
+     *            the root of a mounted shard, or {@code null}
+     */
+    public FederatedObjectEntry(ObjectEntry entry, Shard shard,
+            Map<String, Serializable> overrides) {
+        this.entry = entry;
+        this.shard = shard;
+        this.overrides = overrides;
+    }
+
+    public ObjectEntry getEntry() {
+        return entry;
+    }
+
+    public Shard getShard() {
+        return shard;
+    }
+
+    public String getId() {
+        return shard.toFederatedId(entry.getId());
+    }
+
+    public String getTypeId() {
+        return entry.getTypeId();
+    }
+
+    public BaseType getBaseType() {
+        return entry.getBaseType();
+    }
+
+    public ChangeInfo getChangeInfo() {
+        return entry.getChangeInfo();
+    }
+
+    public String getPathSegment() {
+        if (overrides != null && overrides.containsKey(Property.NAME)) {
+            return (String) overrides.get(Property.NAME);
+        }
+        return entry.getPathSegment();
+    }
+
+    public Serializable getValue(String id) {
+        if (overrides != null && overrides.containsKey(id)) {
+            return overrides.get(id);
+        }
+        return toFederatedValue(id, entry.getValue(id));
+    }
+
+    public Map<String, Serializable> getValues() {
+        Map<String, Serializable> values = new HashMap<String, Serializable>();
+        for (Map.Entry<String, Serializable> es : entry.getValues().entrySet()) {
+            String id = es.getKey();
+            values.put(id, toFederatedValue(id, es.getValue()));
+        }
+        if (overrides != null) {
+            values.putAll(overrides);
+        }
+        return values;
+    }
+
+    protected Serializable toFederatedValue(String id, Serializable value) {
+        if (value instanceof String) {
+            if (ID_PROPERTIES.contains(id)) {
+                return shard.toFederatedId((String) value);
+            }
+            if (Property.PATH.equals(id)) {
+                return shard.toFederatedPath((String) value);
+            }
+        }
+        return value;
+    }
+
+    public void setValue(String id, Serializable value) {
+        if (value instanceof String && ID_PROPERTIES.contains(id)) {
+            value = shard.toBackendId((String) value);
+        }
+        entry.setValue(id, value);
+    }
+
+    public void setValues(Map<String, Serializable> values) {
+        entry.setValues(FederatedSPI.toBackendValues(values, shard));
+    }
+
+    public Set<QName> getAllowableActions() {
+        return entry.getAllowableActions();
+    }
+
+    public Collection<ObjectEntry> getRelationships() {
+        Collection<ObjectEntry> relationships = entry.getRelationships();
+        if (relationships == null) {
+            return null;
+        }
+        Collection<ObjectEntry> res = new ArrayList<ObjectEntry>(
+                relationships.size());
+        for (ObjectEntry rel : relationships) {
+            res.add(new FederatedObjectEntry(rel, shard, null));
+        }
+        return res;
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + '(' + getTypeId() + ',' + getId()
+                + ')';
+    }
+
+}
@@ -0,0 +1,353 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.chemistry.impl.federated;
+
+import java.io.Serializable;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.chemistry.ACLCapabilityType;
+import org.apache.chemistry.BaseType;
+import org.apache.chemistry.Connection;
+import org.apache.chemistry.ObjectId;
+import org.apache.chemistry.ObjectNotFoundException;
+import org.apache.chemistry.Repository;
+import org.apache.chemistry.RepositoryCapabilities;
+import org.apache.chemistry.RepositoryEntry;
+import org.apache.chemistry.RepositoryInfo;
+import org.apache.chemistry.SPI;
+import org.apache.chemistry.impl.base.DelegatingRepository;
+import org.apache.chemistry.impl.simple.SimpleObjectId;
+
+/**
+ * A {@link Repository} presenting several backend repositories, its
+ * {@link Shard shards}, as a single one.
+ * <p>
+ * The root shard holds the root folder. Other shards are mounted at a path,
+ * where the root folder of their backend repository appears, or hold only
+ * unfiled objects. Object ids are prefixed with the id of their shard, which
+ * is used to route each call; unfiled objects are assigned to a shard by a
+ * hash of their name. Queries run in parallel on all the shards, and their
+ * results are merged according to the {@code ORDER BY} clause.
+ * <p>
+ * All shards must have the same types, which are those of the root shard.
+ * Objects in different shards cannot be moved, filed, related or copied to
+ * one another. Only the SPI is supported, {@link #getConnection} throws
+ * {@link UnsupportedOperationException}.
+ *
+ * @see FederatedSPI
+ */
+public class FederatedRepository extends DelegatingRepository {
+
+    protected final String name;
+
+    protected final Shard rootShard;
+
+    /** Shards in order of addition, the root shard first. */
+    protected final List<Shard> shards = new ArrayList<Shard>();
+
+    protected ExecutorService executor;
+
+    protected boolean ownExecutor;
+
+    /**
+     * Creates a federated repository.
+     *
+     * @param name the repository id and name
+     * @param rootShardId the id of the root shard
+     * @param root the repository of the root shard
+     */
+    public FederatedRepository(String name, String rootShardId, Repository root) {
+        super(root);
+        this.name = name;
+        rootShard = new Shard(rootShardId, root, "/");
+        shards.add(rootShard);
+    }
+
+    /**
+     * Adds a shard. Shards are expected to be added before the repository is
+     * used.
+     *
+     * @param id the shard id
+     * @param repository the backend repository
+     * @param mountPath the path at which the root of the backend repository
+     *            appears, whose parent must be a folder of another shard, or
+     *            {@code null} for a shard only holding unfiled objects
+     */
+    public synchronized void addShard(String id, Repository repository,
+            String mountPath) {
+        if ("/".equals(mountPath)) {
+            throw new IllegalArgumentException("Root is already mounted");
+        }
+        for (Shard shard : shards) {
+            if (shard.getId().equals(id)) {
+                throw new IllegalArgumentException("Duplicate shard: " + id);
+            }
+            if (mountPath != null && mountPath.equals(shard.getMountPath())) {
+                throw new IllegalArgumentException("Duplicate mount path: "
+                        + mountPath);
+            }
+        }
+        shards.add(new Shard(id, repository, mountPath));
+    }
+
+    public Shard getRootShard() {
+        return rootShard;
+    }
+
+    public synchronized List<Shard> getShards() {
+        return new ArrayList<Shard>(shards);
+    }
+
+    public synchronized Shard getShard(String id) {
+        for (Shard shard : shards) {
+            if (shard.getId().equals(id)) {
+                return shard;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Gets the shard of an object from its id.
+     *
+     * @throws ObjectNotFoundException if the id has no known shard prefix
+     */
+    public Shard getShardForId(String id) {
+        int index = id.indexOf(Shard.SEPARATOR);
+        Shard shard = index == -1 ? null : getShard(id.substring(0, index));
+        if (shard == null) {
+            throw new ObjectNotFoundException(id);
+        }
+        return shard;
+    }
+
+    /**
+     * Gets the shard holding a path, the one with the longest mount path
+     * containing it.
+     */
+    public synchronized Shard getShardForPath(String path) {
+        Shard res = rootShard;
+        for (Shard shard : shards) {
+            if (shard.contains(path)
+                    && shard.getMountPath().length() > res.getMountPath().length()) {
+                res = shard;
+            }
+        }
+        return res;
+    }
+
+    /**
+     * Gets the shard in which to create an unfiled object.
+     *
+     * @param name the object name, may be {@code null}
+     */
+    public synchronized Shard getShardForUnfiled(String name) {
+        if (name == null) {
+            return rootShard;
+        }
+        return shards.get((name.hashCode() & Integer.MAX_VALUE)
+                % shards.size());
+    }
+
+    /**
+     * Gets the shards mounted directly below a path.
+     */
+    public synchronized List<Shard> getMountedShards(String parentPath) {
+        List<Shard> res = new ArrayList<Shard>();
+        for (Shard shard : shards) {
+            String mountPath = shard.getMountPath();
+            if (shard == rootShard || mountPath == null) {
+                continue;
+            }
+            int index = mountPath.lastIndexOf('/');
+            String parent = index == 0 ? "/" : mountPath.substring(0, index);
+            if (parent.equals(parentPath)) {
+                res.add(shard);
+            }
+        }
+        return res;
+    }
+
+    /**
+     * Gets the executor running the per-shard parts of queries.
+     */
+    public synchronized ExecutorService getExecutor() {
+        if (executor == null) {
+            executor = Executors.newFixedThreadPool(Math.max(2, shards.size()),
+                    new ThreadFactory() {
+                        private final AtomicInteger count = new AtomicInteger();
+
+                        public Thread newThread(Runnable r) {
+                            Thread thread = new Thread(r, "chemistry-federated-"
+                                    + name + '-' + count.incrementAndGet());
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+                    });
+            ownExecutor = true;
+        }
+        return executor;
+    }
+
+    /**
+     * Sets the executor running the per-shard parts of queries, instead of
+     * a pool owned by this repository.
+     */
+    public synchronized void setExecutor(ExecutorService executor) {
+        this.executor = executor;
+        ownExecutor = false;
+    }
+
+    /**
+     * Stops the threads owned by this repository.
+     */
+    public synchronized void dispose() {
+        if (executor != null && ownExecutor) {
+            executor.shutdown();
+            executor = null;
+        }
+    }
+
+    /*
+     * ----- Repository -----
+     */
+
+    @Override
+    public String getId() {
+        return name;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public RepositoryInfo getInfo() {
+        return new FederatedRepositoryInfo(repository.getInfo());
+    }
+
+    @Override
+    public Connection getConnection(Map<String, Serializable> params) {
+        throw new UnsupportedOperationException(
+                "Federated repositories only support the SPI");
+    }
+
+    @Override
+    public SPI getSPI(Map<String, Serializable> params) {
+        return new FederatedSPI(this, params);
+    }
+
+    @Override
+    public <T> T getExtension(Class<T> klass) {
+        // extensions of the backends would expose unprefixed ids
+        return null;
+    }
+
+    /**
+     * The information of the root shard, with the id of the federated
+     * repository and of its root folder.
+     */
+    protected class FederatedRepositoryInfo implements RepositoryInfo {
+
+        protected final RepositoryInfo info;
+
+        protected FederatedRepositoryInfo(RepositoryInfo info) {
+            this.info = info;
+        }
+
+        public String getId() {
+            return name;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public URI getThinClientURI() {
+            return info.getThinClientURI();
+        }
+
+        public String getDescription() {
+            return "Federated repository " + name;
+        }
+
+        public ObjectId getRootFolderId() {
+            ObjectId rootId = info.getRootFolderId();
+            return rootId == null ? null : new SimpleObjectId(
+                    rootShard.toFederatedId(rootId.getId()));
+        }
+
+        public String getVendorName() {
+            return info.getVendorName();
+        }
+
+        public String getProductName() {
+            return info.getProductName();
+        }
+
+        public String getProductVersion() {
+            return info.getProductVersion();
+        }
+
+        public String getVersionSupported() {
+            return info.getVersionSupported();
+        }
+
+        public org.w3c.dom.Document getRepositorySpecificInformation() {
+            return info.getRepositorySpecificInformation();
+        }
+
+        public RepositoryCapabilities getCapabilities() {
+            return info.getCapabilities();
+        }
+
+        public ACLCapabilityType getACLCapabilityType() {
+            return info.getACLCapabilityType();
+        }
+
+        public Set<BaseType> getChangeLogBaseTypes() {
+            return info.getChangeLogBaseTypes();
+        }
+
+        public boolean isChangeLogIncomplete() {
+            // only the changes of the root shard are logged
+            synchronized (FederatedRepository.this) {
+                if (shards.size() > 1) {
+                    return true;
+                }
+            }
+            return info.isChangeLogIncomplete();
+        }
+
+        public String getLatestChangeLogToken() {
+            return info.getLatestChangeLogToken();
+        }
+
+        public Collection<RepositoryEntry> getRelatedRepositories() {
+            return Collections.emptySet();
+        }
+    }
+
+}
@@ -0,0 +1,1063 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.chemistry.impl.federated;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.xml.namespace.QName;
+
+import org.apache.chemistry.ACE;
+import org.apache.chemistry.ACLPropagation;
+import org.apache.chemistry.BaseType;
+import org.apache.chemistry.CMISRuntimeException;
+import org.apache.chemistry.ConstraintViolationException;
+import org.apache.chemistry.ContentAlreadyExistsException;
+import org.apache.chemistry.ContentStream;
+import org.apache.chemistry.Inclusion;
+import org.apache.chemistry.ListPage;
+import org.apache.chemistry.NameConstraintViolationException;
+import org.apache.chemistry.ObjectEntry;
+import org.apache.chemistry.ObjectId;
+import org.apache.chemistry.Paging;
+import org.apache.chemistry.Property;
+import org.apache.chemistry.PropertyDefinition;
+import org.apache.chemistry.PropertyType;
+import org.apache.chemistry.Rendition;
+import org.apache.chemistry.Repository;
+import org.apache.chemistry.SPI;
+import org.apache.chemistry.Tree;
+import org.apache.chemistry.Type;
+import org.apache.chemistry.Unfiling;
+import org.apache.chemistry.UpdateConflictException;
+import org.apache.chemistry.VersioningState;
+import org.apache.chemistry.impl.base.EntryComparator;
+import org.apache.chemistry.impl.simple.SimpleListPage;
+import org.apache.chemistry.impl.simple.SimpleObjectId;
+import org.apache.chemistry.impl.simple.SimpleTree;
+
+/**
+ * The {@link SPI} of a {@link FederatedRepository}, routing each call to the
+ * SPI of the shard owning the objects involved.
+ * <p>
+ * Backend SPIs are opened on first use and closed with this SPI. Queries and
+ * the listing of all checked out documents run in parallel on the backend
+ * SPIs. A query whose {@code IN_FOLDER} or {@code IN_TREE} predicates name a
+ * folder only runs on the shard of that folder and, for {@code IN_TREE}, on
+ * the shards mounted below it; such predicates are assumed to be required
+ * by the query, not alternatives in an {@code OR}.
+ * <p>
+ * Ordered results from several shards are merged keeping the order of each
+ * shard, so a query may only be ordered by selected columns.
+ * <p>
+ * Trees include the shards mounted in them, but {@link #deleteTree} does not
+ * descend into mounted shards.
+ * <p>
+ * Batch calls are split into one batch call per shard, so batch updates and
+ * deletions are only atomic within a shard.
+ */
+public class FederatedSPI implements SPI {
+
+    /**
+     * A string literal, optionally as the folder argument of
+     * {@code IN_FOLDER} or {@code IN_TREE}.
+     */
+    protected static final Pattern LITERAL = Pattern.compile(
+            "((IN_FOLDER|IN_TREE)\\s*\\(\\s*(?:\\w+\\s*,\\s*)?)?'((?:[^']|'')*)'",
+            Pattern.CASE_INSENSITIVE);
+
+    /**
+     * The end of a statement before a string literal compared to a column:
+     * the column, then {@code =}, {@code <>} or an {@code IN} list.
+     */
+    protected static final Pattern COMPARED_TO = Pattern.compile(
+            "([\\w:.]+)\\s*(?:=|<>|\\s+(?:NOT\\s+)?IN\\s*\\((?:\\s*'(?:[^']|'')*'\\s*,)*)\\s*$",
+            Pattern.CASE_INSENSITIVE);
+
+    protected final FederatedRepository repository;
+
+    protected final Map<String, Serializable> params;
+
+    /** Backend SPIs opened so far. */
+    protected final Map<Shard, SPI> spis = new LinkedHashMap<Shard, SPI>();
+
+    /** Shard id -> federated id of the folder containing its mount path. */
+    protected final Map<String, String> mountParentIds = new HashMap<String, String>();
+
+    /** Query names of the ID properties, computed on first use. */
+    protected Set<String> idPropertyNames;
+
+    public FederatedSPI(FederatedRepository repository,
+            Map<String, Serializable> params) {
+        this.repository = repository;
+        this.params = params;
+        // also makes sure the root folder id of the root shard is known
+        getSPI(repository.getRootShard());
+    }
+
+    /**
+     * Gets the SPI of a shard, opening it if needed.
+     */
+    protected synchronized SPI getSPI(Shard shard) {
+        SPI spi = spis.get(shard);
+        if (spi == null) {
+            spi = shard.getRepository().getSPI(params);
+            spis.put(shard, spi);
+        }
+        return spi;
+    }
+
+    protected Shard getShard(ObjectId object) {
+        return repository.getShardForId(object.getId());
+    }
+
+    /**
+     * Gets the shard of an object that must be in the same shard as another.
+     */
+    protected Shard getShard(ObjectId object, Shard shard) {
+        if (object != null && getShard(object) != shard) {
+            throw new ConstraintViolationException("Object "
+                    + object.getId() + " is not in shard " + shard.getId());
+        }
+        return shard;
+    }
+
+    /**
+     * Gets the shard in which to create an object: the one of its folder, or
+     * for an unfiled object the one assigned to its name.
+     */
+    protected Shard getShardForCreation(Map<String, Serializable> properties,
+            ObjectId folder) {
+        if (folder != null) {
+            return getShard(folder);
+        }
+        return repository.getShardForUnfiled((String) properties.get(Property.NAME));
+    }
+
+    protected static ObjectId toBackendId(ObjectId object, Shard shard) {
+        return object == null ? null : new SimpleObjectId(
+                shard.toBackendId(object.getId()));
+    }
+
+    protected static ObjectId toFederatedId(ObjectId object, Shard shard) {
+        return object == null ? null : new SimpleObjectId(
+                shard.toFederatedId(object.getId()));
+    }
+
+    /**
+     * Maps property values given with federated ids to the backend ids of a
+     * shard.
+     *
+     * @throws ConstraintViolationException if an id is one of an object of
+     *             another shard
+     */
+    protected static Map<String, Serializable> toBackendValues(
+            Map<String, Serializable> values, Shard shard) {
+        if (values == null) {
+            return null;
+        }
+        Map<String, Serializable> res = new HashMap<String, Serializable>();
+        for (Map.Entry<String, Serializable> es : values.entrySet()) {
+            String id = es.getKey();
+            Serializable value = es.getValue();
+            if (value instanceof String
+                    && FederatedObjectEntry.ID_PROPERTIES.contains(id)) {
+                value = shard.toBackendId((String) value);
+            }
+            res.put(id, value);
+        }
+        return res;
+    }
+
+    protected static Map<String, Serializable> toFederatedValues(
+            Map<String, Serializable> values, Shard shard) {
+        if (values == null) {
+            return null;
+        }
+        Map<String, Serializable> res = new HashMap<String, Serializable>();
+        for (Map.Entry<String, Serializable> es : values.entrySet()) {
+            String id = es.getKey();
+            Serializable value = es.getValue();
+            if (value instanceof String) {
+                if (FederatedObjectEntry.ID_PROPERTIES.contains(id)) {
+                    value = shard.toFederatedId((String) value);
+                } else if (Property.PATH.equals(id)) {
+                    value = shard.toFederatedPath((String) value);
+                }
+            }
+            res.put(id, value);
+        }
+        return res;
+    }
+
+    /**
+     * Wraps an entry of a shard, giving the root of a mounted shard the name,
+     * path and parent of its mount point.
+     */
+    protected ObjectEntry wrap(ObjectEntry entry, Shard shard) {
+        if (entry == null) {
+            return null;
+        }
+        Map<String, Serializable> overrides = null;
+        String mountPath = shard.getMountPath();
+        if (shard != repository.getRootShard() && mountPath != null
+                && shard.isRoot(entry.getId())) {
+            overrides = new HashMap<String, Serializable>();
+            overrides.put(Property.NAME,
+                    mountPath.substring(mountPath.lastIndexOf('/') + 1));
+            overrides.put(Property.PATH, mountPath);
+            overrides.put(Property.PARENT_ID, getMountParentId(shard));
+        }
+        return new FederatedObjectEntry(entry, shard, overrides);
+    }
+
+    protected ListPage<ObjectEntry> wrap(ListPage<ObjectEntry> page,
+            Shard shard) {
+        SimpleListPage<ObjectEntry> res = new SimpleListPage<ObjectEntry>(
+                page.size());
+        for (ObjectEntry entry : page) {
+            res.add(wrap(entry, shard));
+        }
+        res.setHasMoreItems(page.getHasMoreItems());
+        res.setNumItems(page.getNumItems());
+        return res;
+    }
+
+    protected Collection<ObjectEntry> wrap(Collection<ObjectEntry> entries,
+            Shard shard) {
+        if (entries == null) {
+            return null;
+        }
+        List<ObjectEntry> res = new ArrayList<ObjectEntry>(entries.size());
+        for (ObjectEntry entry : entries) {
+            res.add(wrap(entry, shard));
+        }
+        return res;
+    }
+
+    /**
+     * Gets the federated id of the folder containing the mount path of a
+     * shard, or {@code null} if there is none.
+     */
+    protected String getMountParentId(Shard shard) {
+        synchronized (mountParentIds) {
+            if (mountParentIds.containsKey(shard.getId())) {
+                return mountParentIds.get(shard.getId());
+            }
+        }
+        String mountPath = shard.getMountPath();
+        int index = mountPath.lastIndexOf('/');
+        String parentPath = index == 0 ? "/" : mountPath.substring(0, index);
+        ObjectEntry parent = getObjectByPath(parentPath, null);
+        String parentId = parent == null ? null : parent.getId();
+        synchronized (mountParentIds) {
+            mountParentIds.put(shard.getId(), parentId);
+        }
+        return parentId;
+    }
+
+    /**
+     * Gets the shards mounted directly in a folder.
+     */
+    protected List<Shard> getMountedShards(String folderId, Shard shard) {
+        List<Shard> res = null;
+        for (Shard mounted : repository.getShards()) {
+            String mountPath = mounted.getMountPath();
+            if (mounted == repository.getRootShard() || mountPath == null) {
+                continue;
+            }
+            int index = mountPath.lastIndexOf('/');
+            String parentPath = index == 0 ? "/"
+                    : mountPath.substring(0, index);
+            if (repository.getShardForPath(parentPath) != shard) {
+                // cannot be mounted in this folder
+                continue;
+            }
+            if (folderId.equals(getMountParentId(mounted))) {
+                if (res == null) {
+                    res = new ArrayList<Shard>(2);
+                }
+                res.add(mounted);
+            }
+        }
+        return res == null ? Collections.<Shard> emptyList() : res;
+    }
+
+    protected ObjectEntry getMountedRoot(Shard shard, Inclusion inclusion) {
+        return wrap(getSPI(shard).getObject(shard.getRootFolderId(),
+                inclusion), shard);
+    }
+
+    /*
+     * ----- SPI -----
+     */
+
+    public Repository getRepository() {
+        return repository;
+    }
+
+    public synchronized void close() {
+        for (SPI spi : spis.values()) {
+            spi.close();
+        }
+        spis.clear();
+    }
+
+    public ObjectId newObjectId(String id) {
+        return new SimpleObjectId(id);
+    }
+
+    public ObjectEntry newObjectEntry(String typeId) {
+        Shard shard = repository.getRootShard();
+        return wrap(getSPI(shard).newObjectEntry(typeId), shard);
+    }
+
+    /*
+     * ----- Navigation Services -----
+     */
+
+    public Tree<ObjectEntry> getFolderTree(ObjectId folder, int depth,
+            Inclusion inclusion) {
+        return getTree(folder, depth, null, inclusion, true);
+    }
+
+    public Tree<ObjectEntry> getDescendants(ObjectId folder, int depth,
+            String orderBy, Inclusion inclusion) {
+        return getTree(folder, depth, orderBy, inclusion, false);
+    }
+
+    protected Tree<ObjectEntry> getTree(ObjectId folder, int depth,
+            String orderBy, Inclusion inclusion, boolean foldersOnly) {
+        Shard shard = getShard(folder);
+        List<Tree<ObjectEntry>> children = getTreeChildren(shard,
+                toBackendId(folder, shard), folder.getId(), depth, orderBy,
+                inclusion, foldersOnly);
+        return new SimpleTree<ObjectEntry>(null, children);
+    }
+
+    /**
+     * Gets the trees of the children of a folder, grafting the shards
+     * mounted in the folder and its descendants.
+     */
+    protected List<Tree<ObjectEntry>> getTreeChildren(Shard shard,
+            ObjectId folder, String folderId, int depth, String orderBy,
+            Inclusion inclusion, boolean foldersOnly) {
+        SPI spi = getSPI(shard);
+        Tree<ObjectEntry> tree = foldersOnly ? spi.getFolderTree(folder,
+                depth, inclusion) : spi.getDescendants(folder, depth, orderBy,
+                inclusion);
+        return wrapTrees(tree == null ? null : tree.getChildren(), shard,
+                folderId, depth, orderBy, inclusion, foldersOnly);
+    }
+
+    protected List<Tree<ObjectEntry>> wrapTrees(List<Tree<ObjectEntry>> trees,
+            Shard shard, String folderId, int depth, String orderBy,
+            Inclusion inclusion, boolean foldersOnly) {
+        List<Tree<ObjectEntry>> res = new ArrayList<Tree<ObjectEntry>>();
+        if (trees != null) {
+            for (Tree<ObjectEntry> tree : trees) {
+                ObjectEntry node = wrap(tree.getNode(), shard);
+                List<Tree<ObjectEntry>> children = null;
+                if (depth != 1 && node.getBaseType() == BaseType.FOLDER) {
+                    children = wrapTrees(tree.getChildren(), shard,
+                            node.getId(), depth - 1, orderBy, inclusion,
+                            foldersOnly);
+                }
+                res.add(new SimpleTree<ObjectEntry>(node, children));
+            }
+        }
+        for (Shard mounted : getMountedShards(folderId, shard)) {
+            ObjectEntry root = getMountedRoot(mounted, inclusion);
+            List<Tree<ObjectEntry>> children = null;
+            if (depth != 1) {
+                children = getTreeChildren(mounted,
+                        mounted.getRootFolderId(), root.getId(), depth - 1,
+                        orderBy, inclusion, foldersOnly);
+            }
+            res.add(new SimpleTree<ObjectEntry>(root, children));
+        }
+        return res.isEmpty() && trees == null ? null : res;
+    }
+
+    public ListPage<ObjectEntry> getChildren(ObjectId folder,
+            Inclusion inclusion, String orderBy, Paging paging) {
+        Shard shard = getShard(folder);
+        SPI spi = getSPI(shard);
+        ObjectId id = toBackendId(folder, shard);
+        List<Shard> mountedShards = getMountedShards(folder.getId(), shard);
+        if (mountedShards.isEmpty()) {
+            // served by the shard alone
+            return wrap(spi.getChildren(id, inclusion, orderBy, paging),
+                    shard);
+        }
+        EntryComparator comparator = EntryComparator.fromOrderBy(orderBy,
+                repository);
+        Inclusion mergeInclusion = withMergeProperties(inclusion, orderBy);
+        Set<String> mountNames = new HashSet<String>();
+        List<ObjectEntry> roots = new ArrayList<ObjectEntry>();
+        for (Shard mounted : mountedShards) {
+            ObjectEntry root = getMountedRoot(mounted, mergeInclusion);
+            mountNames.add((String) root.getValue(Property.NAME));
+            roots.add(root);
+        }
+        List<ObjectEntry> children = new ArrayList<ObjectEntry>();
+        for (ObjectEntry entry : spi.getChildren(id, mergeInclusion, orderBy,
+                null)) {
+            if (!mountNames.contains(entry.getValue(Property.NAME))) {
+                // not hidden by a mounted shard
+                children.add(wrap(entry, shard));
+            }
+        }
+        List<ObjectEntry> all;
+        if (comparator == null) {
+            all = roots;
+            all.addAll(children);
+        } else {
+            // keep the backend order of the children
+            Collections.sort(roots, comparator);
+            List<List<ObjectEntry>> lists = new ArrayList<List<ObjectEntry>>(2);
+            lists.add(roots);
+            lists.add(children);
+            all = comparator.merge(lists);
+        }
+        return SimpleListPage.fromPaging(all, paging);
+    }
+
+    /**
+     * Adds to the properties of an inclusion the name, needed to find the
+     * children hidden by mounted shards, and the properties of an {@code
+     * orderBy} specification, needed to merge the children.
+     */
+    protected static Inclusion withMergeProperties(Inclusion inclusion,
+            String orderBy) {
+        if (inclusion == null || inclusion.properties == null
+                || Inclusion.ALL_PROPERTIES.equals(inclusion.properties)) {
+            return inclusion;
+        }
+        StringBuilder buf = new StringBuilder(inclusion.properties);
+        buf.append(',').append(Property.NAME);
+        if (orderBy != null && orderBy.trim().length() != 0) {
+            for (String spec : orderBy.split(",")) {
+                buf.append(',').append(spec.trim().split("\\s+")[0]);
+            }
+        }
+        return new Inclusion(buf.toString(), inclusion.renditions,
+                inclusion.relationships, inclusion.allowableActions,
+                inclusion.policies, inclusion.acls);
+    }
+
+    public ObjectEntry getFolderParent(ObjectId folder, String filter) {
+        Shard shard = getShard(folder);
+        ObjectId id = toBackendId(folder, shard);
+        if (shard != repository.getRootShard() && shard.isRoot(id.getId())) {
+            String parentId = getMountParentId(shard);
+            return parentId == null ? null : getProperties(new SimpleObjectId(
+                    parentId), null);
+        }
+        return wrap(getSPI(shard).getFolderParent(id, filter), shard);
+    }
+
+    public Collection<ObjectEntry> getObjectParents(ObjectId object,
+            String filter) {
+        Shard shard = getShard(object);
+        ObjectId id = toBackendId(object, shard);
+        if (shard != repository.getRootShard() && shard.isRoot(id.getId())) {
+            ObjectEntry parent = getFolderParent(object, filter);
+            return parent == null ? Collections.<ObjectEntry> emptyList()
+                    : Collections.singletonList(parent);
+        }
+        return wrap(getSPI(shard).getObjectParents(id, filter), shard);
+    }
+
+    public ListPage<ObjectEntry> getCheckedOutDocuments(ObjectId folder,
+            final Inclusion inclusion, Paging paging) {
+        if (folder != null) {
+            Shard shard = getShard(folder);
+            return wrap(getSPI(shard).getCheckedOutDocuments(
+                    toBackendId(folder, shard), inclusion, paging), shard);
+        }
+        final Paging shardPaging = getShardPaging(paging);
+        Map<Shard, Callable<ListPage<ObjectEntry>>> calls = new LinkedHashMap<Shard, Callable<ListPage<ObjectEntry>>>();
+        for (Shard shard : repository.getShards()) {
+            final SPI spi = getSPI(shard);
+            calls.put(shard, new Callable<ListPage<ObjectEntry>>() {
+                public ListPage<ObjectEntry> call() {
+                    return spi.getCheckedOutDocuments(null, inclusion,
+                            shardPaging);
+                }
+            });
+        }
+        return scatter(calls, null, paging);
+    }
+
+    /*
+     * ----- Object Services -----
+     */
+
+    public ObjectId createDocument(Map<String, Serializable> properties,
+            ObjectId folder, ContentStream contentStream,
+            VersioningState versioningState)
+            throws NameConstraintViolationException {
+        Shard shard = getShardForCreation(properties, folder);
+        ObjectId id = getSPI(shard).createDocument(
+                toBackendValues(properties, shard), toBackendId(folder, shard),
+                contentStream, versioningState);
+        return toFederatedId(id, shard);
+    }
+
+    public ObjectId createDocumentFromSource(ObjectId source, ObjectId folder,
+            Map<String, Serializable> properties,
+            VersioningState versioningState)
+            throws NameConstraintViolationException {
+        Shard shard = getShard(folder, getShard(source));
+        ObjectId id = getSPI(shard).createDocumentFromSource(
+                toBackendId(source, shard), toBackendId(folder, shard),
+                toBackendValues(properties, shard), versioningState);
+        return toFederatedId(id, shard);
+    }
+
+    public ObjectId createFolder(Map<String, Serializable> properties,
+            ObjectId folder) throws NameConstraintViolationException {
+        Shard shard = getShard(folder);
+        ObjectId id = getSPI(shard).createFolder(
+                toBackendValues(properties, shard), toBackendId(folder, shard));
+        return toFederatedId(id, shard);
+    }
+
+    public ObjectId createRelationship(Map<String, Serializable> properties) {
+        String sourceId = (String) properties.get(Property.SOURCE_ID);
+        if (sourceId == null) {
+            throw new ConstraintViolationException("Missing source");
+        }
+        Shard shard = repository.getShardForId(sourceId);
+        ObjectId id = getSPI(shard).createRelationship(
+                toBackendValues(properties, shard));
+        return toFederatedId(id, shard);
+    }
+
+    public ObjectId createPolicy(Map<String, Serializable> properties,
+            ObjectId folder) {
+        Shard shard = getShardForCreation(properties, folder);
+        ObjectId id = getSPI(shard).createPolicy(
+                toBackendValues(properties, shard), toBackendId(folder, shard));
+        return toFederatedId(id, shard);
+    }
+
+    public Set<QName> getAllowableActions(ObjectId object) {
+        Shard shard = getShard(object);
+        return getSPI(shard).getAllowableActions(toBackendId(object, shard));
+    }
+
+    public ObjectEntry getObject(ObjectId object, Inclusion inclusion) {
+        Shard shard = getShard(object);
+        return wrap(getSPI(shard).getObject(toBackendId(object, shard),
+                inclusion), shard);
+    }
+
+    public ObjectEntry getProperties(ObjectId object, Inclusion inclusion) {
+        Shard shard = getShard(object);
+        return wrap(getSPI(shard).getProperties(toBackendId(object, shard),
+                inclusion), shard);
+    }
+
+    public ObjectEntry getObjectByPath(String path, Inclusion inclusion) {
+        Shard shard = repository.getShardForPath(path);
+        return wrap(getSPI(shard).getObjectByPath(shard.toBackendPath(path),
+                inclusion), shard);
+    }
+
+    public List<ObjectEntry> getObjects(Collection<ObjectId> objects,
+            Inclusion inclusion) {
+        Map<Shard, List<ObjectId>> ids = new LinkedHashMap<Shard, List<ObjectId>>();
+        Map<Shard, List<Integer>> positions = new HashMap<Shard, List<Integer>>();
+        int i = 0;
+        for (ObjectId object : objects) {
+            Shard shard = getShard(object);
+            List<ObjectId> list = ids.get(shard);
+            if (list == null) {
+                list = new ArrayList<ObjectId>();
+                ids.put(shard, list);
+                positions.put(shard, new ArrayList<Integer>());
+            }
+            list.add(toBackendId(object, shard));
+            positions.get(shard).add(Integer.valueOf(i++));
+        }
+        List<ObjectEntry> res = new ArrayList<ObjectEntry>(
+                Collections.<ObjectEntry> nCopies(i, null));
+        for (Map.Entry<Shard, List<ObjectId>> es : ids.entrySet()) {
+            Shard shard = es.getKey();
+            List<ObjectEntry> entries = getSPI(shard).getObjects(
+                    es.getValue(), inclusion);
+            List<Integer> pos = positions.get(shard);
+            for (int j = 0; j < entries.size(); j++) {
+                res.set(pos.get(j).intValue(), wrap(entries.get(j), shard));
+            }
+        }
+        return res;
+    }
+
+    public List<Rendition> getRenditions(ObjectId object, Inclusion inclusion,
+            Paging paging) {
+        Shard shard = getShard(object);
+        return getSPI(shard).getRenditions(toBackendId(object, shard),
+                inclusion, paging);
+    }
+
+    public boolean hasContentStream(ObjectId document) {
+        Shard shard = getShard(document);
+        return getSPI(shard).hasContentStream(toBackendId(document, shard));
+    }
+
+    public ContentStream getContentStream(ObjectId object,
+            String contentStreamId) throws IOException {
+        Shard shard = getShard(object);
+        return getSPI(shard).getContentStream(toBackendId(object, shard),
+                contentStreamId);
+    }
+
+    public ObjectId setContentStream(ObjectId document,
+            ContentStream contentStream, boolean overwrite)
+            throws IOException, ContentAlreadyExistsException,
+            UpdateConflictException {
+        Shard shard = getShard(document);
+        ObjectId id = getSPI(shard).setContentStream(
+                toBackendId(document, shard), contentStream, overwrite);
+        return toFederatedId(id, shard);
+    }
+
+    public ObjectId deleteContentStream(ObjectId document)
+            throws UpdateConflictException {
+        Shard shard = getShard(document);
+        ObjectId id = getSPI(shard).deleteContentStream(
+                toBackendId(document, shard));
+        return toFederatedId(id, shard);
+    }
+
+    public ObjectId updateProperties(ObjectId object, String changeToken,
+            Map<String, Serializable> properties)
+            throws NameConstraintViolationException, UpdateConflictException {
+        Shard shard = getShard(object);
+        ObjectId id = getSPI(shard).updateProperties(
+                toBackendId(object, shard), changeToken,
+                toBackendValues(properties, shard));
+        return toFederatedId(id, shard);
+    }
+
+    public List<ObjectId> updateProperties(
+            Map<ObjectId, Map<String, Serializable>> properties)
+            throws NameConstraintViolationException, UpdateConflictException {
+        Map<Shard, Map<ObjectId, Map<String, Serializable>>> updates = new LinkedHashMap<Shard, Map<ObjectId, Map<String, Serializable>>>();
+        Map<Shard, List<Integer>> positions = new HashMap<Shard, List<Integer>>();
+        int i = 0;
+        for (Map.Entry<ObjectId, Map<String, Serializable>> es : properties.entrySet()) {
+            Shard shard = getShard(es.getKey());
+            Map<ObjectId, Map<String, Serializable>> map = updates.get(shard);
+            if (map == null) {
+                map = new LinkedHashMap<ObjectId, Map<String, Serializable>>();
+                updates.put(shard, map);
+                positions.put(shard, new ArrayList<Integer>());
+            }
+            map.put(toBackendId(es.getKey(), shard), toBackendValues(
+                    es.getValue(), shard));
+            positions.get(shard).add(Integer.valueOf(i++));
+        }
+        List<ObjectId> res = new ArrayList<ObjectId>(
+                Collections.<ObjectId> nCopies(i, null));
+        for (Map.Entry<Shard, Map<ObjectId, Map<String, Serializable>>> es : updates.entrySet()) {
+            Shard shard = es.getKey();
+            List<ObjectId> ids = getSPI(shard).updateProperties(es.getValue());
+            List<Integer> pos = positions.get(shard);
+            for (int j = 0; j < ids.size(); j++) {
+                res.set(pos.get(j).intValue(), toFederatedId(ids.get(j), shard));
+            }
+        }
+        return res;
+    }
+
+    public ObjectId moveObject(ObjectId object, ObjectId targetFolder,
+            ObjectId sourceFolder) throws NameConstraintViolationException,
+            UpdateConflictException {
+        Shard shard = getShard(sourceFolder, getShard(targetFolder,
+                getShard(object)));
+        ObjectId id = getSPI(shard).moveObject(toBackendId(object, shard),
+                toBackendId(targetFolder, shard),
+                toBackendId(sourceFolder, shard));
+        return toFederatedId(id, shard);
+    }
+
+    public void deleteObject(ObjectId object, boolean allVersions)
+            throws UpdateConflictException {
+        Shard shard = getShard(object);
+        getSPI(shard).deleteObject(toBackendId(object, shard), allVersions);
+    }
+
+    public void deleteObjects(Collection<ObjectId> objects,
+            boolean allVersions) throws UpdateConflictException {
+        Map<Shard, List<ObjectId>> ids = new LinkedHashMap<Shard, List<ObjectId>>();
+        for (ObjectId object : objects) {
+            Shard shard = getShard(object);
+            List<ObjectId> list = ids.get(shard);
+            if (list == null) {
+                list = new ArrayList<ObjectId>();
+                ids.put(shard, list);
+            }
+            list.add(toBackendId(object, shard));
+        }
+        for (Map.Entry<Shard, List<ObjectId>> es : ids.entrySet()) {
+            getSPI(es.getKey()).deleteObjects(es.getValue(), allVersions);
+        }
+    }
+
+    public Collection<ObjectId> deleteTree(ObjectId folder, Unfiling unfiling,
+            boolean continueOnFailure) throws UpdateConflictException {
+        Shard shard = getShard(folder);
+        Collection<ObjectId> failed = getSPI(shard).deleteTree(
+                toBackendId(folder, shard), unfiling, continueOnFailure);
+        if (failed == null) {
+            return null;
+        }
+        List<ObjectId> res = new ArrayList<ObjectId>(failed.size());
+        for (ObjectId id : failed) {
+            res.add(toFederatedId(id, shard));
+        }
+        return res;
+    }
+
+    /*
+     * ----- Multi-filing Services -----
+     */
+
+    public void addObjectToFolder(ObjectId object, ObjectId folder) {
+        Shard shard = getShard(folder, getShard(object));
+        getSPI(shard).addObjectToFolder(toBackendId(object, shard),
+                toBackendId(folder, shard));
+    }
+
+    public void removeObjectFromFolder(ObjectId object, ObjectId folder) {
+        Shard shard = getShard(folder, getShard(object));
+        getSPI(shard).removeObjectFromFolder(toBackendId(object, shard),
+                toBackendId(folder, shard));
+    }
+
+    /*
+     * ----- Discovery Services -----
+     */
+
+    public ListPage<ObjectEntry> query(String statement,
+            final boolean searchAllVersions, final Inclusion inclusion,
+            Paging paging) {
+        final Paging shardPaging = getShardPaging(paging);
+        Map<Shard, Callable<ListPage<ObjectEntry>>> calls = new LinkedHashMap<Shard, Callable<ListPage<ObjectEntry>>>();
+        for (Map.Entry<Shard, String> es : getShardStatements(statement).entrySet()) {
+            final SPI spi = getSPI(es.getKey());
+            final String shardStatement = es.getValue();
+            calls.put(es.getKey(), new Callable<ListPage<ObjectEntry>>() {
+                public ListPage<ObjectEntry> call() {
+                    return spi.query(shardStatement, searchAllVersions,
+                            inclusion, shardPaging);
+                }
+            });
+        }
+        return scatter(calls, EntryComparator.fromQuery(statement, repository,
+                true),
+                paging);
+    }
+
+    /**
+     * Rewrites a statement for each shard that may have matching objects,
+     * mapping to backend ids the federated ids in the string literals
+     * compared to ID properties or naming the folder of {@code IN_FOLDER} or
+     * {@code IN_TREE}. Other string literals are left unchanged.
+     */
+    protected Map<Shard, String> getShardStatements(String statement) {
+        Map<Shard, String> res = new LinkedHashMap<Shard, String>();
+        Map<String, String> folderPaths = new HashMap<String, String>();
+        shards: for (Shard shard : repository.getShards()) {
+            Matcher m = LITERAL.matcher(statement);
+            StringBuffer buf = new StringBuffer();
+            while (m.find()) {
+                String function = m.group(2);
+                if (function == null && !isComparedToId(statement, m.start())) {
+                    continue;
+                }
+                String literal = m.group(3);
+                int index = literal.indexOf(Shard.SEPARATOR);
+                Shard owner = index == -1 ? null
+                        : repository.getShard(literal.substring(0, index));
+                if (owner == shard) {
+                    literal = shard.toBackendId(literal);
+                } else if (owner != null && function != null) {
+                    String mountPath = shard.getMountPath();
+                    if (!"IN_TREE".equalsIgnoreCase(function)
+                            || mountPath == null || "/".equals(mountPath)) {
+                        continue shards;
+                    }
+                    String path = folderPaths.get(literal);
+                    if (path == null) {
+                        ObjectEntry folder = getProperties(new SimpleObjectId(
+                                literal), null);
+                        path = (String) folder.getValue(Property.PATH);
+                        folderPaths.put(literal, path);
+                    }
+                    if (!"/".equals(path) && !mountPath.startsWith(path + '/')) {
+                        continue shards;
+                    }
+                    // the whole shard is in the tree
+                    literal = shard.getRootFolderId().getId();
+                }
+                String prefix = m.group(1) == null ? "" : m.group(1);
+                m.appendReplacement(buf, Matcher.quoteReplacement(prefix + '\''
+                        + literal + '\''));
+            }
+            m.appendTail(buf);
+            res.put(shard, buf.toString());
+        }
+        return res;
+    }
+
+    /**
+     * Checks if the string literal at an index of a statement is compared to
+     * an ID property.
+     */
+    protected boolean isComparedToId(String statement, int index) {
+        Matcher m = COMPARED_TO.matcher(statement).region(0, index);
+        if (!m.find()) {
+            return false;
+        }
+        String column = m.group(1);
+        // unqualified column
+        column = column.substring(column.lastIndexOf('.') + 1);
+        return getIdPropertyNames().contains(column);
+    }
+
+    protected synchronized Set<String> getIdPropertyNames() {
+        if (idPropertyNames == null) {
+            idPropertyNames = new HashSet<String>();
+            for (Type type : repository.getTypes()) {
+                for (PropertyDefinition pd : type.getPropertyDefinitions()) {
+                    if (pd.getType() == PropertyType.ID) {
+                        idPropertyNames.add(pd.getQueryName());
+                    }
+                }
+            }
+        }
+        return idPropertyNames;
+    }
+
+    /**
+     * Gets the paging to use on each shard so that the merged results
+     * contain the requested page.
+     */
+    protected static Paging getShardPaging(Paging paging) {
+        if (paging == null || paging.maxItems <= 0) {
+            return null;
+        }
+        return new Paging(paging.skipCount + paging.maxItems, 0);
+    }
+
+    /**
+     * Runs calls returning lists in parallel on their shards, and merges the
+     * results.
+     *
+     * @param calls the calls, by shard
+     * @param comparator the order in which to merge the results, each
+     *            already in that order, or {@code null} to keep them in
+     *            shard order
+     * @param paging the paging of the merged results
+     */
+    protected ListPage<ObjectEntry> scatter(
+            Map<Shard, Callable<ListPage<ObjectEntry>>> calls,
+            EntryComparator comparator, Paging paging) {
+        ExecutorService executor = repository.getExecutor();
+        Map<Shard, Future<ListPage<ObjectEntry>>> futures = new LinkedHashMap<Shard, Future<ListPage<ObjectEntry>>>();
+        for (Map.Entry<Shard, Callable<ListPage<ObjectEntry>>> es : calls.entrySet()) {
+            futures.put(es.getKey(), executor.submit(es.getValue()));
+        }
+        List<List<ObjectEntry>> lists = new ArrayList<List<ObjectEntry>>(
+                futures.size());
+        boolean hasMoreItems = false;
+        int numItems = 0;
+        try {
+            for (Map.Entry<Shard, Future<ListPage<ObjectEntry>>> es : futures.entrySet()) {
+                ListPage<ObjectEntry> page = es.getValue().get();
+                List<ObjectEntry> list = new ArrayList<ObjectEntry>(page.size());
+                for (ObjectEntry entry : page) {
+                    list.add(wrap(entry, es.getKey()));
+                }
+                lists.add(list);
+                hasMoreItems |= page.getHasMoreItems();
+                if (numItems != -1) {
+                    numItems = page.getNumItems() == -1 ? -1 : numItems
+                            + page.getNumItems();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CMISRuntimeException("Interrupted", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new CMISRuntimeException(cause.toString(), cause);
+        } finally {
+            for (Future<ListPage<ObjectEntry>> future : futures.values()) {
+                future.cancel(true);
+            }
+        }
+        List<ObjectEntry> all;
+        if (comparator == null) {
+            all = new ArrayList<ObjectEntry>();
+            for (List<ObjectEntry> list : lists) {
+                all.addAll(list);
+            }
+        } else {
+            // each shard already ordered its results, with its own collation
+            all = comparator.merge(lists);
+        }
+        int total = all.size();
+        int fromIndex = paging == null ? 0 : Math.min(paging.skipCount, total);
+        int toIndex = paging == null || paging.maxItems <= 0 ? total
+                : Math.min(fromIndex + paging.maxItems, total);
+        SimpleListPage<ObjectEntry> res = new SimpleListPage<ObjectEntry>(
+                all.subList(fromIndex, toIndex));
+        res.setHasMoreItems(hasMoreItems || toIndex < total);
+        res.setNumItems(numItems);
+        return res;
+    }
+
+    public ListPage<ObjectEntry> getChangeLog(String changeLogToken,
+            boolean includeProperties, Paging paging,
+            String[] latestChangeLogToken) {
+        // only the root shard has a change log
+        Shard shard = repository.getRootShard();
+        return wrap(getSPI(shard).getChangeLog(changeLogToken,
+                includeProperties, paging, latestChangeLogToken), shard);
+    }
+
+    /*
+     * ----- Versioning Services -----
+     */
+
+    public ObjectId checkOut(ObjectId document, boolean[] contentCopied)
+            throws UpdateConflictException {
+        Shard shard = getShard(document);
+        ObjectId id = getSPI(shard).checkOut(toBackendId(document, shard),
+                contentCopied);
+        return toFederatedId(id, shard);
+    }
+
+    public void cancelCheckOut(ObjectId document)
+            throws UpdateConflictException {
+        Shard shard = getShard(document);
+        getSPI(shard).cancelCheckOut(toBackendId(document, shard));
+    }
+
+    public ObjectId checkIn(ObjectId document,
+            Map<String, Serializable> properties, ContentStream contentStream,
+            boolean major, String comment) throws UpdateConflictException {
+        Shard shard = getShard(document);
+        ObjectId id = getSPI(shard).checkIn(toBackendId(document, shard),
+                toBackendValues(properties, shard), contentStream, major,
+                comment);
+        return toFederatedId(id, shard);
+    }
+
+    public Map<String, Serializable> getPropertiesOfLatestVersion(
+            String versionSeriesId, boolean major, String filter) {
+        Shard shard = repository.getShardForId(versionSeriesId);
+        return toFederatedValues(getSPI(shard).getPropertiesOfLatestVersion(
+                shard.toBackendId(versionSeriesId), major, filter), shard);
+    }
+
+    public Collection<ObjectEntry> getAllVersions(String versionSeriesId,
+            String filter) {
+        Shard shard = repository.getShardForId(versionSeriesId);
+        return wrap(getSPI(shard).getAllVersions(
+                shard.toBackendId(versionSeriesId), filter), shard);
+    }
+
+    /*
+     * ----- Relationship Services -----
+     */
+
+    public ListPage<ObjectEntry> getRelationships(ObjectId object,
+            String typeId, boolean includeSubRelationshipTypes,
+            Inclusion inclusion, Paging paging) {
+        Shard shard = getShard(object);
+        return wrap(getSPI(shard).getRelationships(toBackendId(object, shard),
+                typeId, includeSubRelationshipTypes, inclusion, paging), shard);
+    }
+
+    /*
+     * ----- Policy Services -----
+     */
+
+    public void applyPolicy(ObjectId object, ObjectId policy) {
+        Shard shard = getShard(policy, getShard(object));
+        getSPI(shard).applyPolicy(toBackendId(object, shard),
+                toBackendId(policy, shard));
+    }
+
+    public void removePolicy(ObjectId object, ObjectId policy) {
+        Shard shard = getShard(policy, getShard(object));
+        getSPI(shard).removePolicy(toBackendId(object, shard),
+                toBackendId(policy, shard));
+    }
+
+    public Collection<ObjectEntry> getAppliedPolicies(ObjectId object,
+            String filter) {
+        Shard shard = getShard(object);
+        return wrap(getSPI(shard).getAppliedPolicies(
+                toBackendId(object, shard), filter), shard);
+    }
+
+    /*
+     * ----- ACL Services -----
+     */
+
+    public List<ACE> getACL(ObjectId object, boolean onlyBasicPermissions,
+            boolean[] exact) {
+        Shard shard = getShard(object);
+        return getSPI(shard).getACL(toBackendId(object, shard),
+                onlyBasicPermissions, exact);
+    }
+
+    public List<ACE> applyACL(ObjectId object, List<ACE> addACEs,
+            List<ACE> removeACEs, ACLPropagation propagation, boolean[] exact,
+            String[] changeToken) {
+        Shard shard = getShard(object);
+        return getSPI(shard).applyACL(toBackendId(object, shard), addACEs,
+                removeACEs, propagation, exact, changeToken);
+    }
+
+}
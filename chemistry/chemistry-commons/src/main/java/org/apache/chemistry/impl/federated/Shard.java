@@ -0,0 +1,155 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.chemistry.impl.federated;
+
+import org.apache.chemistry.ConstraintViolationException;
+import org.apache.chemistry.ObjectId;
+import org.apache.chemistry.Repository;
+
+/**
+ * A backend repository of a {@link FederatedRepository}.
+ * <p>
+ * A shard holds the subtree below its mount path, and the unfiled objects
+ * assigned to it. The ids of its objects are prefixed with the shard id and a
+ * colon.
+ */
+public class Shard {
+
+    public static final char SEPARATOR = ':';
+
+    protected final String id;
+
+    protected final Repository repository;
+
+    protected final String mountPath;
+
+    protected final String prefix;
+
+    /**
+     * Creates a shard.
+     *
+     * @param id the shard id, which must not contain a colon
+     * @param repository the backend repository
+     * @param mountPath the path at which the root of the backend repository
+     *            appears, or {@code null} for a shard only holding unfiled
+     *            objects
+     */
+    public Shard(String id, Repository repository, String mountPath) {
+        if (id.indexOf(SEPARATOR) != -1) {
+            throw new IllegalArgumentException("Invalid shard id: " + id);
+        }
+        if (mountPath != null
+                && (!mountPath.startsWith("/") || (mountPath.length() > 1
+                        && mountPath.endsWith("/")))) {
+            throw new IllegalArgumentException("Invalid mount path: "
+                    + mountPath);
+        }
+        this.id = id;
+        this.repository = repository;
+        this.mountPath = mountPath;
+        prefix = id + SEPARATOR;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public Repository getRepository() {
+        return repository;
+    }
+
+    public String getMountPath() {
+        return mountPath;
+    }
+
+    /**
+     * Gets the id of the root folder in the backend repository.
+     */
+    public ObjectId getRootFolderId() {
+        return repository.getInfo().getRootFolderId();
+    }
+
+    /**
+     * Checks if a backend id is the one of the root folder of this shard.
+     */
+    public boolean isRoot(String backendId) {
+        ObjectId rootId = getRootFolderId();
+        return rootId != null && rootId.getId().equals(backendId);
+    }
+
+    /**
+     * Prefixes a backend id with the shard id.
+     */
+    public String toFederatedId(String backendId) {
+        return backendId == null ? null : prefix + backendId;
+    }
+
+    /**
+     * Removes the shard prefix from a federated id.
+     *
+     * @throws ConstraintViolationException if the id is not one of an object
+     *             of this shard
+     */
+    public String toBackendId(String federatedId) {
+        if (federatedId == null) {
+            return null;
+        }
+        if (!federatedId.startsWith(prefix)) {
+            throw new ConstraintViolationException("Object " + federatedId
+                    + " is not in shard " + id);
+        }
+        return federatedId.substring(prefix.length());
+    }
+
+    /**
+     * Maps a path in the backend repository to a federated path.
+     */
+    public String toFederatedPath(String backendPath) {
+        if (backendPath == null || mountPath == null || "/".equals(mountPath)) {
+            return backendPath;
+        }
+        return "/".equals(backendPath) ? mountPath : mountPath + backendPath;
+    }
+
+    /**
+     * Maps a federated path below the mount path to a backend path.
+     */
+    public String toBackendPath(String path) {
+        if ("/".equals(mountPath)) {
+            return path;
+        }
+        String rest = path.substring(mountPath.length());
+        return rest.length() == 0 ? "/" : rest;
+    }
+
+    /**
+     * Checks if a federated path is at or below the mount path.
+     */
+    public boolean contains(String path) {
+        if (mountPath == null) {
+            return false;
+        }
+        if ("/".equals(mountPath) || path.equals(mountPath)) {
+            return true;
+        }
+        return path.startsWith(mountPath)
+                && path.charAt(mountPath.length()) == '/';
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + '(' + id + ',' + mountPath + ')';
+    }
+
+}
@@ -0,0 +1,91 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.chemistry.impl.metrics;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.apache.chemistry.ContentStream;
+
+/**
+ * A {@link ContentStream} counting the bytes read from it into a
+ * {@link MethodMetrics}.
+ */
+public class CountingContentStream implements ContentStream {
+
+    protected final ContentStream contentStream;
+
+    protected final MethodMetrics metrics;
+
+    public CountingContentStream(ContentStream contentStream,
+            MethodMetrics metrics) {
+        this.contentStream = contentStream;
+        this.metrics = metrics;
+    }
+
+    public String getMimeType() {
+        return contentStream.getMimeType();
+    }
+
+    public long getLength() {
+        return contentStream.getLength();
+    }
+
+    public String getFileName() {
+        return contentStream.getFileName();
+    }
+
+    public InputStream getStream() throws IOException {
+        InputStream stream = contentStream.getStream();
+        return stream == null ? null : new CountingInputStream(stream);
+    }
+
+    protected class CountingInputStream extends FilterInputStream {
+
+        protected CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = in.read();
+            if (b != -1) {
+                metrics.addBytes(1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = in.read(b, off, len);
+            metrics.addBytes(n);
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = in.skip(n);
+            metrics.addBytes(skipped);
+            return skipped;
+        }
+
+        @Override
+        public boolean markSupported() {
+            // resetting would count bytes twice
+            return false;
+        }
+    }
+
+}
@@ -0,0 +1,139 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.chemistry.impl.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free histogram of non-negative long values with bounded relative
+ * error.
+ * <p>
+ * Values are stored in buckets laid out like an HDR histogram: values below
+ * {@value #SUB_BUCKETS} each have their own bucket, and each following power
+ * of two is split into {@value #SUB_BUCKETS} equal buckets, which keeps the
+ * relative error of the reported percentiles under 1/{@value #SUB_BUCKETS}.
+ * Recording a value does not allocate.
+ */
+public class Histogram {
+
+    protected static final int SUB_BUCKET_BITS = 5;
+
+    public static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    /** Values are capped at 2^MAX_BITS - 1. */
+    protected static final int MAX_BITS = 40;
+
+    public static final long MAX_VALUE = (1L << MAX_BITS) - 1;
+
+    protected static final int BUCKETS = (MAX_BITS - SUB_BUCKET_BITS + 1)
+            * SUB_BUCKETS;
+
+    protected final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+    protected final AtomicLong count = new AtomicLong();
+
+    protected final AtomicLong sum = new AtomicLong();
+
+    protected final AtomicLong max = new AtomicLong();
+
+    protected static int bucketIndex(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int bits = 63 - Long.numberOfLeadingZeros(value);
+        int shift = bits - SUB_BUCKET_BITS;
+        return (shift + 1) * SUB_BUCKETS + (int) (value >>> shift)
+                - SUB_BUCKETS;
+    }
+
+    /**
+     * The highest value falling into a given bucket.
+     */
+    protected static long bucketHighestValue(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int shift = index / SUB_BUCKETS - 1;
+        long sub = index % SUB_BUCKETS + SUB_BUCKETS;
+        return ((sub + 1) << shift) - 1;
+    }
+
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        } else if (value > MAX_VALUE) {
+            value = MAX_VALUE;
+        }
+        counts.incrementAndGet(bucketIndex(value));
+        count.incrementAndGet();
+        sum.addAndGet(value);
+        long m;
+        while (value > (m = max.get())) {
+            if (max.compareAndSet(m, value)) {
+                break;
+            }
+        }
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    public double getMean() {
+        long n = count.get();
+        return n == 0 ? 0 : (double) sum.get() / n;
+    }
+
+    /**
+     * Gets the value below which the given percentage of the recorded values
+     * fall.
+     *
+     * @param percentile the percentile, between 0 and 100
+     * @return the value, or 0 if nothing was recorded
+     */
+    public long getPercentile(double percentile) {
+        long n = count.get();
+        if (n == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(percentile / 100 * n);
+        if (rank < 1) {
+            rank = 1;
+        }
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return Math.min(bucketHighestValue(i), max.get());
+            }
+        }
+        // concurrent updates, count ahead of the buckets
+        return max.get();
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+        count.set(0);
+        sum.set(0);
+        max.set(0);
+    }
+
+}
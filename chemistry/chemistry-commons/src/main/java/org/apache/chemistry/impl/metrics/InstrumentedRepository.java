@@ -0,0 +1,62 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.chemistry.impl.metrics;
+
+import java.io.Serializable;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+
+import org.apache.chemistry.Repository;
+import org.apache.chemistry.SPI;
+import org.apache.chemistry.impl.base.DelegatingRepository;
+
+/**
+ * A {@link Repository} whose SPI connections record metrics about each call.
+ * <p>
+ * Only the SPI is instrumented, connections obtained through
+ * {@link #getConnection} are those of the underlying repository.
+ *
+ * @see InstrumentedSPI
+ * @see RepositoryMetrics
+ */
+public class InstrumentedRepository extends DelegatingRepository {
+
+    protected final RepositoryMetrics metrics;
+
+    public InstrumentedRepository(Repository repository) {
+        super(repository);
+        metrics = new RepositoryMetrics(repository.getId());
+    }
+
+    public RepositoryMetrics getMetrics() {
+        return metrics;
+    }
+
+    @Override
+    public SPI getSPI(Map<String, Serializable> params) {
+        return new InstrumentedSPI(repository.getSPI(params), this, metrics);
+    }
+
+    /**
+     * Exposes the metrics through the platform MBean server.
+     */
+    public void registerMBeans() {
+        metrics.register(ManagementFactory.getPlatformMBeanServer());
+    }
+
+    public void unregisterMBeans() {
+        metrics.unregister();
+    }
+
+}
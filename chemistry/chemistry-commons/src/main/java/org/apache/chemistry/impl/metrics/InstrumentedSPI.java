@@ -0,0 +1,756 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.chemistry.impl.metrics;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.xml.namespace.QName;
+
+import org.apache.chemistry.ACE;
+import org.apache.chemistry.ACLPropagation;
+import org.apache.chemistry.ContentAlreadyExistsException;
+import org.apache.chemistry.ContentStream;
+import org.apache.chemistry.Inclusion;
+import org.apache.chemistry.ListPage;
+import org.apache.chemistry.NameConstraintViolationException;
+import org.apache.chemistry.ObjectEntry;
+import org.apache.chemistry.ObjectId;
+import org.apache.chemistry.Paging;
+import org.apache.chemistry.Rendition;
+import org.apache.chemistry.Repository;
+import org.apache.chemistry.SPI;
+import org.apache.chemistry.Tree;
+import org.apache.chemistry.Unfiling;
+import org.apache.chemistry.UpdateConflictException;
+import org.apache.chemistry.VersioningState;
+import org.apache.chemistry.impl.base.DelegatingSPI;
+
+/**
+ * An {@link SPI} recording call counts, errors, latencies, result sizes and
+ * content stream bytes for each method into a {@link RepositoryMetrics}.
+ * <p>
+ * Recording is lock-free and does not allocate, apart from the wrappers
+ * counting content stream bytes.
+ */
+public class InstrumentedSPI extends DelegatingSPI {
+
+    protected final RepositoryMetrics metrics;
+
+    public InstrumentedSPI(SPI spi, Repository repository,
+            RepositoryMetrics metrics) {
+        super(spi, repository);
+        this.metrics = metrics;
+    }
+
+    public RepositoryMetrics getMetrics() {
+        return metrics;
+    }
+
+    /*
+     * ----- Navigation Services -----
+     */
+
+    @Override
+    public Tree<ObjectEntry> getFolderTree(ObjectId folder, int depth,
+            Inclusion inclusion) {
+        MethodMetrics m = metrics.get("getFolderTree");
+        long start = System.nanoTime();
+        Tree<ObjectEntry> res = null;
+        boolean ok = false;
+        try {
+            res = super.getFolderTree(folder, depth, inclusion);
+            ok = true;
+            return res;
+        } finally {
+            m.done(start, ok, res == null ? 0 : res.size());
+        }
+    }
+
+    @Override
+    public Tree<ObjectEntry> getDescendants(ObjectId folder, int depth,
+            String orderBy, Inclusion inclusion) {
+        MethodMetrics m = metrics.get("getDescendants");
+        long start = System.nanoTime();
+        Tree<ObjectEntry> res = null;
+        boolean ok = false;
+        try {
+            res = super.getDescendants(folder, depth, orderBy, inclusion);
+            ok = true;
+            return res;
+        } finally {
+            m.done(start, ok, res == null ? 0 : res.size());
+        }
+    }
+
+    @Override
+    public ListPage<ObjectEntry> getChildren(ObjectId folder,
+            Inclusion inclusion, String orderBy, Paging paging) {
+        MethodMetrics m = metrics.get("getChildren");
+        long start = System.nanoTime();
+        ListPage<ObjectEntry> res = null;
+        boolean ok = false;
+        try {
+            res = super.getChildren(folder, inclusion, orderBy, paging);
+            ok = true;
+            return res;
+        } finally {
+            m.done(start, ok, res == null ? 0 : res.size());
+        }
+    }
+
+    @Override
+    public ObjectEntry getFolderParent(ObjectId folder, String filter) {
+        MethodMetrics m = metrics.get("getFolderParent");
+        long start = System.nanoTime();
+        boolean ok = false;
+        try {
+            ObjectEntry res = super.getFolderParent(folder, filter);
+            ok = true;
+            return res;
+        } finally {
+            m.done(start, ok);
+        }
+    }
+
+    @Override
+    public Collection<ObjectEntry> getObjectParents(ObjectId object,
+            String filter) {
+        MethodMetrics m = metrics.get("getObjectParents");
+        long start = System.nanoTime();
+        Collection<ObjectEntry> res = null;
+        boolean ok = false;
+        try {
+            res = super.getObjectParents(object, filter);
+            ok = true;
+            return res;
+        } finally {
+            m.done(start, ok, res == null ? 0 : res.size());
+        }
+    }
+
+    @Override
+    public ListPage<ObjectEntry> getCheckedOutDocuments(ObjectId folder,
+            Inclusion inclusion, Paging paging) {
+        MethodMetrics m = metrics.get("getCheckedOutDocuments");
+        long start = System.nanoTime();
+        ListPage<ObjectEntry> res = null;
+        boolean ok = false;
+        try {
+            res = super.getCheckedOutDocuments(folder, inclusion, paging);
+            ok = true;
+            return res;
+        } finally {
+            m.done(start, ok, res == null ? 0 : res.size());
+        }
+    }
+
+    /*
+     * ----- Object Services -----
+     */
+
+    @Override
+    public ObjectId createDocument(Map<String, Serializable> properties,
+            ObjectId folder, ContentStream contentStream,
+            VersioningState versioningState)
+            throws NameConstraintViolationException {
+        MethodMetrics m = metrics.get("createDocument");
+        if (contentStream != null) {
+            contentStream = new CountingContentStream(contentStream, m);
+        }
+        long start = System.nanoTime();
+        boolean ok = false;
+        try {
+            ObjectId res = super.createDocument(properties, folder,
+                    contentStream, versioningState);
+            ok = true;
+            return res;
+        } finally {
+            m.done(start, ok);
+        }
+    }
+
+    @Override
+    public ObjectId createDocumentFromSource(ObjectId source, ObjectId folder,
+            Map<String, Serializable> properties,
+            VersioningState versioningState)
+            throws NameConstraintViolationException {
+        MethodMetrics m = metrics.get("createDocumentFromSource");
+        long start = System.nanoTime();
+        boolean ok = false;
+        try {
+            ObjectId res = super.createDocumentFromSource(source, folder,
+                    properties, versioningState);
+            ok = true;
+            return res;
+        } finally {
+            m.done(start, ok);
+        }
+    }
+
+    @Override
+    public ObjectId createFolder(Map<String, Serializable> properties,
+            ObjectId folder) throws NameConstraintViolationException {
+        MethodMetrics m = metrics.get("createFolder");
+        long start = System.nanoTime();
+        boolean ok = false;
+        try {
+            ObjectId res = super.createFolder(properties, folder);
+            ok = true;
+            return res;
+        } finally {
+            m.done(start, ok);
+        }
+    }
+
+    @Override
+    public ObjectId createRelationship(Map<String, Serializable> properties) {
+        MethodMetrics m = metrics.get("createRelationship");
+        long start = System.nanoTime();
+        boolean ok = false;
+        try {
+            ObjectId res = super.createRelationship(properties);
+            ok = true;
+            return res;
+        } finally {
+            m.done(start, ok);
+        }
+    }
+
+    @Override
+    public ObjectId createPolicy(Map<String, Serializable> properties,
+            ObjectId folder) {
+        MethodMetrics m = metrics.get("createPolicy");
+        long start = System.nanoTime();
+        boolean ok = false;
+        try {
+            ObjectId res = super.createPolicy(properties, folder);
+            ok = true;
+            return res;
+        } finally {
+            m.done(start, ok);
+        }
+    }
+
+    @Override
+    public Set<QName> getAllowableActions(ObjectId object) {
+        MethodMetrics m = metrics.get("getAllowableActions");
+        long start = System.nanoTime();
+        boolean ok = false;
+        try {
+            Set<QName> res = super.getAllowableActions(object);
+            ok = true;
+            return res;
+        } finally {
+            m.done(start, ok);
+        }
+    }
+
+    @Override
+    public ObjectEntry getObject(ObjectId object, Inclusion inclusion) {
+        MethodMetrics m = metrics.get("getObject");
+        long start = System.nanoTime();
+        boolean ok = false;
+        try {
+            ObjectEntry res = super.getObject(object, inclusion);
+            ok = true;
+            return res;
+        } finally {
+            m.done(start, ok);
+        }
+    }
+
+    @Override
+    public ObjectEntry getProperties(ObjectId object, Inclusion inclusion) {
+        MethodMetrics m = metrics.get("getProperties");
+        long start = System.nanoTime();
+        boolean ok = false;
+        try {
+            ObjectEntry res = super.getProperties(object, inclusion);
+            ok = true;
+            return res;
+        } finally {
+            m.done(start, ok);
+        }
+    }
+
+    @Override
+    public ObjectEntry getObjectByPath(String path, Inclusion inclusion) {
+        MethodMetrics m = metrics.get("getObjectByPath");
+        long start = System.nanoTime();
+        boolean ok = false;
+        try {
+            ObjectEntry res = super.getObjectByPath(path, inclusion);
+            ok = true;
+            return res;
+        } finally {
+            m.done(start, ok);
+        }
+    }
+
+    @Override
+    public List<ObjectEntry> getObjects(Collection<ObjectId> objects,
+            Inclusion inclusion) {
+        MethodMetrics m = metrics.get("getObjects");
+        long start = System.nanoTime();
+        List<ObjectEntry> res = null;
+        boolean ok = false;
+        try {
+            res = super.getObjects(objects, inclusion);
+            ok = true;
+            return res;
+        } finally {
+            m.done(start, ok, res == null ? 0 : res.size());
+        }
+    }
+
+    @Override
+    public List<Rendition> getRenditions(ObjectId object, Inclusion inclusion,
+            Paging paging) {
+        MethodMetrics m = metrics.get("getRenditions");
+        long start = System.nanoTime();
+        List<Rendition> res = null;
+        boolean ok = false;
+        try {
+            res = super.getRenditions(object, inclusion, paging);
+            ok = true;
+            return res;
+        } finally {
+            m.done(start, ok, res == null ? 0 : res.size());
+        }
+    }
+
+    @Override
+    public boolean hasContentStream(ObjectId document) {
+        MethodMetrics m = metrics.get("hasContentStream");
+        long start = System.nanoTime();
+        boolean ok = false;
+        try {
+            boolean res = super.hasContentStream(document);
+            ok = true;
+            return res;
+        } finally {
+            m.done(start, ok);
+        }
+    }
+
+    @Override
+    public ContentStream getContentStream(ObjectId object,
+            String contentStreamId) throws IOException {
+        MethodMetrics m = metrics.get("getContentStream");
+        long start = System.nanoTime();
+        boolean ok = false;
+        try {
+            ContentStream res = super.getContentStream(object, contentStreamId);
+            ok = true;
+            return res == null ? null : new CountingContentStream(res, m);
+        } finally {
+            m.done(start, ok);
+        }
+    }
+
+    @Override
+    public ObjectId setContentStream(ObjectId document,
+            ContentStream contentStream, boolean overwrite)
+            throws IOException, ContentAlreadyExistsException,
+            UpdateConflictException {
+        MethodMetrics m = metrics.get("setContentStream");
+        if (contentStream != null) {
+            contentStream = new CountingContentStream(contentStream, m);
+        }
+        long start = System.nanoTime();
+        boolean ok = false;
+        try {
+            ObjectId res = super.setContentStream(document, contentStream,
+                    overwrite);
+            ok = true;
+            return res;
+        } finally {
+            m.done(start, ok);
+        }
+    }
+
+    @Override
+    public ObjectId deleteContentStream(ObjectId document)
+            throws UpdateConflictException {
+        MethodMetrics m = metrics.get("deleteContentStream");
+        long start = System.nanoTime();
+        boolean ok = false;
+        try {
+            ObjectId res = super.deleteContentStream(document);
+            ok = true;
+            return res;
+        } finally {
+            m.done(start, ok);
+        }
+    }
+
+    @Override
+    public ObjectId updateProperties(ObjectId object, String changeToken,
+            Map<String, Serializable> properties)
+            throws NameConstraintViolationException, UpdateConflictException {
+        MethodMetrics m = metrics.get("updateProperties");
+        long start = System.nanoTime();
+        boolean ok = false;
+        try {
+            ObjectId res = super.updateProperties(object, changeToken,
+                    properties);
+            ok = true;
+            return res;
+        } finally {
+            m.done(start, ok);
+        }
+    }
+
+    @Override
+    public List<ObjectId> updateProperties(
+            Map<ObjectId, Map<String, Serializable>> properties)
+            throws NameConstraintViolationException, UpdateConflictException {
+        MethodMetrics m = metrics.get("updatePropertiesBatch");
+        long start = System.nanoTime();
+        List<ObjectId> res = null;
+        boolean ok = false;
+        try {
+            res = super.updateProperties(properties);
+            ok = true;
+            return res;
+        } finally {
+            m.done(start, ok, res == null ? 0 : res.size());
+        }
+    }
+
+    @Override
+    public ObjectId moveObject(ObjectId object, ObjectId targetFolder,
+            ObjectId sourceFolder) throws NameConstraintViolationException,
+            UpdateConflictException {
+        MethodMetrics m = metrics.get("moveObject");
+        long start = System.nanoTime();
+        boolean ok = false;
+        try {
+            ObjectId res = super.moveObject(object, targetFolder, sourceFolder);
+            ok = true;
+            return res;
+        } finally {
+            m.done(start, ok);
+        }
+    }
+
+    @Override
+    public void deleteObject(ObjectId object, boolean allVersions)
+            throws UpdateConflictException {
+        MethodMetrics m = metrics.get("deleteObject");
+        long start = System.nanoTime();
+        boolean ok = false;
+        try {
+            super.deleteObject(object, allVersions);
+            ok = true;
+        } finally {
+            m.done(start, ok);
+        }
+    }
+
+    @Override
+    public void deleteObjects(Collection<ObjectId> objects,
+            boolean allVersions) throws UpdateConflictException {
+        MethodMetrics m = metrics.get("deleteObjects");
+        long start = System.nanoTime();
+        boolean ok = false;
+        try {
+            super.deleteObjects(objects, allVersions);
+            ok = true;
+        } finally {
+            m.done(start, ok, ok ? objects.size() : 0);
+        }
+    }
+
+    @Override
+    public Collection<ObjectId> deleteTree(ObjectId folder, Unfiling unfiling,
+            boolean continueOnFailure) throws UpdateConflictException {
+        MethodMetrics m = metrics.get("deleteTree");
+        long start = System.nanoTime();
+        Collection<ObjectId> res = null;
+        boolean ok = false;
+        try {
+            res = super.deleteTree(folder, unfiling, continueOnFailure);
+            ok = true;
+            return res;
+        } finally {
+            m.done(start, ok, res == null ? 0 : res.size());
+        }
+    }
+
+    /*
+     * ----- Multi-filing Services -----
+     */
+
+    @Override
+    public void addObjectToFolder(ObjectId object, ObjectId folder) {
+        MethodMetrics m = metrics.get("addObjectToFolder");
+        long start = System.nanoTime();
+        boolean ok = false;
+        try {
+            super.addObjectToFolder(object, folder);
+            ok = true;
+        } finally {
+            m.done(start, ok);
+        }
+    }
+
+    @Override
+    public void removeObjectFromFolder(ObjectId object, ObjectId folder) {
+        MethodMetrics m = metrics.get("removeObjectFromFolder");
+        long start = System.nanoTime();
+        boolean ok = false;
+        try {
+            super.removeObjectFromFolder(object, folder);
+            ok = true;
+        } finally {
+            m.done(start, ok);
+        }
+    }
+
+    /*
+     * ----- Discovery Services -----
+     */
+
+    @Override
+    public ListPage<ObjectEntry> query(String statement,
+            boolean searchAllVersions, Inclusion inclusion, Paging paging) {
+        MethodMetrics m = metrics.get("query");
+        long start = System.nanoTime();
+        ListPage<ObjectEntry> res = null;
+        boolean ok = false;
+        try {
+            res = super.query(statement, searchAllVersions, inclusion, paging);
+            ok = true;
+            return res;
+        } finally {
+            m.done(start, ok, res == null ? 0 : res.size());
+        }
+    }
+
+    @Override
+    public ListPage<ObjectEntry> getChangeLog(String changeLogToken,
+            boolean includeProperties, Paging paging,
+            String[] latestChangeLogToken) {
+        MethodMetrics m = metrics.get("getChangeLog");
+        long start = System.nanoTime();
+        ListPage<ObjectEntry> res = null;
+        boolean ok = false;
+        try {
+            res = super.getChangeLog(changeLogToken, includeProperties, paging,
+                    latestChangeLogToken);
+            ok = true;
+            return res;
+        } finally {
+            m.done(start, ok, res == null ? 0 : res.size());
+        }
+    }
+
+    /*
+     * ----- Versioning Services -----
+     */
+
+    @Override
+    public ObjectId checkOut(ObjectId document, boolean[] contentCopied)
+            throws UpdateConflictException {
+        MethodMetrics m = metrics.get("checkOut");
+        long start = System.nanoTime();
+        boolean ok = false;
+        try {
+            ObjectId res = super.checkOut(document, contentCopied);
+            ok = true;
+            return res;
+        } finally {
+            m.done(start, ok);
+        }
+    }
+
+    @Override
+    public void cancelCheckOut(ObjectId document)
+            throws UpdateConflictException {
+        MethodMetrics m = metrics.get("cancelCheckOut");
+        long start = System.nanoTime();
+        boolean ok = false;
+        try {
+            super.cancelCheckOut(document);
+            ok = true;
+        } finally {
+            m.done(start, ok);
+        }
+    }
+
+    @Override
+    public ObjectId checkIn(ObjectId document,
+            Map<String, Serializable> properties, ContentStream contentStream,
+            boolean major, String comment) throws UpdateConflictException {
+        MethodMetrics m = metrics.get("checkIn");
+        if (contentStream != null) {
+            contentStream = new CountingContentStream(contentStream, m);
+        }
+        long start = System.nanoTime();
+        boolean ok = false;
+        try {
+            ObjectId res = super.checkIn(document, properties, contentStream,
+                    major, comment);
+            ok = true;
+            return res;
+        } finally {
+            m.done(start, ok);
+        }
+    }
+
+    @Override
+    public Map<String, Serializable> getPropertiesOfLatestVersion(
+            String versionSeriesId, boolean major, String filter) {
+        MethodMetrics m = metrics.get("getPropertiesOfLatestVersion");
+        long start = System.nanoTime();
+        boolean ok = false;
+        try {
+            Map<String, Serializable> res = super.getPropertiesOfLatestVersion(
+                    versionSeriesId, major, filter);
+            ok = true;
+            return res;
+        } finally {
+            m.done(start, ok);
+        }
+    }
+
+    @Override
+    public Collection<ObjectEntry> getAllVersions(String versionSeriesId,
+            String filter) {
+        MethodMetrics m = metrics.get("getAllVersions");
+        long start = System.nanoTime();
+        Collection<ObjectEntry> res = null;
+        boolean ok = false;
+        try {
+            res = super.getAllVersions(versionSeriesId, filter);
+            ok = true;
+            return res;
+        } finally {
+            m.done(start, ok, res == null ? 0 : res.size());
+        }
+    }
+
+    /*
+     * ----- Relationship Services -----
+     */
+
+    @Override
+    public ListPage<ObjectEntry> getRelationships(ObjectId object,
+            String typeId, boolean includeSubRelationshipTypes,
+            Inclusion inclusion, Paging paging) {
+        MethodMetrics m = metrics.get("getRelationships");
+        long start = System.nanoTime();
+        ListPage<ObjectEntry> res = null;
+        boolean ok = false;
+        try {
+            res = super.getRelationships(object, typeId,
+                    includeSubRelationshipTypes, inclusion, paging);
+            ok = true;
+            return res;
+        } finally {
+            m.done(start, ok, res == null ? 0 : res.size());
+        }
+    }
+
+    /*
+     * ----- Policy Services -----
+     */
+
+    @Override
+    public void applyPolicy(ObjectId object, ObjectId policy) {
+        MethodMetrics m = metrics.get("applyPolicy");
+        long start = System.nanoTime();
+        boolean ok = false;
+        try {
+            super.applyPolicy(object, policy);
+            ok = true;
+        } finally {
+            m.done(start, ok);
+        }
+    }
+
+    @Override
+    public void removePolicy(ObjectId object, ObjectId policy) {
+        MethodMetrics m = metrics.get("removePolicy");
+        long start = System.nanoTime();
+        boolean ok = false;
+        try {
+            super.removePolicy(object, policy);
+            ok = true;
+        } finally {
+            m.done(start, ok);
+        }
+    }
+
+    @Override
+    public Collection<ObjectEntry> getAppliedPolicies(ObjectId object,
+            String filter) {
+        MethodMetrics m = metrics.get("getAppliedPolicies");
+        long start = System.nanoTime();
+        Collection<ObjectEntry> res = null;
+        boolean ok = false;
+        try {
+            res = super.getAppliedPolicies(object, filter);
+            ok = true;
+            return res;
+        } finally {
+            m.done(start, ok, res == null ? 0 : res.size());
+        }
+    }
+
+    /*
+     * ----- ACL Services -----
+     */
+
+    @Override
+    public List<ACE> getACL(ObjectId object, boolean onlyBasicPermissions,
+            boolean[] exact) {
+        MethodMetrics m = metrics.get("getACL");
+        long start = System.nanoTime();
+        List<ACE> res = null;
+        boolean ok = false;
+        try {
+            res = super.getACL(object, onlyBasicPermissions, exact);
+            ok = true;
+            return res;
+        } finally {
+            m.done(start, ok, res == null ? 0 : res.size());
+        }
+    }
+
+    @Override
+    public List<ACE> applyACL(ObjectId object, List<ACE> addACEs,
+            List<ACE> removeACEs, ACLPropagation propagation, boolean[] exact,
+            String[] changeToken) {
+        MethodMetrics m = metrics.get("applyACL");
+        long start = System.nanoTime();
+        List<ACE> res = null;
+        boolean ok = false;
+        try {
+            res = super.applyACL(object, addACEs, removeACEs, propagation,
+                    exact, changeToken);
+            ok = true;
+            return res;
+        } finally {
+            m.done(start, ok, res == null ? 0 : res.size());
+        }
+    }
+
+}
@@ -0,0 +1,170 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.chemistry.impl.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Metrics of one SPI method: call and error counts, latency distribution,
+ * result sizes and content bytes.
+ */
+public class MethodMetrics implements MethodMetricsMBean {
+
+    protected final String name;
+
+    protected final AtomicLong errors = new AtomicLong();
+
+    /** Latencies, in microseconds. */
+    protected final Histogram latencies = new Histogram();
+
+    /** Number of items returned, created on first use. */
+    protected volatile Histogram sizes;
+
+    protected final AtomicLong bytes = new AtomicLong();
+
+    public MethodMetrics(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Records the end of a call.
+     *
+     * @param start the {@link System#nanoTime} at the start of the call
+     * @param ok {@code false} if the call failed
+     */
+    public void done(long start, boolean ok) {
+        latencies.record((System.nanoTime() - start) / 1000);
+        if (!ok) {
+            errors.incrementAndGet();
+        }
+    }
+
+    /**
+     * Records the end of a call returning several items.
+     *
+     * @param start the {@link System#nanoTime} at the start of the call
+     * @param ok {@code false} if the call failed
+     * @param size the number of items returned
+     */
+    public void done(long start, boolean ok, int size) {
+        done(start, ok);
+        if (ok) {
+            getSizes().record(size);
+        }
+    }
+
+    protected Histogram getSizes() {
+        Histogram h = sizes;
+        if (h == null) {
+            synchronized (this) {
+                h = sizes;
+                if (h == null) {
+                    sizes = h = new Histogram();
+                }
+            }
+        }
+        return h;
+    }
+
+    public void addBytes(long n) {
+        if (n > 0) {
+            bytes.addAndGet(n);
+        }
+    }
+
+    public Histogram getLatencies() {
+        return latencies;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getCalls() {
+        return latencies.getCount();
+    }
+
+    public long getErrors() {
+        return errors.get();
+    }
+
+    public double getMeanMicros() {
+        return latencies.getMean();
+    }
+
+    public long getMedianMicros() {
+        return latencies.getPercentile(50);
+    }
+
+    public long get95thPercentileMicros() {
+        return latencies.getPercentile(95);
+    }
+
+    public long get99thPercentileMicros() {
+        return latencies.getPercentile(99);
+    }
+
+    public long getMaxMicros() {
+        return latencies.getMax();
+    }
+
+    public double getMeanResultSize() {
+        Histogram h = sizes;
+        return h == null ? 0 : h.getMean();
+    }
+
+    public long getMaxResultSize() {
+        Histogram h = sizes;
+        return h == null ? 0 : h.getMax();
+    }
+
+    public long getBytes() {
+        return bytes.get();
+    }
+
+    public void reset() {
+        latencies.reset();
+        errors.set(0);
+        Histogram h = sizes;
+        if (h != null) {
+            h.reset();
+        }
+        bytes.set(0);
+    }
+
+    /**
+     * Appends a one-line summary of these metrics.
+     */
+    public void dump(StringBuilder buf) {
+        buf.append(String.format(
+                "%-30s calls=%d errors=%d mean=%.1fus p50=%dus p95=%dus"
+                        + " p99=%dus max=%dus",
+                name, Long.valueOf(getCalls()), Long.valueOf(getErrors()),
+                Double.valueOf(getMeanMicros()),
+                Long.valueOf(getMedianMicros()),
+                Long.valueOf(get95thPercentileMicros()),
+                Long.valueOf(get99thPercentileMicros()),
+                Long.valueOf(getMaxMicros())));
+        if (sizes != null) {
+            buf.append(String.format(" items(mean=%.1f max=%d)",
+                    Double.valueOf(getMeanResultSize()),
+                    Long.valueOf(getMaxResultSize())));
+        }
+        if (bytes.get() != 0) {
+            buf.append(" bytes=").append(bytes.get());
+        }
+        buf.append('\n');
+    }
+
+}
@@ -0,0 +1,52 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.chemistry.impl.metrics;
+
+/**
+ * JMX view of the metrics of one SPI method.
+ */
+public interface MethodMetricsMBean {
+
+    String getName();
+
+    long getCalls();
+
+    long getErrors();
+
+    double getMeanMicros();
+
+    long getMedianMicros();
+
+    long get95thPercentileMicros();
+
+    long get99thPercentileMicros();
+
+    long getMaxMicros();
+
+    /**
+     * Gets the mean number of items returned, for methods returning lists or
+     * trees.
+     */
+    double getMeanResultSize();
+
+    long getMaxResultSize();
+
+    /**
+     * Gets the total number of content stream bytes sent or received.
+     */
+    long getBytes();
+
+    void reset();
+
+}
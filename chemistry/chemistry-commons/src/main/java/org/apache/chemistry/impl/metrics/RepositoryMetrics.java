@@ -0,0 +1,191 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.chemistry.impl.metrics;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * The metrics of all the SPI methods called on a repository.
+ * <p>
+ * Once {@link #register registered}, the repository metrics and the metrics
+ * of each method are available as MBeans named
+ * {@code
+ * org.apache.chemistry:type=RepositoryMetrics,repository=<id>,instance=<n>}
+ * and {@code
+ * org.apache.chemistry:type=MethodMetrics,repository=<id>,instance=<n>,method=<name>}.
+ * The instance number distinguishes metrics of several repositories with the
+ * same id, for instance two servlets exposing the same repository.
+ */
+public class RepositoryMetrics implements RepositoryMetricsMBean {
+
+    private static final Log log = LogFactory.getLog(RepositoryMetrics.class);
+
+    public static final String DOMAIN = "org.apache.chemistry";
+
+    private static final AtomicInteger instanceCounter = new AtomicInteger();
+
+    protected final String repositoryId;
+
+    protected final int instance = instanceCounter.incrementAndGet();
+
+    protected final ConcurrentMap<String, MethodMetrics> methods = new ConcurrentHashMap<String, MethodMetrics>();
+
+    protected volatile MBeanServer mbeanServer;
+
+    public RepositoryMetrics(String repositoryId) {
+        this.repositoryId = repositoryId;
+    }
+
+    public String getRepositoryId() {
+        return repositoryId;
+    }
+
+    /**
+     * Gets the number distinguishing these metrics from those of other
+     * repositories with the same id.
+     */
+    public int getInstance() {
+        return instance;
+    }
+
+    /**
+     * Gets the metrics for a method, creating them if needed.
+     */
+    public MethodMetrics get(String name) {
+        MethodMetrics m = methods.get(name);
+        if (m == null) {
+            MethodMetrics prev = methods.putIfAbsent(name,
+                    m = new MethodMetrics(name));
+            if (prev != null) {
+                m = prev;
+            } else {
+                MBeanServer server = mbeanServer;
+                if (server != null) {
+                    register(server, m, getObjectName(name));
+                }
+            }
+        }
+        return m;
+    }
+
+    public String[] getMethodNames() {
+        List<String> names = new ArrayList<String>(methods.keySet());
+        Collections.sort(names);
+        return names.toArray(new String[names.size()]);
+    }
+
+    public String dump() {
+        StringBuilder buf = new StringBuilder();
+        buf.append("Repository ").append(repositoryId).append('\n');
+        for (String name : getMethodNames()) {
+            methods.get(name).dump(buf);
+        }
+        return buf.toString();
+    }
+
+    @Override
+    public String toString() {
+        return dump();
+    }
+
+    public void reset() {
+        for (MethodMetrics m : methods.values()) {
+            m.reset();
+        }
+    }
+
+    /*
+     * ----- JMX -----
+     */
+
+    /**
+     * Gets the MBean name of these metrics, or of the metrics of a method.
+     *
+     * @param method the method name, or {@code null} for the repository
+     */
+    public ObjectName getObjectName(String method) {
+        StringBuilder buf = new StringBuilder(DOMAIN);
+        buf.append(":type=");
+        buf.append(method == null ? "RepositoryMetrics" : "MethodMetrics");
+        buf.append(",repository=").append(ObjectName.quote(repositoryId));
+        buf.append(",instance=").append(instance);
+        if (method != null) {
+            buf.append(",method=").append(method);
+        }
+        try {
+            return new ObjectName(buf.toString());
+        } catch (JMException e) {
+            // cannot happen, the values are quoted or method names
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Registers these metrics and those of each method in an MBean server.
+     */
+    public void register(MBeanServer server) {
+        mbeanServer = server;
+        register(server, this, getObjectName(null));
+        for (MethodMetrics m : methods.values()) {
+            register(server, m, getObjectName(m.getName()));
+        }
+    }
+
+    public void unregister() {
+        MBeanServer server = mbeanServer;
+        if (server == null) {
+            return;
+        }
+        mbeanServer = null;
+        unregister(server, getObjectName(null));
+        for (String name : methods.keySet()) {
+            unregister(server, getObjectName(name));
+        }
+    }
+
+    protected static void register(MBeanServer server, Object mbean,
+            ObjectName name) {
+        try {
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(mbean, name);
+        } catch (JMException e) {
+            log.warn("Cannot register MBean: " + name, e);
+        }
+    }
+
+    protected static void unregister(MBeanServer server, ObjectName name) {
+        try {
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+        } catch (JMException e) {
+            log.warn("Cannot unregister MBean: " + name, e);
+        }
+    }
+
+}
@@ -0,0 +1,454 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.chemistry.impl.simple;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * An immutable hash map, whose updates return a new map sharing most of its
+ * structure with the original one.
+ * <p>
+ * This is a hash array mapped trie: each level of the tree is indexed by
+ * five bits of the key hash, so that lookups and updates are in
+ * {@code O(log32(n))} and an update only copies the nodes on the path to the
+ * key. Null keys and values are not allowed.
+ */
+public class PersistentHashMap<K, V> extends AbstractMap<K, V> {
+
+    protected static final int BITS = 5;
+
+    protected static final int MASK = (1 << BITS) - 1;
+
+    @SuppressWarnings("unchecked")
+    private static final PersistentHashMap EMPTY = new PersistentHashMap(
+            null, 0);
+
+    protected final Node root;
+
+    protected final int size;
+
+    protected PersistentHashMap(Node root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <K, V> PersistentHashMap<K, V> empty() {
+        return EMPTY;
+    }
+
+    protected static int hash(Object key) {
+        int h = key.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V get(Object key) {
+        if (root == null || key == null) {
+            return null;
+        }
+        return (V) root.find(hash(key), 0, key);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return get(key) != null;
+    }
+
+    /**
+     * Returns a map with an additional or replaced mapping.
+     */
+    public PersistentHashMap<K, V> with(K key, V value) {
+        if (key == null || value == null) {
+            throw new NullPointerException();
+        }
+        int h = hash(key);
+        if (root == null) {
+            return new PersistentHashMap<K, V>(new Leaf(h, key, value), 1);
+        }
+        Node node = root.with(h, 0, key, value);
+        if (node == root) {
+            return this;
+        }
+        boolean added = root.find(h, 0, key) == null;
+        return new PersistentHashMap<K, V>(node, added ? size + 1 : size);
+    }
+
+    /**
+     * Returns a map without the mapping for a key.
+     */
+    public PersistentHashMap<K, V> without(Object key) {
+        if (root == null || key == null) {
+            return this;
+        }
+        Node node = root.without(hash(key), 0, key);
+        if (node == root) {
+            return this;
+        }
+        return node == null ? PersistentHashMap.<K, V> empty()
+                : new PersistentHashMap<K, V>(node, size - 1);
+    }
+
+    @Override
+    public Set<Map.Entry<K, V>> entrySet() {
+        return new AbstractSet<Map.Entry<K, V>>() {
+            @Override
+            public int size() {
+                return size;
+            }
+
+            @Override
+            public Iterator<Map.Entry<K, V>> iterator() {
+                return new EntryIterator<K, V>(root);
+            }
+        };
+    }
+
+    protected abstract static class Node {
+
+        /** Returns the value mapped to the key, or {@code null}. */
+        abstract Object find(int hash, int shift, Object key);
+
+        /** Returns a node with the mapping, or this node if unchanged. */
+        abstract Node with(int hash, int shift, Object key, Object value);
+
+        /**
+         * Returns a node without the key, this node if absent, or
+         * {@code null} if it becomes empty.
+         */
+        abstract Node without(int hash, int shift, Object key);
+    }
+
+    /**
+     * A single mapping.
+     */
+    protected static final class Leaf extends Node implements
+            Map.Entry<Object, Object> {
+
+        final int hash;
+
+        final Object key;
+
+        final Object value;
+
+        Leaf(int hash, Object key, Object value) {
+            this.hash = hash;
+            this.key = key;
+            this.value = value;
+        }
+
+        public Object getKey() {
+            return key;
+        }
+
+        public Object getValue() {
+            return value;
+        }
+
+        public Object setValue(Object value) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Map.Entry)) {
+                return false;
+            }
+            Map.Entry<?, ?> e = (Map.Entry<?, ?>) other;
+            return key.equals(e.getKey()) && value.equals(e.getValue());
+        }
+
+        @Override
+        public int hashCode() {
+            return key.hashCode() ^ value.hashCode();
+        }
+
+        @Override
+        Object find(int hash, int shift, Object key) {
+            return hash == this.hash && key.equals(this.key) ? value : null;
+        }
+
+        @Override
+        Node with(int hash, int shift, Object key, Object value) {
+            if (hash == this.hash) {
+                if (key.equals(this.key)) {
+                    return value == this.value ? this : new Leaf(hash, key,
+                            value);
+                }
+                return new Collision(hash, new Leaf[] { this,
+                        new Leaf(hash, key, value) });
+            }
+            return Branch.merge(shift, this, this.hash, new Leaf(hash, key,
+                    value), hash);
+        }
+
+        @Override
+        Node without(int hash, int shift, Object key) {
+            return hash == this.hash && key.equals(this.key) ? null : this;
+        }
+    }
+
+    /**
+     * Mappings whose keys have the same hash.
+     */
+    protected static final class Collision extends Node {
+
+        final int hash;
+
+        final Leaf[] leaves;
+
+        Collision(int hash, Leaf[] leaves) {
+            this.hash = hash;
+            this.leaves = leaves;
+        }
+
+        int indexOf(Object key) {
+            for (int i = 0; i < leaves.length; i++) {
+                if (key.equals(leaves[i].key)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        @Override
+        Object find(int hash, int shift, Object key) {
+            if (hash != this.hash) {
+                return null;
+            }
+            int i = indexOf(key);
+            return i == -1 ? null : leaves[i].value;
+        }
+
+        @Override
+        Node with(int hash, int shift, Object key, Object value) {
+            if (hash != this.hash) {
+                return Branch.merge(shift, this, this.hash, new Leaf(hash,
+                        key, value), hash);
+            }
+            int i = indexOf(key);
+            Leaf[] array;
+            if (i == -1) {
+                array = new Leaf[leaves.length + 1];
+                System.arraycopy(leaves, 0, array, 0, leaves.length);
+                i = leaves.length;
+            } else {
+                if (leaves[i].value == value) {
+                    return this;
+                }
+                array = leaves.clone();
+            }
+            array[i] = new Leaf(hash, key, value);
+            return new Collision(hash, array);
+        }
+
+        @Override
+        Node without(int hash, int shift, Object key) {
+            int i = hash == this.hash ? indexOf(key) : -1;
+            if (i == -1) {
+                return this;
+            }
+            if (leaves.length == 2) {
+                return leaves[1 - i];
+            }
+            Leaf[] array = new Leaf[leaves.length - 1];
+            System.arraycopy(leaves, 0, array, 0, i);
+            System.arraycopy(leaves, i + 1, array, i, array.length - i);
+            return new Collision(hash, array);
+        }
+    }
+
+    /**
+     * An inner node, holding the children for the hash slices present in
+     * its bitmap.
+     */
+    protected static final class Branch extends Node {
+
+        final int bitmap;
+
+        final Node[] children;
+
+        Branch(int bitmap, Node[] children) {
+            this.bitmap = bitmap;
+            this.children = children;
+        }
+
+        /**
+         * Creates the branches separating two nodes of different hashes.
+         */
+        static Node merge(int shift, Node n1, int h1, Node n2, int h2) {
+            int i1 = (h1 >>> shift) & MASK;
+            int i2 = (h2 >>> shift) & MASK;
+            if (i1 == i2) {
+                return new Branch(1 << i1, new Node[] { merge(shift + BITS,
+                        n1, h1, n2, h2) });
+            }
+            Node[] children = i1 < i2 ? new Node[] { n1, n2 } : new Node[] {
+                    n2, n1 };
+            return new Branch((1 << i1) | (1 << i2), children);
+        }
+
+        @Override
+        Object find(int hash, int shift, Object key) {
+            int bit = 1 << ((hash >>> shift) & MASK);
+            if ((bitmap & bit) == 0) {
+                return null;
+            }
+            int i = Integer.bitCount(bitmap & (bit - 1));
+            return children[i].find(hash, shift + BITS, key);
+        }
+
+        @Override
+        Node with(int hash, int shift, Object key, Object value) {
+            int bit = 1 << ((hash >>> shift) & MASK);
+            int i = Integer.bitCount(bitmap & (bit - 1));
+            if ((bitmap & bit) == 0) {
+                Node[] array = new Node[children.length + 1];
+                System.arraycopy(children, 0, array, 0, i);
+                array[i] = new Leaf(hash, key, value);
+                System.arraycopy(children, i, array, i + 1, children.length
+                        - i);
+                return new Branch(bitmap | bit, array);
+            }
+            Node child = children[i].with(hash, shift + BITS, key, value);
+            if (child == children[i]) {
+                return this;
+            }
+            Node[] array = children.clone();
+            array[i] = child;
+            return new Branch(bitmap, array);
+        }
+
+        @Override
+        Node without(int hash, int shift, Object key) {
+            int bit = 1 << ((hash >>> shift) & MASK);
+            if ((bitmap & bit) == 0) {
+                return this;
+            }
+            int i = Integer.bitCount(bitmap & (bit - 1));
+            Node child = children[i].without(hash, shift + BITS, key);
+            if (child == children[i]) {
+                return this;
+            }
+            if (child != null) {
+                Node[] array = children.clone();
+                array[i] = child;
+                return new Branch(bitmap, array);
+            }
+            if (children.length == 1) {
+                return null;
+            }
+            if (children.length == 2 && !(children[1 - i] instanceof Branch)) {
+                // a lone leaf is found from any level
+                return children[1 - i];
+            }
+            Node[] array = new Node[children.length - 1];
+            System.arraycopy(children, 0, array, 0, i);
+            System.arraycopy(children, i + 1, array, i, array.length - i);
+            return new Branch(bitmap & ~bit, array);
+        }
+    }
+
+    /**
+     * Depth-first iteration over the leaves.
+     */
+    protected static class EntryIterator<K, V> implements
+            Iterator<Map.Entry<K, V>> {
+
+        private final Node[][] arrays = new Node[8][];
+
+        private final int[] indexes = new int[8];
+
+        private int depth = -1;
+
+        private Leaf next;
+
+        private Leaf[] collision;
+
+        private int collisionIndex;
+
+        EntryIterator(Node root) {
+            if (root != null) {
+                push(new Node[] { root });
+                advance();
+            }
+        }
+
+        private void push(Node[] array) {
+            depth++;
+            arrays[depth] = array;
+            indexes[depth] = 0;
+        }
+
+        private void advance() {
+            next = null;
+            if (collision != null) {
+                if (collisionIndex < collision.length) {
+                    next = collision[collisionIndex++];
+                    return;
+                }
+                collision = null;
+            }
+            while (depth >= 0) {
+                Node[] array = arrays[depth];
+                if (indexes[depth] == array.length) {
+                    arrays[depth--] = null;
+                    continue;
+                }
+                Node node = array[indexes[depth]++];
+                if (node instanceof Leaf) {
+                    next = (Leaf) node;
+                    return;
+                }
+                if (node instanceof Collision) {
+                    collision = ((Collision) node).leaves;
+                    collisionIndex = 1;
+                    next = collision[0];
+                    return;
+                }
+                push(((Branch) node).children);
+            }
+        }
+
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @SuppressWarnings("unchecked")
+        public Map.Entry<K, V> next() {
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+            Map.Entry<K, V> res = (Map.Entry<K, V>) (Map.Entry<?, ?>) next;
+            advance();
+            return res;
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+}
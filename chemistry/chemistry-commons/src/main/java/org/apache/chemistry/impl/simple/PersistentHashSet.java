@@ -0,0 +1,73 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.chemistry.impl.simple;
+
+import java.util.AbstractSet;
+import java.util.Iterator;
+
+/**
+ * An immutable hash set, whose updates return a new set sharing most of its
+ * structure with the original one.
+ *
+ * @see PersistentHashMap
+ */
+public class PersistentHashSet<E> extends AbstractSet<E> {
+
+    @SuppressWarnings("unchecked")
+    private static final PersistentHashSet EMPTY = new PersistentHashSet(
+            PersistentHashMap.empty());
+
+    protected final PersistentHashMap<E, Boolean> map;
+
+    protected PersistentHashSet(PersistentHashMap<E, Boolean> map) {
+        this.map = map;
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <E> PersistentHashSet<E> empty() {
+        return EMPTY;
+    }
+
+    @Override
+    public int size() {
+        return map.size();
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return map.containsKey(o);
+    }
+
+    @Override
+    public Iterator<E> iterator() {
+        return map.keySet().iterator();
+    }
+
+    /**
+     * Returns a set with an additional element.
+     */
+    public PersistentHashSet<E> with(E e) {
+        PersistentHashMap<E, Boolean> m = map.with(e, Boolean.TRUE);
+        return m == map ? this : new PersistentHashSet<E>(m);
+    }
+
+    /**
+     * Returns a set without an element.
+     */
+    public PersistentHashSet<E> without(Object o) {
+        PersistentHashMap<E, Boolean> m = map.without(o);
+        return m == map ? this : new PersistentHashSet<E>(m);
+    }
+
+}
@@ -0,0 +1,257 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.chemistry.impl.simple;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.apache.chemistry.ObjectNotFoundException;
+import org.apache.chemistry.RelationshipDirection;
+
+/**
+ * The changes made by a writer on top of a {@link SimpleSnapshot}, producing
+ * the next snapshot.
+ * <p>
+ * Nothing is visible to readers until the change set is committed by the
+ * repository.
+ */
+public class SimpleChangeSet {
+
+    protected final SimpleSnapshot base;
+
+    protected PersistentHashMap<String, SimpleData> datas;
+
+    protected PersistentHashMap<String, PersistentHashSet<String>> children;
+
+    protected PersistentHashMap<String, PersistentHashSet<String>> parents;
+
+    protected PersistentHashMap<String, String[]> ancestors;
+
+    protected PersistentHashMap<String, SimpleVersionSeries> versionSeries;
+
+    protected PersistentHashMap<String, PersistentHashSet<String>> sources;
+
+    protected PersistentHashMap<String, PersistentHashSet<String>> targets;
+
+    /** IDs of the data copied or created by this change set. */
+    protected final Set<String> owned = new HashSet<String>();
+
+    public SimpleChangeSet(SimpleSnapshot base) {
+        this.base = base;
+        datas = base.datas;
+        children = base.children;
+        parents = base.parents;
+        ancestors = base.ancestors;
+        versionSeries = base.versionSeries;
+        sources = base.sources;
+        targets = base.targets;
+    }
+
+    public SimpleSnapshot getBase() {
+        return base;
+    }
+
+    public SimpleData getData(String id) {
+        return datas.get(id);
+    }
+
+    /**
+     * Gets the data of an object for modification. The data is copied the
+     * first time, the committed data is never changed.
+     *
+     * @throws ObjectNotFoundException if there is no such object
+     */
+    public SimpleData getDataForUpdate(String id) {
+        SimpleData data = datas.get(id);
+        if (data == null) {
+            throw new ObjectNotFoundException(id);
+        }
+        if (owned.add(id)) {
+            data = data.copy();
+            datas = datas.with(id, data);
+        }
+        return data;
+    }
+
+    public void putData(String id, SimpleData data) {
+        datas = datas.with(id, data);
+        owned.add(id);
+    }
+
+    public void removeData(String id) {
+        datas = datas.without(id);
+        owned.remove(id);
+    }
+
+    public Set<String> getChildren(String id) {
+        return children.get(id);
+    }
+
+    /**
+     * Registers an object as a folder, with no children yet.
+     */
+    public void addFolder(String id) {
+        children = children.with(id, PersistentHashSet.<String> empty());
+    }
+
+    public void removeFolder(String id) {
+        children = children.without(id);
+        ancestors = ancestors.without(id);
+    }
+
+    public Set<String> getParents(String id) {
+        PersistentHashSet<String> set = parents.get(id);
+        return set == null ? PersistentHashSet.<String> empty() : set;
+    }
+
+    /**
+     * Files an object in a folder.
+     */
+    public void link(String folderId, String id) {
+        PersistentHashSet<String> set = children.get(folderId);
+        if (set == null) {
+            throw new ObjectNotFoundException(folderId);
+        }
+        children = children.with(folderId, set.with(id));
+        set = parents.get(id);
+        if (set == null) {
+            set = PersistentHashSet.empty();
+        }
+        parents = parents.with(id, set.with(folderId));
+        if (children.get(id) != null) {
+            String[] a = ancestors.get(folderId);
+            if (a == null) {
+                throw new ObjectNotFoundException(folderId);
+            }
+            String[] b = new String[a.length + 1];
+            System.arraycopy(a, 0, b, 0, a.length);
+            b[a.length] = folderId;
+            setAncestors(id, b);
+        }
+    }
+
+    /**
+     * Sets the ancestors of a folder and updates those of its subfolders.
+     */
+    protected void setAncestors(String id, String[] a) {
+        ancestors = ancestors.with(id, a);
+        String[] b = null;
+        for (String cid : children.get(id)) {
+            if (children.get(cid) == null) {
+                continue;
+            }
+            if (b == null) {
+                b = new String[a.length + 1];
+                System.arraycopy(a, 0, b, 0, a.length);
+                b[a.length] = id;
+            }
+            setAncestors(cid, b);
+        }
+    }
+
+    /**
+     * Unfiles an object from a folder.
+     */
+    public void unlink(String folderId, String id) {
+        PersistentHashSet<String> set = children.get(folderId);
+        if (set != null) {
+            children = children.with(folderId, set.without(id));
+        }
+        set = parents.get(id);
+        if (set != null) {
+            set = set.without(folderId);
+            parents = set.isEmpty() ? parents.without(id) : parents.with(id,
+                    set);
+        }
+        ancestors = ancestors.without(id);
+    }
+
+    /**
+     * Checks if an object is in the tree of a folder.
+     *
+     * @see SimpleSnapshot#isInTree
+     */
+    public boolean isInTree(String id, String folderId) {
+        return SimpleSnapshot.isInTree(parents, ancestors, id, folderId);
+    }
+
+    public SimpleVersionSeries getVersionSeries(String id) {
+        return versionSeries.get(id);
+    }
+
+    public void putVersionSeries(SimpleVersionSeries series) {
+        versionSeries = versionSeries.with(series.getId(), series);
+    }
+
+    public void removeVersionSeries(String id) {
+        versionSeries = versionSeries.without(id);
+    }
+
+    public Set<String> getRelationships(String id,
+            RelationshipDirection direction) {
+        return SimpleSnapshot.getRelationships(sources, targets, id,
+                direction);
+    }
+
+    /**
+     * Indexes a relationship under its source and target.
+     */
+    public void addRelationship(String id, String sourceId, String targetId) {
+        sources = with(sources, sourceId, id);
+        targets = with(targets, targetId, id);
+    }
+
+    public void removeRelationship(String id, String sourceId,
+            String targetId) {
+        sources = without(sources, sourceId, id);
+        targets = without(targets, targetId, id);
+    }
+
+    protected static PersistentHashMap<String, PersistentHashSet<String>> with(
+            PersistentHashMap<String, PersistentHashSet<String>> map,
+            String key, String id) {
+        PersistentHashSet<String> set = map.get(key);
+        if (set == null) {
+            set = PersistentHashSet.empty();
+        }
+        return map.with(key, set.with(id));
+    }
+
+    protected static PersistentHashMap<String, PersistentHashSet<String>> without(
+            PersistentHashMap<String, PersistentHashSet<String>> map,
+            String key, String id) {
+        PersistentHashSet<String> set = map.get(key);
+        if (set == null) {
+            return map;
+        }
+        set = set.without(id);
+        return set.isEmpty() ? map.without(key) : map.with(key, set);
+    }
+
+    public boolean isModified() {
+        return datas != base.datas || children != base.children
+                || parents != base.parents || ancestors != base.ancestors
+                || versionSeries != base.versionSeries
+                || sources != base.sources || targets != base.targets;
+    }
+
+    /**
+     * Creates the snapshot holding these changes, with the next version.
+     */
+    public SimpleSnapshot toSnapshot() {
+        return new SimpleSnapshot(base.version + 1, datas, children, parents,
+                ancestors, versionSeries, sources, targets);
+    }
+
+}
@@ -17,29 +17,20 @@
  */
 package org.apache.chemistry.impl.simple;
 
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.LinkedList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Queue;
 import java.util.Set;
 
 import javax.xml.namespace.QName;
 
-import org.antlr.runtime.ANTLRInputStream;
-import org.antlr.runtime.CharStream;
-import org.antlr.runtime.CommonTokenStream;
-import org.antlr.runtime.RecognitionException;
-import org.antlr.runtime.TokenSource;
-import org.antlr.runtime.TokenStream;
-import org.antlr.runtime.tree.CommonTree;
-import org.antlr.runtime.tree.CommonTreeNodeStream;
 import org.apache.chemistry.ACE;
 import org.apache.chemistry.ACLPropagation;
 import org.apache.chemistry.BaseType;
@@ -62,6 +53,7 @@ import org.apache.chemistry.Policy;
 import org.apache.chemistry.Property;
 import org.apache.chemistry.PropertyDefinition;
 import org.apache.chemistry.Relationship;
+import org.apache.chemistry.RelationshipDirection;
 import org.apache.chemistry.Rendition;
 import org.apache.chemistry.Repository;
 import org.apache.chemistry.SPI;
@@ -69,19 +61,55 @@ import org.apache.chemistry.Tree;
 import org.apache.chemistry.Type;
 import org.apache.chemistry.Unfiling;
 import org.apache.chemistry.Updatability;
+import org.apache.chemistry.VersioningException;
 import org.apache.chemistry.VersioningState;
-import org.apache.chemistry.cmissql.CmisSqlLexer;
-import org.apache.chemistry.cmissql.CmisSqlParser;
+import org.apache.chemistry.impl.base.EntryComparator;
 import org.apache.chemistry.util.GregorianCalendar;
 
+/**
+ * Connection to a {@link SimpleRepository}.
+ * <p>
+ * Each read is served from the latest snapshot committed when it starts, so
+ * it never blocks behind a writer and never sees a half-applied change. Each
+ * write is committed atomically.
+ */
 public class SimpleConnection implements Connection, SPI {
 
+    /** Number of objects deleted by each commit of a {@link #deleteTree}. */
+    protected static final int DELETE_BATCH_SIZE = 1000;
+
     protected final SimpleRepository repository;
 
     protected final SimpleFolder rootFolder;
 
+    /** The user name of the connection, or {@code null}. */
+    protected final String userName;
+
+    /** The snapshot of the query being evaluated. */
+    protected SimpleSnapshot querySnapshot;
+
+    /** The properties describing the version of a document. */
+    protected static final String[] VERSION_PROPERTIES = {
+            Property.VERSION_SERIES_ID, Property.VERSION_LABEL,
+            Property.IS_LATEST_VERSION, Property.IS_MAJOR_VERSION,
+            Property.IS_LATEST_MAJOR_VERSION,
+            Property.IS_VERSION_SERIES_CHECKED_OUT,
+            Property.VERSION_SERIES_CHECKED_OUT_BY,
+            Property.VERSION_SERIES_CHECKED_OUT_ID, Property.CHECK_IN_COMMENT };
+
     public SimpleConnection(SimpleRepository repository) {
+        this(repository, null);
+    }
+
+    /**
+     * Creates a connection.
+     *
+     * @param userName the user name recorded by the changes made through the
+     *            connection, or {@code null} for the system user
+     */
+    public SimpleConnection(SimpleRepository repository, String userName) {
         this.repository = repository;
+        this.userName = userName;
         rootFolder = (SimpleFolder) getObject(repository.getRootFolderId());
     }
 
@@ -115,7 +143,8 @@ public class SimpleConnection implements Connection, SPI {
 
     public SimpleObjectEntry newObjectEntry(String typeId) {
         BaseType baseType = repository.getType(typeId).getBaseType();
-        return new SimpleObjectEntry(new SimpleData(typeId, baseType), this);
+        return new SimpleObjectEntry(new SimpleData(
+                repository.getLayout(typeId), typeId, baseType), this);
     }
 
     public Document newDocument(String typeId, Folder folder) {
@@ -166,10 +195,11 @@ public class SimpleConnection implements Connection, SPI {
      * ----- Navigation Services -----
      */
 
-    protected List<Tree<ObjectEntry>> getTreeChildren(ObjectId entry,
-            int depth, Inclusion inclusion, String orderBy, BaseType baseType) {
+    protected List<Tree<ObjectEntry>> getTreeChildren(SimpleSnapshot snapshot,
+            ObjectId entry, int depth, Inclusion inclusion, String orderBy,
+            BaseType baseType) {
         List<Tree<ObjectEntry>> children = new ArrayList<Tree<ObjectEntry>>();
-        for (ObjectEntry child : getChildren(entry, inclusion, orderBy, null)) {
+        for (ObjectEntry child : getChildren(snapshot, entry.getId())) {
             BaseType childBaseType = child.getBaseType();
             if (baseType != null && baseType != childBaseType) {
                 continue;
@@ -178,8 +208,8 @@ public class SimpleConnection implements Connection, SPI {
             if (childBaseType != BaseType.FOLDER || depth == 1) {
                 c = null;
             } else {
-                c = getTreeChildren(child, depth - 1, inclusion, orderBy,
-                        baseType);
+                c = getTreeChildren(snapshot, child, depth - 1, inclusion,
+                        orderBy, baseType);
             }
             children.add(new SimpleTree<ObjectEntry>(child, c));
         }
@@ -188,35 +218,57 @@ public class SimpleConnection implements Connection, SPI {
 
     public Tree<ObjectEntry> getFolderTree(ObjectId folder, int depth,
             Inclusion inclusion) {
-        checkFolder(folder);
-        return new SimpleTree<ObjectEntry>(null, getTreeChildren(folder, depth,
-                inclusion, null, BaseType.FOLDER));
+        SimpleSnapshot snapshot = repository.getSnapshot();
+        checkFolder(snapshot, folder);
+        return new SimpleTree<ObjectEntry>(null, getTreeChildren(snapshot,
+                folder, depth, inclusion, null, BaseType.FOLDER));
     }
 
     public Tree<ObjectEntry> getDescendants(ObjectId folder, int depth,
             String orderBy, Inclusion inclusion) {
-        checkFolder(folder);
-        return new SimpleTree<ObjectEntry>(null, getTreeChildren(folder, depth,
-                inclusion, orderBy, null));
+        SimpleSnapshot snapshot = repository.getSnapshot();
+        checkFolder(snapshot, folder);
+        return new SimpleTree<ObjectEntry>(null, getTreeChildren(snapshot,
+                folder, depth, inclusion, orderBy, null));
     }
 
     public ListPage<ObjectEntry> getChildren(ObjectId folder,
             Inclusion inclusion, String orderBy, Paging paging) {
-        // TODO orderBy, inclusion
-        checkFolder(folder);
-        Set<String> ids = repository.children.get(folder.getId());
+        // TODO inclusion
+        SimpleSnapshot snapshot = repository.getSnapshot();
+        checkFolder(snapshot, folder);
+        List<ObjectEntry> all = getChildren(snapshot, folder.getId());
+        EntryComparator comparator = EntryComparator.fromOrderBy(orderBy,
+                repository);
+        if (comparator != null) {
+            Collections.sort(all, comparator);
+        }
+        return SimpleListPage.fromPaging(all, paging);
+    }
+
+    protected List<ObjectEntry> getChildren(SimpleSnapshot snapshot,
+            String folderId) {
+        Set<String> ids = snapshot.getChildren(folderId);
         List<ObjectEntry> all = new ArrayList<ObjectEntry>(ids.size());
         for (String id : ids) {
-            SimpleData data = repository.datas.get(id);
-            all.add(new SimpleObjectEntry(data, this));
+            SimpleData data = snapshot.getData(id);
+            all.add(new SimpleObjectEntry(data, this, snapshot));
         }
-        return SimpleListPage.fromPaging(all, paging);
+        return all;
     }
 
     protected void checkFolder(ObjectId object) throws ObjectNotFoundException,
             ConstraintViolationException {
-        String id = object.getId();
-        SimpleData data = repository.datas.get(id);
+        checkFolder(repository.getSnapshot(), object);
+    }
+
+    protected void checkFolder(SimpleSnapshot snapshot, ObjectId object)
+            throws ObjectNotFoundException, ConstraintViolationException {
+        checkFolder(snapshot.getData(object.getId()), object.getId());
+    }
+
+    protected void checkFolder(SimpleData data, String id)
+            throws ObjectNotFoundException, ConstraintViolationException {
         if (data == null) {
             throw new ObjectNotFoundException(id);
         }
@@ -229,7 +281,8 @@ public class SimpleConnection implements Connection, SPI {
     public ObjectEntry getFolderParent(ObjectId folder, String filter) {
         // TODO filter
         String folderId = folder.getId();
-        SimpleData data = repository.datas.get(folderId);
+        SimpleSnapshot snapshot = repository.getSnapshot();
+        SimpleData data = snapshot.getData(folderId);
         if (data == null) {
             throw new RuntimeException("No such folder: " + folder);
         }
@@ -238,8 +291,8 @@ public class SimpleConnection implements Connection, SPI {
         if (!type.getBaseType().equals(BaseType.FOLDER)) {
             throw new IllegalArgumentException("Not a folder: " + folder);
         }
-        Set<String> parents = repository.parents.get(folderId);
-        if (parents == null || parents.isEmpty()) {
+        Set<String> parents = snapshot.getParents(folderId);
+        if (parents.isEmpty()) {
             return null;
         }
         if (parents.size() > 1) {
@@ -247,7 +300,8 @@ public class SimpleConnection implements Connection, SPI {
                     + parents.size() + " parents");
         }
         String parentId = parents.iterator().next();
-        return new SimpleObjectEntry(repository.datas.get(parentId), this);
+        return new SimpleObjectEntry(snapshot.getData(parentId), this,
+                snapshot);
     }
 
     public Collection<ObjectEntry> getObjectParents(ObjectId object,
@@ -257,11 +311,12 @@ public class SimpleConnection implements Connection, SPI {
         if (objectId == null) {
             return Collections.emptyList();
         }
-        Set<String> ids = repository.parents.get(objectId);
+        SimpleSnapshot snapshot = repository.getSnapshot();
+        Set<String> ids = snapshot.getParents(objectId);
         List<ObjectEntry> parents = new ArrayList<ObjectEntry>(ids.size());
         for (String id : ids) {
-            SimpleData data = repository.datas.get(id);
-            parents.add(new SimpleObjectEntry(data, this));
+            SimpleData data = snapshot.getData(id);
+            parents.add(new SimpleObjectEntry(data, this, snapshot));
         }
         return parents;
     }
@@ -281,11 +336,11 @@ public class SimpleConnection implements Connection, SPI {
         saveData(object.entry.data, object.getTypeId());
     }
 
-    protected void saveData(SimpleData data, String typeId) {
+    protected void saveData(final SimpleData data, String typeId) {
         Map<String, Serializable> update = new HashMap<String, Serializable>();
 
         // generate an ID
-        String objectId = repository.generateId();
+        final String objectId = repository.generateId();
         update.put(Property.ID, objectId);
 
         // check mandatory properties
@@ -337,6 +392,21 @@ public class SimpleConnection implements Connection, SPI {
         update.put(Property.CONTENT_STREAM_LENGTH, bytes == null ? null
                 : Integer.valueOf(bytes.length)); // TODO Long
 
+        // versioning, a new document starts a version series
+        final boolean versionable = type.getBaseType() == BaseType.DOCUMENT
+                && type.isVersionable();
+        if (versionable) {
+            for (String key : VERSION_PROPERTIES) {
+                update.put(key, null);
+            }
+            update.put(Property.VERSION_SERIES_ID, objectId);
+            update.put(Property.VERSION_LABEL, "1.0");
+            update.put(Property.IS_LATEST_VERSION, Boolean.TRUE);
+            update.put(Property.IS_MAJOR_VERSION, Boolean.TRUE);
+            update.put(Property.IS_LATEST_MAJOR_VERSION, Boolean.TRUE);
+            // the checked out state is kept by the version series
+        }
+
         // update data once we know there's no error
         for (String key : update.keySet()) {
             Serializable value = update.get(key);
@@ -347,27 +417,55 @@ public class SimpleConnection implements Connection, SPI {
             }
         }
 
-        // properties
-        repository.datas.put(objectId, data); // TODO clone data?
-
         // parents/children
-        String parentId = (String) data.get(Property.PARENT_ID);
-        if (type.getBaseType() == BaseType.FOLDER) {
-            // new folder, empty set of children
-            repository.children.put(objectId, repository.newSet());
-        } else {
+        final String parentId = (String) data.get(Property.PARENT_ID);
+        final boolean isFolder = type.getBaseType() == BaseType.FOLDER;
+        if (!isFolder) {
             // only folders have this property
             data.remove(Property.PARENT_ID);
         }
-        if (parentId != null) {
-            // this object is filed
-            // pointer to parent
-            Set<String> parents = repository.newSet();
-            parents.add(parentId);
-            repository.parents.put(objectId, parents);
-            // new pointer to child
-            repository.children.get(parentId).add(objectId);
+
+        // relationships are indexed under their source and target
+        final String sourceId;
+        final String targetId;
+        if (type.getBaseType() == BaseType.RELATIONSHIP) {
+            sourceId = (String) data.get(Property.SOURCE_ID);
+            targetId = (String) data.get(Property.TARGET_ID);
+            if (sourceId == null || targetId == null) {
+                throw new ConstraintViolationException(
+                        "Missing relationship source or target");
+            }
+        } else {
+            sourceId = targetId = null;
         }
+
+        // the data is not modified after this point
+        repository.commit(new SimpleChange() {
+            public void apply(SimpleChangeSet changes) {
+                if (sourceId != null) {
+                    if (changes.getData(sourceId) == null) {
+                        throw new ObjectNotFoundException(sourceId);
+                    }
+                    if (changes.getData(targetId) == null) {
+                        throw new ObjectNotFoundException(targetId);
+                    }
+                    changes.addRelationship(objectId, sourceId, targetId);
+                }
+                changes.putData(objectId, data);
+                if (isFolder) {
+                    // new folder, empty set of children
+                    changes.addFolder(objectId);
+                }
+                if (parentId != null) {
+                    // this object is filed
+                    changes.link(parentId, objectId);
+                }
+                if (versionable) {
+                    changes.putVersionSeries(new SimpleVersionSeries(objectId).withVersion(
+                            objectId, true));
+                }
+            }
+        });
     }
 
     public ObjectId createDocumentFromSource(ObjectId source, ObjectId folder,
@@ -376,7 +474,8 @@ public class SimpleConnection implements Connection, SPI {
             throws NameConstraintViolationException {
         // TODO versioningState
         String id = source.getId();
-        SimpleData sourceData = repository.datas.get(id);
+        SimpleSnapshot snapshot = repository.getSnapshot();
+        SimpleData sourceData = snapshot.getData(id);
         if (sourceData == null) {
             throw new ObjectNotFoundException(id);
         }
@@ -385,8 +484,7 @@ public class SimpleConnection implements Connection, SPI {
         if (type == null || type.getBaseType() != BaseType.DOCUMENT) {
             throw new IllegalArgumentException(typeId);
         }
-        SimpleData data = new SimpleData(null, null);
-        data.putAll(sourceData);
+        SimpleData data = sourceData.copy();
         if (properties != null) {
             data.putAll(properties);
         }
@@ -396,13 +494,13 @@ public class SimpleConnection implements Connection, SPI {
             data.remove(Property.PARENT_ID);
         } else {
             String folderId = folder.getId();
-            if (!repository.datas.containsKey(folderId)) {
+            if (snapshot.getData(folderId) == null) {
                 throw new ObjectNotFoundException(folderId);
             }
             data.put(Property.PARENT_ID, folderId);
         }
         saveData(data, (String) data.get(Property.TYPE_ID));
-        return new SimpleObjectEntry(data, this);
+        return new SimpleObjectEntry(data, this, repository.getSnapshot());
     }
 
     public ObjectId createDocument(Map<String, Serializable> properties,
@@ -420,7 +518,8 @@ public class SimpleConnection implements Connection, SPI {
         if (type == null || type.getBaseType() != BaseType.DOCUMENT) {
             throw new IllegalArgumentException(typeId);
         }
-        SimpleData data = new SimpleData(typeId, type.getBaseType());
+        SimpleData data = new SimpleData(repository.getLayout(typeId),
+                typeId, type.getBaseType());
         data.putAll(properties);
         // TODO check presence allowed
         if (contentStream != null) {
@@ -458,7 +557,8 @@ public class SimpleConnection implements Connection, SPI {
         if (type == null || type.getBaseType() != BaseType.FOLDER) {
             throw new IllegalArgumentException(typeId);
         }
-        SimpleData data = new SimpleData(typeId, type.getBaseType());
+        SimpleData data = new SimpleData(repository.getLayout(typeId),
+                typeId, type.getBaseType());
         data.putAll(properties);
         if (folder != null) {
             data.put(Property.PARENT_ID, folder.getId());
@@ -468,8 +568,19 @@ public class SimpleConnection implements Connection, SPI {
     }
 
     public ObjectId createRelationship(Map<String, Serializable> properties) {
-        // TODO Auto-generated method stub
-        throw new UnsupportedOperationException();
+        String typeId = (String) properties.get(Property.TYPE_ID);
+        if (typeId == null) {
+            throw new IllegalArgumentException("Missing object type id");
+        }
+        Type type = repository.getType(typeId);
+        if (type == null || type.getBaseType() != BaseType.RELATIONSHIP) {
+            throw new IllegalArgumentException(typeId);
+        }
+        SimpleData data = new SimpleData(repository.getLayout(typeId),
+                typeId, type.getBaseType());
+        data.putAll(properties);
+        saveData(data, typeId);
+        return new SimpleObjectId((String) data.get(Property.ID));
     }
 
     public ObjectId createPolicy(Map<String, Serializable> properties,
@@ -488,11 +599,28 @@ public class SimpleConnection implements Connection, SPI {
 
     public ObjectEntry getProperties(ObjectId object, Inclusion inclusion) {
         // TODO filter, includeAllowableActions, includeRelationships
-        SimpleData data = repository.datas.get(object.getId());
+        SimpleSnapshot snapshot = repository.getSnapshot();
+        SimpleData data = snapshot.getData(object.getId());
         if (data == null) {
             return null;
         }
-        return new SimpleObjectEntry(data, this);
+        return new SimpleObjectEntry(data, this, snapshot);
+    }
+
+    /**
+     * Reads all the objects from the same snapshot.
+     */
+    public List<ObjectEntry> getObjects(Collection<ObjectId> objects,
+            Inclusion inclusion) {
+        // TODO filter, includeAllowableActions, includeRelationships
+        SimpleSnapshot snapshot = repository.getSnapshot();
+        List<ObjectEntry> res = new ArrayList<ObjectEntry>(objects.size());
+        for (ObjectId object : objects) {
+            SimpleData data = snapshot.getData(object.getId());
+            res.add(data == null ? null : new SimpleObjectEntry(data, this,
+                    snapshot));
+        }
+        return res;
     }
 
     public ObjectEntry getObjectByPath(String path, Inclusion inclusion) {
@@ -505,6 +633,7 @@ public class SimpleConnection implements Connection, SPI {
             throw new IllegalArgumentException("Path must not end with / : "
                     + path);
         }
+        SimpleSnapshot snapshot = repository.getSnapshot();
         String id = repository.getRootFolderId().getId();
         String[] segments = path.substring(1).split("/");
         if (!path.equals("/")) {
@@ -513,13 +642,13 @@ public class SimpleConnection implements Connection, SPI {
                     throw new IllegalArgumentException(
                             "Path must not contain // : " + path);
                 }
-                Set<String> children = repository.children.get(id);
+                Set<String> children = snapshot.getChildren(id);
                 if (children == null) {
                     return null;
                 }
                 String foundId = null;
                 for (String childId : children) {
-                    SimpleData data = repository.datas.get(childId);
+                    SimpleData data = snapshot.getData(childId);
                     String name = (String) data.get(Property.NAME);
                     if (segment.equals(name)) {
                         foundId = childId;
@@ -533,7 +662,7 @@ public class SimpleConnection implements Connection, SPI {
                 id = foundId;
             }
         }
-        return new SimpleObjectEntry(repository.datas.get(id), this);
+        return new SimpleObjectEntry(snapshot.getData(id), this, snapshot);
     }
 
     public Folder getFolder(String path) {
@@ -549,21 +678,22 @@ public class SimpleConnection implements Connection, SPI {
     }
 
     public CMISObject getObject(ObjectId object) {
-        SimpleData data = repository.datas.get(object.getId());
+        SimpleSnapshot snapshot = repository.getSnapshot();
+        SimpleData data = snapshot.getData(object.getId());
         if (data == null) {
             return null;
         }
         String typeId = (String) data.get(Property.TYPE_ID);
+        SimpleObjectEntry entry = new SimpleObjectEntry(data, this, snapshot);
         switch (repository.getType(typeId).getBaseType()) {
         case DOCUMENT:
-            return new SimpleDocument(new SimpleObjectEntry(data, this), this);
+            return new SimpleDocument(entry, this);
         case FOLDER:
-            return new SimpleFolder(new SimpleObjectEntry(data, this), this);
+            return new SimpleFolder(entry, this);
         case RELATIONSHIP:
-            return new SimpleRelationship(new SimpleObjectEntry(data, this),
-                    this);
+            return new SimpleRelationship(entry, this);
         case POLICY:
-            return new SimplePolicy(new SimpleObjectEntry(data, this), this);
+            return new SimplePolicy(entry, this);
         default:
             throw new AssertionError(typeId);
         }
@@ -575,7 +705,7 @@ public class SimpleConnection implements Connection, SPI {
     }
 
     public boolean hasContentStream(ObjectId document) {
-        SimpleData data = repository.datas.get(document.getId());
+        SimpleData data = repository.getSnapshot().getData(document.getId());
         byte[] bytes = (byte[]) data.get(SimpleProperty.CONTENT_BYTES_KEY);
         return bytes != null;
     }
@@ -583,7 +713,7 @@ public class SimpleConnection implements Connection, SPI {
     public ContentStream getContentStream(ObjectId object,
             String contentStreamId) {
         // TODO contentStreamId
-        SimpleData data = repository.datas.get(object.getId());
+        SimpleData data = repository.getSnapshot().getData(object.getId());
         byte[] bytes = (byte[]) data.get(SimpleProperty.CONTENT_BYTES_KEY);
         if (bytes == null) {
             return null;
@@ -595,37 +725,51 @@ public class SimpleConnection implements Connection, SPI {
     }
 
     public ObjectId setContentStream(ObjectId document,
-            ContentStream contentStream, boolean overwrite) {
-        SimpleData data = repository.datas.get(document.getId());
+            final ContentStream contentStream, boolean overwrite) {
+        final String id = document.getId();
+        final byte[] bytes = getBytes(contentStream);
+        repository.commit(new SimpleChange() {
+            public void apply(SimpleChangeSet changes) {
+                setContent(changes.getDataForUpdate(id), contentStream, bytes);
+            }
+        });
+        return document;
+    }
+
+    protected static byte[] getBytes(ContentStream contentStream) {
+        if (contentStream == null) {
+            return null;
+        }
+        try {
+            return SimpleContentStream.getBytes(contentStream.getStream());
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    protected static void setContent(SimpleData data,
+            ContentStream contentStream, byte[] bytes) {
         if (contentStream == null) {
             data.remove(SimpleProperty.CONTENT_BYTES_KEY);
             data.remove(Property.CONTENT_STREAM_MIME_TYPE);
             data.remove(Property.CONTENT_STREAM_FILE_NAME);
             data.remove(Property.CONTENT_STREAM_LENGTH);
+            return;
+        }
+        data.put(SimpleProperty.CONTENT_BYTES_KEY, bytes);
+        data.put(Property.CONTENT_STREAM_LENGTH, Integer.valueOf(bytes.length)); // TODO-Long
+        String mt = contentStream.getMimeType();
+        if (mt == null) {
+            data.remove(Property.CONTENT_STREAM_MIME_TYPE);
         } else {
-            byte[] bytes;
-            try {
-                bytes = SimpleContentStream.getBytes(contentStream.getStream());
-            } catch (IOException e) {
-                throw new RuntimeException(e);
-            }
-            data.put(SimpleProperty.CONTENT_BYTES_KEY, bytes);
-            data.put(Property.CONTENT_STREAM_LENGTH,
-                    Integer.valueOf(bytes.length)); // TODO-Long
-            String mt = contentStream.getMimeType();
-            if (mt == null) {
-                data.remove(Property.CONTENT_STREAM_MIME_TYPE);
-            } else {
-                data.put(Property.CONTENT_STREAM_MIME_TYPE, mt);
-            }
-            String fn = contentStream.getFileName();
-            if (fn == null) {
-                data.remove(Property.CONTENT_STREAM_FILE_NAME);
-            } else {
-                data.put(Property.CONTENT_STREAM_FILE_NAME, fn);
-            }
+            data.put(Property.CONTENT_STREAM_MIME_TYPE, mt);
+        }
+        String fn = contentStream.getFileName();
+        if (fn == null) {
+            data.remove(Property.CONTENT_STREAM_FILE_NAME);
+        } else {
+            data.put(Property.CONTENT_STREAM_FILE_NAME, fn);
         }
-        return document;
     }
 
     public ObjectId deleteContentStream(ObjectId document) {
@@ -633,9 +777,38 @@ public class SimpleConnection implements Connection, SPI {
     }
 
     public ObjectId updateProperties(ObjectId object, String changeToken,
-            Map<String, Serializable> properties) {
+            final Map<String, Serializable> properties) {
         // TODO changeToken
-        SimpleData data = repository.datas.get(object.getId());
+        final String id = object.getId();
+        repository.commit(new SimpleChange() {
+            public void apply(SimpleChangeSet changes) {
+                setProperties(changes.getDataForUpdate(id), properties);
+            }
+        });
+        return object;
+    }
+
+    /**
+     * Applies all the updates in a single commit.
+     */
+    public List<ObjectId> updateProperties(
+            final Map<ObjectId, Map<String, Serializable>> properties) {
+        repository.commit(new SimpleChange() {
+            public void apply(SimpleChangeSet changes) {
+                for (Map.Entry<ObjectId, Map<String, Serializable>> es : properties.entrySet()) {
+                    String id = es.getKey().getId();
+                    if (changes.getData(id) == null) {
+                        throw new ObjectNotFoundException(id);
+                    }
+                    setProperties(changes.getDataForUpdate(id), es.getValue());
+                }
+            }
+        });
+        return new ArrayList<ObjectId>(properties.keySet());
+    }
+
+    protected void setProperties(SimpleData data,
+            Map<String, Serializable> properties) {
         String typeId = (String) data.get(Property.TYPE_ID);
         Type type = repository.getType(typeId);
         for (String key : properties.keySet()) {
@@ -662,112 +835,343 @@ public class SimpleConnection implements Connection, SPI {
                 data.put(key, value);
             }
         }
-        return object;
     }
 
-    public ObjectId moveObject(ObjectId object, ObjectId targetFolder,
-            ObjectId sourceFolder) {
-        String id = object.getId();
+    // Called by SimpleObjectEntry.setValue() for saved objects.
+    protected SimpleData updateValue(final String id, final String key,
+            final Serializable value) {
+        final SimpleData[] res = new SimpleData[1];
+        repository.commit(new SimpleChange() {
+            public void apply(SimpleChangeSet changes) {
+                SimpleData data = changes.getDataForUpdate(id);
+                if (value == null) {
+                    data.remove(key);
+                } else {
+                    data.put(key, value);
+                }
+                res[0] = data;
+            }
+        });
+        return res[0];
+    }
+
+    public ObjectId moveObject(ObjectId object, final ObjectId targetFolder,
+            final ObjectId sourceFolder) {
+        final String id = object.getId();
         if (repository.rootId.equals(id)) {
             throw new IllegalArgumentException("Cannot move root");
         }
-        SimpleData data = repository.datas.get(id);
-        if (data == null) {
-            throw new ObjectNotFoundException(object.getId());
-        }
-        checkFolder(targetFolder);
-        Set<String> parents = repository.parents.get(id);
-        String sourceFolderId;
-        if (sourceFolder == null) {
-            if (parents.size() > 1) {
-                throw new ConstraintViolationException("Object "
-                        + object.getId() + " has " + parents.size()
-                        + " parents");
-            } else if (!parents.isEmpty()) {
-                sourceFolderId = parents.iterator().next();
-            } else {
-                sourceFolderId = null;
-            }
-        } else {
-            sourceFolderId = sourceFolder.getId();
-            if (!parents.contains(sourceFolderId)) {
-                throw new ConstraintViolationException("Object " + id
-                        + " is not filed in " + sourceFolderId);
+        repository.commit(new SimpleChange() {
+            public void apply(SimpleChangeSet changes) {
+                if (changes.getData(id) == null) {
+                    throw new ObjectNotFoundException(id);
+                }
+                String targetFolderId = targetFolder.getId();
+                checkFolder(changes.getData(targetFolderId), targetFolderId);
+                if (targetFolderId.equals(id)
+                        || changes.isInTree(targetFolderId, id)) {
+                    throw new ConstraintViolationException("Cannot move "
+                            + id + " into its own tree");
+                }
+                Set<String> parents = changes.getParents(id);
+                String sourceFolderId;
+                if (sourceFolder == null) {
+                    if (parents.size() > 1) {
+                        throw new ConstraintViolationException("Object " + id
+                                + " has " + parents.size() + " parents");
+                    } else if (!parents.isEmpty()) {
+                        sourceFolderId = parents.iterator().next();
+                    } else {
+                        sourceFolderId = null;
+                    }
+                } else {
+                    sourceFolderId = sourceFolder.getId();
+                    if (!parents.contains(sourceFolderId)) {
+                        throw new ConstraintViolationException("Object " + id
+                                + " is not filed in " + sourceFolderId);
+                    }
+                }
+                if (sourceFolderId != null) {
+                    changes.unlink(sourceFolderId, id);
+                }
+                changes.link(targetFolderId, id);
             }
-        }
-        if (sourceFolderId != null) {
-            parents.remove(sourceFolderId);
-            repository.children.get(sourceFolderId).remove(id);
-        }
-        String targetFolderId = targetFolder.getId();
-        parents.add(targetFolderId);
-        repository.children.get(targetFolderId).add(id);
+        });
         return object;
     }
 
-    public void deleteObject(ObjectId object, boolean allVersions) {
-        // TODO allVersions
-        String id = object.getId();
+    public void deleteObject(ObjectId object, final boolean allVersions) {
+        final String id = object.getId();
         if (repository.rootId.equals(id)) {
             throw new IllegalArgumentException("Cannot delete root");
         }
-        SimpleData data = repository.datas.get(id);
+        repository.commit(new SimpleChange() {
+            public void apply(SimpleChangeSet changes) {
+                deleteObject(changes, id, allVersions);
+            }
+        });
+    }
+
+    /**
+     * Deletes all the objects in a single commit. Objects already deleted
+     * along with a previous one of the batch, like the other versions of a
+     * document or its relationships, are skipped.
+     */
+    public void deleteObjects(Collection<ObjectId> objects,
+            final boolean allVersions) {
+        final List<String> ids = new ArrayList<String>(objects.size());
+        for (ObjectId object : objects) {
+            String id = object.getId();
+            if (repository.rootId.equals(id)) {
+                throw new IllegalArgumentException("Cannot delete root");
+            }
+            ids.add(id);
+        }
+        repository.commit(new SimpleChange() {
+            public void apply(SimpleChangeSet changes) {
+                for (String id : ids) {
+                    if (changes.getData(id) == null) {
+                        throw new ObjectNotFoundException(id);
+                    }
+                }
+                for (String id : ids) {
+                    if (changes.getData(id) != null) {
+                        deleteObject(changes, id, allVersions);
+                    }
+                }
+            }
+        });
+    }
+
+    protected void deleteObject(SimpleChangeSet changes, String id,
+            boolean allVersions) {
+        SimpleData data = changes.getData(id);
         if (data == null) {
-            throw new ObjectNotFoundException(object.getId());
+            throw new ObjectNotFoundException(id);
+        }
+        String versionSeriesId = (String) data.get(Property.VERSION_SERIES_ID);
+        SimpleVersionSeries series = versionSeriesId == null ? null
+                : changes.getVersionSeries(versionSeriesId);
+        if (series != null) {
+            if (allVersions) {
+                String pwcId = series.getCheckedOutId();
+                if (pwcId != null) {
+                    changes.removeData(pwcId);
+                }
+                for (String vid : series.getVersionIds()) {
+                    deleteObject(changes, vid);
+                }
+                changes.removeVersionSeries(versionSeriesId);
+                return;
+            }
+            removeVersion(changes, series, id);
+        }
+        deleteObject(changes, id);
+    }
+
+    /**
+     * Removes a version or private working copy from its version series,
+     * promoting the previous version if needed.
+     */
+    protected void removeVersion(SimpleChangeSet changes,
+            SimpleVersionSeries series, String id) {
+        if (id.equals(series.getCheckedOutId())) {
+            changes.putVersionSeries(series.withCheckedOut(null, null));
+            return;
+        }
+        boolean wasLatest = id.equals(series.getLatestId());
+        boolean wasLatestMajor = id.equals(series.getLatestMajorId());
+        series = series.withoutVersion(id);
+        if (series.isEmpty()) {
+            String pwcId = series.getCheckedOutId();
+            if (pwcId != null) {
+                changes.removeData(pwcId);
+            }
+            changes.removeVersionSeries(series.getId());
+            return;
+        }
+        changes.putVersionSeries(series);
+        if (wasLatest) {
+            // the previous version takes over the filing
+            String latestId = series.getLatestId();
+            changes.getDataForUpdate(latestId).put(Property.IS_LATEST_VERSION,
+                    Boolean.TRUE);
+            for (String pid : changes.getParents(id)) {
+                changes.unlink(pid, id);
+                changes.link(pid, latestId);
+            }
+        }
+        String latestMajorId = series.getLatestMajorId();
+        if (wasLatestMajor && latestMajorId != null) {
+            changes.getDataForUpdate(latestMajorId).put(
+                    Property.IS_LATEST_MAJOR_VERSION, Boolean.TRUE);
+        }
+    }
+
+    protected void deleteObject(SimpleChangeSet changes, String id) {
+        SimpleData data = changes.getData(id);
+        if (data == null) {
+            throw new ObjectNotFoundException(id);
         }
         // delete children info
-        Set<String> children = repository.children.get(id);
+        Set<String> children = changes.getChildren(id);
         if (children != null) {
             if (children.size() > 0) {
                 throw new ConstraintViolationException(
-                        "Cannot delete, folder has children: " + object);
+                        "Cannot delete, folder has children: " + id);
             }
             // remove only if empty
-            repository.children.remove(id);
+            changes.removeFolder(id);
         }
         // delete parents info
         // TODO unfiling, remove from all parents for now
-        Set<String> parents = repository.parents.remove(id);
-        if (parents != null) {
-            for (String pid : parents) {
-                // remove as child of parent
-                repository.children.get(pid).remove(id);
+        for (String pid : changes.getParents(id)) {
+            // remove as child of parent
+            changes.unlink(pid, id);
+        }
+        // relationships
+        if (BaseType.RELATIONSHIP.getId().equals(
+                data.get(Property.BASE_TYPE_ID))) {
+            changes.removeRelationship(id,
+                    (String) data.get(Property.SOURCE_ID),
+                    (String) data.get(Property.TARGET_ID));
+        }
+        for (String rid : changes.getRelationships(id,
+                RelationshipDirection.EITHER)) {
+            // the relationships of the object are deleted with it
+            if (changes.getData(rid) != null) {
+                deleteObject(changes, rid);
             }
         }
-        repository.datas.remove(id);
+        changes.removeData(id);
     }
 
+    /**
+     * Deletes a tree in batches of {@link #DELETE_BATCH_SIZE} objects, each
+     * committed separately so that concurrent writers are never held off by a
+     * large tree.
+     * <p>
+     * The tree is computed once from the current snapshot. Non-folder objects
+     * are deleted or unfiled first, then the folders bottom-up. A folder that
+     * is not empty when its turn comes, because an object was added to it
+     * concurrently or one of its subfolders failed, fails to delete. As
+     * unfiling is not supported, objects filed only in the tree are deleted
+     * even for {@link Unfiling#UNFILE}.
+     */
     public Collection<ObjectId> deleteTree(ObjectId folder, Unfiling unfiling,
             boolean continueOnFailure) {
-        // TODO unfiling
-        // TODO continueOnFailure
-        boolean allVersions = false; // TODO add in signature?
         String id = folder.getId();
         if (repository.rootId.equals(id)) {
             throw new IllegalArgumentException("Cannot delete root");
         }
-        SimpleData data = repository.datas.get(id);
-        if (data == null) {
-            throw new ObjectNotFoundException("No such folder: "
-                    + folder.getId());
+        SimpleSnapshot snapshot = repository.getSnapshot();
+        if (snapshot.getData(id) == null) {
+            throw new ObjectNotFoundException("No such folder: " + id);
         }
-        String typeId = (String) data.get(Property.TYPE_ID);
-        if (repository.getType(typeId).getBaseType() != BaseType.FOLDER) {
-            throw new IllegalArgumentException("Not a folder: "
-                    + folder.getId());
-        }
-        for (String childId : new ArrayList<String>(repository.children.get(id))) {
-            SimpleData childData = repository.datas.get(childId);
-            String childTypeId = (String) childData.get(Property.TYPE_ID);
-            ObjectId objectId = new SimpleObjectId(childId);
-            if (repository.getType(childTypeId).getBaseType() == BaseType.FOLDER) {
-                deleteTree(objectId, unfiling, continueOnFailure);
-            } else {
-                deleteObject(objectId, allVersions);
+        if (snapshot.getChildren(id) == null) {
+            throw new IllegalArgumentException("Not a folder: " + id);
+        }
+        // folders breadth-first, so that reversed children come first
+        List<String> folders = new ArrayList<String>();
+        Set<String> others = new LinkedHashSet<String>();
+        folders.add(id);
+        for (int i = 0; i < folders.size(); i++) {
+            for (String childId : snapshot.getChildren(folders.get(i))) {
+                if (snapshot.getChildren(childId) == null) {
+                    others.add(childId);
+                } else {
+                    folders.add(childId);
+                }
             }
         }
-        deleteObject(folder, false);
-        return Collections.emptyList();
+        List<String> ids = new ArrayList<String>(others.size()
+                + folders.size());
+        ids.addAll(others);
+        for (int i = folders.size() - 1; i >= 0; i--) {
+            ids.add(folders.get(i));
+        }
+        List<ObjectId> failed = new ArrayList<ObjectId>();
+        for (int i = 0; i < ids.size(); i += DELETE_BATCH_SIZE) {
+            List<String> batch = ids.subList(i, Math.min(ids.size(), i
+                    + DELETE_BATCH_SIZE));
+            for (String fid : deleteTree(id, batch, unfiling,
+                    continueOnFailure)) {
+                failed.add(new SimpleObjectId(fid));
+            }
+            if (!continueOnFailure && !failed.isEmpty()) {
+                break;
+            }
+        }
+        return failed;
+    }
+
+    /**
+     * Deletes a batch of objects of a tree in a single commit.
+     *
+     * @return the IDs of the objects that could not be deleted
+     */
+    protected List<String> deleteTree(final String folderId,
+            final List<String> ids, final Unfiling unfiling,
+            final boolean continueOnFailure) {
+        final List<String> failed = new ArrayList<String>();
+        repository.commit(new SimpleChange() {
+            public void apply(SimpleChangeSet changes) {
+                failed.clear();
+                for (String id : ids) {
+                    if (changes.getData(id) == null) {
+                        continue; // already deleted
+                    }
+                    if (!deleteFromTree(changes, folderId, id, unfiling)) {
+                        failed.add(id);
+                        if (!continueOnFailure) {
+                            return;
+                        }
+                    }
+                }
+            }
+        });
+        return failed;
+    }
+
+    /**
+     * Deletes or unfiles an object of a tree being deleted.
+     *
+     * @return {@code false} if the object could not be deleted
+     */
+    protected boolean deleteFromTree(SimpleChangeSet changes,
+            String folderId, String id, Unfiling unfiling) {
+        Set<String> children = changes.getChildren(id);
+        if (children != null) {
+            if (!children.isEmpty()) {
+                return false;
+            }
+            deleteObject(changes, id);
+            return true;
+        }
+        if (unfiling == Unfiling.UNFILE
+                || unfiling == Unfiling.DELETE_SINGLE_FILED) {
+            boolean filedElsewhere = false;
+            for (String pid : changes.getParents(id)) {
+                if (!pid.equals(folderId)
+                        && !changes.isInTree(pid, folderId)) {
+                    filedElsewhere = true;
+                    break;
+                }
+            }
+            if (filedElsewhere
+                    || (unfiling == Unfiling.UNFILE && repository.hasUnfiling())) {
+                // only unfile from the folders of the tree
+                for (String pid : changes.getParents(id)) {
+                    if (pid.equals(folderId)
+                            || changes.isInTree(pid, folderId)) {
+                        changes.unlink(pid, id);
+                    }
+                }
+                return true;
+            }
+        }
+        deleteObject(changes, id, true);
+        return true;
     }
 
     public void addObjectToFolder(ObjectId object, ObjectId folder) {
@@ -787,28 +1191,104 @@ public class SimpleConnection implements Connection, SPI {
     public ListPage<ObjectEntry> query(String statement,
             boolean searchAllVersions, Inclusion inclusion, Paging paging) {
         // this implementation doesn't try to be very efficient...
+        SimpleSnapshot snapshot = repository.getSnapshot();
+        querySnapshot = snapshot;
+        try {
+            List<ObjectEntry> all = query(snapshot, statement,
+                    searchAllVersions);
+            EntryComparator comparator = EntryComparator.fromQuery(statement,
+                    repository, false);
+            if (comparator != null) {
+                Collections.sort(all, comparator);
+            }
+            return SimpleListPage.fromPaging(all, paging);
+        } finally {
+            querySnapshot = null;
+        }
+    }
+
+    protected List<ObjectEntry> query(SimpleSnapshot snapshot,
+            String statement, boolean searchAllVersions) {
+        SimpleQuery query = new SimpleQuery(statement);
+        List<SimpleQuery.Table> tables = query.getTables();
         List<ObjectEntry> all = new ArrayList<ObjectEntry>();
-        String tableName = null;
-        for (SimpleData data : repository.datas.values()) {
-            if (tableName != null) {
-                // type already available: check early
-                if (!typeMatches(tableName, (String) data.get(Property.TYPE_ID))) {
-                    continue;
+        List<SimpleData> datas = getTableDatas(snapshot, tables.get(0).name,
+                searchAllVersions);
+        if (tables.size() == 1) {
+            for (SimpleData data : datas) {
+                if (query.evaluate(data, null, this).matches) {
+                    all.add(new SimpleObjectEntry(data, this, snapshot));
                 }
             }
-            CmisSqlSimpleWalker.query_return ret = queryData(statement, data);
-            if (tableName == null) {
-                // first time: check late
-                tableName = ret.tableName.toLowerCase();
-                if (!typeMatches(tableName, (String) data.get(Property.TYPE_ID))) {
-                    continue;
-                }
+            return all;
+        }
+        String qualifier = tables.get(0).qualifier;
+        List<Map<String, SimpleData>> rows = new ArrayList<Map<String, SimpleData>>(
+                datas.size());
+        for (SimpleData data : datas) {
+            rows.add(Collections.singletonMap(qualifier, data));
+        }
+        for (SimpleQuery.Table table : query.getJoinedTables()) {
+            rows = SimpleQuery.hashJoin(rows, getTableDatas(snapshot,
+                    table.name, searchAllVersions), table);
+        }
+        for (Map<String, SimpleData> row : rows) {
+            if (query.evaluate(row.get(qualifier), row, this).matches) {
+                all.add(new SimpleObjectEntry(query.getRowData(row), this,
+                        snapshot));
+            }
+        }
+        return all;
+    }
+
+    /**
+     * Gets the data of the objects of a query table.
+     */
+    protected List<SimpleData> getTableDatas(SimpleSnapshot snapshot,
+            String tableName, boolean searchAllVersions) {
+        List<SimpleData> datas = new ArrayList<SimpleData>();
+        Map<String, Boolean> typeMatches = new HashMap<String, Boolean>();
+        for (SimpleData data : snapshot.getDatas()) {
+            if (!searchAllVersions
+                    && Boolean.FALSE.equals(data.get(Property.IS_LATEST_VERSION))) {
+                // older version or private working copy
+                continue;
+            }
+            String typeId = (String) data.get(Property.TYPE_ID);
+            Boolean matches = typeMatches.get(typeId);
+            if (matches == null) {
+                matches = Boolean.valueOf(typeMatches(tableName, typeId));
+                typeMatches.put(typeId, matches);
             }
-            if (ret.matches) {
-                all.add(new SimpleObjectEntry(data, this));
+            if (matches.booleanValue()) {
+                datas.add(data);
             }
         }
-        return SimpleListPage.fromPaging(all, paging);
+        return datas;
+    }
+
+    protected SimpleSnapshot getQuerySnapshot() {
+        SimpleSnapshot snapshot = querySnapshot;
+        return snapshot == null ? repository.getSnapshot() : snapshot;
+    }
+
+    /**
+     * Gets the value of a column for a query, deriving the checked out state
+     * from the version series.
+     */
+    protected Serializable getQueryValue(SimpleData data, String column) {
+        for (String id : SimpleVersionSeries.CHECKED_OUT_PROPERTIES) {
+            if (!id.equalsIgnoreCase(column)) {
+                continue;
+            }
+            String versionSeriesId = (String) data.get(Property.VERSION_SERIES_ID);
+            SimpleVersionSeries series = versionSeriesId == null ? null
+                    : getQuerySnapshot().getVersionSeries(versionSeriesId);
+            if (series != null) {
+                return series.getCheckedOutValue(id);
+            }
+        }
+        return data.getIgnoreCase(column);
     }
 
     protected boolean typeMatches(String tableName, String typeId) {
@@ -823,43 +1303,13 @@ public class SimpleConnection implements Connection, SPI {
         return false;
     }
 
-    protected CmisSqlSimpleWalker.query_return queryData(String statement,
-            SimpleData data) {
-        try {
-            CharStream input = new ANTLRInputStream(new ByteArrayInputStream(
-                    statement.getBytes("UTF-8")));
-            TokenSource lexer = new CmisSqlLexer(input);
-            TokenStream tokens = new CommonTokenStream(lexer);
-            CmisSqlParser parser = new CmisSqlParser(tokens);
-            CmisSqlParser.query_return query = parser.query();
-            if (parser.errorMessage != null) {
-                throw new CMISRuntimeException("Cannot parse query: "
-                        + statement + " (" + parser.errorMessage + ")");
-            }
-            CommonTree tree = (CommonTree) query.getTree();
-            CommonTreeNodeStream nodes = new CommonTreeNodeStream(tree);
-            nodes.setTokenStream(tokens);
-            CmisSqlSimpleWalker walker = new CmisSqlSimpleWalker(nodes);
-            CmisSqlSimpleWalker.query_return res = walker.query(data, this);
-            if (walker.errorMessage != null) {
-                throw new CMISRuntimeException("Cannot parse query: "
-                        + statement + " (" + walker.errorMessage + ")");
-            }
-            return res;
-        } catch (IOException e) {
-            throw new CMISRuntimeException(e.getMessage(), e);
-        } catch (RecognitionException e) {
-            throw new CMISRuntimeException("Cannot parse query: " + statement,
-                    e);
-        }
-    }
-
     // IN_FOLDER
     protected boolean isInFolder(SimpleData data, Object folderId) {
         if (!(folderId instanceof String)) {
             throw new IllegalArgumentException(folderId.toString());
         }
-        Set<String> children = repository.children.get(folderId);
+        Set<String> children = getQuerySnapshot().getChildren(
+                (String) folderId);
         if (children == null) {
             return false; // no such id
         }
@@ -875,18 +1325,7 @@ public class SimpleConnection implements Connection, SPI {
         if (id == null) {
             return false; // no such id
         }
-        Queue<String> todo = new LinkedList<String>(Collections.singleton(id));
-        while (!todo.isEmpty()) {
-            String cur = todo.remove();
-            Set<String> parents = repository.parents.get(cur);
-            for (String pid : parents) {
-                if (pid.equals(folderId)) {
-                    return true;
-                }
-            }
-            todo.addAll(parents);
-        }
-        return false;
+        return getQuerySnapshot().isInTree(id, (String) folderId);
     }
 
     // CONTAINS
@@ -927,43 +1366,275 @@ public class SimpleConnection implements Connection, SPI {
      */
 
     public ObjectId checkOut(ObjectId document, boolean[] contentCopied) {
-        // TODO Auto-generated method stub
-        throw new UnsupportedOperationException();
+        final String id = document.getId();
+        final String pwcId = repository.generateId();
+        repository.commit(new SimpleChange() {
+            public void apply(SimpleChangeSet changes) {
+                SimpleVersionSeries series = getVersionSeries(changes, id);
+                if (series.getCheckedOutId() != null) {
+                    throw new VersioningException("Already checked out: " + id);
+                }
+                if (!id.equals(series.getLatestId())) {
+                    throw new VersioningException("Not the latest version: "
+                            + id);
+                }
+                // the working copy shares the values and content
+                SimpleData pwc = changes.getData(id).copy();
+                pwc.put(Property.ID, pwcId);
+                pwc.put(Property.IS_LATEST_VERSION, Boolean.FALSE);
+                pwc.put(Property.IS_MAJOR_VERSION, Boolean.FALSE);
+                pwc.put(Property.IS_LATEST_MAJOR_VERSION, Boolean.FALSE);
+                pwc.remove(Property.CHECK_IN_COMMENT);
+                changes.putData(pwcId, pwc);
+                changes.putVersionSeries(series.withCheckedOut(pwcId,
+                        getUserName()));
+            }
+        });
+        if (contentCopied != null) {
+            contentCopied[0] = true;
+        }
+        return new SimpleObjectId(pwcId);
     }
 
     public void cancelCheckOut(ObjectId document) {
-        // TODO Auto-generated method stub
-        throw new UnsupportedOperationException();
+        final String id = document.getId();
+        repository.commit(new SimpleChange() {
+            public void apply(SimpleChangeSet changes) {
+                SimpleVersionSeries series = getVersionSeries(changes, id);
+                if (!id.equals(series.getCheckedOutId())) {
+                    throw new VersioningException(
+                            "Not a private working copy: " + id);
+                }
+                changes.removeData(id);
+                changes.putVersionSeries(series.withCheckedOut(null, null));
+            }
+        });
     }
 
     public ObjectId checkIn(ObjectId document,
-            Map<String, Serializable> properties, ContentStream contentStream,
-            boolean major, String comment) {
-        // TODO Auto-generated method stub
-        throw new UnsupportedOperationException();
+            final Map<String, Serializable> properties,
+            final ContentStream contentStream, final boolean major,
+            final String comment) {
+        final String id = document.getId();
+        final byte[] bytes = getBytes(contentStream);
+        repository.commit(new SimpleChange() {
+            public void apply(SimpleChangeSet changes) {
+                SimpleVersionSeries series = getVersionSeries(changes, id);
+                if (!id.equals(series.getCheckedOutId())) {
+                    throw new VersioningException(
+                            "Not a private working copy: " + id);
+                }
+                String previousId = series.getLatestId();
+                SimpleData previous = changes.getDataForUpdate(previousId);
+                previous.put(Property.IS_LATEST_VERSION, Boolean.FALSE);
+                String latestMajorId = series.getLatestMajorId();
+                if (major && latestMajorId != null) {
+                    changes.getDataForUpdate(latestMajorId).put(
+                            Property.IS_LATEST_MAJOR_VERSION, Boolean.FALSE);
+                }
+
+                SimpleData data = changes.getDataForUpdate(id);
+                if (properties != null) {
+                    setProperties(data, properties);
+                }
+                if (contentStream != null) {
+                    setContent(data, contentStream, bytes);
+                }
+                GregorianCalendar now = GregorianCalendar.getInstance();
+                data.put(Property.CREATION_DATE, now);
+                data.put(Property.LAST_MODIFICATION_DATE, now);
+                data.put(Property.IS_LATEST_VERSION, Boolean.TRUE);
+                data.put(Property.IS_MAJOR_VERSION, Boolean.valueOf(major));
+                data.put(Property.IS_LATEST_MAJOR_VERSION,
+                        Boolean.valueOf(major));
+                data.put(Property.VERSION_LABEL, getNextVersionLabel(
+                        (String) previous.get(Property.VERSION_LABEL), major));
+                if (comment == null) {
+                    data.remove(Property.CHECK_IN_COMMENT);
+                } else {
+                    data.put(Property.CHECK_IN_COMMENT, comment);
+                }
+
+                // the new version takes over the filing
+                for (String pid : changes.getParents(previousId)) {
+                    changes.unlink(pid, previousId);
+                    changes.link(pid, id);
+                }
+                series = series.withCheckedOut(null, null).withVersion(id,
+                        major);
+                changes.putVersionSeries(series);
+            }
+        });
+        return new SimpleObjectId(id);
+    }
+
+    protected SimpleVersionSeries getVersionSeries(SimpleChangeSet changes,
+            String id) {
+        SimpleData data = changes.getData(id);
+        if (data == null) {
+            throw new ObjectNotFoundException(id);
+        }
+        String versionSeriesId = (String) data.get(Property.VERSION_SERIES_ID);
+        SimpleVersionSeries series = versionSeriesId == null ? null
+                : changes.getVersionSeries(versionSeriesId);
+        if (series == null) {
+            throw new ConstraintViolationException("Not versionable: " + id);
+        }
+        return series;
+    }
+
+    /**
+     * Gets the name of the user of this connection.
+     */
+    protected String getUserName() {
+        return userName == null ? "system" : userName;
+    }
+
+    /**
+     * Computes the label of the version following a version labeled
+     * "major.minor".
+     */
+    protected static String getNextVersionLabel(String label, boolean major) {
+        int maj = 0;
+        int min = 0;
+        if (label != null) {
+            int i = label.indexOf('.');
+            try {
+                maj = Integer.parseInt(i == -1 ? label : label.substring(0, i));
+                min = i == -1 ? 0 : Integer.parseInt(label.substring(i + 1));
+            } catch (NumberFormatException e) {
+                // restart numbering
+            }
+        }
+        return major ? (maj + 1) + ".0" : maj + "." + (min + 1);
     }
 
     public Map<String, Serializable> getPropertiesOfLatestVersion(
             String versionSeriesId, boolean major, String filter) {
-        // TODO Auto-generated method stub
-        throw new UnsupportedOperationException();
+        SimpleSnapshot snapshot = repository.getSnapshot();
+        SimpleVersionSeries series = snapshot.getVersionSeries(versionSeriesId);
+        if (series == null) {
+            throw new ObjectNotFoundException(versionSeriesId);
+        }
+        String id = major ? series.getLatestMajorId() : series.getLatestId();
+        if (id == null) {
+            throw new ObjectNotFoundException("No major version in: "
+                    + versionSeriesId);
+        }
+        return new SimpleObjectEntry(filterData(snapshot.getData(id), filter,
+                snapshot), this, snapshot).getValues();
     }
 
     public Collection<ObjectEntry> getAllVersions(String versionSeriesId,
             String filter) {
-        // TODO Auto-generated method stub
-        throw new UnsupportedOperationException();
+        SimpleSnapshot snapshot = repository.getSnapshot();
+        SimpleVersionSeries series = snapshot.getVersionSeries(versionSeriesId);
+        if (series == null) {
+            throw new ObjectNotFoundException(versionSeriesId);
+        }
+        List<String> ids = series.getVersionIds();
+        List<ObjectEntry> versions = new ArrayList<ObjectEntry>(ids.size() + 1);
+        String pwcId = series.getCheckedOutId();
+        if (pwcId != null) {
+            versions.add(new SimpleObjectEntry(filterData(
+                    snapshot.getData(pwcId), filter, snapshot), this,
+                    snapshot));
+        }
+        for (int i = ids.size() - 1; i >= 0; i--) {
+            versions.add(new SimpleObjectEntry(filterData(
+                    snapshot.getData(ids.get(i)), filter, snapshot), this,
+                    snapshot));
+        }
+        return versions;
+    }
+
+    /**
+     * Gets the data holding the values selected by a property filter, a
+     * comma-separated list of query names or {@code "*"} for all. The id and
+     * types of the object are always selected.
+     */
+    protected SimpleData filterData(SimpleData data, String filter,
+            SimpleSnapshot snapshot) {
+        if (filter == null || Inclusion.ALL_PROPERTIES.equals(filter.trim())) {
+            return data;
+        }
+        Set<String> queryNames = new HashSet<String>();
+        for (String queryName : filter.split(",")) {
+            queryNames.add(queryName.trim());
+        }
+        String typeId = (String) data.get(Property.TYPE_ID);
+        Type type = repository.getType(typeId);
+        String versionSeriesId = (String) data.get(Property.VERSION_SERIES_ID);
+        SimpleVersionSeries series = versionSeriesId == null ? null
+                : snapshot.getVersionSeries(versionSeriesId);
+        SimpleData filtered = new SimpleData(data.getLayout(), typeId,
+                type.getBaseType());
+        for (PropertyDefinition pd : type.getPropertyDefinitions()) {
+            String id = pd.getId();
+            if (!Property.ID.equals(id)
+                    && !queryNames.contains(pd.getQueryName())) {
+                continue;
+            }
+            Serializable value;
+            if (series != null
+                    && SimpleVersionSeries.CHECKED_OUT_PROPERTIES.contains(id)) {
+                value = series.getCheckedOutValue(id);
+            } else {
+                value = data.get(id);
+            }
+            if (value != null) {
+                filtered.put(id, value);
+            }
+        }
+        return filtered;
     }
 
     /*
      * ----- Relationship Services -----
      */
 
+    /**
+     * Gets the relationships of an object from the source and target
+     * indexes, in the direction given by the inclusion, or in both directions
+     * if none is specified.
+     * <p>
+     * The properties filter of the inclusion is applied. Allowable actions
+     * are always available from the returned entries, which compute them on
+     * demand, whether or not the inclusion asks for them.
+     */
     public ListPage<ObjectEntry> getRelationships(ObjectId object,
             String typeId, boolean includeSubRelationshipTypes,
             Inclusion inclusion, Paging paging) {
-        // TODO Auto-generated method stub
-        return SimpleListPage.emptyList();
+        String id = object.getId();
+        SimpleSnapshot snapshot = repository.getSnapshot();
+        if (snapshot.getData(id) == null) {
+            throw new ObjectNotFoundException(id);
+        }
+        RelationshipDirection direction = RelationshipDirection.EITHER;
+        if (inclusion != null && inclusion.relationships != null) {
+            direction = inclusion.relationships;
+        }
+        String filter = inclusion == null ? null : inclusion.properties;
+        Set<String> typeIds;
+        if (typeId == null) {
+            typeIds = null;
+        } else if (includeSubRelationshipTypes) {
+            typeIds = new HashSet<String>();
+            for (Type type : repository.getTypeDescendants(typeId)) {
+                typeIds.add(type.getId());
+            }
+        } else {
+            typeIds = Collections.singleton(typeId);
+        }
+        List<ObjectEntry> all = new ArrayList<ObjectEntry>();
+        for (String rid : snapshot.getRelationships(id, direction)) {
+            SimpleData data = snapshot.getData(rid);
+            if (typeIds == null || typeIds.contains(data.get(Property.TYPE_ID))) {
+                all.add(new SimpleObjectEntry(filterData(data, filter,
+                        snapshot), this, snapshot));
+            }
+        }
+        return SimpleListPage.fromPaging(all, paging);
     }
 
     /*
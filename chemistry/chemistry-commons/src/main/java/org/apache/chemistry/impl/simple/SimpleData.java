@@ -10,14 +10,18 @@
  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
  * See the License for the specific language governing permissions and
  * limitations under the License.
- *
- * Authors:
- *     Florent Guillaume, Nuxeo
  */
 package org.apache.chemistry.impl.simple;
 
 import java.io.Serializable;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
 
 import org.apache.chemistry.BaseType;
 import org.apache.chemistry.Property;
@@ -27,12 +31,31 @@ import org.apache.chemistry.Property;
  * <p>
  * This also holds data for objects not yet saved, in this case the ID is not
  * set, and the PARENT_ID is temporarily set to the parent's ID.
+ * <p>
+ * The values of the properties known to the {@link SimpleLayout} of the type
+ * are stored in a flat array, other values in a small overflow map. Null
+ * values are not allowed. Data is not thread-safe, it must not be modified
+ * once committed to the repository.
  */
-public class SimpleData extends ConcurrentHashMap<String, Serializable> {
+public class SimpleData extends AbstractMap<String, Serializable> {
+
+    protected final SimpleLayout layout;
 
-    private static final long serialVersionUID = 1L;
+    protected final Serializable[] values;
+
+    /** Number of non-null values. */
+    protected int count;
+
+    /** Values not in the layout, or {@code null}. */
+    protected Map<String, Serializable> overflow;
 
     public SimpleData(String typeId, BaseType baseType) {
+        this(SimpleLayout.forBaseType(baseType), typeId, baseType);
+    }
+
+    public SimpleData(SimpleLayout layout, String typeId, BaseType baseType) {
+        this.layout = layout;
+        values = new Serializable[layout.size()];
         if (typeId != null) {
             put(Property.TYPE_ID, typeId);
         }
@@ -41,6 +64,114 @@ public class SimpleData extends ConcurrentHashMap<String, Serializable> {
         }
     }
 
+    protected SimpleData(SimpleData data) {
+        layout = data.layout;
+        values = data.values.clone();
+        count = data.count;
+        if (data.overflow != null) {
+            overflow = new HashMap<String, Serializable>(data.overflow);
+        }
+    }
+
+    public SimpleLayout getLayout() {
+        return layout;
+    }
+
+    /**
+     * Returns a copy of this data, that can be modified independently.
+     */
+    public SimpleData copy() {
+        return new SimpleData(this);
+    }
+
+    @Override
+    public int size() {
+        return overflow == null ? count : count + overflow.size();
+    }
+
+    @Override
+    public Serializable get(Object key) {
+        if (!(key instanceof String)) {
+            return null;
+        }
+        int slot = layout.getSlot((String) key);
+        if (slot >= 0) {
+            return values[slot];
+        }
+        return overflow == null ? null : overflow.get(key);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return get(key) != null;
+    }
+
+    @Override
+    public Serializable put(String key, Serializable value) {
+        if (value == null) {
+            throw new NullPointerException(key);
+        }
+        int slot = layout.getSlot(key);
+        if (slot >= 0) {
+            Serializable old = values[slot];
+            values[slot] = layout.normalize(slot, value);
+            if (old == null) {
+                count++;
+            }
+            return old;
+        }
+        if (overflow == null) {
+            overflow = new HashMap<String, Serializable>(4);
+        }
+        return overflow.put(key, value);
+    }
+
+    @Override
+    public Serializable remove(Object key) {
+        if (!(key instanceof String)) {
+            return null;
+        }
+        int slot = layout.getSlot((String) key);
+        if (slot >= 0) {
+            Serializable old = values[slot];
+            if (old != null) {
+                values[slot] = null;
+                count--;
+            }
+            return old;
+        }
+        if (overflow == null) {
+            return null;
+        }
+        Serializable old = overflow.remove(key);
+        if (overflow.isEmpty()) {
+            overflow = null;
+        }
+        return old;
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(values, null);
+        count = 0;
+        overflow = null;
+    }
+
+    @Override
+    public Set<Map.Entry<String, Serializable>> entrySet() {
+        return new AbstractSet<Map.Entry<String, Serializable>>() {
+            @Override
+            public int size() {
+                return SimpleData.this.size();
+            }
+
+            @Override
+            public Iterator<Map.Entry<String, Serializable>> iterator() {
+                return new EntryIterator();
+            }
+        };
+    }
+
     /**
      * Returns the value to which the specified key is mapped, or {@code null}
      * if this map contains no mapping for the key.
@@ -48,20 +179,106 @@ public class SimpleData extends ConcurrentHashMap<String, Serializable> {
      * Key comparison is done case insensitively.
      *
      * @throws NullPointerException if the specified key is {@code null}
-     * @see ConcurrentHashMap#get(Object)
+     * @see Map#get(Object)
      */
     public Serializable getIgnoreCase(String key) {
         // shortcut for exact case match
-        if (contains(key)) {
-            return get(key);
+        Serializable value = get(key);
+        if (value != null) {
+            return value;
         }
         // try all keys
-        for (String k : keySet()) {
-            if (key.equalsIgnoreCase(k)) {
-                return get(k);
+        for (Map.Entry<String, Serializable> es : entrySet()) {
+            if (key.equalsIgnoreCase(es.getKey())) {
+                return es.getValue();
             }
         }
         return null;
     }
 
+    protected static class Entry implements Map.Entry<String, Serializable> {
+
+        protected final String key;
+
+        protected final Serializable value;
+
+        protected Entry(String key, Serializable value) {
+            this.key = key;
+            this.value = value;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        public Serializable getValue() {
+            return value;
+        }
+
+        public Serializable setValue(Serializable value) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Map.Entry)) {
+                return false;
+            }
+            Map.Entry<?, ?> e = (Map.Entry<?, ?>) other;
+            return key.equals(e.getKey()) && value.equals(e.getValue());
+        }
+
+        @Override
+        public int hashCode() {
+            return key.hashCode() ^ value.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return key + '=' + value;
+        }
+    }
+
+    /**
+     * Iterates over the slots, then over the overflow values.
+     */
+    protected class EntryIterator implements
+            Iterator<Map.Entry<String, Serializable>> {
+
+        private int slot = -1;
+
+        private final Iterator<Map.Entry<String, Serializable>> it = overflow == null ? null
+                : overflow.entrySet().iterator();
+
+        public EntryIterator() {
+            advance();
+        }
+
+        private void advance() {
+            do {
+                slot++;
+            } while (slot < values.length && values[slot] == null);
+        }
+
+        public boolean hasNext() {
+            return slot < values.length || (it != null && it.hasNext());
+        }
+
+        public Map.Entry<String, Serializable> next() {
+            if (slot < values.length) {
+                Entry entry = new Entry(layout.getName(slot), values[slot]);
+                advance();
+                return entry;
+            }
+            if (it == null) {
+                throw new NoSuchElementException();
+            }
+            return it.next();
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
 }
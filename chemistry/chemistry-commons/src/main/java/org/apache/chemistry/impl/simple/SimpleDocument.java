@@ -17,7 +17,12 @@
 package org.apache.chemistry.impl.simple;
 
 import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 
 import org.apache.chemistry.Connection;
 import org.apache.chemistry.ContentStream;
@@ -25,8 +30,10 @@ import org.apache.chemistry.ContentStreamPresence;
 import org.apache.chemistry.Document;
 import org.apache.chemistry.Folder;
 import org.apache.chemistry.NameConstraintViolationException;
+import org.apache.chemistry.ObjectEntry;
 import org.apache.chemistry.ObjectId;
 import org.apache.chemistry.Property;
+import org.apache.chemistry.UpdateConflictException;
 
 public class SimpleDocument extends SimpleObject implements Document {
 
@@ -38,34 +45,50 @@ public class SimpleDocument extends SimpleObject implements Document {
         return (byte[]) entry.data.get(SimpleProperty.CONTENT_BYTES_KEY);
     }
 
-    public Document checkOut() {
-        // TODO Auto-generated method stub
-        throw new UnsupportedOperationException();
+    public Document checkOut() throws UpdateConflictException {
+        ObjectId pwc = connection.getSPI().checkOut(this, new boolean[1]);
+        return (Document) connection.getObject(pwc);
     }
 
-    public void cancelCheckOut() {
-        // TODO Auto-generated method stub
-        throw new UnsupportedOperationException();
+    public void cancelCheckOut() throws UpdateConflictException {
+        connection.getSPI().cancelCheckOut(this);
     }
 
-    public Document checkIn(boolean major, String comment) {
-        // TODO Auto-generated method stub
-        throw new UnsupportedOperationException();
+    public Document checkIn(boolean major, String comment)
+            throws UpdateConflictException {
+        ObjectId version = connection.getSPI().checkIn(this, null, null,
+                major, comment);
+        return (Document) connection.getObject(version);
     }
 
     public Document getLatestVersion(boolean major) {
-        // TODO Auto-generated method stub
-        throw new UnsupportedOperationException();
+        String versionSeriesId = getString(Property.VERSION_SERIES_ID);
+        if (versionSeriesId == null) {
+            return this;
+        }
+        Map<String, Serializable> properties = connection.getSPI().getPropertiesOfLatestVersion(
+                versionSeriesId, major, null);
+        String id = (String) properties.get(Property.ID);
+        return (Document) connection.getObject(new SimpleObjectId(id));
     }
 
     public Collection<Document> getAllVersions() {
-        // TODO Auto-generated method stub
-        throw new UnsupportedOperationException();
+        String versionSeriesId = getString(Property.VERSION_SERIES_ID);
+        if (versionSeriesId == null) {
+            return Collections.<Document> singletonList(this);
+        }
+        Collection<ObjectEntry> entries = connection.getSPI().getAllVersions(
+                versionSeriesId, null);
+        List<Document> versions = new ArrayList<Document>(entries.size());
+        for (ObjectEntry entry : entries) {
+            versions.add(new SimpleDocument((SimpleObjectEntry) entry,
+                    connection));
+        }
+        return versions;
     }
 
-    public void deleteAllVersions() {
-        // TODO Auto-generated method stub
-        throw new UnsupportedOperationException();
+    public void deleteAllVersions() throws UpdateConflictException {
+        connection.getSPI().deleteObject(this, true);
     }
 
     public ContentStream getContentStream() {
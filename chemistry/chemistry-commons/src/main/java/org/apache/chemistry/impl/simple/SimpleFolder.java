@@ -52,12 +52,13 @@ public class SimpleFolder extends SimpleObject implements Folder {
 
     public List<CMISObject> getChildren() {
         SimpleRepository repository = (SimpleRepository) connection.getRepository();
-        Set<String> ids = repository.children.get(getId());
+        SimpleSnapshot snapshot = repository.getSnapshot();
+        Set<String> ids = snapshot.getChildren(getId());
         List<CMISObject> children = new ArrayList<CMISObject>(ids.size());
         for (String id : ids) {
-            SimpleData d = repository.datas.get(id);
+            SimpleData d = snapshot.getData(id);
             children.add(SimpleObject.construct(new SimpleObjectEntry(d,
-                    connection), connection));
+                    connection, snapshot), connection));
         }
         return children;
     }
@@ -0,0 +1,137 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.chemistry.impl.simple;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.chemistry.BaseType;
+import org.apache.chemistry.Property;
+import org.apache.chemistry.PropertyDefinition;
+import org.apache.chemistry.Type;
+
+/**
+ * The assignment of the properties of a type to the slots of a
+ * {@link SimpleData}.
+ * <p>
+ * Layouts are shared by all the objects of a type, so that each object only
+ * stores an array of values.
+ */
+public class SimpleLayout {
+
+    public static final SimpleLayout EMPTY = new SimpleLayout(
+            new ArrayList<String>());
+
+    /**
+     * Properties whose values come from a small set, and are interned so that
+     * all objects share the same instances.
+     */
+    protected static final Set<String> INTERNED = new HashSet<String>(
+            Arrays.asList(Property.TYPE_ID, Property.BASE_TYPE_ID,
+                    Property.CREATED_BY, Property.LAST_MODIFIED_BY,
+                    Property.VERSION_LABEL, Property.CONTENT_STREAM_MIME_TYPE));
+
+    private static final Map<BaseType, SimpleLayout> baseLayouts = new EnumMap<BaseType, SimpleLayout>(
+            BaseType.class);
+
+    static {
+        for (BaseType baseType : BaseType.values()) {
+            baseLayouts.put(baseType, new SimpleLayout(getNames(
+                    SimpleType.getBasePropertyDefinitions(baseType), baseType)));
+        }
+    }
+
+    protected final String[] names;
+
+    protected final Map<String, Integer> slots;
+
+    protected final boolean[] interned;
+
+    public SimpleLayout(List<String> names) {
+        this.names = names.toArray(new String[names.size()]);
+        slots = new HashMap<String, Integer>();
+        interned = new boolean[this.names.length];
+        for (int i = 0; i < this.names.length; i++) {
+            slots.put(this.names[i], Integer.valueOf(i));
+            interned[i] = INTERNED.contains(this.names[i]);
+        }
+    }
+
+    /**
+     * Gets the layout for the properties of a type.
+     */
+    public static SimpleLayout fromType(Type type) {
+        return new SimpleLayout(getNames(type.getPropertyDefinitions(),
+                type.getBaseType()));
+    }
+
+    /**
+     * Gets the layout for the base properties of a base type, used when the
+     * actual type is not known.
+     */
+    public static SimpleLayout forBaseType(BaseType baseType) {
+        return baseType == null ? EMPTY : baseLayouts.get(baseType);
+    }
+
+    protected static List<String> getNames(
+            Collection<PropertyDefinition> pds, BaseType baseType) {
+        List<String> names = new ArrayList<String>(pds.size() + 1);
+        for (PropertyDefinition pd : pds) {
+            names.add(pd.getId());
+        }
+        if (baseType == BaseType.DOCUMENT) {
+            names.add(SimpleProperty.CONTENT_BYTES_KEY);
+        }
+        return names;
+    }
+
+    public int size() {
+        return names.length;
+    }
+
+    public String getName(int slot) {
+        return names[slot];
+    }
+
+    /**
+     * Gets the slot of a property, or -1 if the property is not part of the
+     * layout.
+     */
+    public int getSlot(String name) {
+        Integer slot = slots.get(name);
+        return slot == null ? -1 : slot.intValue();
+    }
+
+    /**
+     * Canonicalizes a value before it is stored in a slot.
+     */
+    protected Serializable normalize(int slot, Serializable value) {
+        if (interned[slot] && value instanceof String) {
+            return ((String) value).intern();
+        }
+        if (value instanceof Boolean) {
+            return Boolean.valueOf(((Boolean) value).booleanValue());
+        }
+        return value;
+    }
+
+}
@@ -19,7 +19,6 @@ package org.apache.chemistry.impl.simple;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Collections;
 import java.util.List;
 import java.util.Set;
 
@@ -28,7 +27,9 @@ import org.apache.chemistry.CMISObject;
 import org.apache.chemistry.Connection;
 import org.apache.chemistry.ContentStream;
 import org.apache.chemistry.Folder;
+import org.apache.chemistry.Inclusion;
 import org.apache.chemistry.NameConstraintViolationException;
+import org.apache.chemistry.ObjectEntry;
 import org.apache.chemistry.Policy;
 import org.apache.chemistry.Property;
 import org.apache.chemistry.PropertyDefinition;
@@ -93,38 +94,44 @@ public class SimpleObject extends BaseObject {
 
     public Folder getParent() {
         SimpleConnection connection = (SimpleConnection) this.connection;
-        Set<String> parents = connection.repository.parents.get(getId());
-        if (parents == SimpleRepository.NO_PARENT) {
+        SimpleSnapshot snapshot = connection.repository.getSnapshot();
+        Set<String> parents = snapshot.getParents(getId());
+        if (parents.isEmpty()) {
             return null;
         }
         if (parents.size() != 1) {
             throw new RuntimeException("Several parents for: " + getId()); // TODO
         }
         String pid = parents.iterator().next();
-        SimpleData data = connection.repository.datas.get(pid);
-        return new SimpleFolder(new SimpleObjectEntry(data, connection),
-                connection);
+        SimpleData data = snapshot.getData(pid);
+        return new SimpleFolder(new SimpleObjectEntry(data, connection,
+                snapshot), connection);
     }
 
     public Collection<Folder> getParents() {
         SimpleConnection connection = (SimpleConnection) this.connection;
-        Set<String> parents = connection.repository.parents.get(getId());
-        if (parents == SimpleRepository.NO_PARENT) {
-            return Collections.emptyList();
-        }
+        SimpleSnapshot snapshot = connection.repository.getSnapshot();
+        Set<String> parents = snapshot.getParents(getId());
         List<Folder> list = new ArrayList<Folder>(parents.size());
         for (String pid : parents) {
-            SimpleData data = connection.repository.datas.get(pid);
-            list.add(new SimpleFolder(new SimpleObjectEntry(data, connection),
-                    connection));
+            SimpleData data = snapshot.getData(pid);
+            list.add(new SimpleFolder(new SimpleObjectEntry(data, connection,
+                    snapshot), connection));
         }
         return list;
     }
 
     public List<Relationship> getRelationships(RelationshipDirection direction,
             String typeId, boolean includeSubRelationshipTypes) {
-        // TODO Auto-generated method stub
-        throw new UnsupportedOperationException();
+        Inclusion inclusion = new Inclusion(null, null, direction, false,
+                false, false);
+        List<ObjectEntry> entries = connection.getSPI().getRelationships(this,
+                typeId, includeSubRelationshipTypes, inclusion, null);
+        List<Relationship> list = new ArrayList<Relationship>(entries.size());
+        for (ObjectEntry e : entries) {
+            list.add(new SimpleRelationship((SimpleObjectEntry) e, connection));
+        }
+        return list;
     }
 
     public void applyPolicy(Policy policy) {
@@ -18,6 +18,7 @@ package org.apache.chemistry.impl.simple;
 
 import java.io.Serializable;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
@@ -39,7 +40,13 @@ import org.apache.chemistry.Property;
  */
 public class SimpleObjectEntry implements ObjectEntry {
 
-    protected final SimpleData data;
+    /**
+     * The data, once saved it is shared with the repository snapshot and
+     * replaced by a new copy on each change.
+     */
+    protected SimpleData data;
+
+    protected final Connection connection;
 
     protected ChangeInfo changeInfo;
 
@@ -47,9 +54,36 @@ public class SimpleObjectEntry implements ObjectEntry {
 
     protected String pathSegment;
 
+    /** The version series giving the checked out state, or {@code null}. */
+    protected SimpleVersionSeries versionSeries;
+
     public SimpleObjectEntry(SimpleData data, Connection connection) {
         this.data = data;
+        this.connection = connection;
         path = getPath(connection);
+        if (connection instanceof SimpleConnection) {
+            SimpleRepository repository = ((SimpleConnection) connection).repository;
+            versionSeries = getVersionSeries(repository.getSnapshot());
+        }
+    }
+
+    /**
+     * Creates an entry whose path is computed from the snapshot the data was
+     * read from.
+     */
+    public SimpleObjectEntry(SimpleData data, Connection connection,
+            SimpleSnapshot snapshot) {
+        this.data = data;
+        this.connection = connection;
+        String id = getId();
+        path = id == null ? null : snapshot.getPath(id);
+        versionSeries = getVersionSeries(snapshot);
+    }
+
+    protected SimpleVersionSeries getVersionSeries(SimpleSnapshot snapshot) {
+        String versionSeriesId = (String) data.get(Property.VERSION_SERIES_ID);
+        return versionSeriesId == null ? null
+                : snapshot.getVersionSeries(versionSeriesId);
     }
 
     public String getId() {
@@ -82,11 +116,25 @@ public class SimpleObjectEntry implements ObjectEntry {
     }
 
     public Map<String, Serializable> getValues() {
+        if (!data.containsKey(Property.PATH) && versionSeries == null) {
+            // no computed value, no need to copy
+            return Collections.unmodifiableMap(data);
+        }
         HashMap<String, Serializable> map = new HashMap<String, Serializable>(
                 data);
-        if (map.containsKey(Property.PATH)) {
+        if (data.containsKey(Property.PATH)) {
             map.put(Property.PATH, getValue(Property.PATH));
         }
+        if (versionSeries != null) {
+            for (String id : SimpleVersionSeries.CHECKED_OUT_PROPERTIES) {
+                Serializable value = versionSeries.getCheckedOutValue(id);
+                if (value == null) {
+                    map.remove(id);
+                } else {
+                    map.put(id, value);
+                }
+            }
+        }
         return map;
     }
 
@@ -94,6 +142,10 @@ public class SimpleObjectEntry implements ObjectEntry {
         if (id.equals(Property.PATH)) {
             return path;
         }
+        if (versionSeries != null
+                && SimpleVersionSeries.CHECKED_OUT_PROPERTIES.contains(id)) {
+            return versionSeries.getCheckedOutValue(id);
+        }
         return data.get(id);
     }
 
@@ -134,6 +186,13 @@ public class SimpleObjectEntry implements ObjectEntry {
     }
 
     public void setValue(String id, Serializable value) {
+        String objectId = getId();
+        if (objectId != null && connection instanceof SimpleConnection) {
+            // saved data is immutable, write the change through
+            data = ((SimpleConnection) connection).updateValue(objectId, id,
+                    value);
+            return;
+        }
         if (value == null) {
             data.remove(id);
         } else {
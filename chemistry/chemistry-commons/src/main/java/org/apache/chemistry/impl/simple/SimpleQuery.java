@@ -0,0 +1,379 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.chemistry.impl.simple;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.antlr.runtime.ANTLRInputStream;
+import org.antlr.runtime.CharStream;
+import org.antlr.runtime.CommonTokenStream;
+import org.antlr.runtime.RecognitionException;
+import org.antlr.runtime.TokenSource;
+import org.antlr.runtime.TokenStream;
+import org.antlr.runtime.tree.CommonTree;
+import org.antlr.runtime.tree.CommonTreeNodeStream;
+import org.apache.chemistry.CMISRuntimeException;
+import org.apache.chemistry.cmissql.CmisSqlLexer;
+import org.apache.chemistry.cmissql.CmisSqlParser;
+
+/**
+ * A CMIS-SQL statement parsed once, evaluated against the data of each
+ * candidate object or, for a join, of each joined row.
+ * <p>
+ * Joins are equi-joins executed as hash joins: the smaller of the two inputs
+ * is put in a hash table on its join column and the other one is streamed
+ * through it. A joined row maps the qualifier of each table, its correlation
+ * name or else its name, to the data of the object it holds, or has no entry
+ * for the missing side of a left outer join.
+ */
+public class SimpleQuery {
+
+    /**
+     * A table of the FROM clause.
+     */
+    public static class Table {
+
+        /** The lowercased query name of the table. */
+        public final String name;
+
+        /** The lowercased correlation name, or else the name. */
+        public final String qualifier;
+
+        /** {@code true} for a left outer join. */
+        public final boolean outer;
+
+        /** The qualifier of the table of the left join column. */
+        public final String leftQualifier;
+
+        public final String leftColumn;
+
+        public final String rightColumn;
+
+        public Table(String name, String qualifier, boolean outer,
+                String leftQualifier, String leftColumn, String rightColumn) {
+            this.name = name;
+            this.qualifier = qualifier;
+            this.outer = outer;
+            this.leftQualifier = leftQualifier;
+            this.leftColumn = leftColumn;
+            this.rightColumn = rightColumn;
+        }
+    }
+
+    protected final String statement;
+
+    protected final CommonTree tree;
+
+    protected final TokenStream tokens;
+
+    /** The first table followed by the joined ones. */
+    protected final List<Table> tables = new ArrayList<Table>();
+
+    /** Selected columns of joined tables: qualifier, column, result key. */
+    protected final List<String[]> joinedColumns = new ArrayList<String[]>();
+
+    /** Qualifiers of the joined tables whose columns are all selected. */
+    protected final Set<String> joinedStars = new LinkedHashSet<String>();
+
+    public SimpleQuery(String statement) {
+        this.statement = statement;
+        try {
+            CharStream input = new ANTLRInputStream(new ByteArrayInputStream(
+                    statement.getBytes("UTF-8")));
+            TokenSource lexer = new CmisSqlLexer(input);
+            tokens = new CommonTokenStream(lexer);
+            CmisSqlParser parser = new CmisSqlParser(tokens);
+            CmisSqlParser.query_return query = parser.query();
+            if (parser.errorMessage != null) {
+                throw new CMISRuntimeException("Cannot parse query: "
+                        + statement + " (" + parser.errorMessage + ")");
+            }
+            tree = (CommonTree) query.getTree();
+        } catch (IOException e) {
+            throw new CMISRuntimeException(e.getMessage(), e);
+        } catch (RecognitionException e) {
+            throw new CMISRuntimeException("Cannot parse query: " + statement,
+                    e);
+        }
+        for (int i = 0; i < tree.getChildCount(); i++) {
+            CommonTree node = (CommonTree) tree.getChild(i);
+            if (node.getType() == CmisSqlParser.FROM) {
+                parseFrom(node);
+            }
+        }
+        for (int i = 0; i < tree.getChildCount(); i++) {
+            CommonTree node = (CommonTree) tree.getChild(i);
+            if (node.getType() == CmisSqlParser.STAR) {
+                for (Table table : getJoinedTables()) {
+                    joinedStars.add(table.qualifier);
+                }
+            } else if (node.getType() == CmisSqlParser.LIST) {
+                parseSelectList(node);
+            }
+        }
+    }
+
+    protected void parseFrom(CommonTree from) {
+        for (int i = 0; i < from.getChildCount(); i++) {
+            CommonTree node = (CommonTree) from.getChild(i);
+            if (node.getType() == CmisSqlParser.TABLE) {
+                String name = node.getChild(0).getText().toLowerCase();
+                String qualifier = node.getChildCount() > 1 ? node.getChild(
+                        1).getText().toLowerCase() : name;
+                tables.add(new Table(name, qualifier, false, null, null,
+                        null));
+            } else if (node.getType() == CmisSqlParser.JOIN) {
+                parseJoin(node);
+            }
+        }
+    }
+
+    protected void parseJoin(CommonTree join) {
+        int kind = join.getChild(0).getType();
+        if (kind != CmisSqlParser.INNER && kind != CmisSqlParser.LEFT) {
+            throw new CMISRuntimeException("Unsupported join: " + statement);
+        }
+        CommonTree table = (CommonTree) join.getChild(1);
+        String name = table.getChild(0).getText().toLowerCase();
+        String qualifier = table.getChildCount() > 1 ? table.getChild(
+                1).getText().toLowerCase() : name;
+        if (join.getChildCount() < 3) {
+            throw new CMISRuntimeException("Missing join condition: "
+                    + statement);
+        }
+        // ^(ON column_reference EQ column_reference)
+        CommonTree on = (CommonTree) join.getChild(2);
+        String[] left = parseColumn((CommonTree) on.getChild(0));
+        String[] right = parseColumn((CommonTree) on.getChild(2));
+        if (qualifier.equals(left[0])) {
+            String[] tmp = left;
+            left = right;
+            right = tmp;
+        }
+        String leftQualifier = left[0] == null ? tables.get(0).qualifier
+                : left[0];
+        tables.add(new Table(name, qualifier, kind == CmisSqlParser.LEFT,
+                leftQualifier, left[1], right[1]));
+    }
+
+    /**
+     * Parses a ^(COL qualifier? column_name) node.
+     *
+     * @return the lowercased qualifier, or {@code null}, and the column
+     */
+    protected static String[] parseColumn(CommonTree col) {
+        if (col.getChildCount() > 1) {
+            return new String[] { col.getChild(0).getText().toLowerCase(),
+                    col.getChild(1).getText() };
+        }
+        return new String[] { null, col.getChild(0).getText() };
+    }
+
+    protected void parseSelectList(CommonTree list) {
+        Set<String> joined = new LinkedHashSet<String>();
+        for (Table table : getJoinedTables()) {
+            joined.add(table.qualifier);
+        }
+        int n = list.getChildCount();
+        for (int i = 0; i < n; i++) {
+            CommonTree node = (CommonTree) list.getChild(i);
+            int type = node.getType();
+            if (type == CmisSqlParser.ID && isType(list, i + 1, CmisSqlParser.DOT)) {
+                // qualifier DOT STAR
+                String qualifier = node.getText().toLowerCase();
+                if (joined.contains(qualifier)) {
+                    joinedStars.add(qualifier);
+                }
+                i += 2;
+                continue;
+            }
+            String alias = null;
+            if (isType(list, i + 1, CmisSqlParser.ID)
+                    && !isType(list, i + 2, CmisSqlParser.DOT)) {
+                alias = list.getChild(++i).getText();
+            }
+            if (type == CmisSqlParser.COL) {
+                String[] col = parseColumn(node);
+                if (col[0] != null && joined.contains(col[0])) {
+                    joinedColumns.add(new String[] { col[0], col[1],
+                            alias == null ? col[0] + '.' + col[1] : alias });
+                }
+            }
+        }
+    }
+
+    protected static boolean isType(CommonTree node, int i, int type) {
+        return i < node.getChildCount() && node.getChild(i).getType() == type;
+    }
+
+    public String getStatement() {
+        return statement;
+    }
+
+    public List<Table> getTables() {
+        return tables;
+    }
+
+    public List<Table> getJoinedTables() {
+        return tables.subList(1, tables.size());
+    }
+
+    /**
+     * Evaluates the statement against the data of an object.
+     *
+     * @param data the data of the object of the first table
+     * @param datas for a join, the data of each table by qualifier
+     */
+    public CmisSqlSimpleWalker.query_return evaluate(SimpleData data,
+            Map<String, SimpleData> datas, SimpleConnection connection) {
+        CommonTreeNodeStream nodes = new CommonTreeNodeStream(tree);
+        nodes.setTokenStream(tokens);
+        CmisSqlSimpleWalker walker = new CmisSqlSimpleWalker(nodes);
+        CmisSqlSimpleWalker.query_return res;
+        try {
+            res = walker.query(data, datas, connection);
+        } catch (RecognitionException e) {
+            throw new CMISRuntimeException("Cannot parse query: " + statement,
+                    e);
+        }
+        if (walker.errorMessage != null) {
+            throw new CMISRuntimeException("Cannot parse query: " + statement
+                    + " (" + walker.errorMessage + ")");
+        }
+        return res;
+    }
+
+    /**
+     * Joins rows with the data of a table, hashing the smaller input.
+     */
+    public static List<Map<String, SimpleData>> hashJoin(
+            List<Map<String, SimpleData>> rows, List<SimpleData> datas,
+            Table table) {
+        List<Map<String, SimpleData>> joined = new ArrayList<Map<String, SimpleData>>();
+        if (datas.size() <= rows.size()) {
+            // hash the table, stream the rows
+            Map<Serializable, List<SimpleData>> hash = new HashMap<Serializable, List<SimpleData>>();
+            for (SimpleData data : datas) {
+                Serializable key = data.getIgnoreCase(table.rightColumn);
+                if (key == null) {
+                    continue;
+                }
+                List<SimpleData> list = hash.get(key);
+                if (list == null) {
+                    hash.put(key, list = new ArrayList<SimpleData>(1));
+                }
+                list.add(data);
+            }
+            for (Map<String, SimpleData> row : rows) {
+                Serializable key = getLeftKey(row, table);
+                List<SimpleData> matches = key == null ? null : hash.get(key);
+                if (matches == null) {
+                    if (table.outer) {
+                        joined.add(row);
+                    }
+                    continue;
+                }
+                for (SimpleData data : matches) {
+                    joined.add(join(row, table.qualifier, data));
+                }
+            }
+        } else {
+            // hash the rows, stream the table
+            Map<Serializable, List<Map<String, SimpleData>>> hash = new HashMap<Serializable, List<Map<String, SimpleData>>>();
+            for (Map<String, SimpleData> row : rows) {
+                Serializable key = getLeftKey(row, table);
+                if (key == null) {
+                    continue;
+                }
+                List<Map<String, SimpleData>> list = hash.get(key);
+                if (list == null) {
+                    hash.put(key, list = new ArrayList<Map<String, SimpleData>>(1));
+                }
+                list.add(row);
+            }
+            Map<Map<String, SimpleData>, Boolean> matched = new IdentityHashMap<Map<String, SimpleData>, Boolean>();
+            for (SimpleData data : datas) {
+                Serializable key = data.getIgnoreCase(table.rightColumn);
+                List<Map<String, SimpleData>> matches = key == null ? null
+                        : hash.get(key);
+                if (matches == null) {
+                    continue;
+                }
+                for (Map<String, SimpleData> row : matches) {
+                    joined.add(join(row, table.qualifier, data));
+                    if (table.outer) {
+                        matched.put(row, Boolean.TRUE);
+                    }
+                }
+            }
+            if (table.outer) {
+                for (Map<String, SimpleData> row : rows) {
+                    if (!matched.containsKey(row)) {
+                        joined.add(row);
+                    }
+                }
+            }
+        }
+        return joined;
+    }
+
+    protected static Serializable getLeftKey(Map<String, SimpleData> row,
+            Table table) {
+        SimpleData data = row.get(table.leftQualifier);
+        return data == null ? null : data.getIgnoreCase(table.leftColumn);
+    }
+
+    protected static Map<String, SimpleData> join(Map<String, SimpleData> row,
+            String qualifier, SimpleData data) {
+        Map<String, SimpleData> joined = new HashMap<String, SimpleData>(row);
+        joined.put(qualifier, data);
+        return joined;
+    }
+
+    /**
+     * Makes the data returned for a joined row: the data of the object of the
+     * first table, with the selected columns of the joined tables added under
+     * their qualified name or alias.
+     */
+    public SimpleData getRowData(Map<String, SimpleData> row) {
+        SimpleData data = row.get(tables.get(0).qualifier).copy();
+        for (String[] col : joinedColumns) {
+            SimpleData d = row.get(col[0]);
+            Serializable value = d == null ? null : d.getIgnoreCase(col[1]);
+            if (value != null) {
+                data.put(col[2], value);
+            }
+        }
+        for (String qualifier : joinedStars) {
+            SimpleData d = row.get(qualifier);
+            if (d == null) {
+                continue;
+            }
+            for (Map.Entry<String, Serializable> es : d.entrySet()) {
+                data.put(qualifier + '.' + es.getKey(), es.getValue());
+            }
+        }
+        return data;
+    }
+
+}
@@ -19,12 +19,13 @@ package org.apache.chemistry.impl.simple;
 import java.io.Serializable;
 import java.net.URI;
 import java.util.Collection;
-import java.util.Collections;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.apache.chemistry.CapabilityACL;
 import org.apache.chemistry.ACLCapabilityType;
@@ -37,24 +38,28 @@ import org.apache.chemistry.Property;
 import org.apache.chemistry.CapabilityQuery;
 import org.apache.chemistry.CapabilityRendition;
 import org.apache.chemistry.SPI;
+import org.apache.chemistry.Type;
 import org.apache.chemistry.impl.base.BaseRepository;
 
+/**
+ * A repository holding its objects in memory.
+ * <p>
+ * The state of the repository is an immutable {@link SimpleSnapshot}: readers
+ * work on the latest committed snapshot without taking any lock, while
+ * writers apply their changes to a {@link SimpleChangeSet} and commit it
+ * atomically as the next version.
+ */
 public class SimpleRepository extends BaseRepository {
 
-    protected static final Set<String> NO_PARENT = Collections.unmodifiableSet(new HashSet<String>());
-
     protected final String rootId;
 
     private final ObjectId rootFolderId;
 
-    /** Map of id -> data */
-    protected final Map<String, SimpleData> datas;
+    /** The latest committed snapshot. */
+    protected final AtomicReference<SimpleSnapshot> head;
 
-    /** Map of id -> children IDs */
-    protected final Map<String, Set<String>> children;
-
-    /** Map of id -> parent IDs, or null if unfiled */
-    protected final Map<String, Set<String>> parents;
+    /** Map of type id -> layout of its data */
+    protected final ConcurrentMap<String, SimpleLayout> layouts = new ConcurrentHashMap<String, SimpleLayout>();
 
     public SimpleRepository(String name, Collection<SimpleType> types,
             String rootId) {
@@ -66,10 +71,6 @@ public class SimpleRepository extends BaseRepository {
     public SimpleRepository(String name, String rootId) {
         super(name);
 
-        datas = new ConcurrentHashMap<String, SimpleData>();
-        children = new ConcurrentHashMap<String, Set<String>>();
-        parents = new ConcurrentHashMap<String, Set<String>>();
-
         SimpleData rootData = new SimpleData(ROOT_TYPE_ID, BaseType.FOLDER);
         if (rootId == null) {
             rootId = generateId();
@@ -77,9 +78,17 @@ public class SimpleRepository extends BaseRepository {
         this.rootId = rootId;
         rootData.put(Property.ID, rootId);
         rootData.put(Property.NAME, ROOT_FOLDER_NAME);
-        datas.put(rootId, rootData);
-        children.put(rootId, newSet());
-        parents.put(rootId, NO_PARENT);
+        head = new AtomicReference<SimpleSnapshot>(new SimpleSnapshot(0,
+                PersistentHashMap.<String, SimpleData> empty().with(rootId,
+                        rootData),
+                PersistentHashMap.<String, PersistentHashSet<String>> empty().with(
+                        rootId, PersistentHashSet.<String> empty()),
+                PersistentHashMap.<String, PersistentHashSet<String>> empty(),
+                PersistentHashMap.<String, String[]> empty().with(rootId,
+                        new String[0]),
+                PersistentHashMap.<String, SimpleVersionSeries> empty(),
+                PersistentHashMap.<String, PersistentHashSet<String>> empty(),
+                PersistentHashMap.<String, PersistentHashSet<String>> empty()));
         rootFolderId = new SimpleObjectId(rootId);
     }
 
@@ -90,8 +99,55 @@ public class SimpleRepository extends BaseRepository {
         // return "ID_" + idCounter.incrementAndGet();
     }
 
-    protected Set<String> newSet() {
-        return Collections.synchronizedSet(new HashSet<String>());
+    /**
+     * Gets the layout shared by the data of all the objects of a type.
+     */
+    public SimpleLayout getLayout(String typeId) {
+        SimpleLayout layout = layouts.get(typeId);
+        if (layout == null) {
+            Type type = getType(typeId);
+            if (type == null) {
+                return SimpleLayout.EMPTY;
+            }
+            layout = SimpleLayout.fromType(type);
+            SimpleLayout previous = layouts.putIfAbsent(typeId, layout);
+            if (previous != null) {
+                layout = previous;
+            }
+        }
+        return layout;
+    }
+
+    /**
+     * Gets the latest committed snapshot.
+     */
+    public SimpleSnapshot getSnapshot() {
+        return head.get();
+    }
+
+    /**
+     * Applies a change to the latest snapshot and commits the result as the
+     * next version.
+     * <p>
+     * Commits are optimistic: if another writer committed in the meantime,
+     * the change is applied again on top of the new snapshot. Exceptions
+     * thrown by the change abort the commit.
+     *
+     * @return the committed snapshot
+     */
+    public SimpleSnapshot commit(SimpleChange change) {
+        for (;;) {
+            SimpleSnapshot base = head.get();
+            SimpleChangeSet changes = new SimpleChangeSet(base);
+            change.apply(changes);
+            if (!changes.isModified()) {
+                return base;
+            }
+            SimpleSnapshot snapshot = changes.toSnapshot();
+            if (head.compareAndSet(base, snapshot)) {
+                return snapshot;
+            }
+        }
     }
 
     /*
@@ -107,13 +163,19 @@ public class SimpleRepository extends BaseRepository {
      */
 
     public Connection getConnection(Map<String, Serializable> params) {
-        // TODO credentials
-        return new SimpleConnection(this);
+        // TODO check credentials
+        return new SimpleConnection(this, getUserName(params));
     }
 
     public SPI getSPI(Map<String, Serializable> params) {
-        // TODO credentials
-        return new SimpleConnection(this);
+        // TODO check credentials
+        return new SimpleConnection(this, getUserName(params));
+    }
+
+    protected static String getUserName(Map<String, Serializable> params) {
+        Serializable userName = params == null ? null
+                : params.get(PARAM_USERNAME);
+        return userName == null ? null : userName.toString();
     }
 
     public <T> T getExtension(Class<T> klass) {
@@ -201,7 +263,7 @@ public class SimpleRepository extends BaseRepository {
     }
 
     public CapabilityJoin getJoinCapability() {
-        return CapabilityJoin.NONE;
+        return CapabilityJoin.INNER_AND_OUTER;
     }
 
     public CapabilityQuery getQueryCapability() {
@@ -0,0 +1,202 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.chemistry.impl.simple;
+
+import java.util.Collection;
+import java.util.Set;
+
+import org.apache.chemistry.Property;
+import org.apache.chemistry.RelationshipDirection;
+
+/**
+ * An immutable, consistent state of a {@link SimpleRepository}.
+ * <p>
+ * Snapshots are never modified, so any number of readers can use one without
+ * locking while writers commit new versions. The {@link SimpleData} held by a
+ * snapshot must not be modified either, writers use a {@link SimpleChangeSet}
+ * to build the next version.
+ */
+public class SimpleSnapshot {
+
+    protected final long version;
+
+    /** Map of id -> data */
+    protected final PersistentHashMap<String, SimpleData> datas;
+
+    /** Map of folder id -> children IDs */
+    protected final PersistentHashMap<String, PersistentHashSet<String>> children;
+
+    /** Map of id -> parent IDs, absent if unfiled */
+    protected final PersistentHashMap<String, PersistentHashSet<String>> parents;
+
+    /**
+     * Map of filed folder id -> IDs of its ancestors, root first. The ancestor
+     * at depth n of a folder is at index n, which makes checking if a folder
+     * is in the tree of another a single lookup.
+     */
+    protected final PersistentHashMap<String, String[]> ancestors;
+
+    /** Map of version series id -> version series */
+    protected final PersistentHashMap<String, SimpleVersionSeries> versionSeries;
+
+    /** Map of object id -> IDs of the relationships having it as source */
+    protected final PersistentHashMap<String, PersistentHashSet<String>> sources;
+
+    /** Map of object id -> IDs of the relationships having it as target */
+    protected final PersistentHashMap<String, PersistentHashSet<String>> targets;
+
+    protected SimpleSnapshot(long version,
+            PersistentHashMap<String, SimpleData> datas,
+            PersistentHashMap<String, PersistentHashSet<String>> children,
+            PersistentHashMap<String, PersistentHashSet<String>> parents,
+            PersistentHashMap<String, String[]> ancestors,
+            PersistentHashMap<String, SimpleVersionSeries> versionSeries,
+            PersistentHashMap<String, PersistentHashSet<String>> sources,
+            PersistentHashMap<String, PersistentHashSet<String>> targets) {
+        this.version = version;
+        this.datas = datas;
+        this.children = children;
+        this.parents = parents;
+        this.ancestors = ancestors;
+        this.versionSeries = versionSeries;
+        this.sources = sources;
+        this.targets = targets;
+    }
+
+    /**
+     * The version of this snapshot, incremented by each commit.
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    public SimpleData getData(String id) {
+        return datas.get(id);
+    }
+
+    public Collection<SimpleData> getDatas() {
+        return datas.values();
+    }
+
+    /**
+     * Gets the IDs of the children of a folder, or {@code null} if the id is
+     * not that of a folder.
+     */
+    public Set<String> getChildren(String id) {
+        return children.get(id);
+    }
+
+    /**
+     * Gets the IDs of the parents of an object, empty for the root or an
+     * unfiled object.
+     */
+    public Set<String> getParents(String id) {
+        PersistentHashSet<String> set = parents.get(id);
+        return set == null ? PersistentHashSet.<String> empty() : set;
+    }
+
+    /**
+     * Checks if an object is in the tree of a folder, that is if one of its
+     * parents is the folder or one of its descendants.
+     */
+    public boolean isInTree(String id, String folderId) {
+        return isInTree(parents, ancestors, id, folderId);
+    }
+
+    protected static boolean isInTree(
+            PersistentHashMap<String, PersistentHashSet<String>> parents,
+            PersistentHashMap<String, String[]> ancestors, String id,
+            String folderId) {
+        String[] folderAncestors = ancestors.get(folderId);
+        PersistentHashSet<String> set = parents.get(id);
+        if (folderAncestors == null || set == null) {
+            return false;
+        }
+        int depth = folderAncestors.length;
+        for (String pid : set) {
+            if (pid.equals(folderId)) {
+                return true;
+            }
+            String[] a = ancestors.get(pid);
+            if (a != null && a.length > depth && a[depth].equals(folderId)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Gets the IDs of the relationships of an object in a given direction.
+     */
+    public Set<String> getRelationships(String id,
+            RelationshipDirection direction) {
+        return getRelationships(sources, targets, id, direction);
+    }
+
+    protected static PersistentHashSet<String> getRelationships(
+            PersistentHashMap<String, PersistentHashSet<String>> sources,
+            PersistentHashMap<String, PersistentHashSet<String>> targets,
+            String id, RelationshipDirection direction) {
+        PersistentHashSet<String> set = null;
+        if (direction != RelationshipDirection.TARGET) {
+            set = sources.get(id);
+        }
+        if (direction != RelationshipDirection.SOURCE) {
+            PersistentHashSet<String> t = targets.get(id);
+            if (set == null) {
+                set = t;
+            } else if (t != null) {
+                for (String rid : t) {
+                    set = set.with(rid);
+                }
+            }
+        }
+        return set == null ? PersistentHashSet.<String> empty() : set;
+    }
+
+    /**
+     * Gets a version series, or {@code null} if there is no such series.
+     */
+    public SimpleVersionSeries getVersionSeries(String id) {
+        return versionSeries.get(id);
+    }
+
+    /**
+     * Computes the path of an object, or {@code null} if it has several
+     * parents.
+     */
+    public String getPath(String id) {
+        SimpleData data = datas.get(id);
+        if (data == null) {
+            return null;
+        }
+        Set<String> set = getParents(id);
+        String parentPath;
+        if (set.isEmpty()) {
+            parentPath = "";
+        } else if (set.size() > 1) {
+            return null;
+        } else {
+            parentPath = getPath(set.iterator().next());
+            if (parentPath == null) {
+                return null;
+            }
+            if (parentPath.equals("/")) {
+                parentPath = "";
+            }
+        }
+        return parentPath + "/" + data.get(Property.NAME);
+    }
+
+}
@@ -58,6 +58,11 @@ public class SimpleTypeManager implements TypeManager {
 
     private final Lock wlock = rwlock.writeLock();
 
+    /**
+     * Incremented each time the type system changes.
+     */
+    private volatile long version;
+
     public SimpleTypeManager() {
         typesChildren = new HashMap<String, Collection<Type>>();
         // make sure base types are there
@@ -66,6 +71,19 @@ public class SimpleTypeManager implements TypeManager {
         }
     }
 
+    /**
+     * Gets the version of the type system.
+     * <p>
+     * The version changes each time a type is added, so that derived
+     * information (like converted type definitions) can be cached as long as
+     * the version stays the same.
+     *
+     * @return the type system version
+     */
+    public long getVersion() {
+        return version;
+    }
+
     public void addType(Type type) {
         wlock.lock();
         try {
@@ -96,6 +114,7 @@ public class SimpleTypeManager implements TypeManager {
                 siblings.add(type);
                 // TODO check no cycle
             }
+            version++;
         } finally {
             wlock.unlock();
         }
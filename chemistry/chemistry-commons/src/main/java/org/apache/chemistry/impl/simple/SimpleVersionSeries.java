@@ -0,0 +1,186 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.chemistry.impl.simple;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.chemistry.Property;
+
+/**
+ * The versions of a version series, as indexed by a {@link SimpleSnapshot}.
+ * <p>
+ * The checked out state is only stored here, the properties describing it
+ * on each version are derived from it by {@link #getCheckedOutValue}.
+ * <p>
+ * A version series is immutable, updates return a new version series.
+ */
+public class SimpleVersionSeries {
+
+    private static final String[] NO_IDS = new String[0];
+
+    private static final boolean[] NO_FLAGS = new boolean[0];
+
+    /** The properties derived from the checked out state. */
+    public static final List<String> CHECKED_OUT_PROPERTIES = Arrays.asList(
+            Property.IS_VERSION_SERIES_CHECKED_OUT,
+            Property.VERSION_SERIES_CHECKED_OUT_BY,
+            Property.VERSION_SERIES_CHECKED_OUT_ID);
+
+    protected final String id;
+
+    /** The version IDs, oldest first. */
+    protected final String[] versionIds;
+
+    /** Whether each version is major. */
+    protected final boolean[] majors;
+
+    /** The private working copy, or {@code null} if not checked out. */
+    protected final String checkedOutId;
+
+    /** The user who checked out, or {@code null} if not checked out. */
+    protected final String checkedOutBy;
+
+    /** The latest major version, or {@code null}. */
+    protected final String latestMajorId;
+
+    public SimpleVersionSeries(String id) {
+        this(id, NO_IDS, NO_FLAGS, null, null);
+    }
+
+    protected SimpleVersionSeries(String id, String[] versionIds,
+            boolean[] majors, String checkedOutId, String checkedOutBy) {
+        this.id = id;
+        this.versionIds = versionIds;
+        this.majors = majors;
+        this.checkedOutId = checkedOutId;
+        this.checkedOutBy = checkedOutBy;
+        String major = null;
+        for (int i = versionIds.length - 1; i >= 0; i--) {
+            if (majors[i]) {
+                major = versionIds[i];
+                break;
+            }
+        }
+        latestMajorId = major;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * Gets the version IDs, oldest first.
+     */
+    public List<String> getVersionIds() {
+        return Collections.unmodifiableList(Arrays.asList(versionIds));
+    }
+
+    public boolean isEmpty() {
+        return versionIds.length == 0;
+    }
+
+    public boolean contains(String versionId) {
+        return indexOf(versionId) != -1;
+    }
+
+    protected int indexOf(String versionId) {
+        for (int i = versionIds.length - 1; i >= 0; i--) {
+            if (versionIds[i].equals(versionId)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    public String getLatestId() {
+        int n = versionIds.length;
+        return n == 0 ? null : versionIds[n - 1];
+    }
+
+    public String getLatestMajorId() {
+        return latestMajorId;
+    }
+
+    public String getCheckedOutId() {
+        return checkedOutId;
+    }
+
+    public String getCheckedOutBy() {
+        return checkedOutBy;
+    }
+
+    /**
+     * Gets the value, for the versions of this series, of one of the
+     * {@link #CHECKED_OUT_PROPERTIES}.
+     */
+    public Serializable getCheckedOutValue(String propertyId) {
+        if (Property.IS_VERSION_SERIES_CHECKED_OUT.equals(propertyId)) {
+            return Boolean.valueOf(checkedOutId != null);
+        }
+        if (Property.VERSION_SERIES_CHECKED_OUT_ID.equals(propertyId)) {
+            return checkedOutId;
+        }
+        if (Property.VERSION_SERIES_CHECKED_OUT_BY.equals(propertyId)) {
+            return checkedOutBy;
+        }
+        return null;
+    }
+
+    /**
+     * Returns a version series with a new latest version.
+     */
+    public SimpleVersionSeries withVersion(String versionId, boolean major) {
+        int n = versionIds.length;
+        String[] ids = new String[n + 1];
+        boolean[] flags = new boolean[n + 1];
+        System.arraycopy(versionIds, 0, ids, 0, n);
+        System.arraycopy(majors, 0, flags, 0, n);
+        ids[n] = versionId;
+        flags[n] = major;
+        return new SimpleVersionSeries(id, ids, flags, checkedOutId,
+                checkedOutBy);
+    }
+
+    /**
+     * Returns a version series without a version.
+     */
+    public SimpleVersionSeries withoutVersion(String versionId) {
+        int i = indexOf(versionId);
+        if (i == -1) {
+            return this;
+        }
+        int n = versionIds.length - 1;
+        String[] ids = new String[n];
+        boolean[] flags = new boolean[n];
+        System.arraycopy(versionIds, 0, ids, 0, i);
+        System.arraycopy(versionIds, i + 1, ids, i, n - i);
+        System.arraycopy(majors, 0, flags, 0, i);
+        System.arraycopy(majors, i + 1, flags, i, n - i);
+        return new SimpleVersionSeries(id, ids, flags, checkedOutId,
+                checkedOutBy);
+    }
+
+    /**
+     * Returns a version series checked out by a user to a private working
+     * copy, or checked in if {@code null}.
+     */
+    public SimpleVersionSeries withCheckedOut(String pwcId, String userName) {
+        return new SimpleVersionSeries(id, versionIds, majors, pwcId,
+                pwcId == null ? null : userName);
+    }
+
+}
@@ -0,0 +1,282 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.chemistry.json;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Minimal JSON parser.
+ * <p>
+ * Objects are returned as {@link Map}s keeping the key order, arrays as
+ * {@link List}s, numbers as {@link Long} when they are integral and fit, or
+ * {@link BigDecimal} otherwise. Strings, booleans and {@code null} map to
+ * their Java counterparts.
+ */
+public class JSONParser {
+
+    protected final Reader reader;
+
+    protected final char[] buf = new char[8192];
+
+    protected int pos;
+
+    protected int len;
+
+    /** Offset of the start of the buffer in the input, for error messages. */
+    protected long offset;
+
+    protected final StringBuilder sb = new StringBuilder();
+
+    public JSONParser(Reader reader) {
+        this.reader = reader;
+    }
+
+    public static Object parse(String json) throws IOException {
+        return new JSONParser(new StringReader(json)).parse();
+    }
+
+    /**
+     * Parses a single JSON value from the input.
+     */
+    public Object parse() throws IOException {
+        Object value = readValue();
+        if (skipWhitespace() != -1) {
+            throw error("Unexpected data after value");
+        }
+        return value;
+    }
+
+    protected Object readValue() throws IOException {
+        int c = skipWhitespace();
+        switch (c) {
+        case '{':
+            pos++;
+            return readObject();
+        case '[':
+            pos++;
+            return readArray();
+        case '"':
+            pos++;
+            return readString();
+        case 't':
+            readLiteral("true");
+            return Boolean.TRUE;
+        case 'f':
+            readLiteral("false");
+            return Boolean.FALSE;
+        case 'n':
+            readLiteral("null");
+            return null;
+        case -1:
+            throw error("Unexpected end of input");
+        default:
+            if (c == '-' || (c >= '0' && c <= '9')) {
+                return readNumber();
+            }
+            throw error("Unexpected character: " + (char) c);
+        }
+    }
+
+    protected Map<String, Object> readObject() throws IOException {
+        Map<String, Object> map = new LinkedHashMap<String, Object>();
+        if (skipWhitespace() == '}') {
+            pos++;
+            return map;
+        }
+        while (true) {
+            if (skipWhitespace() != '"') {
+                throw error("Expected key");
+            }
+            pos++;
+            String key = readString();
+            if (skipWhitespace() != ':') {
+                throw error("Expected ':'");
+            }
+            pos++;
+            map.put(key, readValue());
+            int c = skipWhitespace();
+            pos++;
+            if (c == '}') {
+                return map;
+            }
+            if (c != ',') {
+                throw error("Expected ',' or '}'");
+            }
+        }
+    }
+
+    protected List<Object> readArray() throws IOException {
+        List<Object> list = new ArrayList<Object>();
+        if (skipWhitespace() == ']') {
+            pos++;
+            return list;
+        }
+        while (true) {
+            list.add(readValue());
+            int c = skipWhitespace();
+            pos++;
+            if (c == ']') {
+                return list;
+            }
+            if (c != ',') {
+                throw error("Expected ',' or ']'");
+            }
+        }
+    }
+
+    // called after the opening quote
+    protected String readString() throws IOException {
+        sb.setLength(0);
+        while (true) {
+            if (pos == len && !fill()) {
+                throw error("Unterminated string");
+            }
+            int start = pos;
+            while (pos < len) {
+                char c = buf[pos];
+                if (c == '"' || c == '\\') {
+                    break;
+                }
+                pos++;
+            }
+            sb.append(buf, start, pos - start);
+            if (pos == len) {
+                continue;
+            }
+            if (buf[pos++] == '"') {
+                return sb.toString();
+            }
+            int c = read();
+            switch (c) {
+            case '"':
+            case '\\':
+            case '/':
+                sb.append((char) c);
+                break;
+            case 'b':
+                sb.append('\b');
+                break;
+            case 'f':
+                sb.append('\f');
+                break;
+            case 'n':
+                sb.append('\n');
+                break;
+            case 'r':
+                sb.append('\r');
+                break;
+            case 't':
+                sb.append('\t');
+                break;
+            case 'u':
+                int u = 0;
+                for (int i = 0; i < 4; i++) {
+                    int d = Character.digit(read(), 16);
+                    if (d == -1) {
+                        throw error("Invalid unicode escape");
+                    }
+                    u = (u << 4) | d;
+                }
+                sb.append((char) u);
+                break;
+            default:
+                throw error("Invalid escape");
+            }
+        }
+    }
+
+    protected Number readNumber() throws IOException {
+        sb.setLength(0);
+        boolean integral = true;
+        while (true) {
+            if (pos == len && !fill()) {
+                break;
+            }
+            char c = buf[pos];
+            if ((c >= '0' && c <= '9') || c == '-' || c == '+') {
+                sb.append(c);
+            } else if (c == '.' || c == 'e' || c == 'E') {
+                integral = false;
+                sb.append(c);
+            } else {
+                break;
+            }
+            pos++;
+        }
+        String s = sb.toString();
+        try {
+            if (integral && s.length() < 19) {
+                return Long.valueOf(s);
+            }
+            return new BigDecimal(s);
+        } catch (NumberFormatException e) {
+            throw error("Invalid number: " + s);
+        }
+    }
+
+    protected void readLiteral(String literal) throws IOException {
+        for (int i = 0; i < literal.length(); i++) {
+            if (read() != literal.charAt(i)) {
+                throw error("Expected " + literal);
+            }
+        }
+    }
+
+    protected int read() throws IOException {
+        if (pos == len && !fill()) {
+            return -1;
+        }
+        return buf[pos++];
+    }
+
+    /**
+     * Skips whitespace and returns the next character without consuming it,
+     * or -1 at the end of the input.
+     */
+    protected int skipWhitespace() throws IOException {
+        while (true) {
+            if (pos == len && !fill()) {
+                return -1;
+            }
+            char c = buf[pos];
+            if (c != ' ' && c != '\n' && c != '\r' && c != '\t') {
+                return c;
+            }
+            pos++;
+        }
+    }
+
+    protected boolean fill() throws IOException {
+        offset += len;
+        pos = 0;
+        len = reader.read(buf, 0, buf.length);
+        if (len <= 0) {
+            len = 0;
+            return false;
+        }
+        return true;
+    }
+
+    protected IOException error(String message) {
+        return new IOException(message + " at offset " + (offset + pos));
+    }
+
+}
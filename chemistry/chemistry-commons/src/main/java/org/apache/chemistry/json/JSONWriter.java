@@ -0,0 +1,206 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.chemistry.json;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Calendar;
+import java.util.Collection;
+import java.util.Date;
+import java.util.Map;
+
+import org.apache.chemistry.util.GregorianCalendar;
+
+/**
+ * Streaming JSON generator.
+ * <p>
+ * Values are written to the underlying writer as soon as they are given, so
+ * arbitrarily large documents can be produced without building them in
+ * memory. Separators are managed by the generator, the caller only has to
+ * balance the start and end calls.
+ */
+public class JSONWriter {
+
+    protected final Writer writer;
+
+    /** For each open container, whether a value was already written. */
+    protected boolean[] nonEmpty = new boolean[16];
+
+    protected int depth;
+
+    /** A key was written and its value is expected. */
+    protected boolean afterKey;
+
+    public JSONWriter(Writer writer) {
+        this.writer = writer;
+    }
+
+    public JSONWriter startObject() throws IOException {
+        separator();
+        writer.write('{');
+        push();
+        return this;
+    }
+
+    public JSONWriter endObject() throws IOException {
+        depth--;
+        writer.write('}');
+        return this;
+    }
+
+    public JSONWriter startArray() throws IOException {
+        separator();
+        writer.write('[');
+        push();
+        return this;
+    }
+
+    public JSONWriter endArray() throws IOException {
+        depth--;
+        writer.write(']');
+        return this;
+    }
+
+    public JSONWriter key(String key) throws IOException {
+        separator();
+        quote(key);
+        writer.write(':');
+        afterKey = true;
+        return this;
+    }
+
+    public JSONWriter value(String value) throws IOException {
+        separator();
+        if (value == null) {
+            writer.write("null");
+        } else {
+            quote(value);
+        }
+        return this;
+    }
+
+    public JSONWriter value(boolean value) throws IOException {
+        separator();
+        writer.write(value ? "true" : "false");
+        return this;
+    }
+
+    public JSONWriter value(Number value) throws IOException {
+        separator();
+        writer.write(value == null ? "null" : value.toString());
+        return this;
+    }
+
+    /**
+     * Writes a Java value.
+     * <p>
+     * Strings, booleans, numbers and {@code null} map to their JSON
+     * counterparts, dates are written as ISO 8601 strings, arrays and
+     * collections as JSON arrays and maps as JSON objects. Other objects are
+     * written as their string representation.
+     */
+    public JSONWriter value(Object value) throws IOException {
+        if (value == null || value instanceof String) {
+            return value((String) value);
+        } else if (value instanceof Boolean) {
+            return value(((Boolean) value).booleanValue());
+        } else if (value instanceof Number) {
+            return value((Number) value);
+        } else if (value instanceof Calendar) {
+            return value(GregorianCalendar.toAtomPub((Calendar) value));
+        } else if (value instanceof Date) {
+            return value(GregorianCalendar.toAtomPub((Date) value));
+        } else if (value instanceof Object[]) {
+            startArray();
+            for (Object v : (Object[]) value) {
+                value(v);
+            }
+            return endArray();
+        } else if (value instanceof Collection<?>) {
+            startArray();
+            for (Object v : (Collection<?>) value) {
+                value(v);
+            }
+            return endArray();
+        } else if (value instanceof Map<?, ?>) {
+            startObject();
+            for (Map.Entry<?, ?> e : ((Map<?, ?>) value).entrySet()) {
+                key(String.valueOf(e.getKey()));
+                value(e.getValue());
+            }
+            return endObject();
+        } else {
+            return value(value.toString());
+        }
+    }
+
+    public void flush() throws IOException {
+        writer.flush();
+    }
+
+    protected void push() {
+        if (depth == nonEmpty.length) {
+            boolean[] tmp = new boolean[depth * 2];
+            System.arraycopy(nonEmpty, 0, tmp, 0, depth);
+            nonEmpty = tmp;
+        }
+        nonEmpty[depth++] = false;
+    }
+
+    protected void separator() throws IOException {
+        if (afterKey) {
+            afterKey = false;
+            return;
+        }
+        if (depth > 0) {
+            if (nonEmpty[depth - 1]) {
+                writer.write(',');
+            } else {
+                nonEmpty[depth - 1] = true;
+            }
+        }
+    }
+
+    protected void quote(String s) throws IOException {
+        writer.write('"');
+        int len = s.length();
+        int start = 0;
+        for (int i = 0; i < len; i++) {
+            char c = s.charAt(i);
+            String esc;
+            if (c == '"') {
+                esc = "\\\"";
+            } else if (c == '\\') {
+                esc = "\\\\";
+            } else if (c == '\n') {
+                esc = "\\n";
+            } else if (c == '\r') {
+                esc = "\\r";
+            } else if (c == '\t') {
+                esc = "\\t";
+            } else if (c < 0x20 || c == '\u2028' || c == '\u2029') {
+                // the last two are valid JSON but not valid JavaScript
+                esc = String.format("\\u%04x", Integer.valueOf(c));
+            } else {
+                continue;
+            }
+            writer.write(s, start, i - start);
+            writer.write(esc);
+            start = i + 1;
+        }
+        writer.write(s, start, len - start);
+        writer.write('"');
+    }
+
+}
@@ -0,0 +1,278 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.chemistry.impl.cache;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.xml.namespace.QName;
+
+import junit.framework.TestCase;
+
+import org.apache.chemistry.AllowableAction;
+import org.apache.chemistry.BaseType;
+import org.apache.chemistry.ContentStreamPresence;
+import org.apache.chemistry.ListPage;
+import org.apache.chemistry.ObjectEntry;
+import org.apache.chemistry.ObjectId;
+import org.apache.chemistry.Property;
+import org.apache.chemistry.PropertyDefinition;
+import org.apache.chemistry.Repository;
+import org.apache.chemistry.SPI;
+import org.apache.chemistry.impl.metrics.InstrumentedRepository;
+import org.apache.chemistry.impl.metrics.RepositoryMetrics;
+import org.apache.chemistry.impl.simple.SimpleRepository;
+import org.apache.chemistry.impl.simple.SimpleType;
+
+public class TestCachingRepository extends TestCase {
+
+    protected SimpleRepository simple;
+
+    protected RepositoryMetrics metrics;
+
+    protected ObjectId root;
+
+    @Override
+    public void setUp() {
+        SimpleType dt = new SimpleType("doc", BaseType.DOCUMENT.getId(),
+                "doc", null, "Doc", "My Doc Type", BaseType.DOCUMENT, "", true,
+                true, true, true, true, true, true, true,
+                ContentStreamPresence.ALLOWED, null, null,
+                Collections.<PropertyDefinition> emptyList());
+        simple = new SimpleRepository("test", Arrays.asList(dt), null);
+        root = simple.getInfo().getRootFolderId();
+    }
+
+    /**
+     * Caches in front of an instrumented repository, to count the calls
+     * reaching the backend.
+     */
+    protected CachingRepository newRepository(int maxSize, long ttlMillis) {
+        InstrumentedRepository instrumented = new InstrumentedRepository(
+                simple);
+        metrics = instrumented.getMetrics();
+        return new CachingRepository(instrumented, maxSize, ttlMillis);
+    }
+
+    protected long calls(String method) {
+        return metrics.get(method).getCalls();
+    }
+
+    protected static ObjectId createDocument(SPI spi, ObjectId folder,
+            String name) throws Exception {
+        Map<String, Serializable> props = new HashMap<String, Serializable>();
+        props.put(Property.TYPE_ID, "doc");
+        props.put(Property.NAME, name);
+        return spi.createDocument(props, folder, null, null);
+    }
+
+    public void testReadThrough() throws Exception {
+        CachingRepository repo = newRepository(100, 0);
+        SPI spi = repo.getSPI(null);
+        ObjectId id = createDocument(spi, root, "doc1");
+        createDocument(spi, root, "doc2");
+
+        ObjectEntry e1 = spi.getProperties(id, null);
+        ObjectEntry e2 = spi.getProperties(id, null);
+        assertSame(e1, e2);
+        assertEquals(1, calls("getProperties"));
+        assertEquals("doc1", e1.getValue(Property.NAME));
+        try {
+            e1.setValue(Property.NAME, "foo");
+            fail();
+        } catch (UnsupportedOperationException e) {
+            // ok, snapshots are read-only
+        }
+
+        assertEquals(id.getId(), spi.getObjectByPath("/doc1", null).getId());
+        spi.getObjectByPath("/doc1", null);
+        assertEquals(1, calls("getObjectByPath"));
+
+        ListPage<ObjectEntry> children = spi.getChildren(root, null, null,
+                null);
+        assertEquals(2, children.size());
+        children = spi.getChildren(root, null, null, null);
+        assertEquals(2, children.size());
+        assertEquals(1, calls("getChildren"));
+
+        spi.getAllowableActions(id);
+        spi.getAllowableActions(id);
+        assertEquals(1, calls("getAllowableActions"));
+        spi.close();
+
+        // shared by all connections
+        spi = repo.getSPI(null);
+        spi.getProperties(id, null);
+        assertEquals(1, calls("getProperties"));
+        spi.close();
+    }
+
+    public void testInvalidation() throws Exception {
+        CachingRepository repo = newRepository(100, 0);
+        SPI spi = repo.getSPI(null);
+        ObjectId id = createDocument(spi, root, "doc1");
+        assertEquals(1, spi.getChildren(root, null, null, null).size());
+        spi.getProperties(id, null);
+
+        // create invalidates the children of the folder
+        createDocument(spi, root, "doc2");
+        assertEquals(2, spi.getChildren(root, null, null, null).size());
+        assertEquals(2, calls("getChildren"));
+
+        // update invalidates the object and the pages containing it
+        Map<String, Serializable> props = new HashMap<String, Serializable>();
+        props.put(Property.NAME, "foo");
+        spi.updateProperties(id, null, props);
+        assertEquals("foo", spi.getProperties(id, null).getValue(
+                Property.NAME));
+        assertEquals(2, calls("getProperties"));
+        assertNull(spi.getObjectByPath("/doc1", null));
+        assertNotNull(spi.getObjectByPath("/foo", null));
+        boolean found = false;
+        for (ObjectEntry child : spi.getChildren(root, null, null, null)) {
+            found |= "foo".equals(child.getValue(Property.NAME));
+        }
+        assertTrue(found);
+
+        // delete
+        spi.deleteObject(id, false);
+        assertEquals(1, spi.getChildren(root, null, null, null).size());
+        assertNull(spi.getObjectByPath("/foo", null));
+        spi.close();
+    }
+
+    protected static Map<String, Serializable> credentials(String username,
+            String password) {
+        Map<String, Serializable> params = new HashMap<String, Serializable>();
+        params.put(Repository.PARAM_USERNAME, username);
+        params.put(Repository.PARAM_PASSWORD, password);
+        return params;
+    }
+
+    public void testPrincipals() throws Exception {
+        CachingRepository repo = newRepository(100, 0);
+        SPI alice = repo.getSPI(credentials("alice", "secret"));
+        SPI bob = repo.getSPI(credentials("bob", "secret"));
+        SPI mallory = repo.getSPI(credentials("alice", "guess"));
+        ObjectId id = createDocument(alice, root, "doc1");
+        alice.getProperties(id, null);
+        alice.getAllowableActions(id);
+        bob.getProperties(id, null);
+        bob.getAllowableActions(id);
+        mallory.getProperties(id, null);
+        assertEquals(3, calls("getProperties"));
+        assertEquals(2, calls("getAllowableActions"));
+
+        // same credentials share the cache
+        SPI alice2 = repo.getSPI(credentials("alice", "secret"));
+        alice2.getProperties(id, null);
+        assertEquals(3, calls("getProperties"));
+
+        // changes by one principal invalidate the data of all
+        Map<String, Serializable> props = new HashMap<String, Serializable>();
+        props.put(Property.NAME, "doc2");
+        bob.updateProperties(id, null, props);
+        assertEquals("doc2", alice.getProperties(id, null).getValue(
+                Property.NAME));
+        assertEquals(4, calls("getProperties"));
+        alice.close();
+        alice2.close();
+        bob.close();
+        mallory.close();
+    }
+
+    public void testSnapshot() throws Exception {
+        SPI spi = simple.getSPI(null);
+        ObjectId id = createDocument(spi, root, "doc1");
+        final ObjectEntry entry = spi.getProperties(id, null);
+        final Set<QName> actions = new HashSet<QName>();
+        actions.add(AllowableAction.CAN_GET_PROPERTIES);
+        ObjectEntry source = new CachedObjectEntry(entry, false) {
+            @Override
+            public Set<QName> getAllowableActions() {
+                return actions;
+            }
+
+            @Override
+            public Collection<ObjectEntry> getRelationships() {
+                return Collections.singletonList(entry);
+            }
+        };
+        CachedObjectEntry cached = new CachedObjectEntry(source, true);
+        actions.add(AllowableAction.CAN_DELETE_OBJECT);
+        assertEquals(Collections.singleton(AllowableAction.CAN_GET_PROPERTIES),
+                cached.getAllowableActions());
+        // relationships are detached from the connection too
+        ObjectEntry rel = cached.getRelationships().iterator().next();
+        assertTrue(rel instanceof CachedObjectEntry);
+        assertEquals(id.getId(), rel.getId());
+        spi.close();
+    }
+
+    public void testExternalInvalidation() throws Exception {
+        CachingRepository repo = newRepository(100, 0);
+        SPI spi = repo.getSPI(null);
+        SPI direct = simple.getSPI(null);
+        ObjectId id = createDocument(spi, root, "doc1");
+        spi.getProperties(id, null);
+        Map<String, Serializable> props = new HashMap<String, Serializable>();
+        props.put(Property.NAME, "foo");
+        direct.updateProperties(id, null, props);
+        assertEquals("doc1", spi.getProperties(id, null).getValue(
+                Property.NAME));
+        repo.getCache().invalidate(id.getId());
+        assertEquals("foo", spi.getProperties(id, null).getValue(
+                Property.NAME));
+        direct.close();
+        spi.close();
+    }
+
+    public void testExpiration() throws Exception {
+        CachingRepository repo = newRepository(100, 1);
+        SPI spi = repo.getSPI(null);
+        ObjectId id = createDocument(spi, root, "doc1");
+        spi.getProperties(id, null);
+        Thread.sleep(10);
+        spi.getProperties(id, null);
+        assertEquals(2, calls("getProperties"));
+        spi.close();
+    }
+
+    public void testMaxSize() throws Exception {
+        CachingRepository repo = newRepository(2, 0);
+        SPI spi = repo.getSPI(null);
+        List<ObjectId> ids = Arrays.asList(createDocument(spi, root, "doc1"),
+                createDocument(spi, root, "doc2"), createDocument(spi, root,
+                        "doc3"));
+        for (ObjectId id : ids) {
+            spi.getProperties(id, null);
+        }
+        assertEquals(3, calls("getProperties"));
+        // the most recent ones are cached, the first one was evicted
+        spi.getProperties(ids.get(2), null);
+        spi.getProperties(ids.get(1), null);
+        assertEquals(3, calls("getProperties"));
+        spi.getProperties(ids.get(0), null);
+        assertEquals(4, calls("getProperties"));
+        spi.close();
+    }
+
+}
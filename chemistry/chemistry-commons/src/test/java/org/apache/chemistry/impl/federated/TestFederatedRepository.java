@@ -0,0 +1,269 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.chemistry.impl.federated;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.apache.chemistry.BaseType;
+import org.apache.chemistry.CMISRuntimeException;
+import org.apache.chemistry.ConstraintViolationException;
+import org.apache.chemistry.ContentStreamPresence;
+import org.apache.chemistry.Inclusion;
+import org.apache.chemistry.ListPage;
+import org.apache.chemistry.ObjectEntry;
+import org.apache.chemistry.ObjectId;
+import org.apache.chemistry.Paging;
+import org.apache.chemistry.Property;
+import org.apache.chemistry.PropertyDefinition;
+import org.apache.chemistry.SPI;
+import org.apache.chemistry.Tree;
+import org.apache.chemistry.impl.base.EntryComparator;
+import org.apache.chemistry.impl.simple.SimpleData;
+import org.apache.chemistry.impl.simple.SimpleObjectEntry;
+import org.apache.chemistry.impl.simple.SimpleRepository;
+import org.apache.chemistry.impl.simple.SimpleType;
+
+public class TestFederatedRepository extends TestCase {
+
+    protected SimpleRepository repoA;
+
+    protected SimpleRepository repoB;
+
+    protected SimpleRepository repoC;
+
+    protected FederatedRepository repo;
+
+    protected SPI spi;
+
+    protected ObjectId root;
+
+    protected static SimpleRepository newSimpleRepository(String name) {
+        SimpleType dt = new SimpleType("doc", BaseType.DOCUMENT.getId(),
+                "doc", null, "Doc", "My Doc Type", BaseType.DOCUMENT, "", true,
+                true, true, true, true, true, true, true,
+                ContentStreamPresence.ALLOWED, null, null,
+                Collections.<PropertyDefinition> emptyList());
+        return new SimpleRepository(name, Arrays.asList(dt), null);
+    }
+
+    @Override
+    public void setUp() throws Exception {
+        repoA = newSimpleRepository("a");
+        repoB = newSimpleRepository("b");
+        repoC = newSimpleRepository("c");
+        repo = new FederatedRepository("fed", "a", repoA);
+        repo.addShard("b", repoB, "/archive");
+        repo.addShard("c", repoC, null);
+        spi = repo.getSPI(null);
+        root = repo.getInfo().getRootFolderId();
+        createDocument("a1", root);
+        createDocument("a2", root);
+        ObjectId archive = spi.getObjectByPath("/archive", null);
+        createDocument("b1", archive);
+        ObjectId sub = createFolder("sub", archive);
+        createDocument("b2", sub);
+    }
+
+    @Override
+    public void tearDown() {
+        spi.close();
+        repo.dispose();
+    }
+
+    protected ObjectId createDocument(String name, ObjectId folder)
+            throws Exception {
+        Map<String, Serializable> props = new HashMap<String, Serializable>();
+        props.put(Property.TYPE_ID, "doc");
+        props.put(Property.NAME, name);
+        return spi.createDocument(props, folder, null, null);
+    }
+
+    protected ObjectId createFolder(String name, ObjectId folder)
+            throws Exception {
+        Map<String, Serializable> props = new HashMap<String, Serializable>();
+        props.put(Property.TYPE_ID, BaseType.FOLDER.getId());
+        props.put(Property.NAME, name);
+        return spi.createFolder(props, folder);
+    }
+
+    protected static List<String> names(List<ObjectEntry> entries) {
+        List<String> names = new ArrayList<String>();
+        for (ObjectEntry entry : entries) {
+            names.add((String) entry.getValue(Property.NAME));
+        }
+        return names;
+    }
+
+    public void testInfo() {
+        assertEquals("fed", repo.getInfo().getId());
+        assertEquals("a:" + repoA.getRootFolderId().getId(), root.getId());
+        assertEquals(root.getId(), spi.getObjectByPath("/", null).getId());
+        assertTrue(repo.getInfo().isChangeLogIncomplete());
+    }
+
+    public void testRouting() throws Exception {
+        ObjectEntry archive = spi.getObjectByPath("/archive", null);
+        assertEquals("b:" + repoB.getRootFolderId().getId(), archive.getId());
+        assertEquals("archive", archive.getValue(Property.NAME));
+        assertEquals("/archive", archive.getValue(Property.PATH));
+        assertEquals(root.getId(), archive.getValue(Property.PARENT_ID));
+        assertEquals(root.getId(),
+                spi.getFolderParent(archive, null).getId());
+
+        ObjectEntry b2 = spi.getObjectByPath("/archive/sub/b2", null);
+        assertTrue(b2.getId().startsWith("b:"));
+        assertEquals("/archive/sub/b2", b2.getValue(Property.PATH));
+        ObjectEntry sub = spi.getObjectByPath("/archive/sub", null);
+        assertEquals(archive.getId(), sub.getValue(Property.PARENT_ID));
+        assertEquals(sub.getId(),
+                spi.getObjectParents(b2, null).iterator().next().getId());
+        assertEquals("b2", spi.getProperties(b2, null).getValue(
+                Property.NAME));
+
+        // stored in the backend of the mounted shard
+        SPI spiB = repoB.getSPI(null);
+        assertNotNull(spiB.getObjectByPath("/sub/b2", null));
+        assertNull(spiB.getObjectByPath("/a1", null));
+        spiB.close();
+
+        // unfiled objects spread by name
+        ObjectId unfiled = createDocument("u", null);
+        assertEquals(repo.getShardForUnfiled("u"),
+                repo.getShardForId(unfiled.getId()));
+    }
+
+    public void testCrossShard() throws Exception {
+        ObjectId a1 = spi.getObjectByPath("/a1", null);
+        ObjectId sub = spi.getObjectByPath("/archive/sub", null);
+        try {
+            spi.moveObject(a1, sub, root);
+            fail();
+        } catch (ConstraintViolationException e) {
+            // ok
+        }
+    }
+
+    public void testChildren() throws Exception {
+        ListPage<ObjectEntry> children = spi.getChildren(root, null,
+                Property.NAME, null);
+        assertEquals(Arrays.asList("a1", "a2", "archive"), names(children));
+        children = spi.getChildren(root, null, Property.NAME + " DESC",
+                new Paging(2, 0));
+        assertEquals(Arrays.asList("archive", "a2"), names(children));
+        assertTrue(children.getHasMoreItems());
+        assertEquals(3, children.getNumItems());
+
+        ObjectEntry archive = spi.getObjectByPath("/archive", null);
+        children = spi.getChildren(archive, null, null, null);
+        assertEquals(2, children.size());
+        for (ObjectEntry child : children) {
+            assertTrue(child.getId().startsWith("b:"));
+        }
+
+        Inclusion inclusion = FederatedSPI.withMergeProperties(new Inclusion(
+                Property.ID, null, null, false, false, false), "cmis:name DESC");
+        assertEquals("cmis:objectId,cmis:name,cmis:name", inclusion.properties);
+        children = spi.getChildren(root, inclusion, Property.NAME + " DESC",
+                null);
+        assertEquals(Arrays.asList("archive", "a2", "a1"), names(children));
+    }
+
+    public void testDescendants() throws Exception {
+        Tree<ObjectEntry> tree = spi.getDescendants(root, -1, null, null);
+        assertEquals(6, tree.size());
+        tree = spi.getDescendants(root, 2, null, null);
+        assertEquals(5, tree.size());
+        tree = spi.getFolderTree(root, -1, null);
+        assertEquals(2, tree.size());
+        assertEquals("/archive/sub", tree.getChildren().get(0).getChildren().get(
+                0).getNode().getValue(Property.PATH));
+    }
+
+    public void testQuery() throws Exception {
+        ListPage<ObjectEntry> res = spi.query(
+                "SELECT * FROM doc ORDER BY cmis:name DESC", false, null, null);
+        assertEquals(Arrays.asList("b2", "b1", "a2", "a1"), names(res));
+        assertEquals(4, res.getNumItems());
+
+        res = spi.query("SELECT * FROM doc", false, null, new Paging(3, 0));
+        assertEquals(3, res.size());
+        assertTrue(res.getHasMoreItems());
+
+        ObjectEntry archive = spi.getObjectByPath("/archive", null);
+        res = spi.query("SELECT * FROM doc WHERE IN_FOLDER('"
+                + archive.getId() + "')", false, null, null);
+        assertEquals(Arrays.asList("b1"), names(res));
+        res = spi.query("SELECT * FROM doc WHERE IN_TREE('" + root.getId()
+                + "') ORDER BY cmis:name", false, null, null);
+        assertEquals(Arrays.asList("a1", "a2", "b1", "b2"), names(res));
+
+        res = spi.query("SELECT cmis:name FROM doc ORDER BY cmis:name", false,
+                null, null);
+        assertEquals(Arrays.asList("a1", "a2", "b1", "b2"), names(res));
+        try {
+            spi.query("SELECT cmis:objectId FROM doc ORDER BY cmis:name",
+                    false, null, null);
+            fail("cannot merge on a column not selected");
+        } catch (CMISRuntimeException e) {
+            // ok
+        }
+    }
+
+    public void testShardStatements() throws Exception {
+        ObjectEntry b1 = spi.getObjectByPath("/archive/b1", null);
+        String backendId = b1.getId().substring(2);
+        String statement = "SELECT * FROM doc d WHERE d.cmis:objectId IN ('a:x', '"
+                + b1.getId() + "') AND cmis:name <> 'b:1'";
+        String shardStatement = ((FederatedSPI) spi).getShardStatements(
+                statement).get(repo.getShard("b"));
+        assertEquals("SELECT * FROM doc d WHERE d.cmis:objectId IN ('a:x', '"
+                + backendId + "') AND cmis:name <> 'b:1'", shardStatement);
+        ListPage<ObjectEntry> res = spi.query(
+                "SELECT * FROM doc WHERE cmis:objectId = '" + b1.getId()
+                        + "' AND cmis:name <> 'b:1'", false, null, null);
+        assertEquals(Arrays.asList("b1"), names(res));
+    }
+
+    public void testMerge() {
+        EntryComparator comparator = EntryComparator.fromOrderBy("cmis:name",
+                repo);
+        List<List<ObjectEntry>> lists = new ArrayList<List<ObjectEntry>>();
+        lists.add(Arrays.asList(entry("a"), entry("c")));
+        // ordered ignoring case by its backend
+        lists.add(Arrays.asList(entry("b"), entry("B"), entry("d")));
+        assertEquals(Arrays.asList("a", "b", "B", "c", "d"),
+                names(comparator.merge(lists)));
+        try {
+            EntryComparator.fromOrderBy("foo", repo);
+            fail("unknown column");
+        } catch (CMISRuntimeException e) {
+            // ok
+        }
+    }
+
+    protected static ObjectEntry entry(String name) {
+        SimpleData data = new SimpleData("doc", BaseType.DOCUMENT);
+        data.put(Property.NAME, name);
+        return new SimpleObjectEntry(data, null);
+    }
+
+}
@@ -0,0 +1,175 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.chemistry.impl.metrics;
+
+import java.io.InputStream;
+import java.io.Serializable;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import junit.framework.TestCase;
+
+import org.apache.chemistry.BaseType;
+import org.apache.chemistry.ContentStream;
+import org.apache.chemistry.ContentStreamPresence;
+import org.apache.chemistry.ObjectId;
+import org.apache.chemistry.Property;
+import org.apache.chemistry.PropertyDefinition;
+import org.apache.chemistry.SPI;
+import org.apache.chemistry.impl.simple.SimpleContentStream;
+import org.apache.chemistry.impl.simple.SimpleObjectId;
+import org.apache.chemistry.impl.simple.SimpleRepository;
+import org.apache.chemistry.impl.simple.SimpleType;
+
+public class TestInstrumentedRepository extends TestCase {
+
+    public void testHistogram() {
+        Histogram h = new Histogram();
+        assertEquals(0, h.getPercentile(50));
+        for (int i = 1; i <= 1000; i++) {
+            h.record(i);
+        }
+        assertEquals(1000, h.getCount());
+        assertEquals(1000, h.getMax());
+        assertEquals(500.5, h.getMean(), 0.001);
+        // exact below the sub-bucket count
+        assertEquals(10, h.getPercentile(1));
+        // bounded relative error above
+        long p50 = h.getPercentile(50);
+        assertTrue(String.valueOf(p50), p50 >= 500
+                && p50 <= 500 * (1 + 1.0 / Histogram.SUB_BUCKETS));
+        long p99 = h.getPercentile(99);
+        assertTrue(String.valueOf(p99), p99 >= 990 && p99 <= 1000);
+        assertEquals(1000, h.getPercentile(100));
+        h.record(Long.MAX_VALUE);
+        assertEquals(Histogram.MAX_VALUE, h.getMax());
+        h.reset();
+        assertEquals(0, h.getCount());
+    }
+
+    public void testHistogramBuckets() {
+        for (long v = 0; v < 100000; v++) {
+            int i = Histogram.bucketIndex(v);
+            assertTrue(v <= Histogram.bucketHighestValue(i));
+            if (i > 0) {
+                assertTrue(v > Histogram.bucketHighestValue(i - 1));
+            }
+        }
+        assertEquals(Histogram.BUCKETS - 1,
+                Histogram.bucketIndex(Histogram.MAX_VALUE));
+    }
+
+    public void testInstrumentedSPI() throws Exception {
+        SimpleType dt = new SimpleType("doc", BaseType.DOCUMENT.getId(),
+                "doc", null, "Doc", "My Doc Type", BaseType.DOCUMENT, "", true,
+                true, true, true, true, true, true, true,
+                ContentStreamPresence.ALLOWED, null, null,
+                Collections.<PropertyDefinition> emptyList());
+        SimpleRepository simple = new SimpleRepository("test",
+                Arrays.asList(dt), null);
+        InstrumentedRepository repo = new InstrumentedRepository(simple);
+        RepositoryMetrics metrics = repo.getMetrics();
+        SPI spi = repo.getSPI(null);
+        assertSame(repo, spi.getRepository());
+        ObjectId root = simple.getInfo().getRootFolderId();
+
+        byte[] bytes = "hello world".getBytes("UTF-8");
+        Map<String, Serializable> props = new HashMap<String, Serializable>();
+        props.put(Property.TYPE_ID, "doc");
+        props.put(Property.NAME, "doc1");
+        ContentStream cs = new SimpleContentStream(bytes, "text/plain",
+                "doc1.txt");
+        ObjectId id = spi.createDocument(props, root, cs, null);
+        props.put(Property.NAME, "doc2");
+        spi.createDocument(props, root, null, null);
+        assertEquals(2, spi.getChildren(root, null, null, null).size());
+
+        cs = spi.getContentStream(id, null);
+        InputStream in = cs.getStream();
+        while (in.read() != -1) {
+            // read it all
+        }
+        in.close();
+
+        try {
+            spi.getContentStream(new SimpleObjectId("nosuchid"), null);
+            fail();
+        } catch (RuntimeException e) {
+            // ok, recorded as an error
+        }
+        spi.close();
+
+        MethodMetrics m = metrics.get("createDocument");
+        assertEquals(2, m.getCalls());
+        assertEquals(0, m.getErrors());
+        assertEquals(bytes.length, m.getBytes());
+        m = metrics.get("getChildren");
+        assertEquals(1, m.getCalls());
+        assertEquals(2.0, m.getMeanResultSize(), 0);
+        assertEquals(2, m.getMaxResultSize());
+        m = metrics.get("getContentStream");
+        assertEquals(2, m.getCalls());
+        assertEquals(1, m.getErrors());
+        assertEquals(bytes.length, m.getBytes());
+        assertTrue(m.getMaxMicros() >= m.getMedianMicros());
+
+        String dump = metrics.dump();
+        assertTrue(dump, dump.contains("getChildren"));
+        assertTrue(dump, dump.contains("calls=2 errors=1"));
+
+        metrics.reset();
+        assertEquals(0, metrics.get("getChildren").getCalls());
+    }
+
+    public void testMBeans() throws Exception {
+        SimpleRepository simple = new SimpleRepository("test",
+                Collections.<SimpleType> emptyList(), null);
+        InstrumentedRepository repo = new InstrumentedRepository(simple);
+        // same repository id, e.g. exposed by another servlet
+        InstrumentedRepository other = new InstrumentedRepository(simple);
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        RepositoryMetrics metrics = repo.getMetrics();
+        ObjectName name = new ObjectName(
+                "org.apache.chemistry:type=MethodMetrics,repository=\"test\",instance="
+                        + metrics.getInstance() + ",method=getChildren");
+        assertEquals(name, metrics.getObjectName("getChildren"));
+        repo.registerMBeans();
+        other.registerMBeans();
+        try {
+            SPI spi = repo.getSPI(null);
+            spi.getChildren(simple.getInfo().getRootFolderId(), null, null,
+                    null);
+            spi.close();
+            assertTrue(server.isRegistered(name));
+            assertEquals(Long.valueOf(1), server.getAttribute(name, "Calls"));
+            Object dump = server.invoke(metrics.getObjectName(null), "dump",
+                    null, null);
+            assertTrue(String.valueOf(dump).contains("getChildren"));
+            assertTrue(server.isRegistered(other.getMetrics().getObjectName(
+                    null)));
+        } finally {
+            other.unregisterMBeans();
+            repo.unregisterMBeans();
+        }
+        assertFalse(server.isRegistered(name));
+        assertFalse(server.isRegistered(metrics.getObjectName(null)));
+    }
+
+}
@@ -0,0 +1,87 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.chemistry.impl.simple;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+public class TestPersistentHashMap extends TestCase {
+
+    /** A key with few distinct hash codes, to exercise collisions. */
+    protected static class Key {
+
+        protected final int value;
+
+        public Key(int value) {
+            this.value = value;
+        }
+
+        @Override
+        public int hashCode() {
+            return value % 50;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Key && ((Key) other).value == value;
+        }
+    }
+
+    public void testAgainstHashMap() {
+        Random random = new Random(1234);
+        Map<Object, Integer> expected = new HashMap<Object, Integer>();
+        PersistentHashMap<Object, Integer> map = PersistentHashMap.empty();
+        for (int i = 0; i < 20000; i++) {
+            int k = random.nextInt(2000);
+            Object key = k % 3 == 0 ? new Key(k) : Integer.valueOf(k);
+            PersistentHashMap<Object, Integer> previous = map;
+            int previousSize = previous.size();
+            if (random.nextInt(3) == 0) {
+                expected.remove(key);
+                map = map.without(key);
+            } else {
+                expected.put(key, Integer.valueOf(i));
+                map = map.with(key, Integer.valueOf(i));
+            }
+            // updates don't change the previous version
+            assertEquals(previousSize, previous.size());
+            assertEquals(expected.size(), map.size());
+            assertEquals(expected.get(key), map.get(key));
+        }
+        assertEquals(expected, map);
+        assertEquals(expected, new HashMap<Object, Integer>(map));
+        for (Object key : expected.keySet()) {
+            map = map.without(key);
+        }
+        assertTrue(map.isEmpty());
+        assertFalse(map.entrySet().iterator().hasNext());
+    }
+
+    public void testSet() {
+        PersistentHashSet<String> set = PersistentHashSet.empty();
+        PersistentHashSet<String> set1 = set.with("a").with("b");
+        assertSame(set1, set1.with("a"));
+        assertEquals(2, set1.size());
+        assertTrue(set1.contains("b"));
+        PersistentHashSet<String> set2 = set1.without("b");
+        assertEquals(1, set2.size());
+        assertFalse(set2.contains("b"));
+        assertTrue(set1.contains("b"));
+        assertEquals(0, set.size());
+    }
+
+}
@@ -0,0 +1,56 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.chemistry.impl.simple;
+
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.apache.chemistry.BaseType;
+import org.apache.chemistry.Property;
+
+public class TestSimpleData extends TestCase {
+
+    public void testSlotsAndOverflow() {
+        SimpleLayout layout = SimpleLayout.forBaseType(BaseType.DOCUMENT);
+        SimpleData data = new SimpleData(layout, new String("doc"),
+                BaseType.DOCUMENT);
+        assertTrue(layout.getSlot(Property.NAME) >= 0);
+        assertEquals(-1, layout.getSlot("foo"));
+        // interned
+        assertSame("doc", data.get(Property.TYPE_ID));
+
+        data.put(Property.NAME, "n");
+        data.put("foo", "bar");
+        Map<String, Serializable> expected = new HashMap<String, Serializable>();
+        expected.put(Property.TYPE_ID, "doc");
+        expected.put(Property.BASE_TYPE_ID, BaseType.DOCUMENT.getId());
+        expected.put(Property.NAME, "n");
+        expected.put("foo", "bar");
+        assertEquals(expected, data);
+        assertEquals(expected, new HashMap<String, Serializable>(data));
+        assertEquals("bar", data.getIgnoreCase("FOO"));
+
+        SimpleData copy = data.copy();
+        copy.remove(Property.NAME);
+        copy.remove("foo");
+        assertEquals(2, copy.size());
+        assertEquals(4, data.size());
+        assertEquals("n", data.get(Property.NAME));
+        assertNull(copy.get("foo"));
+    }
+
+}
@@ -18,10 +18,16 @@
 package org.apache.chemistry.impl.simple;
 
 import java.io.InputStream;
+import java.io.Serializable;
 import java.math.BigDecimal;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 
 import junit.framework.TestCase;
 
@@ -31,18 +37,29 @@ import org.apache.chemistry.CMISRuntimeException;
 import org.apache.chemistry.CapabilityJoin;
 import org.apache.chemistry.CapabilityQuery;
 import org.apache.chemistry.Connection;
+import org.apache.chemistry.ConstraintViolationException;
 import org.apache.chemistry.ContentStream;
 import org.apache.chemistry.ContentStreamPresence;
 import org.apache.chemistry.Document;
 import org.apache.chemistry.Folder;
+import org.apache.chemistry.Inclusion;
+import org.apache.chemistry.ListPage;
+import org.apache.chemistry.ObjectEntry;
+import org.apache.chemistry.ObjectId;
+import org.apache.chemistry.ObjectNotFoundException;
+import org.apache.chemistry.Paging;
 import org.apache.chemistry.Property;
 import org.apache.chemistry.PropertyDefinition;
 import org.apache.chemistry.PropertyType;
+import org.apache.chemistry.RelationshipDirection;
+import org.apache.chemistry.Repository;
 import org.apache.chemistry.RepositoryCapabilities;
 import org.apache.chemistry.RepositoryInfo;
+import org.apache.chemistry.SPI;
 import org.apache.chemistry.Type;
 import org.apache.chemistry.Unfiling;
 import org.apache.chemistry.Updatability;
+import org.apache.chemistry.VersioningException;
 import org.apache.chemistry.util.GregorianCalendar;
 
 public class TestSimpleRepository extends TestCase {
@@ -111,7 +128,8 @@ public class TestSimpleRepository extends TestCase {
         assertFalse(capabilities.isPWCUpdatable());
         assertFalse(capabilities.isPWCSearchable());
         assertFalse(capabilities.isAllVersionsSearchable());
-        assertEquals(CapabilityJoin.NONE, capabilities.getJoinCapability());
+        assertEquals(CapabilityJoin.INNER_AND_OUTER,
+                capabilities.getJoinCapability());
         assertEquals(CapabilityQuery.BOTH_COMBINED,
                 capabilities.getQueryCapability());
     }
@@ -272,6 +290,325 @@ public class TestSimpleRepository extends TestCase {
         assertNull(conn.getObject(d1));
     }
 
+    public void testDeleteTreeFailures() throws Exception {
+        Connection conn = repo.getConnection(null);
+        Folder root = conn.getRootFolder();
+        Folder f1 = root.newFolder("fold");
+        f1.setName("f1");
+        f1.save();
+        Folder f2 = f1.newFolder("fold");
+        f2.setName("f2");
+        f2.save();
+        Folder f3 = f1.newFolder("fold");
+        f3.setName("f3");
+        f3.save();
+        // enough documents for several batches
+        for (int i = 0; i < 2500; i++) {
+            Document doc = (i % 2 == 0 ? f2 : f3).newDocument("doc");
+            doc.setName("doc" + i);
+            doc.save();
+        }
+        Document d1 = f2.newDocument("doc");
+        d1.setName("d1");
+        d1.save();
+        final String refusedId = d1.getId();
+        SPI spi = new SimpleConnection(repo) {
+            @Override
+            protected boolean deleteFromTree(SimpleChangeSet changes,
+                    String folderId, String id, Unfiling unfiling) {
+                if (id.equals(refusedId)) {
+                    return false;
+                }
+                return super.deleteFromTree(changes, folderId, id, unfiling);
+            }
+        };
+        Collection<ObjectId> failed = spi.deleteTree(f1, Unfiling.DELETE,
+                false);
+        assertEquals(Collections.singletonList(refusedId), getIds(failed));
+        failed = spi.deleteTree(f1, Unfiling.DELETE, true);
+        // the folders containing the document are kept
+        assertEquals(new HashSet<String>(Arrays.asList(refusedId, f2.getId(),
+                f1.getId())), new HashSet<String>(getIds(failed)));
+        assertNotNull(conn.getObject(d1));
+        assertNull(conn.getObject(f3));
+        assertEquals(1, f2.getChildren().size());
+        assertEquals(1, f1.getChildren().size());
+    }
+
+    public void testRelationships() throws Exception {
+        String relTypeId = BaseType.RELATIONSHIP.getId();
+        SimpleType rt = new SimpleType("ref", relTypeId, "ref", null, "Ref",
+                "My Ref Type", BaseType.RELATIONSHIP, "", true, true, false,
+                false, false, true, false, false,
+                ContentStreamPresence.NOT_ALLOWED, null, null,
+                Collections.<PropertyDefinition> emptyList());
+        Connection conn = new SimpleRepository("rels", Arrays.asList(rt),
+                null).getConnection(null);
+        SPI spi = conn.getSPI();
+        Folder root = conn.getRootFolder();
+        Document d1 = root.newDocument(BaseType.DOCUMENT.getId());
+        d1.save();
+        Document d2 = root.newDocument(BaseType.DOCUMENT.getId());
+        d2.save();
+        Document d3 = root.newDocument(BaseType.DOCUMENT.getId());
+        d3.save();
+        ObjectId r1 = createRelationship(spi, relTypeId, d1, d2);
+        ObjectId r2 = createRelationship(spi, "ref", d1, d3);
+        ObjectId r3 = createRelationship(spi, "ref", d3, d1);
+
+        assertEquals(3, d1.getRelationships(RelationshipDirection.EITHER,
+                null, false).size());
+        assertEquals(2, d1.getRelationships(RelationshipDirection.SOURCE,
+                null, false).size());
+        assertEquals(Arrays.asList(r3.getId()), getIds(d1.getRelationships(
+                RelationshipDirection.TARGET, null, false)));
+        assertEquals(1, d1.getRelationships(RelationshipDirection.SOURCE,
+                relTypeId, false).size());
+        assertEquals(2, d1.getRelationships(RelationshipDirection.SOURCE,
+                relTypeId, true).size());
+        assertEquals(2, d3.getRelationships(RelationshipDirection.EITHER,
+                "ref", false).size());
+        ListPage<ObjectEntry> page = spi.getRelationships(d1, null, false,
+                null, new Paging(2, 0));
+        assertEquals(2, page.size());
+        assertTrue(page.getHasMoreItems());
+        assertEquals(3, page.getNumItems());
+        page = spi.getRelationships(d1, null, false, new Inclusion(
+                Property.SOURCE_ID, null, RelationshipDirection.TARGET, true,
+                false, false), null);
+        assertEquals(1, page.size());
+        ObjectEntry rel = page.get(0);
+        assertEquals(r3.getId(), rel.getId());
+        assertEquals(d3.getId(), rel.getValue(Property.SOURCE_ID));
+        assertNull(rel.getValue(Property.TARGET_ID));
+        assertFalse(rel.getAllowableActions().isEmpty());
+
+        try {
+            createRelationship(spi, "ref", d1, new SimpleObjectId("nosuchid"));
+            fail();
+        } catch (ObjectNotFoundException e) {
+            // ok
+        }
+
+        // the relationships of a deleted object are deleted with it
+        d1.delete();
+        assertNull(conn.getObject(r1));
+        assertNull(conn.getObject(r2));
+        assertNull(conn.getObject(r3));
+        assertEquals(0, d3.getRelationships(RelationshipDirection.EITHER,
+                null, false).size());
+        ObjectId r4 = createRelationship(spi, "ref", d2, d3);
+        spi.deleteObject(r4, false);
+        assertEquals(0, d2.getRelationships(RelationshipDirection.EITHER,
+                null, false).size());
+    }
+
+    protected static ObjectId createRelationship(SPI spi, String typeId,
+            ObjectId source, ObjectId target) {
+        Map<String, Serializable> properties = new HashMap<String, Serializable>();
+        properties.put(Property.TYPE_ID, typeId);
+        properties.put(Property.SOURCE_ID, source.getId());
+        properties.put(Property.TARGET_ID, target.getId());
+        return spi.createRelationship(properties);
+    }
+
+    public void testMoveTree() throws Exception {
+        Connection conn = repo.getConnection(null);
+        Folder root = conn.getRootFolder();
+        Folder f1 = root.newFolder("fold");
+        f1.setName("f1");
+        f1.save();
+        Folder f2 = f1.newFolder("fold");
+        f2.setName("f2");
+        f2.save();
+        Folder f3 = f2.newFolder("fold");
+        f3.setName("f3");
+        f3.save();
+        Document d1 = f3.newDocument("doc");
+        d1.setName("d1");
+        d1.save();
+        Folder g = root.newFolder("fold");
+        g.setName("g");
+        g.save();
+        String q = "SELECT * FROM doc WHERE IN_TREE('%s')";
+        assertEquals(1, conn.query(String.format(q, f1.getId()), false).size());
+        assertEquals(0, conn.query(String.format(q, g.getId()), false).size());
+        try {
+            f1.move(f3, null);
+            fail();
+        } catch (ConstraintViolationException e) {
+            // ok
+        }
+        // moving a folder reindexes its subfolders
+        f2.move(g, null);
+        assertEquals(0, conn.query(String.format(q, f1.getId()), false).size());
+        assertEquals(1, conn.query(String.format(q, g.getId()), false).size());
+        assertEquals("/g/f2/f3/d1", repo.getSnapshot().getPath(d1.getId()));
+    }
+
+    public void testSnapshots() throws Exception {
+        Connection conn = repo.getConnection(null);
+        Folder root = conn.getRootFolder();
+        SimpleSnapshot before = repo.getSnapshot();
+        Folder f1 = root.newFolder("fold");
+        f1.setName("foo");
+        f1.save();
+        Document d1 = f1.newDocument("doc");
+        d1.setValue("title", "old");
+        d1.save();
+        SimpleSnapshot saved = repo.getSnapshot();
+        assertEquals(before.getVersion() + 2, saved.getVersion());
+        d1.setValue("title", "new");
+
+        // older snapshots are unchanged
+        assertNull(before.getData(f1.getId()));
+        assertEquals(0, before.getChildren(root.getId()).size());
+        assertEquals("old", saved.getData(d1.getId()).get("title"));
+        assertEquals("new", repo.getSnapshot().getData(d1.getId()).get(
+                "title"));
+        assertEquals("/foo/" + d1.getName(), saved.getPath(d1.getId()));
+
+        // a tree is deleted in one commit
+        SimpleSnapshot beforeDelete = repo.getSnapshot();
+        f1.deleteTree(Unfiling.UNFILE);
+        assertEquals(beforeDelete.getVersion() + 1,
+                repo.getSnapshot().getVersion());
+        assertNotNull(beforeDelete.getData(d1.getId()));
+    }
+
+    public void testConcurrentReaders() throws Exception {
+        final Connection conn = repo.getConnection(null);
+        final Folder f1 = conn.getRootFolder().newFolder("fold");
+        f1.save();
+        final int n = 200;
+        final Throwable[] error = new Throwable[1];
+        Thread writer = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    for (int i = 0; i < n; i++) {
+                        Document doc = f1.newDocument("doc");
+                        doc.setName("doc" + i);
+                        doc.save();
+                    }
+                } catch (Throwable t) {
+                    error[0] = t;
+                }
+            }
+        };
+        writer.start();
+        int last = 0;
+        while (last < n) {
+            // children only grow, each read sees a complete state
+            int size = conn.getSPI().getChildren(f1, null, null, null).size();
+            assertTrue(size >= last);
+            last = size;
+            if (!writer.isAlive() && error[0] != null) {
+                break;
+            }
+        }
+        writer.join();
+        assertNull(error[0]);
+        assertEquals(n, last);
+    }
+
+    public void testVersioning() throws Exception {
+        Map<String, Serializable> params = new HashMap<String, Serializable>();
+        params.put(Repository.PARAM_USERNAME, "bob");
+        Connection conn = repo.getConnection(params);
+        SPI spi = conn.getSPI();
+        Folder root = conn.getRootFolder();
+        Document d1 = root.newDocument("doc");
+        d1.setName("v");
+        d1.setContentStream(new SimpleContentStream("hello".getBytes(),
+                "text/plain", "hello.txt"));
+        d1.save();
+        String vsid = d1.getString(Property.VERSION_SERIES_ID);
+        assertEquals(d1.getId(), vsid);
+        assertEquals("1.0", d1.getString(Property.VERSION_LABEL));
+
+        Document pwc = d1.checkOut();
+        assertFalse(d1.getId().equals(pwc.getId()));
+        assertEquals(Boolean.TRUE, conn.getObject(d1).getValue(
+                Property.IS_VERSION_SERIES_CHECKED_OUT));
+        assertEquals(pwc.getId(), conn.getObject(d1).getValue(
+                Property.VERSION_SERIES_CHECKED_OUT_ID));
+        assertEquals("bob", pwc.getValue(Property.VERSION_SERIES_CHECKED_OUT_BY));
+        // the checked out state is only stored on the version series
+        SimpleSnapshot snapshot = repo.getSnapshot();
+        assertFalse(snapshot.getData(d1.getId()).containsKey(
+                Property.IS_VERSION_SERIES_CHECKED_OUT));
+        assertEquals(1, conn.query(
+                "SELECT * FROM doc WHERE cmis:isVersionSeriesCheckedOut = true",
+                false).size());
+        // the working copy shares the content
+        assertSame(snapshot.getData(d1.getId()).get(
+                SimpleProperty.CONTENT_BYTES_KEY), snapshot.getData(
+                pwc.getId()).get(SimpleProperty.CONTENT_BYTES_KEY));
+        try {
+            d1.checkOut();
+            fail();
+        } catch (VersioningException e) {
+            // ok
+        }
+
+        pwc.setValue("title", "v2");
+        Document d2 = pwc.checkIn(false, "minor");
+        assertEquals("1.1", d2.getString(Property.VERSION_LABEL));
+        assertEquals("v2", d2.getString("title"));
+        assertEquals(Boolean.FALSE, conn.getObject(d1).getValue(
+                Property.IS_LATEST_VERSION));
+        // the new version replaces the old one in the folder
+        List<CMISObject> children = root.getChildren();
+        assertEquals(1, children.size());
+        assertEquals(d2.getId(), children.get(0).getId());
+
+        Map<String, Serializable> latest = spi.getPropertiesOfLatestVersion(
+                vsid, false, null);
+        assertEquals(d2.getId(), latest.get(Property.ID));
+        assertEquals(Boolean.FALSE, latest.get(
+                Property.IS_VERSION_SERIES_CHECKED_OUT));
+        latest = spi.getPropertiesOfLatestVersion(vsid, true, null);
+        assertEquals(d1.getId(), latest.get(Property.ID));
+        latest = spi.getPropertiesOfLatestVersion(vsid, true, "title,"
+                + Property.IS_VERSION_SERIES_CHECKED_OUT);
+        assertEquals(d1.getId(), latest.get(Property.ID));
+        assertNull(latest.get(Property.NAME));
+        assertEquals(Boolean.FALSE, latest.get(
+                Property.IS_VERSION_SERIES_CHECKED_OUT));
+
+        Document d3 = d2.checkOut().checkIn(true, null);
+        assertEquals("2.0", d3.getString(Property.VERSION_LABEL));
+        Document pwc2 = d3.checkOut();
+        Collection<Document> versions = d3.getAllVersions();
+        assertEquals(Arrays.asList(pwc2.getId(), d3.getId(), d2.getId(),
+                d1.getId()), getIds(versions));
+        for (ObjectEntry version : spi.getAllVersions(vsid, "title")) {
+            assertNotNull(version.getId());
+            assertNull(version.getValue(Property.NAME));
+        }
+        pwc2.cancelCheckOut();
+        assertNull(conn.getObject(pwc2));
+        assertEquals(3, d3.getAllVersions().size());
+        assertEquals(1, conn.query("SELECT * FROM doc", false).size());
+
+        // deleting the latest version promotes the previous one
+        d3.delete();
+        assertEquals(d2.getId(), d1.getLatestVersion(false).getId());
+        assertEquals(d2.getId(), root.getChildren().get(0).getId());
+        d2.deleteAllVersions();
+        assertNull(conn.getObject(d1));
+        assertEquals(0, root.getChildren().size());
+    }
+
+    protected static List<String> getIds(Collection<? extends ObjectId> objects) {
+        List<String> ids = new ArrayList<String>();
+        for (ObjectId object : objects) {
+            ids.add(object.getId());
+        }
+        return ids;
+    }
+
     public void testBasicQuery() throws Exception {
         Connection conn = repo.getConnection(null);
         Folder root = conn.getRootFolder();
@@ -325,4 +662,61 @@ public class TestSimpleRepository extends TestCase {
         }
     }
 
+    public void testJoin() throws Exception {
+        Connection conn = repo.getConnection(null);
+        Folder root = conn.getRootFolder();
+        Folder f1 = root.newFolder("fold");
+        f1.setName("f1");
+        f1.setValue("title", "a");
+        f1.save();
+        Folder f2 = root.newFolder("fold");
+        f2.setName("f2");
+        f2.setValue("title", "b");
+        f2.save();
+        Document d1 = root.newDocument("doc");
+        d1.setName("d1");
+        d1.setValue("title", "a");
+        d1.save();
+        Document d2 = root.newDocument("doc");
+        d2.setName("d2");
+        d2.setValue("title", "c");
+        d2.save();
+        SPI spi = conn.getSPI();
+
+        ListPage<ObjectEntry> res = spi.query("SELECT d.*, f.cmis:name"
+                + " FROM doc d JOIN fold f ON d.title = f.title", false, null,
+                null);
+        assertEquals(1, res.size());
+        ObjectEntry entry = res.get(0);
+        assertEquals(d1.getId(), entry.getId());
+        assertEquals("f1", entry.getValue("f.cmis:name"));
+
+        res = spi.query("SELECT d.*, f.cmis:name AS fname"
+                + " FROM doc d LEFT JOIN fold f ON f.title = d.title"
+                + " WHERE d.cmis:name <> 'x'", false, null, null);
+        assertEquals(2, res.size());
+        Map<String, Serializable> fnames = new HashMap<String, Serializable>();
+        for (ObjectEntry e : res) {
+            fnames.put(e.getId(), e.getValue("fname"));
+        }
+        assertEquals("f1", fnames.get(d1.getId()));
+        assertTrue(fnames.containsKey(d2.getId()));
+        assertNull(fnames.get(d2.getId()));
+
+        // condition on the joined table
+        res = spi.query("SELECT * FROM doc d LEFT OUTER JOIN fold f"
+                + " ON d.title = f.title WHERE f.cmis:name = 'f1'", false,
+                null, null);
+        assertEquals(1, res.size());
+        assertEquals(d1.getId(), res.get(0).getId());
+
+        try {
+            spi.query("SELECT * FROM doc d RIGHT JOIN fold f"
+                    + " ON d.title = f.title", false, null, null);
+            fail();
+        } catch (CMISRuntimeException e) {
+            // ok
+        }
+    }
+
 }
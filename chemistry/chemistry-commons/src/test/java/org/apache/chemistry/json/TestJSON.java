@@ -0,0 +1,85 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.chemistry.json;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.apache.chemistry.util.GregorianCalendar;
+
+public class TestJSON extends TestCase {
+
+    public void testWriter() throws Exception {
+        StringWriter sw = new StringWriter();
+        JSONWriter jw = new JSONWriter(sw);
+        jw.startObject();
+        jw.key("a").value("x\"y\\z\n\u0001");
+        jw.key("b").startArray().value(1).value(true).value((String) null).endArray();
+        jw.key("c").startObject().endObject();
+        jw.key("d").value(new String[] { "p", "q" });
+        jw.key("e").value(GregorianCalendar.fromAtomPub("2010-01-01T01:01:01.000Z"));
+        jw.key("f").value(new BigDecimal("1.5"));
+        jw.endObject();
+        assertEquals("{\"a\":\"x\\\"y\\\\z\\n\\u0001\",\"b\":[1,true,null],"
+                + "\"c\":{},\"d\":[\"p\",\"q\"],"
+                + "\"e\":\"2010-01-01T01:01:01.000Z\",\"f\":1.5}",
+                sw.toString());
+    }
+
+    @SuppressWarnings("unchecked")
+    public void testParser() throws Exception {
+        Map<String, Object> map = (Map<String, Object>) JSONParser.parse(" {\"a\" : \"x\\\"y\\u0041\", "
+                + "\"b\":[1, -2.5e1, true, false, null],\"c\":{}, \"d\":[]} ");
+        assertEquals(Arrays.asList("a", "b", "c", "d"),
+                Arrays.asList(map.keySet().toArray()));
+        assertEquals("x\"yA", map.get("a"));
+        List<Object> b = (List<Object>) map.get("b");
+        assertEquals(Long.valueOf(1), b.get(0));
+        assertEquals(new BigDecimal("-2.5e1"), b.get(1));
+        assertEquals(Boolean.TRUE, b.get(2));
+        assertEquals(Boolean.FALSE, b.get(3));
+        assertNull(b.get(4));
+        assertTrue(((Map<String, Object>) map.get("c")).isEmpty());
+        assertTrue(((List<Object>) map.get("d")).isEmpty());
+
+        for (String bad : new String[] { "", "{", "[1,]", "{\"a\" 1}",
+                "\"abc", "tru", "[1] 2" }) {
+            try {
+                JSONParser.parse(bad);
+                fail(bad);
+            } catch (IOException e) {
+                // ok
+            }
+        }
+    }
+
+    public void testRoundTrip() throws Exception {
+        StringBuilder buf = new StringBuilder();
+        for (int i = 0; i < 10000; i++) {
+            buf.append((char) ('a' + i % 26));
+        }
+        buf.append("\\\u00e9\u2028");
+        String s = buf.toString();
+        StringWriter sw = new StringWriter();
+        new JSONWriter(sw).startArray().value(s).value(s).endArray();
+        assertEquals(Arrays.asList(s, s), JSONParser.parse(sw.toString()));
+    }
+
+}
@@ -24,9 +24,12 @@ import java.util.Hashtable;
 
 import javax.jcr.Node;
 import javax.jcr.RepositoryException;
+import javax.jcr.nodetype.NodeType;
 
 import org.apache.chemistry.Property;
 import org.apache.chemistry.PropertyType;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
 import org.apache.jackrabbit.JcrConstants;
 
 /**
@@ -41,6 +44,16 @@ import org.apache.jackrabbit.JcrConstants;
  */
 public class JcrCmisMap {
 
+    /**
+     * Logger.
+     */
+    private static final Log log = LogFactory.getLog(JcrCmisMap.class);
+
+    /**
+     * Path of the internal <b>jcr:system</b> subtree.
+     */
+    public static final String SYSTEM_PATH = "/jcr:system";
+
     /**
      * Table of CMIS names to JCR equivalent.
      */
@@ -123,6 +136,34 @@ public class JcrCmisMap {
         return documentNtList.contains(nodeTypeName);
     }
 
+    /**
+     * Kind of node a JCR primary node type describes.
+     */
+    enum NodeKind {
+        FOLDER, DOCUMENT, OTHER
+    }
+
+    /**
+     * Return the kind of nodes of a JCR primary node type, based on the
+     * node type and its supertypes.
+     *
+     * @param nt the JCR node type
+     * @return node kind
+     */
+    static NodeKind getNodeKind(NodeType nt) {
+        for (String folderNt : folderNtList) {
+            if (nt.isNodeType(folderNt)) {
+                return NodeKind.FOLDER;
+            }
+        }
+        for (String documentNt : documentNtList) {
+            if (nt.isNodeType(documentNt)) {
+                return NodeKind.DOCUMENT;
+            }
+        }
+        return NodeKind.OTHER;
+    }
+
     /**
      * Checks if a JCR node is a document.
      *
@@ -130,41 +171,32 @@ public class JcrCmisMap {
      * @return {@code true} if the node is a document
      */
     public static boolean isNodeDocument(Node node) {
-        for (String nodeTypeName : documentNtList) {
-            try {
-                if (node.isNodeType(nodeTypeName)) {
-                    return true;
-                }
-            } catch (RepositoryException e) {
-                // TODO Auto-generated catch block
-                e.printStackTrace();
-            }
+        try {
+            return getNodeKind(node.getPrimaryNodeType()) == NodeKind.DOCUMENT;
+        } catch (RepositoryException e) {
+            log.error("Unable to get node type", e);
         }
         return false;
     }
 
     /**
-     * Checks if a JCR node is a document.
+     * Checks if a JCR node is a folder.
      *
      * @param node the JCR node
-     * @return {@code true} if the node is a document
+     * @return {@code true} if the node is a folder
      */
     public static boolean isNodeFolder(Node node) {
-        for (String nodeTypeName : folderNtList) {
-            try {
-                if (node.isNodeType(nodeTypeName)) {
-                    return true;
-                }
-            } catch (RepositoryException e) {
-                // TODO Auto-generated catch block
-                e.printStackTrace();
-            }
+        try {
+            return getNodeKind(node.getPrimaryNodeType()) == NodeKind.FOLDER;
+        } catch (RepositoryException e) {
+            log.error("Unable to get node type", e);
         }
         return false;
     }
 
     /**
-     * Checks whether a JCR node is an internal node, e.g. <b>jcr:system</b>
+     * Checks whether a JCR node is an internal node, i.e. the
+     * <b>jcr:system</b> node every JCR repository has below its root.
      *
      * @param node node
      * @return <code>true</code> if the node is internal;
@@ -172,10 +204,9 @@ public class JcrCmisMap {
      */
     public static boolean isInternal(Node node) {
         try {
-            return node.getName().equals(JcrConstants.JCR_SYSTEM);
+            return SYSTEM_PATH.equals(node.getPath());
         } catch (RepositoryException e) {
-            // TODO Auto-generated catch block
-            e.printStackTrace();
+            log.error("Unable to get node path", e);
         }
         return false;
     }
@@ -26,10 +26,14 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
+import javax.jcr.InvalidItemStateException;
 import javax.jcr.ItemNotFoundException;
 import javax.jcr.Node;
 import javax.jcr.NodeIterator;
@@ -39,13 +43,13 @@ import javax.jcr.Session;
 import javax.jcr.Workspace;
 import javax.jcr.query.Query;
 import javax.jcr.query.QueryManager;
-import javax.jcr.query.QueryResult;
 import javax.xml.namespace.QName;
 
 import org.apache.chemistry.ACE;
 import org.apache.chemistry.ACLPropagation;
 import org.apache.chemistry.BaseType;
 import org.apache.chemistry.CMISObject;
+import org.apache.chemistry.CMISRuntimeException;
 import org.apache.chemistry.Connection;
 import org.apache.chemistry.ConstraintViolationException;
 import org.apache.chemistry.ContentAlreadyExistsException;
@@ -67,10 +71,13 @@ import org.apache.chemistry.Tree;
 import org.apache.chemistry.Type;
 import org.apache.chemistry.Unfiling;
 import org.apache.chemistry.VersioningState;
+import org.apache.chemistry.impl.base.EntryComparator;
 import org.apache.chemistry.impl.simple.SimpleListPage;
 import org.apache.chemistry.impl.simple.SimpleObjectId;
+import org.apache.chemistry.impl.simple.SimpleTree;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.apache.jackrabbit.JcrConstants;
 
 /**
  * Connection implementation.
@@ -82,6 +89,11 @@ class JcrConnection implements Connection, SPI {
      */
     private static final Log log = LogFactory.getLog(JcrConnection.class);
 
+    /**
+     * Number of nodes removed before each save of a {@link #deleteTree}.
+     */
+    private static final int DELETE_BATCH_SIZE = 1000;
+
     /**
      * JCR session.
      */
@@ -92,11 +104,26 @@ class JcrConnection implements Connection, SPI {
      */
     private final JcrRepository repository;
 
+    /**
+     * Pool the session is returned to on close, may be <code>null</code>.
+     */
+    private final JcrSessionPool pool;
+
+    /**
+     * Flag indicating whether this connection has been closed.
+     */
+    private boolean closed;
+
     /**
      * Root folder id.
      */
     private final ObjectId rootFolderId;
 
+    /**
+     * Property name mappings, by type id.
+     */
+    private final Map<String, JcrTypeMapping> typeMappings = new ConcurrentHashMap<String, JcrTypeMapping>();
+
     /**
      * Create a new instance of this class.
      *
@@ -104,8 +131,22 @@ class JcrConnection implements Connection, SPI {
      * @param repository repository implementation
      */
     public JcrConnection(Session session, JcrRepository repository) {
+        this(session, repository, null);
+    }
+
+    /**
+     * Create a new instance of this class.
+     *
+     * @param session session
+     * @param repository repository implementation
+     * @param pool pool to return the session to on close, may be
+     *            <code>null</code> to log out instead
+     */
+    public JcrConnection(Session session, JcrRepository repository,
+            JcrSessionPool pool) {
         this.session = session;
         this.repository = repository;
+        this.pool = pool;
         rootFolderId = repository.getRootFolderId();
     }
 
@@ -122,7 +163,15 @@ class JcrConnection implements Connection, SPI {
      * {@inheritDoc}
      */
     public void close() {
-        session.logout();
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (pool == null) {
+            session.logout();
+        } else {
+            pool.release(session);
+        }
     }
 
     /**
@@ -159,6 +208,30 @@ class JcrConnection implements Connection, SPI {
         }
     }
 
+    /**
+     * Return the entry for an object id, only loading the values requested
+     * by an inclusion. The entry of a saved {@link JcrObject} is not
+     * filtered, a new entry is returned instead.
+     *
+     * @param objectId object id
+     * @param inclusion inclusion information, may be <code>null</code>
+     * @return entry or <code>null</code> if not found
+     */
+    private JcrObjectEntry getEntry(ObjectId objectId, Inclusion inclusion) {
+        Collection<String> ids = getPropertyIds(inclusion);
+        if (ids == null) {
+            return getEntry(objectId);
+        }
+        if (objectId instanceof JcrObject && objectId.getId() != null) {
+            objectId = new SimpleObjectId(objectId.getId());
+        }
+        JcrObjectEntry entry = getEntry(objectId);
+        if (entry != null && !entry.isNew()) {
+            entry.loadValues(ids);
+        }
+        return entry;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -180,6 +253,21 @@ class JcrConnection implements Connection, SPI {
         return repository;
     }
 
+    /**
+     * Return the JCR property name mapping of a type.
+     *
+     * @param type type
+     * @return mapping
+     */
+    JcrTypeMapping getTypeMapping(Type type) {
+        JcrTypeMapping mapping = typeMappings.get(type.getId());
+        if (mapping == null) {
+            mapping = new JcrTypeMapping(type, repository.hasCmisPrefix());
+            typeMappings.put(type.getId(), mapping);
+        }
+        return mapping;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -447,8 +535,7 @@ class JcrConnection implements Connection, SPI {
             throw new ConstraintViolationException("Unable to delete root folder");
         }
         if (object instanceof JcrFolder) {
-            JcrFolder folder = (JcrFolder) object;
-            if (folder.getChildren().size() > 0) {
+            if (hasChildren(object.getEntry().getNode())) {
                 String msg = "Folder not empty: " + objectId;
                 throw new ConstraintViolationException(msg);
             }
@@ -478,6 +565,52 @@ class JcrConnection implements Connection, SPI {
 
     /**
      * {@inheritDoc}
+     * <p>
+     * All the nodes are removed in the session and saved together.
+     */
+    public void deleteObjects(Collection<ObjectId> objectIds,
+            boolean allVersions) {
+
+        boolean saved = false;
+        try {
+            for (ObjectId objectId : objectIds) {
+                if (rootFolderId.getId().equals(objectId.getId())) {
+                    throw new ConstraintViolationException("Unable to delete root folder");
+                }
+                JcrObjectEntry entry = getEntry(objectId);
+                if (entry == null) {
+                    throw new ObjectNotFoundException(objectId.getId());
+                }
+                Node node = entry.getNode();
+                // children removed earlier in the batch are already gone
+                if (entry.getBaseType() == BaseType.FOLDER && hasChildren(node)) {
+                    String msg = "Folder not empty: " + objectId;
+                    throw new ConstraintViolationException(msg);
+                }
+                node.remove();
+            }
+            session.save();
+            saved = true;
+        } catch (RepositoryException e) {
+            String msg = "Unable to delete objects";
+            log.error(msg, e);
+            throw new CMISRuntimeException(msg, e);
+        } finally {
+            if (!saved) {
+                refresh();
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The tree is collected once and removed bottom-up, documents first, in
+     * batches of {@link #DELETE_BATCH_SIZE} nodes saved separately, so that
+     * the transient space stays small. When a batch fails to save, its nodes
+     * are removed and saved one at a time to find the ones that fail, and the
+     * folders containing them are kept. Documents cannot be unfiled from
+     * their folder node, so they are always deleted.
      */
     public Collection<ObjectId> deleteTree(ObjectId folderId,
             Unfiling unfiling, boolean continueOnFailure) {
@@ -487,29 +620,140 @@ class JcrConnection implements Connection, SPI {
         }
         JcrFolder folder = getFolder(folderId);
 
-        Session session = null;
-
+        List<ObjectId> failed = new ArrayList<ObjectId>();
         try {
-            Node node = folder.getEntry().getNode();
-            session = node.getSession();
-
-            node.remove();
-            session.save();
+            List<Node> folders = new ArrayList<Node>();
+            List<TreeItem> items = new ArrayList<TreeItem>();
+            folders.add(folder.getEntry().getNode());
+            for (int i = 0; i < folders.size(); i++) {
+                NodeIterator iter = folders.get(i).getNodes();
+                while (iter.hasNext()) {
+                    Node child = iter.nextNode();
+                    if (repository.isNodeFolder(child)) {
+                        folders.add(child);
+                    } else if (!JcrCmisMap.isInternal(child)) {
+                        items.add(new TreeItem(child));
+                    }
+                }
+            }
+            for (int i = folders.size() - 1; i >= 0; i--) {
+                items.add(new TreeItem(folders.get(i)));
+            }
 
+            Set<String> failedPaths = new HashSet<String>();
+            for (int i = 0; i < items.size(); i += DELETE_BATCH_SIZE) {
+                List<TreeItem> batch = items.subList(i, Math.min(
+                        items.size(), i + DELETE_BATCH_SIZE));
+                if (!removeBatch(batch, failedPaths)) {
+                    removeEach(batch, failedPaths, failed, continueOnFailure);
+                    if (!continueOnFailure && !failed.isEmpty()) {
+                        break;
+                    }
+                }
+            }
         } catch (RepositoryException e) {
             log.error("Unable to delete folder: " + folderId, e);
+            refresh();
+            if (failed.isEmpty()) {
+                failed.add(folderId);
+            }
+        }
+        return failed;
+    }
 
-            if (session != null) {
-                try {
-                    session.refresh(false);
-                } catch (RepositoryException e2) {
-                    log.error("Error while refreshing session.", e2);
+    /**
+     * A node of a tree being deleted.
+     */
+    private static class TreeItem {
+
+        final Node node;
+
+        final String id;
+
+        final String path;
+
+        TreeItem(Node node) throws RepositoryException {
+            this.node = node;
+            id = node.getIdentifier();
+            path = node.getPath();
+        }
+
+        /**
+         * Checks if this node is, or contains, one of the given paths.
+         */
+        boolean contains(Set<String> paths) {
+            for (String p : paths) {
+                if (p.equals(path) || p.startsWith(path + '/')) {
+                    return true;
                 }
             }
+            return false;
         }
+    }
 
-        Collection<ObjectId> result = Collections.emptyList();
-        return result;
+    /**
+     * Remove a batch of nodes and save them together.
+     *
+     * @return <code>false</code> if the save failed, in which case the
+     *         changes are discarded
+     */
+    private boolean removeBatch(List<TreeItem> batch, Set<String> failedPaths) {
+        try {
+            for (TreeItem item : batch) {
+                if (!item.contains(failedPaths)) {
+                    item.node.remove();
+                }
+            }
+            session.save();
+            return true;
+        } catch (RepositoryException e) {
+            log.debug("Unable to delete batch, retrying one by one", e);
+            refresh();
+            return false;
+        }
+    }
+
+    /**
+     * Remove a batch of nodes one at a time, collecting those that fail.
+     */
+    private void removeEach(List<TreeItem> batch, Set<String> failedPaths,
+            List<ObjectId> failed, boolean continueOnFailure) {
+        for (TreeItem item : batch) {
+            if (item.contains(failedPaths)) {
+                failedPaths.add(item.path);
+                failed.add(new SimpleObjectId(item.id));
+                if (!continueOnFailure) {
+                    return;
+                }
+                continue;
+            }
+            try {
+                item.node.remove();
+                session.save();
+            } catch (InvalidItemStateException e) {
+                // already deleted
+                refresh();
+            } catch (RepositoryException e) {
+                log.debug("Unable to delete: " + item.path, e);
+                refresh();
+                failedPaths.add(item.path);
+                failed.add(new SimpleObjectId(item.id));
+                if (!continueOnFailure) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Discard the pending changes of the session.
+     */
+    private void refresh() {
+        try {
+            session.refresh(false);
+        } catch (RepositoryException e) {
+            log.error("Error while refreshing session.", e);
+        }
     }
 
     public Collection<ObjectEntry> getAllVersions(String versionSeriesId,
@@ -550,29 +794,71 @@ class JcrConnection implements Connection, SPI {
             }
 
             Node node = entry.getNode();
+            Collection<String> ids = getPropertyIds(inclusion);
+            int skipCount = paging != null ? paging.skipCount : 0;
+            int maxItems = paging != null && paging.maxItems != 0 ? paging.maxItems
+                    : Integer.MAX_VALUE;
 
-            NodeIterator iter;
-            if (inclusion == null || inclusion.properties == null) {
-                iter = node.getNodes();
+            // only the repository root contains internal nodes
+            boolean checkInternal = node.getDepth() == 0;
+            NodeIterator iter = null;
+            int numItems = -1;
+            if (orderBy != null && orderBy.length() != 0) {
+                iter = getOrderedChildren(node, orderBy, skipCount, maxItems);
+                if (iter == null) {
+                    // no query support, sort all children in memory
+                    List<JcrObjectEntry> entries = new ArrayList<JcrObjectEntry>();
+                    iter = node.getNodes();
+                    while (iter.hasNext()) {
+                        Node child = iter.nextNode();
+                        if (!checkInternal || !JcrCmisMap.isInternal(child)) {
+                            entries.add(new JcrObjectEntry(child, this));
+                        }
+                    }
+                    sortEntries(entries, orderBy);
+                    return getPage(entries, ids, skipCount, maxItems);
+                }
+                // internal nodes are already excluded
+                checkInternal = false;
             } else {
-                iter = node.getNodes(inclusion.properties);
-            }
-            if (iter.hasNext() && paging != null) {
-                iter.skip(paging.skipCount);
+                iter = node.getNodes();
+                // the size of a child node iterator is known
+                numItems = (int) iter.getSize();
+                if (checkInternal && node.hasNode(JcrConstants.JCR_SYSTEM)) {
+                    // the internal node is not skipped as a child
+                    numItems--;
+                    int skipped = 0;
+                    while (skipped < skipCount && iter.hasNext()) {
+                        if (!JcrCmisMap.isInternal(iter.nextNode())) {
+                            skipped++;
+                        }
+                    }
+                } else if (skipCount > 0) {
+                    try {
+                        iter.skip(skipCount);
+                    } catch (NoSuchElementException e) {
+                        // skipped past the end
+                    }
+                }
             }
 
-            int maxItems = paging != null && paging.maxItems != 0 ? paging.maxItems
-                    : Integer.MAX_VALUE;
             SimpleListPage<ObjectEntry> result = new SimpleListPage<ObjectEntry>();
             while (result.size() < maxItems && iter.hasNext()) {
                 Node child = iter.nextNode();
-                if (JcrCmisMap.isInternal(child)) {
+                if (checkInternal && JcrCmisMap.isInternal(child)) {
                     continue;
                 }
-                result.add(new JcrObjectEntry(child, this));
+                JcrObjectEntry childEntry = new JcrObjectEntry(child, this);
+                childEntry.loadValues(ids);
+                result.add(childEntry);
+            }
+            boolean hasMoreItems = hasMoreChildren(iter, checkInternal);
+            result.setHasMoreItems(hasMoreItems);
+            if (!hasMoreItems) {
+                result.setNumItems(skipCount + result.size());
+            } else {
+                result.setNumItems(numItems);
             }
-            result.setHasMoreItems(iter.hasNext());
-            result.setNumItems((int) iter.getSize());
             return result;
 
         } catch (RepositoryException e) {
@@ -582,6 +868,114 @@ class JcrConnection implements Connection, SPI {
         return null;
     }
 
+    /**
+     * Return a page of entries, loading the values of those returned.
+     *
+     * @param entries all entries
+     * @param ids ids of the values to load, <code>null</code> for all
+     * @param skipCount number of entries to skip
+     * @param maxItems maximum number of entries to return
+     * @return page
+     */
+    private static ListPage<ObjectEntry> getPage(List<JcrObjectEntry> entries,
+            Collection<String> ids, int skipCount, int maxItems) {
+
+        int numItems = entries.size();
+        int from = Math.min(skipCount, numItems);
+        int to = numItems - from > maxItems ? from + maxItems : numItems;
+        SimpleListPage<ObjectEntry> result = new SimpleListPage<ObjectEntry>();
+        for (JcrObjectEntry entry : entries.subList(from, to)) {
+            entry.loadValues(ids);
+            result.add(entry);
+        }
+        result.setHasMoreItems(to < numItems);
+        result.setNumItems(numItems);
+        return result;
+    }
+
+    /**
+     * Return a flag indicating whether a child node iterator has more
+     * children to return.
+     *
+     * @param iter child node iterator
+     * @param checkInternal whether to skip internal nodes
+     * @return <code>true</code> if there are more children;
+     *         <code>false</code> otherwise
+     */
+    private static boolean hasMoreChildren(NodeIterator iter,
+            boolean checkInternal) {
+        if (!checkInternal) {
+            return iter.hasNext();
+        }
+        // skip an internal node coming last
+        while (iter.hasNext()) {
+            if (!JcrCmisMap.isInternal(iter.nextNode())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Return a flag indicating whether a folder node has children, without
+     * listing them.
+     *
+     * @param node folder node
+     * @return <code>true</code> if the folder has children;
+     *         <code>false</code> otherwise
+     */
+    private boolean hasChildren(Node node) {
+        try {
+            if (node.getDepth() != 0) {
+                return node.hasNodes();
+            }
+            NodeIterator iter = node.getNodes();
+            while (iter.hasNext()) {
+                if (!JcrCmisMap.isInternal(iter.nextNode())) {
+                    return true;
+                }
+            }
+        } catch (RepositoryException e) {
+            log.error("Unable to check for children", e);
+        }
+        return false;
+    }
+
+    /**
+     * Return the children of a node sorted and paged by a JCR query.
+     *
+     * @param node parent node
+     * @param orderBy CMIS orderBy specification
+     * @param skipCount number of children to skip
+     * @param maxItems maximum number of children, one more is fetched to
+     *            know whether there are more
+     * @return iterator, or <code>null</code> if the query could not be run
+     */
+    private NodeIterator getOrderedChildren(Node node, String orderBy,
+            int skipCount, int maxItems) {
+
+        try {
+            String statement = new JcrQueryTranslator(repository, session)
+                    .translateChildren(node.getPath(), orderBy);
+            Query query = session.getWorkspace().getQueryManager().createQuery(
+                    statement, Query.JCR_SQL2);
+            if (skipCount > 0) {
+                query.setOffset(skipCount);
+            }
+            if (maxItems != Integer.MAX_VALUE) {
+                query.setLimit(maxItems + 1);
+            }
+            return query.execute().getNodes();
+        } catch (CMISRuntimeException e) {
+            log.warn("Unable to sort children, returning them unsorted: "
+                    + e.getMessage());
+        } catch (RepositoryException e) {
+            log.warn("Unable to query children, returning them unsorted: "
+                    + e.getMessage());
+        }
+        return null;
+    }
+
     /**
      * {@inheritDoc}
      *
@@ -594,16 +988,133 @@ class JcrConnection implements Connection, SPI {
         return doc.getContentStream();
     }
 
+    /**
+     * {@inheritDoc}
+     */
     public Tree<ObjectEntry> getFolderTree(ObjectId folderId, int depth,
             Inclusion inclusion) {
-        // TODO Auto-generated method stub
-        throw new UnsupportedOperationException();
+        return getTree(folderId, depth, null, inclusion, true);
     }
 
+    /**
+     * {@inheritDoc}
+     */
     public Tree<ObjectEntry> getDescendants(ObjectId folderId, int depth,
             String orderBy, Inclusion inclusion) {
-        // TODO Auto-generated method stub
-        throw new UnsupportedOperationException();
+        return getTree(folderId, depth, orderBy, inclusion, false);
+    }
+
+    /**
+     * Return the tree of objects below a folder. The tree is walked
+     * breadth-first, the children of each folder being sorted in memory
+     * when an order is given.
+     *
+     * @param folderId folder id
+     * @param depth maximum depth, <code>-1</code> for unlimited
+     * @param orderBy CMIS orderBy specification, may be <code>null</code>
+     * @param inclusion inclusion information, may be <code>null</code>
+     * @param foldersOnly whether to only return folders
+     * @return tree with a <code>null</code> root node
+     */
+    protected Tree<ObjectEntry> getTree(ObjectId folderId, int depth,
+            String orderBy, Inclusion inclusion, boolean foldersOnly) {
+
+        if (depth == 0 || depth < -1) {
+            throw new IllegalArgumentException("Invalid depth: " + depth);
+        }
+        JcrObjectEntry entry = getEntry(folderId);
+        if (entry == null) {
+            throw new ObjectNotFoundException(folderId.getId());
+        }
+        if (entry.getBaseType() != BaseType.FOLDER) {
+            throw new IllegalArgumentException("Not a folder: " + folderId);
+        }
+        Collection<String> ids = getPropertyIds(inclusion);
+
+        List<Tree<ObjectEntry>> result = new ArrayList<Tree<ObjectEntry>>();
+        List<Node> parents = new ArrayList<Node>();
+        List<List<Tree<ObjectEntry>>> lists = new ArrayList<List<Tree<ObjectEntry>>>();
+        parents.add(entry.getNode());
+        lists.add(result);
+
+        try {
+            for (int level = 1; !parents.isEmpty(); level++) {
+                boolean last = depth != -1 && level == depth;
+                List<Node> nextParents = new ArrayList<Node>();
+                List<List<Tree<ObjectEntry>>> nextLists = new ArrayList<List<Tree<ObjectEntry>>>();
+
+                for (int i = 0; i < parents.size(); i++) {
+                    List<Tree<ObjectEntry>> children = lists.get(i);
+                    List<JcrObjectEntry> entries = new ArrayList<JcrObjectEntry>();
+                    NodeIterator iter = parents.get(i).getNodes();
+                    while (iter.hasNext()) {
+                        Node child = iter.nextNode();
+                        if (foldersOnly && !repository.isNodeFolder(child)
+                                || JcrCmisMap.isInternal(child)) {
+                            continue;
+                        }
+                        entries.add(new JcrObjectEntry(child, this));
+                    }
+                    sortEntries(entries, orderBy);
+                    for (JcrObjectEntry childEntry : entries) {
+                        Node child = childEntry.getNode();
+                        childEntry.loadValues(ids);
+
+                        List<Tree<ObjectEntry>> grandChildren = null;
+                        if (!last && (foldersOnly || repository.isNodeFolder(child))) {
+                            grandChildren = new ArrayList<Tree<ObjectEntry>>();
+                            nextParents.add(child);
+                            nextLists.add(grandChildren);
+                        }
+                        children.add(new SimpleTree<ObjectEntry>(childEntry, grandChildren));
+                    }
+                }
+                parents = nextParents;
+                lists = nextLists;
+            }
+        } catch (RepositoryException e) {
+            String msg = "Unable to get tree: " + folderId;
+            log.error(msg, e);
+            throw new CMISRuntimeException(msg, e);
+        }
+        return new SimpleTree<ObjectEntry>(null, result);
+    }
+
+    /**
+     * Sort entries in memory according to a CMIS orderBy specification. Only
+     * the sort keys are loaded, whether or not they are part of the
+     * properties returned.
+     *
+     * @param entries entries to sort
+     * @param orderBy CMIS orderBy specification, may be <code>null</code>
+     */
+    private static void sortEntries(List<JcrObjectEntry> entries,
+            String orderBy) {
+        EntryComparator comparator = EntryComparator.fromOrderBy(orderBy);
+        if (comparator != null && entries.size() > 1) {
+            Collections.sort(entries, comparator);
+        }
+    }
+
+    /**
+     * Return the property ids requested by an inclusion.
+     *
+     * @param inclusion inclusion information, may be <code>null</code>
+     * @return property ids, or <code>null</code> for all properties
+     */
+    static Collection<String> getPropertyIds(Inclusion inclusion) {
+        if (inclusion == null || inclusion.properties == null
+                || inclusion.properties.equals(Inclusion.ALL_PROPERTIES)) {
+            return null;
+        }
+        Set<String> ids = new HashSet<String>();
+        for (String id : inclusion.properties.split(",")) {
+            id = id.trim();
+            if (id.length() != 0) {
+                ids.add(id);
+            }
+        }
+        return ids;
     }
 
     /**
@@ -653,7 +1164,19 @@ class JcrConnection implements Connection, SPI {
      * {@inheritDoc}
      */
     public ObjectEntry getProperties(ObjectId objectId, Inclusion inclusion) {
-        return getEntry(objectId);
+        return getEntry(objectId, inclusion);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public List<ObjectEntry> getObjects(Collection<ObjectId> objectIds,
+            Inclusion inclusion) {
+        List<ObjectEntry> result = new ArrayList<ObjectEntry>(objectIds.size());
+        for (ObjectId objectId : objectIds) {
+            result.add(getEntry(objectId, inclusion));
+        }
+        return result;
     }
 
     /**
@@ -662,11 +1185,18 @@ class JcrConnection implements Connection, SPI {
     public JcrObjectEntry getObjectByPath(String path, Inclusion inclusion) {
         try {
             Node node = getRootNode();
+            JcrObjectEntry entry;
             if (path == null || path.equals("") || path.equals("/")) {
-                return new JcrObjectEntry(node, JcrRepository.ROOT_TYPE, this);
+                entry = new JcrObjectEntry(node, JcrRepository.ROOT_TYPE, this);
+            } else {
+                node = node.getNode(path.substring(1));
+                entry = new JcrObjectEntry(node, this);
+            }
+            Collection<String> ids = getPropertyIds(inclusion);
+            if (ids != null) {
+                entry.loadValues(ids);
             }
-            node = node.getNode(path.substring(1));
-            return new JcrObjectEntry(node, this);
+            return entry;
         } catch (PathNotFoundException e) {
             log.info("Requested object does not exist: " + path);
         } catch (RepositoryException e) {
@@ -809,34 +1339,40 @@ class JcrConnection implements Connection, SPI {
     public ListPage<ObjectEntry> query(String statement,
             boolean searchAllVersions, Inclusion inclusion, Paging paging) {
 
+        JcrQueryTranslator translator = new JcrQueryTranslator(repository, session);
+        // internal nodes are excluded by the query itself, so that paging
+        // can be done by the query engine
+        String sql2 = translator.translate(statement);
+
         try {
             QueryManager qm = session.getWorkspace().getQueryManager();
-            QueryResult qr = qm.createQuery(statement, Query.JCR_SQL2).execute();
-            NodeIterator iter = qr.getNodes();
-            if (iter.hasNext() && paging != null) {
-                iter.skip(paging.skipCount);
-            }
-
+            Query query = qm.createQuery(sql2, Query.JCR_SQL2);
+            int skipCount = paging != null ? paging.skipCount : 0;
             int maxItems = paging != null && paging.maxItems != 0 ? paging.maxItems
                     : Integer.MAX_VALUE;
+            if (skipCount > 0) {
+                query.setOffset(skipCount);
+            }
+            if (maxItems != Integer.MAX_VALUE) {
+                // one more to know whether there are more items
+                query.setLimit(maxItems + 1);
+            }
+            NodeIterator iter = query.execute().getNodes();
+
             SimpleListPage<ObjectEntry> result = new SimpleListPage<ObjectEntry>();
             while (result.size() < maxItems && iter.hasNext()) {
-                Node child = iter.nextNode();
-                if (JcrCmisMap.isInternal(child)) {
-                    continue;
-                }
-                JcrObjectEntry entry = new JcrObjectEntry(child, this);
-                entry.loadValues();
+                JcrObjectEntry entry = new JcrObjectEntry(iter.nextNode(), this);
+                entry.loadValues(translator.getSelectedColumns());
                 result.add(entry);
             }
             result.setHasMoreItems(iter.hasNext());
-            result.setNumItems((int) iter.getSize());
+            result.setNumItems(iter.hasNext() ? -1 : skipCount + result.size());
             return result;
 
         } catch (RepositoryException e) {
             String msg = "Unable to execute query.";
             log.error(msg, e);
-            return new SimpleListPage<ObjectEntry>();
+            throw new CMISRuntimeException(msg, e);
         }
     }
 
@@ -879,6 +1415,40 @@ class JcrConnection implements Connection, SPI {
         return object;
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * All the objects are updated in the session and saved together.
+     */
+    public List<ObjectId> updateProperties(
+            Map<ObjectId, Map<String, Serializable>> properties) {
+
+        List<ObjectId> result = new ArrayList<ObjectId>(properties.size());
+        boolean saved = false;
+        try {
+            for (Map.Entry<ObjectId, Map<String, Serializable>> entry : properties.entrySet()) {
+                JcrObject object = getObject(entry.getKey());
+                if (object == null) {
+                    throw new ObjectNotFoundException(entry.getKey().getId());
+                }
+                object.setProperties(entry.getValue());
+                object.writeValues();
+                result.add(object);
+            }
+            session.save();
+            saved = true;
+        } catch (RepositoryException e) {
+            String msg = "Unable to update objects";
+            log.error(msg, e);
+            throw new CMISRuntimeException(msg, e);
+        } finally {
+            if (!saved) {
+                refresh();
+            }
+        }
+        return result;
+    }
+
     /**
      * {@inheritDoc}
      */
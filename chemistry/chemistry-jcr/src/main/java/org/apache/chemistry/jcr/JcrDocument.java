@@ -257,15 +257,8 @@ class JcrDocument extends JcrObject implements Document {
         Session session = null;
 
         try {
-            Node node = entry.getNode();
-            session = node.getSession();
-
-            Map<String, Serializable> values = entry.getValues();
-            for (String key : values.keySet()) {
-                if (!key.startsWith(JcrRepository.CMIS_PREFIX)) {
-                    node.setProperty(key, values.get(key).toString());
-                }
-            }
+            session = entry.getNode().getSession();
+            writeValues();
             session.save();
 
         } catch (RepositoryException e) {
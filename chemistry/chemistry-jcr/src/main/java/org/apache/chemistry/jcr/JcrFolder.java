@@ -184,15 +184,8 @@ class JcrFolder extends JcrObject implements Folder {
         Session session = null;
 
         try {
-            Node node = entry.getNode();
-            session = node.getSession();
-
-            Map<String, Serializable> values = entry.getValues();
-            for (String key : values.keySet()) {
-                if (!key.startsWith(JcrRepository.CMIS_PREFIX)) {
-                    node.setProperty(key, values.get(key).toString());
-                }
-            }
+            session = entry.getNode().getSession();
+            writeValues();
             session.save();
 
         } catch (RepositoryException e) {
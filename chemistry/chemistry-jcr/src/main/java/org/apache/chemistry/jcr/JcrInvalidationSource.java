@@ -0,0 +1,256 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.chemistry.jcr;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import javax.jcr.Credentials;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+import javax.jcr.observation.Event;
+import javax.jcr.observation.EventIterator;
+import javax.jcr.observation.EventListener;
+import javax.jcr.observation.ObservationManager;
+
+import org.apache.chemistry.impl.cache.InvalidationListener;
+import org.apache.chemistry.impl.cache.InvalidationSource;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Invalidation source translating JCR observation events into invalidations,
+ * so that caches in front of the repository see changes made by other JCR
+ * clients.
+ * <p>
+ * Events are received on a dedicated session, logged in when the first
+ * listener is added.
+ */
+public class JcrInvalidationSource implements InvalidationSource, EventListener {
+
+    /**
+     * Logger.
+     */
+    private static final Log log = LogFactory.getLog(JcrInvalidationSource.class);
+
+    /**
+     * Event types listened to.
+     */
+    private static final int EVENT_TYPES = Event.NODE_ADDED
+            | Event.NODE_REMOVED | Event.NODE_MOVED | Event.PROPERTY_ADDED
+            | Event.PROPERTY_CHANGED | Event.PROPERTY_REMOVED;
+
+    /**
+     * JCR repository.
+     */
+    private final javax.jcr.Repository repository;
+
+    /**
+     * Credentials to log in with.
+     */
+    private final Credentials credentials;
+
+    /**
+     * Workspace to log in to.
+     */
+    private final String workspace;
+
+    /**
+     * Listeners notified of invalidations.
+     */
+    private final CopyOnWriteArrayList<InvalidationListener> listeners = new CopyOnWriteArrayList<InvalidationListener>();
+
+    /**
+     * Session receiving events, <code>null</code> when not started.
+     */
+    private Session session;
+
+    /**
+     * Create a new instance of this class.
+     *
+     * @param repository JCR repository
+     * @param credentials credentials, may be <code>null</code>
+     * @param workspace workspace, may be <code>null</code>
+     */
+    public JcrInvalidationSource(javax.jcr.Repository repository,
+            Credentials credentials, String workspace) {
+        this.repository = repository;
+        this.credentials = credentials;
+        this.workspace = workspace;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public synchronized void addInvalidationListener(InvalidationListener listener) {
+        if (session == null) {
+            try {
+                session = repository.login(credentials, workspace);
+                ObservationManager om = session.getWorkspace().getObservationManager();
+                om.addEventListener(this, EVENT_TYPES, "/", true, null, null, false);
+            } catch (RepositoryException e) {
+                if (session != null) {
+                    session.logout();
+                    session = null;
+                }
+                String msg = "Unable to listen to repository events.";
+                throw new RuntimeException(msg, e);
+            }
+        }
+        listeners.add(listener);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void removeInvalidationListener(InvalidationListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Stop listening to events and log out the session.
+     */
+    public synchronized void close() {
+        if (session == null) {
+            return;
+        }
+        try {
+            session.getWorkspace().getObservationManager().removeEventListener(this);
+        } catch (RepositoryException e) {
+            log.warn("Unable to remove event listener", e);
+        }
+        session.logout();
+        session = null;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void onEvent(EventIterator events) {
+        if (listeners.isEmpty()) {
+            return;
+        }
+        try {
+            synchronized (this) {
+                if (session == null) {
+                    return;
+                }
+                // once per batch, so that the paths of the events resolve
+                session.refresh(false);
+            }
+            // identifiers of the paths already resolved in this batch
+            Map<String, String> ids = new HashMap<String, String>();
+            while (events.hasNext()) {
+                Event event = events.nextEvent();
+                String id = event.getIdentifier();
+                String parentPath = getParentPath(event.getPath());
+                switch (event.getType()) {
+                case Event.NODE_MOVED:
+                    // paths of the whole subtree changed
+                    invalidateAll();
+                    return;
+                case Event.NODE_ADDED:
+                case Event.NODE_REMOVED:
+                    invalidate(id);
+                    if (parentPath != null) {
+                        String parentId = getIdentifier(parentPath, ids);
+                        invalidate(parentId);
+                        invalidateChildren(parentId);
+                    }
+                    break;
+                default:
+                    // property of a node, or of the content node of a document
+                    invalidate(id);
+                    if (parentPath != null) {
+                        String nodePath = getParentPath(parentPath);
+                        if (nodePath != null) {
+                            invalidate(getIdentifier(nodePath, ids));
+                        }
+                    }
+                }
+            }
+        } catch (RepositoryException e) {
+            log.warn("Unable to process events, invalidating everything", e);
+            invalidateAll();
+        }
+    }
+
+    /**
+     * Return the identifier of the node at some path.
+     *
+     * @param path node path
+     * @param ids identifiers already resolved, by path
+     * @return identifier, or <code>null</code> if the node is gone
+     * @throws RepositoryException if an error occurs
+     */
+    private String getIdentifier(String path, Map<String, String> ids)
+            throws RepositoryException {
+        if (ids.containsKey(path)) {
+            return ids.get(path);
+        }
+        String id = null;
+        synchronized (this) {
+            if (session == null) {
+                return null;
+            }
+            if (session.nodeExists(path)) {
+                id = session.getNode(path).getIdentifier();
+            }
+        }
+        ids.put(path, id);
+        return id;
+    }
+
+    /**
+     * Return the parent path of an item path.
+     *
+     * @param path item path
+     * @return parent path, or <code>null</code> for the root
+     */
+    private static String getParentPath(String path) {
+        int index = path.lastIndexOf('/');
+        if (index < 0 || path.length() == 1) {
+            return null;
+        }
+        return index == 0 ? "/" : path.substring(0, index);
+    }
+
+    private void invalidate(String id) {
+        if (id == null) {
+            return;
+        }
+        for (InvalidationListener listener : listeners) {
+            listener.invalidate(id);
+        }
+    }
+
+    private void invalidateChildren(String id) {
+        if (id == null) {
+            return;
+        }
+        for (InvalidationListener listener : listeners) {
+            listener.invalidateChildren(id);
+        }
+    }
+
+    private void invalidateAll() {
+        for (InvalidationListener listener : listeners) {
+            listener.invalidateAll();
+        }
+    }
+}
@@ -23,6 +23,9 @@ import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 
+import javax.jcr.Node;
+import javax.jcr.RepositoryException;
+
 import org.apache.chemistry.BaseType;
 import org.apache.chemistry.CMISObject;
 import org.apache.chemistry.Connection;
@@ -236,6 +239,21 @@ abstract class JcrObject extends BaseObject {
         }
     }
 
+    /**
+     * Copy the values of this object to its node, without saving.
+     *
+     * @throws RepositoryException if a value cannot be set
+     */
+    protected void writeValues() throws RepositoryException {
+        Node node = entry.getNode();
+        Map<String, Serializable> values = entry.getValues();
+        for (String key : values.keySet()) {
+            if (!key.startsWith(JcrRepository.CMIS_PREFIX)) {
+                node.setProperty(key, values.get(key).toString());
+            }
+        }
+    }
+
     /**
      * {@inheritDoc}
      */
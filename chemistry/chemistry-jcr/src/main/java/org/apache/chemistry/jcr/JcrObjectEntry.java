@@ -17,15 +17,19 @@
 package org.apache.chemistry.jcr;
 
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
 import javax.jcr.Node;
+import javax.jcr.PropertyIterator;
 import javax.jcr.RepositoryException;
-import javax.jcr.nodetype.NodeType;
 import javax.xml.namespace.QName;
 
 import org.apache.chemistry.AllowableAction;
@@ -45,6 +49,11 @@ import org.apache.jackrabbit.JcrConstants;
  * JCR implementation of an {@link ObjectEntry}.
  * <p>
  * This implementation doesn't do type validation when values are set.
+ * <p>
+ * Values are loaded lazily from the node, through the JCR session of the
+ * connection. Like that session, an entry is meant to be used by one thread
+ * at a time and is not synchronized. Caches share detached snapshots, not
+ * the entries themselves.
  */
 class JcrObjectEntry implements ObjectEntry {
 
@@ -54,10 +63,33 @@ class JcrObjectEntry implements ObjectEntry {
     private static final Log log = LogFactory.getLog(JcrObjectEntry.class);
 
     /**
-     * Values.
+     * Values, <code>null</code> until first accessed.
      */
     private Map<String, Serializable> values;
 
+    /**
+     * Ids of the values that have been loaded or set, whether or not they
+     * have a value.
+     */
+    private Set<String> loaded;
+
+    /**
+     * Flag indicating whether all values have been loaded.
+     */
+    private boolean complete;
+
+    /**
+     * Ids of the values returned by {@link #getValues}, <code>null</code>
+     * for all.
+     */
+    private Collection<String> filter;
+
+    /**
+     * Flag indicating whether the filter has been set by a first call to
+     * {@link #loadValues(Collection)}.
+     */
+    private boolean filterSet;
+
     /**
      * Associated JCR node, <code>null</code> if this is a new node.
      */
@@ -133,16 +165,9 @@ class JcrObjectEntry implements ObjectEntry {
             if (hasCmisPrefix() && node.hasProperty(Property.TYPE_ID)) {
                 return node.getProperty(Property.TYPE_ID).getString();
             }
-            NodeType nt = node.getPrimaryNodeType();
-            if (JcrCmisMap.isBaseTypeFolder(nt.getName())) {
+            if (connection.getRepository().isNodeFolder(node)) {
                 return BaseType.FOLDER.getId();
             }
-            /* check supertypes of this type as well */
-            for (NodeType superType : nt.getSupertypes()) {
-                if (JcrCmisMap.isBaseTypeFolder(superType.getName())) {
-                    return BaseType.FOLDER.getId();
-                }
-            }
             return BaseType.DOCUMENT.getId();
         } catch (RepositoryException e) {
             log.error("Unable to inspect type hierarchy", e);
@@ -153,7 +178,7 @@ class JcrObjectEntry implements ObjectEntry {
     /**
      * Load the type unless done.
      */
-    private synchronized Type getType() {
+    private Type getType() {
         if (type == null) {
             String typeId = getTypeId();
             type = connection.getRepository().getType(typeId);
@@ -241,7 +266,7 @@ class JcrObjectEntry implements ObjectEntry {
      * {@inheritDoc}
      */
     public Map<String, Serializable> getValues() {
-        loadValues();
+        loadValues(filter);
         return values;
     }
 
@@ -249,7 +274,10 @@ class JcrObjectEntry implements ObjectEntry {
      * {@inheritDoc}
      */
     public Serializable getValue(String id) {
-        loadValues();
+        init();
+        if (!complete && !loaded.contains(id)) {
+            load(Collections.singleton(id));
+        }
         return values.get(id);
     }
 
@@ -257,7 +285,8 @@ class JcrObjectEntry implements ObjectEntry {
      * {@inheritDoc}
      */
     public void setValue(String id, Serializable value) {
-        loadValues();
+        init();
+        loaded.add(id);
         if (value == null) {
             values.remove(id);
         } else {
@@ -269,7 +298,6 @@ class JcrObjectEntry implements ObjectEntry {
      * {@inheritDoc}
      */
     public void setValues(Map<String, Serializable> values) {
-        loadValues();
         // don't use putAll as we want to check for nulls
         for (String id : values.keySet()) {
             setValue(id, values.get(id));
@@ -277,58 +305,164 @@ class JcrObjectEntry implements ObjectEntry {
     }
 
     /**
-     * Load values unless already done.
+     * Set up the values map with the values that are always present.
      */
-    synchronized void loadValues() {
+    private void init() {
         if (values == null) {
             values = new HashMap<String, Serializable>();
-
-            loadPropertyValues(values);
-
+            loaded = new HashSet<String>();
             values.put(Property.TYPE_ID, getTypeId());
             values.put(Property.BASE_TYPE_ID, getBaseType().getId());
-
-            if (!isNew()) {
+            if (isNew()) {
+                complete = true;
+            } else {
                 values.put(Property.ID, getId());
+            }
+        }
+    }
+
+    /**
+     * Load all values unless already done.
+     */
+    void loadValues() {
+        loadValues(null);
+    }
+
+    /**
+     * Load the given values unless already done. If this is the first call,
+     * the ids also become the filter of this entry, i.e. {@link #getValues}
+     * will only return these values and those read later through
+     * {@link #getValue}. This is used for query results and listings, where
+     * only the requested properties are returned.
+     *
+     * @param ids ids of the values to load, <code>null</code> to load all
+     */
+    void loadValues(Collection<String> ids) {
+        if (!filterSet) {
+            filter = ids;
+            filterSet = true;
+            if (ids != null && loaded != null) {
+                // forget values read before, such as sort keys
+                for (Iterator<String> it = loaded.iterator(); it.hasNext();) {
+                    String id = it.next();
+                    if (!ids.contains(id)) {
+                        values.remove(id);
+                        it.remove();
+                    }
+                }
+            }
+        }
+        load(ids);
+    }
+
+    /**
+     * Load the given values unless already done. Stored properties are read
+     * in a single pass over the node's properties, computed values (path,
+     * parent, content stream) only if requested.
+     *
+     * @param ids ids of the values to load, <code>null</code> to load all
+     */
+    private void load(Collection<String> ids) {
+        init();
+        if (complete) {
+            return;
+        }
+        List<String> stored = null;
+        boolean contentStream = false;
+        Collection<String> todo = ids == null ? getAllIds() : ids;
+        for (String id : todo) {
+            if (loaded.contains(id)) {
+                continue;
+            }
+            if (Property.NAME.equals(id)) {
                 values.put(Property.NAME, getName());
+            } else if (Property.PATH.equals(id)) {
                 values.put(Property.PATH, getPath());
-
+            } else if (Property.PARENT_ID.equals(id)) {
                 String parentId = getParentId();
                 if (parentId != null) {
                     values.put(Property.PARENT_ID, parentId);
                 }
-                loadContentStreamValues(values);
+            } else if (Property.CONTENT_STREAM_FILE_NAME.equals(id)
+                    || Property.CONTENT_STREAM_MIME_TYPE.equals(id)
+                    || Property.CONTENT_STREAM_LENGTH.equals(id)) {
+                contentStream = true;
+                continue;
+            } else {
+                if (stored == null) {
+                    stored = new ArrayList<String>();
+                }
+                stored.add(id);
+                continue;
             }
+            loaded.add(id);
+        }
+        if (contentStream) {
+            loadContentStreamValues(values);
+            loaded.add(Property.CONTENT_STREAM_FILE_NAME);
+            loaded.add(Property.CONTENT_STREAM_MIME_TYPE);
+            loaded.add(Property.CONTENT_STREAM_LENGTH);
+        }
+        if (stored != null) {
+            loadPropertyValues(values, stored);
+            loaded.addAll(stored);
+        }
+        if (ids == null) {
+            complete = true;
         }
     }
 
     /**
-     * Load values from the underlying JCR node.
+     * Return the ids of all values of this entry.
+     *
+     * @return ids
+     */
+    private Collection<String> getAllIds() {
+        Collection<String> ids = new ArrayList<String>();
+        for (PropertyDefinition pd : getType().getPropertyDefinitions()) {
+            ids.add(pd.getId());
+        }
+        ids.add(Property.NAME);
+        ids.add(Property.PATH);
+        ids.add(Property.PARENT_ID);
+        ids.add(Property.CONTENT_STREAM_FILE_NAME);
+        return ids;
+    }
+
+    /**
+     * Load values from the underlying JCR node, reading all the needed JCR
+     * properties in a single pass.
      *
      * @param values map to populate with entries
+     * @param ids ids of the values to load
      */
-    private void loadPropertyValues(Map<String, Serializable> values) {
+    private void loadPropertyValues(Map<String, Serializable> values,
+            Collection<String> ids) {
         if (isNew()) {
             return;
         }
         /* Load JCR property values that are included in this
          * type's property definitions
          */
-        Type type = connection.getRepository().getType(getTypeId());
-        for (PropertyDefinition pd : type.getPropertyDefinitions()) {
-            String id = pd.getId();
-            try {
-                if (id.startsWith(JcrRepository.CMIS_PREFIX) && !hasCmisPrefix()) {
-                    continue;
-                }
-                if (node.hasProperty(id)) {
-                    values.put(id, JcrCmisMap.valueToSerializable(
-                            pd.getType(),
-                            node.getProperty(id).getValue()));
+        JcrTypeMapping mapping = connection.getTypeMapping(getType());
+        String[] names = mapping.getJcrNames(ids);
+        if (names.length == 0) {
+            return;
+        }
+        try {
+            PropertyIterator iter = node.getProperties(names);
+            while (iter.hasNext()) {
+                javax.jcr.Property p = iter.nextProperty();
+                PropertyDefinition pd = mapping.getDefinition(p.getName());
+                try {
+                    values.put(pd.getId(), JcrCmisMap.valueToSerializable(
+                            pd.getType(), p.getValue()));
+                } catch (RepositoryException e) {
+                    log.error("Unable to load property: " + pd.getId(), e);
                 }
-            } catch (RepositoryException e) {
-                log.error("Unable to load property: " + id, e);
             }
+        } catch (RepositoryException e) {
+            log.error("Unable to load properties", e);
         }
     }
 
@@ -439,18 +573,17 @@ class JcrObjectEntry implements ObjectEntry {
      *
      * @param node node
      */
-    synchronized void setNode(Node node) {
+    void setNode(Node node) {
         this.node = node;
 
         if (values != null) {
             values.put(Property.ID, getId());
-            values.put(Property.NAME, getName());
-            values.put(Property.PATH, getPath());
-
-            String parentId = getParentId();
-            if (parentId != null) {
-                values.put(Property.PARENT_ID, parentId);
-            }
+            // the remaining values are computed from the node when needed
+            loaded = new HashSet<String>(values.keySet());
+            loaded.remove(Property.NAME);
+            loaded.remove(Property.PATH);
+            loaded.remove(Property.PARENT_ID);
+            complete = false;
         }
     }
 
@@ -460,7 +593,7 @@ class JcrObjectEntry implements ObjectEntry {
      *
      * @param cs content stream or <code>null</code>
      */
-    synchronized void setContentStream(ContentStream cs) {
+    void setContentStream(ContentStream cs) {
         if (values != null) {
             if (cs == null) {
                 values.remove(Property.CONTENT_STREAM_FILE_NAME);
@@ -469,12 +602,15 @@ class JcrObjectEntry implements ObjectEntry {
             } else {
                 String filename = cs.getFileName();
                 if (filename == null) {
-                    filename = (String) getValue(Property.NAME);
+                    filename = getName();
                 }
                 values.put(Property.CONTENT_STREAM_FILE_NAME, filename);
                 values.put(Property.CONTENT_STREAM_MIME_TYPE, cs.getMimeType());
                 values.put(Property.CONTENT_STREAM_LENGTH, Integer.valueOf((int) cs.getLength()));
             }
+            loaded.add(Property.CONTENT_STREAM_FILE_NAME);
+            loaded.add(Property.CONTENT_STREAM_MIME_TYPE);
+            loaded.add(Property.CONTENT_STREAM_LENGTH);
         }
     }
 
@@ -0,0 +1,563 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.chemistry.jcr;
+
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import javax.jcr.ItemNotFoundException;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+
+import org.antlr.runtime.ANTLRStringStream;
+import org.antlr.runtime.CommonTokenStream;
+import org.antlr.runtime.RecognitionException;
+import org.antlr.runtime.tree.CommonTree;
+import org.antlr.runtime.tree.Tree;
+import org.apache.chemistry.CMISRuntimeException;
+import org.apache.chemistry.Property;
+import org.apache.chemistry.Type;
+import org.apache.chemistry.cmissql.CmisSqlLexer;
+import org.apache.chemistry.cmissql.CmisSqlParser;
+import org.apache.jackrabbit.JcrConstants;
+
+/**
+ * Translates a CMIS-SQL statement into an equivalent JCR-SQL2 statement.
+ * <p>
+ * The statement is parsed with the CMIS-SQL grammar of chemistry-commons and
+ * the resulting tree is walked to produce a query that the JCR query engine
+ * can evaluate against its own indexes: property names are mapped through
+ * {@link JcrCmisMap}, <b>IN_FOLDER</b> and <b>IN_TREE</b> become
+ * <b>ISCHILDNODE</b> and <b>ISDESCENDANTNODE</b> constraints, and the CMIS
+ * table is mapped to its JCR node type, further restricted on
+ * <b>cmis:objectTypeId</b> for non-base types. The internal
+ * <b>/jcr:system</b> subtree is always excluded, so that the query engine
+ * can apply the paging.
+ * <p>
+ * Joins are not supported. An instance translates a single statement.
+ */
+public class JcrQueryTranslator {
+
+    /**
+     * Name of the selector used in the generated query.
+     */
+    public static final String SELECTOR = "s";
+
+    /**
+     * JCR repository.
+     */
+    private final JcrRepository repository;
+
+    /**
+     * Session used to resolve folder ids to paths.
+     */
+    private final Session session;
+
+    /**
+     * Selected CMIS property ids, <code>null</code> for <b>SELECT *</b>.
+     */
+    private Set<String> selectedColumns;
+
+    /**
+     * Create a new instance of this class.
+     *
+     * @param repository JCR repository
+     * @param session session used to resolve folder ids
+     */
+    public JcrQueryTranslator(JcrRepository repository, Session session) {
+        this.repository = repository;
+        this.session = session;
+    }
+
+    /**
+     * Return the CMIS property ids selected by the last translated statement.
+     *
+     * @return property ids, or <code>null</code> if all properties are
+     *         selected
+     */
+    public Set<String> getSelectedColumns() {
+        return selectedColumns;
+    }
+
+    /**
+     * Translate a CMIS-SQL statement.
+     *
+     * @param statement CMIS-SQL statement
+     * @return JCR-SQL2 statement
+     * @throws CMISRuntimeException if the statement cannot be parsed or uses
+     *             an unsupported construct
+     */
+    public String translate(String statement) {
+        CommonTree tree;
+        try {
+            CommonTokenStream tokens = new CommonTokenStream(new CmisSqlLexer(
+                    new ANTLRStringStream(statement)));
+            CmisSqlParser parser = new CmisSqlParser(tokens);
+            CmisSqlParser.query_return query = parser.query();
+            if (parser.errorMessage != null) {
+                throw new CMISRuntimeException("Cannot parse query: "
+                        + statement + " (" + parser.errorMessage + ")");
+            }
+            tree = (CommonTree) query.getTree();
+        } catch (RecognitionException e) {
+            throw new CMISRuntimeException("Cannot parse query: " + statement,
+                    e);
+        }
+
+        StringBuilder where = new StringBuilder();
+        excludeInternal(where);
+        String nodeType = null;
+        Tree selectList = null;
+        Tree order = null;
+        for (int i = 0; i < tree.getChildCount(); i++) {
+            Tree child = tree.getChild(i);
+            switch (child.getType()) {
+            case CmisSqlParser.STAR:
+            case CmisSqlParser.LIST:
+                selectList = child;
+                break;
+            case CmisSqlParser.FROM:
+                nodeType = from(child, where);
+                break;
+            case CmisSqlParser.WHERE:
+                where.append(" AND (");
+                for (int j = 0; j < child.getChildCount(); j++) {
+                    condition(child.getChild(j), where);
+                }
+                where.append(')');
+                break;
+            case CmisSqlParser.ORDER_BY:
+                order = child;
+                break;
+            case CmisSqlParser.DISTINCT:
+                // node queries are always distinct
+                break;
+            default:
+                throw unsupported(child);
+            }
+        }
+        selectedColumns = columns(selectList);
+
+        StringBuilder buf = new StringBuilder();
+        buf.append("SELECT * FROM [").append(nodeType).append("] AS ").append(
+                SELECTOR);
+        buf.append(" WHERE ").append(where);
+        if (order != null) {
+            buf.append(" ORDER BY ");
+            for (int i = 0; i < order.getChildCount(); i += 2) {
+                if (i != 0) {
+                    buf.append(", ");
+                }
+                operand(order.getChild(i), buf);
+                buf.append(' ').append(order.getChild(i + 1).getText());
+            }
+        }
+        return buf.toString();
+    }
+
+    /**
+     * Build a query returning the children of a folder sorted according to
+     * a CMIS <b>orderBy</b> specification.
+     *
+     * @param path folder path
+     * @param orderBy comma-separated list of property query names, each
+     *            optionally followed by <b>ASC</b> or <b>DESC</b>
+     * @return JCR-SQL2 statement
+     * @throws CMISRuntimeException if a property cannot be sorted on
+     */
+    public String translateChildren(String path, String orderBy) {
+        selectedColumns = null;
+        StringBuilder buf = new StringBuilder();
+        buf.append("SELECT * FROM [").append(JcrConstants.NT_BASE);
+        buf.append("] AS ").append(SELECTOR).append(" WHERE ISCHILDNODE(");
+        buf.append(SELECTOR).append(", [").append(quote(path)).append("])");
+        buf.append(" AND ");
+        excludeInternal(buf);
+        buf.append(" ORDER BY ");
+        String[] specs = orderBy.split(",");
+        for (int i = 0; i < specs.length; i++) {
+            String[] words = specs[i].trim().split("\\s+");
+            if (i != 0) {
+                buf.append(", ");
+            }
+            buf.append(column(words[0]));
+            if (words.length > 1 && "DESC".equalsIgnoreCase(words[1])) {
+                buf.append(" DESC");
+            } else {
+                buf.append(" ASC");
+            }
+        }
+        return buf.toString();
+    }
+
+    /**
+     * Append the constraint excluding the internal nodes.
+     */
+    private static void excludeInternal(StringBuilder buf) {
+        String path = quote(JcrCmisMap.SYSTEM_PATH);
+        buf.append("NOT ISSAMENODE(").append(SELECTOR).append(", [").append(
+                path).append("]) AND NOT ISDESCENDANTNODE(").append(SELECTOR);
+        buf.append(", [").append(path).append("])");
+    }
+
+    /**
+     * Collect the property ids of a select list.
+     */
+    private Set<String> columns(Tree list) {
+        if (list == null || list.getType() == CmisSqlParser.STAR) {
+            return null;
+        }
+        Set<String> columns = new LinkedHashSet<String>();
+        for (int i = 0; i < list.getChildCount(); i++) {
+            Tree item = list.getChild(i);
+            if (item.getType() == CmisSqlParser.COL) {
+                columns.add(columnName(item));
+            } else if (item.getType() == CmisSqlParser.DOT) {
+                // qualifier.* selects everything
+                return null;
+            } else if (item.getType() == CmisSqlParser.FUNC
+                    && item.getChildCount() > 1) {
+                columns.add(columnName(item.getChild(1)));
+            }
+            // anything else is an alias or SCORE()
+        }
+        return columns;
+    }
+
+    /**
+     * Translate the FROM clause into a node type, adding a type restriction
+     * to the constraint if needed.
+     */
+    private String from(Tree from, StringBuilder where) {
+        if (from.getChildCount() != 1) {
+            throw new CMISRuntimeException("Joins are not supported");
+        }
+        String tableName = from.getChild(0).getChild(0).getText();
+        Type type = null;
+        for (Type t : repository.getTypes()) {
+            if (tableName.equalsIgnoreCase(t.getQueryName())) {
+                type = t;
+                break;
+            }
+        }
+        if (type == null) {
+            throw new CMISRuntimeException("Unknown table: " + tableName);
+        }
+        String nodeType;
+        switch (type.getBaseType()) {
+        case DOCUMENT:
+            nodeType = JcrConstants.NT_FILE;
+            break;
+        case FOLDER:
+            nodeType = JcrConstants.NT_FOLDER;
+            break;
+        default:
+            nodeType = JcrConstants.NT_BASE;
+        }
+        if (!type.getId().equals(type.getBaseType().getId())) {
+            where.append(" AND ");
+            if (!repository.hasCmisPrefix()) {
+                // the type id cannot be stored, all objects have a base type
+                where.append(SELECTOR).append(".[").append(
+                        JcrConstants.JCR_PRIMARYTYPE).append("] IS NULL");
+                return nodeType;
+            }
+            Collection<Type> types = repository.getTypeDescendants(type.getId());
+            where.append('(');
+            boolean first = true;
+            for (Type t : types) {
+                if (!first) {
+                    where.append(" OR ");
+                }
+                first = false;
+                where.append(SELECTOR).append(".[").append(Property.TYPE_ID);
+                where.append("] = ").append(quote(t.getId()));
+            }
+            where.append(')');
+        }
+        return nodeType;
+    }
+
+    /**
+     * Translate a WHERE clause element. The parser leaves boolean operators
+     * and parentheses in place, so they are copied as they come.
+     */
+    private void condition(Tree node, StringBuilder buf) {
+        switch (node.getType()) {
+        case CmisSqlParser.AND:
+        case CmisSqlParser.OR:
+            buf.append(' ').append(node.getText().toUpperCase()).append(' ');
+            return;
+        case CmisSqlParser.NOT:
+            buf.append("NOT ");
+            return;
+        case CmisSqlParser.LPAR:
+            buf.append('(');
+            return;
+        case CmisSqlParser.RPAR:
+            buf.append(')');
+            return;
+        case CmisSqlParser.BIN_OP:
+            binaryOperation(node, buf);
+            return;
+        case CmisSqlParser.BIN_OP_ANY:
+            anyOperation(node, buf);
+            return;
+        case CmisSqlParser.UN_OP:
+            if (node.getChild(0).getType() == CmisSqlParser.IS_NULL) {
+                buf.append("NOT ");
+            }
+            buf.append(column(node.getChild(1))).append(" IS NOT NULL");
+            return;
+        case CmisSqlParser.FUNC:
+            function(node, buf);
+            return;
+        default:
+            throw unsupported(node);
+        }
+    }
+
+    /**
+     * Translate a comparison, <b>IN</b> or <b>LIKE</b> predicate.
+     */
+    private void binaryOperation(Tree node, StringBuilder buf) {
+        Tree op = node.getChild(0);
+        Tree left = node.getChild(1);
+        Tree right = node.getChild(2);
+        String name = left.getType() == CmisSqlParser.COL ? columnName(left)
+                : null;
+        switch (op.getType()) {
+        case CmisSqlParser.IN:
+        case CmisSqlParser.NOT_IN:
+            if (op.getType() == CmisSqlParser.NOT_IN) {
+                buf.append("NOT ");
+            }
+            buf.append('(');
+            for (int i = 0; i < right.getChildCount(); i++) {
+                if (i != 0) {
+                    buf.append(" OR ");
+                }
+                comparison(name, left, "=", right.getChild(i), buf);
+            }
+            buf.append(')');
+            break;
+        case CmisSqlParser.LIKE:
+        case CmisSqlParser.NOT_LIKE:
+            if (op.getType() == CmisSqlParser.NOT_LIKE) {
+                buf.append("NOT ");
+            }
+            operand(left, buf);
+            buf.append(" LIKE ").append(right.getText());
+            break;
+        default:
+            comparison(name, left, op.getText(), right, buf);
+        }
+    }
+
+    /**
+     * Translate a single comparison. Comparisons on the object and parent
+     * ids are turned into node and child node constraints, as JCR does not
+     * expose identifiers as properties.
+     */
+    private void comparison(String name, Tree left, String op, Tree literal,
+            StringBuilder buf) {
+        if (Property.ID.equals(name) || Property.PARENT_ID.equals(name)) {
+            boolean eq = "=".equals(op);
+            if (!eq && !"<>".equals(op)) {
+                throw new CMISRuntimeException("Unsupported operator on "
+                        + name + ": " + op);
+            }
+            if (!eq) {
+                buf.append("NOT ");
+            }
+            buf.append(Property.ID.equals(name) ? "ISSAMENODE" : "ISCHILDNODE");
+            buf.append('(').append(SELECTOR).append(", ");
+            buf.append(path(unquote(literal.getText()))).append(')');
+            return;
+        }
+        operand(left, buf);
+        buf.append(' ').append(op).append(' ').append(literal(literal));
+    }
+
+    /**
+     * Translate a quantified predicate. JCR comparisons on multi-valued
+     * properties match if any value matches, so <b>ANY</b> is implicit.
+     */
+    private void anyOperation(Tree node, StringBuilder buf) {
+        Tree op = node.getChild(0);
+        Tree col = node.getChild(2);
+        switch (op.getType()) {
+        case CmisSqlParser.IN:
+        case CmisSqlParser.NOT_IN:
+            if (op.getType() == CmisSqlParser.NOT_IN) {
+                buf.append("NOT ");
+            }
+            Tree list = node.getChild(1);
+            buf.append('(');
+            for (int i = 0; i < list.getChildCount(); i++) {
+                if (i != 0) {
+                    buf.append(" OR ");
+                }
+                buf.append(column(col)).append(" = ").append(
+                        literal(list.getChild(i)));
+            }
+            buf.append(')');
+            break;
+        default:
+            // literal op ANY column -> column reversed-op literal
+            buf.append(column(col)).append(' ').append(reverse(op.getText()));
+            buf.append(' ').append(literal(node.getChild(1)));
+        }
+    }
+
+    /**
+     * Translate a predicate function.
+     */
+    private void function(Tree node, StringBuilder buf) {
+        Tree f = node.getChild(0);
+        String arg = node.getChild(node.getChildCount() - 1).getText();
+        switch (f.getType()) {
+        case CmisSqlParser.CONTAINS:
+            buf.append("CONTAINS(").append(SELECTOR).append(".*, ").append(arg);
+            buf.append(')');
+            break;
+        case CmisSqlParser.IN_FOLDER:
+        case CmisSqlParser.IN_TREE:
+            buf.append(f.getType() == CmisSqlParser.IN_FOLDER ? "ISCHILDNODE"
+                    : "ISDESCENDANTNODE");
+            buf.append('(').append(SELECTOR).append(", ");
+            buf.append(path(unquote(arg))).append(')');
+            break;
+        default:
+            throw unsupported(f);
+        }
+    }
+
+    /**
+     * Translate a value expression: a column or a string function applied
+     * to a column.
+     */
+    private void operand(Tree node, StringBuilder buf) {
+        if (node.getType() == CmisSqlParser.FUNC) {
+            String f = node.getChild(0).getText().toUpperCase();
+            if (node.getChildCount() != 2
+                    || !("UPPER".equals(f) || "LOWER".equals(f))) {
+                throw unsupported(node);
+            }
+            buf.append(f).append('(');
+            operand(node.getChild(1), buf);
+            buf.append(')');
+        } else {
+            buf.append(column(node));
+        }
+    }
+
+    /**
+     * Translate a column reference into a JCR dynamic operand.
+     */
+    private String column(Tree col) {
+        return column(columnName(col));
+    }
+
+    /**
+     * Translate a property id into a JCR dynamic operand.
+     */
+    private String column(String name) {
+        if (Property.NAME.equals(name)) {
+            return "NAME(" + SELECTOR + ")";
+        }
+        if (Property.ID.equals(name) || Property.PARENT_ID.equals(name)
+                || Property.PATH.equals(name)
+                || Property.BASE_TYPE_ID.equals(name)) {
+            throw new CMISRuntimeException("Unsupported use of column: "
+                    + name);
+        }
+        if (!Property.TYPE_ID.equals(name) || !repository.hasCmisPrefix()) {
+            name = JcrCmisMap.cmisToJcr(name);
+        }
+        return SELECTOR + ".[" + name + "]";
+    }
+
+    /**
+     * Return the property id of a column reference.
+     */
+    private static String columnName(Tree col) {
+        return col.getChild(col.getChildCount() - 1).getText();
+    }
+
+    /**
+     * Translate a literal.
+     */
+    private static String literal(Tree literal) {
+        String text = literal.getText();
+        switch (literal.getType()) {
+        case CmisSqlParser.BOOL_LIT:
+            return "CAST('" + text.toLowerCase() + "' AS BOOLEAN)";
+        case CmisSqlParser.TIME_LIT:
+            return "CAST(" + text.substring(text.indexOf('\'')) + " AS DATE)";
+        case CmisSqlParser.NUM_LIT:
+            if (text.startsWith("+")) {
+                text = text.substring(1);
+            }
+            return text;
+        default:
+            // string literals use the same escaping in both languages
+            return text;
+        }
+    }
+
+    /**
+     * Resolve a folder id to a quoted JCR path.
+     */
+    private String path(String id) {
+        try {
+            return "[" + quote(session.getNodeByIdentifier(id).getPath()) + "]";
+        } catch (ItemNotFoundException e) {
+            throw new CMISRuntimeException("No such folder: " + id, e);
+        } catch (RepositoryException e) {
+            throw new CMISRuntimeException("Unable to resolve folder: " + id,
+                    e);
+        }
+    }
+
+    private static String reverse(String op) {
+        if ("<".equals(op)) {
+            return ">";
+        } else if (">".equals(op)) {
+            return "<";
+        } else if ("<=".equals(op)) {
+            return ">=";
+        } else if (">=".equals(op)) {
+            return "<=";
+        }
+        return op;
+    }
+
+    private static String quote(String s) {
+        return "'" + s.replace("'", "''") + "'";
+    }
+
+    private static String unquote(String s) {
+        return s.substring(1, s.length() - 1).replace("''", "'");
+    }
+
+    private static CMISRuntimeException unsupported(Tree node) {
+        return new CMISRuntimeException("Unsupported query element: "
+                + node.toStringTree());
+    }
+}
@@ -26,11 +26,17 @@ import java.util.Collection;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import javax.jcr.NamespaceException;
+import javax.jcr.Node;
 import javax.jcr.RepositoryException;
 import javax.jcr.Session;
 import javax.jcr.SimpleCredentials;
+import javax.jcr.nodetype.NodeType;
 
 import org.apache.chemistry.ACLCapabilityType;
 import org.apache.chemistry.BaseType;
@@ -45,8 +51,10 @@ import org.apache.chemistry.RepositoryCapabilities;
 import org.apache.chemistry.RepositoryInfo;
 import org.apache.chemistry.SPI;
 import org.apache.chemistry.impl.base.BaseRepository;
+import org.apache.chemistry.impl.cache.InvalidationSource;
 import org.apache.chemistry.impl.simple.SimpleObjectId;
 import org.apache.chemistry.impl.simple.SimpleType;
+import org.apache.chemistry.jcr.JcrCmisMap.NodeKind;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
@@ -71,6 +79,26 @@ public class JcrRepository extends BaseRepository implements Repository, Reposit
      */
     private static final Log log = LogFactory.getLog(JcrRepository.class);
 
+    /**
+     * Default minimum number of idle sessions kept per pool.
+     */
+    public static final int DEFAULT_MIN_SESSIONS = 1;
+
+    /**
+     * Default maximum number of sessions checked out per pool.
+     */
+    public static final int DEFAULT_MAX_SESSIONS = 50;
+
+    /**
+     * Default maximum time to wait for a session, in milliseconds.
+     */
+    public static final long DEFAULT_SESSION_MAX_WAIT = 30 * 1000;
+
+    /**
+     * Default time after which an idle session is logged out, in milliseconds.
+     */
+    public static final long DEFAULT_SESSION_IDLE_TIMEOUT = 5 * 60 * 1000;
+
     /**
      * JCR repository.
      */
@@ -89,12 +117,43 @@ public class JcrRepository extends BaseRepository implements Repository, Reposit
     /**
      * Root folder id.
      */
-    private ObjectId rootFolderId;
+    private volatile ObjectId rootFolderId;
 
     /**
      * Flag indicating whether the repository has registered <b>cmis</b> prefix.
      */
-    private Boolean hasCmisPrefix;
+    private volatile Boolean hasCmisPrefix;
+
+    /**
+     * Session pools, keyed by user and workspace. Pools other than the one
+     * of the configured credentials are removed once unused for the idle
+     * timeout.
+     */
+    private final ConcurrentMap<String, JcrSessionPool> pools = new ConcurrentHashMap<String, JcrSessionPool>();
+
+    /**
+     * Timer logging out idle sessions, created with the first pool.
+     */
+    private Timer evictor;
+
+    private int minSessions = DEFAULT_MIN_SESSIONS;
+
+    private int maxSessions = DEFAULT_MAX_SESSIONS;
+
+    private long sessionMaxWait = DEFAULT_SESSION_MAX_WAIT;
+
+    private long sessionIdleTimeout = DEFAULT_SESSION_IDLE_TIMEOUT;
+
+    /**
+     * Invalidation source, created on demand.
+     */
+    private JcrInvalidationSource invalidationSource;
+
+    /**
+     * Kinds of nodes, by primary node type name. Cleared when types are
+     * registered, see {@link #clearNodeKinds()}.
+     */
+    private final ConcurrentMap<String, NodeKind> nodeKinds = new ConcurrentHashMap<String, NodeKind>();
 
     /**
      * Create a new instance of this class.
@@ -122,6 +181,53 @@ public class JcrRepository extends BaseRepository implements Repository, Reposit
         this(repository, null);
     }
 
+    @Override
+    protected void addTypes(Collection<SimpleType> types) {
+        super.addTypes(types);
+        clearNodeKinds();
+    }
+
+    /**
+     * Forget the kinds of nodes computed for JCR node types. Must be called
+     * after node types are registered or modified in the JCR repository.
+     */
+    public void clearNodeKinds() {
+        nodeKinds.clear();
+    }
+
+    /**
+     * Return the kind of a JCR node, based on its primary node type and
+     * the supertypes of the latter.
+     *
+     * @param node the JCR node
+     * @return node kind
+     * @throws RepositoryException if the node type cannot be read
+     */
+    private NodeKind getNodeKind(Node node) throws RepositoryException {
+        NodeType nt = node.getPrimaryNodeType();
+        NodeKind kind = nodeKinds.get(nt.getName());
+        if (kind == null) {
+            kind = JcrCmisMap.getNodeKind(nt);
+            nodeKinds.put(nt.getName(), kind);
+        }
+        return kind;
+    }
+
+    /**
+     * Checks if a JCR node is a folder.
+     *
+     * @param node the JCR node
+     * @return <code>true</code> if the node is a folder
+     */
+    boolean isNodeFolder(Node node) {
+        try {
+            return getNodeKind(node) == NodeKind.FOLDER;
+        } catch (RepositoryException e) {
+            log.error("Unable to get node type", e);
+        }
+        return false;
+    }
+
     /**
      * Set workspace to use when connecting.
      *
@@ -140,6 +246,43 @@ public class JcrRepository extends BaseRepository implements Repository, Reposit
         this.creds = creds;
     }
 
+    /**
+     * Set the minimum number of idle sessions kept open per pool.
+     *
+     * @param minSessions minimum number of idle sessions
+     */
+    public void setMinSessions(int minSessions) {
+        this.minSessions = minSessions;
+    }
+
+    /**
+     * Set the maximum number of sessions checked out at the same time per
+     * pool.
+     *
+     * @param maxSessions maximum number of sessions
+     */
+    public void setMaxSessions(int maxSessions) {
+        this.maxSessions = maxSessions;
+    }
+
+    /**
+     * Set the maximum time to wait for a session when all are checked out.
+     *
+     * @param maxWait time in milliseconds, 0 to wait forever
+     */
+    public void setSessionMaxWait(long maxWait) {
+        this.sessionMaxWait = maxWait;
+    }
+
+    /**
+     * Set the time after which an idle session is logged out.
+     *
+     * @param idleTimeout time in milliseconds
+     */
+    public void setSessionIdleTimeout(long idleTimeout) {
+        this.sessionIdleTimeout = idleTimeout;
+    }
+
     /**
      * Set root folder id.
      *
@@ -159,23 +302,159 @@ public class JcrRepository extends BaseRepository implements Repository, Reposit
     /**
      * {@inheritDoc}
      */
-    public synchronized JcrConnection getConnection(Map<String, Serializable> params) {
+    public JcrConnection getConnection(Map<String, Serializable> params) {
+        SimpleCredentials credentials = creds;
+        if (params != null && params.get(PARAM_USERNAME) != null) {
+            String password = (String) params.get(PARAM_PASSWORD);
+            credentials = new SimpleCredentials(
+                    (String) params.get(PARAM_USERNAME),
+                    password == null ? new char[0] : password.toCharArray());
+        }
         try {
-            Session session = repository.login(creds, workspace);
+            JcrSessionPool pool = getSessionPool(credentials);
+            Session session = checkout(pool, credentials);
             if (rootFolderId == null) {
                 rootFolderId = new SimpleObjectId(session.getRootNode().getIdentifier());
             }
-            return new JcrConnection(session, this);
+            return new JcrConnection(session, this, pool);
         } catch (RepositoryException e) {
             String msg = "Unable to open connection.";
             throw new RuntimeException(msg, e);
         }
     }
 
+    /**
+     * Check out a session from the pool for some credentials, getting a new
+     * pool if this one was closed after expiring meanwhile.
+     */
+    protected Session checkout(JcrSessionPool pool,
+            SimpleCredentials credentials) throws RepositoryException {
+        while (true) {
+            try {
+                Session session = pool.checkout(credentials);
+                try {
+                    pool.fill(credentials);
+                } catch (RepositoryException e) {
+                    log.warn("Unable to log in initial sessions", e);
+                }
+                return session;
+            } catch (RepositoryException e) {
+                if (!pool.isClosed()) {
+                    throw e;
+                }
+                pool = getSessionPool(credentials);
+            }
+        }
+    }
+
+    /**
+     * Return the session pool for some credentials, creating it if needed.
+     * The credentials are checked when checking out sessions, so that the
+     * pool does not keep passwords.
+     *
+     * @param credentials credentials, may be <code>null</code>
+     * @return session pool
+     */
+    protected JcrSessionPool getSessionPool(SimpleCredentials credentials) {
+        String userId = credentials == null ? null : credentials.getUserID();
+        String key = getPoolKey(userId);
+        JcrSessionPool pool = pools.get(key);
+        if (pool == null || pool.isClosed()) {
+            if (pool != null) {
+                pools.remove(key, pool);
+            }
+            pool = new JcrSessionPool(repository, userId, workspace,
+                    Math.min(minSessions, maxSessions), maxSessions,
+                    sessionMaxWait, sessionIdleTimeout);
+            JcrSessionPool old = pools.putIfAbsent(key, pool);
+            if (old != null) {
+                pool = old;
+            } else {
+                startEvictor();
+            }
+        }
+        return pool;
+    }
+
+    private String getPoolKey(String userId) {
+        return (userId == null ? "" : userId) + '\0'
+                + (workspace == null ? "" : workspace);
+    }
+
+    /**
+     * Return the session pools in use.
+     *
+     * @return session pools
+     */
+    public Collection<JcrSessionPool> getSessionPools() {
+        return pools.values();
+    }
+
+    /**
+     * Start the timer evicting idle sessions, if not already done.
+     */
+    private synchronized void startEvictor() {
+        if (evictor != null) {
+            return;
+        }
+        long period = Math.max(1000, sessionIdleTimeout / 2);
+        evictor = new Timer("chemistry-jcr-session-evictor", true);
+        evictor.schedule(new TimerTask() {
+            @Override
+            public void run() {
+                long limit = System.currentTimeMillis() - sessionIdleTimeout;
+                String defaultKey = getPoolKey(creds == null ? null
+                        : creds.getUserID());
+                for (Map.Entry<String, JcrSessionPool> es : pools.entrySet()) {
+                    JcrSessionPool pool = es.getValue();
+                    if (!es.getKey().equals(defaultKey)
+                            && pool.isUnusedSince(limit)
+                            && pools.remove(es.getKey(), pool)) {
+                        pool.close();
+                    } else {
+                        pool.evict();
+                    }
+                }
+            }
+        }, period, period);
+    }
+
+    /**
+     * Log out all pooled sessions. Connections still open keep working and
+     * log out their session when closed.
+     */
+    public void closeSessions() {
+        synchronized (this) {
+            if (evictor != null) {
+                evictor.cancel();
+                evictor = null;
+            }
+        }
+        for (JcrSessionPool pool : pools.values()) {
+            pool.close();
+        }
+        pools.clear();
+        synchronized (this) {
+            if (invalidationSource != null) {
+                invalidationSource.close();
+                invalidationSource = null;
+            }
+        }
+    }
+
     /**
      * {@inheritDoc}
      */
     public <T> T getExtension(Class<T> klass) {
+        if (klass == InvalidationSource.class) {
+            synchronized (this) {
+                if (invalidationSource == null) {
+                    invalidationSource = new JcrInvalidationSource(repository,
+                            creds, workspace);
+                }
+                return klass.cast(invalidationSource);
+            }
+        }
         return null;
     }
 
@@ -271,16 +550,17 @@ public class JcrRepository extends BaseRepository implements Repository, Reposit
      */
     public ObjectId getRootFolderId() {
         if (rootFolderId == null) {
+            JcrSessionPool pool = getSessionPool(creds);
             Session session = null;
 
             try {
-                session = repository.login(creds, workspace);
+                session = checkout(pool, creds);
                 rootFolderId = new SimpleObjectId(session.getRootNode().getIdentifier());
             } catch (RepositoryException e) {
                 log.error("Unable to determine root folder id.", e);
             } finally {
                 if (session != null) {
-                    session.logout();
+                    pool.release(session);
                 }
             }
         }
@@ -293,21 +573,23 @@ public class JcrRepository extends BaseRepository implements Repository, Reposit
      * @return <code>true</code> if <b>cmis</b> is registered;
      *         <code>false</code> otherwise
      */
-    public synchronized boolean hasCmisPrefix() {
+    public boolean hasCmisPrefix() {
         if (hasCmisPrefix == null) {
+            JcrSessionPool pool = getSessionPool(creds);
             Session session = null;
 
             try {
-                session = repository.login(creds, workspace);
+                session = checkout(pool, creds);
                 String uri = session.getWorkspace().getNamespaceRegistry().getURI("cmis");
-                hasCmisPrefix = uri != null;
+                hasCmisPrefix = Boolean.valueOf(uri != null);
             } catch (NamespaceException e) {
                 hasCmisPrefix = Boolean.FALSE;
             } catch (RepositoryException e) {
                 log.error("Unable to determine check namespace prefix: cmis.", e);
+                return false;
             } finally {
                 if (session != null) {
-                    session.logout();
+                    pool.release(session);
                 }
             }
         }
@@ -383,14 +665,14 @@ public class JcrRepository extends BaseRepository implements Repository, Reposit
      * {@inheritDoc}
      */
     public boolean hasGetDescendants() {
-        return false;
+        return true;
     }
 
     /**
      * {@inheritDoc}
      */
     public boolean hasGetFolderTree() {
-        return false;
+        return true;
     }
 
     /**
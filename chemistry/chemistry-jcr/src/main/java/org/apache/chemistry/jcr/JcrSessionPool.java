@@ -0,0 +1,459 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.chemistry.jcr;
+
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.LinkedList;
+import java.util.ListIterator;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.jcr.LoginException;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+import javax.jcr.SimpleCredentials;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Pool of JCR sessions of the same user logged in to the same workspace.
+ * <p>
+ * The pool does not keep the password of the user: sessions are logged in
+ * with the credentials given to {@link #checkout}, and an idle session is
+ * only handed out to a caller whose credentials match those of the last
+ * successful login, compared through a salted digest.
+ * <p>
+ * Sessions are validated and their pending changes discarded when checked
+ * out, so that a session returned by a connection that did not save is
+ * clean for the next user. The number of checked out sessions is bounded by
+ * the max size; idle sessions above the min size are logged out by
+ * {@link #evict} after the idle timeout.
+ */
+public class JcrSessionPool {
+
+    /**
+     * Logger.
+     */
+    private static final Log log = LogFactory.getLog(JcrSessionPool.class);
+
+    /**
+     * An idle session and the time it was returned.
+     */
+    private static class IdleSession {
+
+        final Session session;
+
+        final long since;
+
+        IdleSession(Session session, long since) {
+            this.session = session;
+            this.since = since;
+        }
+    }
+
+    /**
+     * JCR repository.
+     */
+    private final javax.jcr.Repository repository;
+
+    /**
+     * User the sessions are logged in as.
+     */
+    private final String userId;
+
+    /**
+     * Random salt of the credentials digest.
+     */
+    private final byte[] salt = new byte[16];
+
+    /**
+     * Digest of the credentials of the last successful login, or
+     * <code>null</code> before the first one.
+     */
+    private volatile byte[] digest;
+
+    /**
+     * Workspace to log in to.
+     */
+    private final String workspace;
+
+    /**
+     * Minimum number of idle sessions kept open.
+     */
+    private final int minSize;
+
+    /**
+     * Maximum time to wait for a session, in milliseconds (0 to wait forever).
+     */
+    private final long maxWait;
+
+    /**
+     * Time after which an idle session is logged out, in milliseconds.
+     */
+    private final long idleTimeout;
+
+    /**
+     * Permits for checked out sessions.
+     */
+    private final Semaphore permits;
+
+    /**
+     * Idle sessions, most recently returned first, so that warm sessions are
+     * reused and the cold ones at the end can time out. Guarded by itself.
+     */
+    private final LinkedList<IdleSession> idle = new LinkedList<IdleSession>();
+
+    private final AtomicInteger active = new AtomicInteger();
+
+    private final AtomicLong logins = new AtomicLong();
+
+    private final AtomicLong checkouts = new AtomicLong();
+
+    private final AtomicLong waitNanos = new AtomicLong();
+
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+
+    private final AtomicLong evictions = new AtomicLong();
+
+    private volatile long lastUsed = System.currentTimeMillis();
+
+    private volatile boolean closed;
+
+    /**
+     * Create a new instance of this class.
+     *
+     * @param repository JCR repository
+     * @param userId user the sessions are logged in as, may be
+     *            <code>null</code>
+     * @param workspace workspace, may be <code>null</code>
+     * @param minSize minimum number of idle sessions kept open
+     * @param maxSize maximum number of checked out sessions
+     * @param maxWait maximum time to wait for a session, in milliseconds
+     * @param idleTimeout time after which an idle session is logged out, in
+     *            milliseconds
+     */
+    public JcrSessionPool(javax.jcr.Repository repository,
+            String userId, String workspace, int minSize,
+            int maxSize, long maxWait, long idleTimeout) {
+        if (maxSize < 1 || minSize < 0 || minSize > maxSize) {
+            throw new IllegalArgumentException("minSize=" + minSize
+                    + " maxSize=" + maxSize);
+        }
+        this.repository = repository;
+        this.userId = userId;
+        this.workspace = workspace;
+        this.minSize = minSize;
+        this.maxWait = maxWait;
+        this.idleTimeout = idleTimeout;
+        permits = new Semaphore(maxSize, true);
+        new SecureRandom().nextBytes(salt);
+    }
+
+    /**
+     * Return the user the sessions are logged in as.
+     */
+    public String getUserId() {
+        return userId;
+    }
+
+    /**
+     * Check out a session, logging in if no idle session is available or if
+     * the credentials differ from those of the last successful login.
+     *
+     * @param credentials credentials of the pool user, may be
+     *            <code>null</code>
+     * @return session
+     * @throws LoginException if the credentials are not those of the pool
+     *             user, or are invalid
+     * @throws RepositoryException if logging in fails or no session became
+     *             available in time
+     */
+    public Session checkout(SimpleCredentials credentials)
+            throws RepositoryException {
+        String id = credentials == null ? null : credentials.getUserID();
+        if (userId == null ? id != null : !userId.equals(id)) {
+            throw new LoginException("Not the user of this pool: " + id);
+        }
+        if (closed) {
+            throw new RepositoryException("Session pool is closed");
+        }
+        long start = System.nanoTime();
+        try {
+            if (maxWait <= 0) {
+                permits.acquire();
+            } else if (!permits.tryAcquire(maxWait, TimeUnit.MILLISECONDS)) {
+                throw new RepositoryException("No session available after "
+                        + maxWait + "ms");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RepositoryException("Interrupted waiting for a session");
+        } finally {
+            waited(System.nanoTime() - start);
+        }
+        try {
+            byte[] d = digest(credentials);
+            Session session = MessageDigest.isEqual(d, digest) ? pollValid()
+                    : null;
+            if (session == null) {
+                session = repository.login(credentials, workspace);
+                logins.incrementAndGet();
+                digest = d;
+            }
+            lastUsed = System.currentTimeMillis();
+            active.incrementAndGet();
+            checkouts.incrementAndGet();
+            return session;
+        } catch (RepositoryException e) {
+            permits.release();
+            throw e;
+        } catch (RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Poll an idle session that is still usable, discarding its pending
+     * changes.
+     */
+    private Session pollValid() {
+        IdleSession is;
+        while ((is = pollIdle()) != null) {
+            Session session = is.session;
+            if (!session.isLive()) {
+                continue;
+            }
+            try {
+                session.refresh(false);
+                return session;
+            } catch (RepositoryException e) {
+                log.debug("Discarding broken session", e);
+                logout(session);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Take the most recently returned idle session.
+     */
+    private IdleSession pollIdle() {
+        synchronized (idle) {
+            return idle.isEmpty() ? null : idle.removeFirst();
+        }
+    }
+
+    private void addIdle(Session session) {
+        synchronized (idle) {
+            idle.addFirst(new IdleSession(session, System.currentTimeMillis()));
+        }
+    }
+
+    /**
+     * Compute the salted digest of credentials.
+     */
+    private byte[] digest(SimpleCredentials credentials) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            md.update(salt);
+            if (credentials != null) {
+                md.update((byte) 1);
+                md.update(new String(credentials.getPassword()).getBytes("UTF-8"));
+            }
+            return md.digest();
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        } catch (UnsupportedEncodingException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Return a session previously checked out.
+     *
+     * @param session session
+     */
+    public void release(Session session) {
+        active.decrementAndGet();
+        lastUsed = System.currentTimeMillis();
+        try {
+            if (closed || !session.isLive()) {
+                logout(session);
+            } else {
+                addIdle(session);
+            }
+        } finally {
+            permits.release();
+        }
+    }
+
+    /**
+     * Log in sessions until the min size is reached.
+     *
+     * @param credentials credentials that were successfully used to check
+     *            out a session
+     */
+    public void fill(SimpleCredentials credentials) throws RepositoryException {
+        if (!MessageDigest.isEqual(digest(credentials), digest)) {
+            return;
+        }
+        while (!closed && getIdleCount() + active.get() < minSize) {
+            Session session = repository.login(credentials, workspace);
+            logins.incrementAndGet();
+            addIdle(session);
+        }
+    }
+
+    /**
+     * Log out the sessions idle for longer than the idle timeout, keeping at
+     * least the min size open.
+     */
+    public void evict() {
+        long limit = System.currentTimeMillis() - idleTimeout;
+        LinkedList<Session> expired = new LinkedList<Session>();
+        synchronized (idle) {
+            // oldest sessions are at the end
+            for (ListIterator<IdleSession> it = idle.listIterator(idle.size()); it.hasPrevious();) {
+                IdleSession is = it.previous();
+                if (idle.size() + active.get() <= minSize) {
+                    break;
+                }
+                if (is.since < limit || !is.session.isLive()) {
+                    it.remove();
+                    expired.add(is.session);
+                }
+            }
+        }
+        for (Session session : expired) {
+            evictions.incrementAndGet();
+            logout(session);
+        }
+    }
+
+    /**
+     * Check if the pool has not been used since some time and has no session
+     * checked out.
+     *
+     * @param since time in milliseconds
+     */
+    public boolean isUnusedSince(long since) {
+        return active.get() == 0 && lastUsed < since;
+    }
+
+    /**
+     * Check if the pool was closed.
+     */
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Log out all idle sessions and refuse further checkouts. Sessions still
+     * checked out are logged out when released.
+     */
+    public void close() {
+        closed = true;
+        IdleSession is;
+        while ((is = pollIdle()) != null) {
+            logout(is.session);
+        }
+    }
+
+    private static void logout(Session session) {
+        try {
+            session.logout();
+        } catch (RuntimeException e) {
+            log.debug("Error while logging out session", e);
+        }
+    }
+
+    private void waited(long nanos) {
+        waitNanos.addAndGet(nanos);
+        long max;
+        do {
+            max = maxWaitNanos.get();
+        } while (nanos > max && !maxWaitNanos.compareAndSet(max, nanos));
+    }
+
+    /**
+     * Return the number of sessions currently checked out.
+     */
+    public int getActiveCount() {
+        return active.get();
+    }
+
+    /**
+     * Return the number of idle sessions.
+     */
+    public int getIdleCount() {
+        synchronized (idle) {
+            return idle.size();
+        }
+    }
+
+    /**
+     * Return the number of sessions logged in since the pool was created.
+     */
+    public long getLoginCount() {
+        return logins.get();
+    }
+
+    /**
+     * Return the number of checkouts since the pool was created.
+     */
+    public long getCheckoutCount() {
+        return checkouts.get();
+    }
+
+    /**
+     * Return the number of idle sessions logged out after the idle timeout.
+     */
+    public long getEvictionCount() {
+        return evictions.get();
+    }
+
+    /**
+     * Return the total time spent waiting for a session, in milliseconds.
+     */
+    public long getTotalWaitMillis() {
+        return waitNanos.get() / 1000000;
+    }
+
+    /**
+     * Return the longest time spent waiting for a session, in milliseconds.
+     */
+    public long getMaxWaitMillis() {
+        return maxWaitNanos.get() / 1000000;
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "(user=" + userId
+                + ", workspace=" + workspace
+                + ", active=" + getActiveCount() + ", idle="
+                + getIdleCount() + ", logins=" + getLoginCount()
+                + ", checkouts=" + getCheckoutCount() + ", maxWaitMs="
+                + getMaxWaitMillis() + ')';
+    }
+}
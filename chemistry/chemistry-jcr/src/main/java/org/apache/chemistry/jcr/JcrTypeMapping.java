@@ -0,0 +1,99 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.chemistry.jcr;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.chemistry.PropertyDefinition;
+import org.apache.chemistry.Type;
+
+/**
+ * Mapping between the property definitions of a CMIS type and the names of
+ * the JCR properties they are stored in. Computed once per type and
+ * connection, see {@link JcrConnection#getTypeMapping(Type)}.
+ */
+class JcrTypeMapping {
+
+    /**
+     * Property definitions, by JCR name.
+     */
+    private final Map<String, PropertyDefinition> definitions = new HashMap<String, PropertyDefinition>();
+
+    /**
+     * JCR names, by CMIS property id.
+     */
+    private final Map<String, String> jcrNames = new HashMap<String, String>();
+
+    /**
+     * JCR names of all stored properties.
+     */
+    private final String[] allJcrNames;
+
+    /**
+     * Create a new instance of this class.
+     *
+     * @param type CMIS type
+     * @param hasCmisPrefix whether <b>cmis:</b> properties can be stored
+     */
+    public JcrTypeMapping(Type type, boolean hasCmisPrefix) {
+        for (PropertyDefinition pd : type.getPropertyDefinitions()) {
+            String id = pd.getId();
+            if (id.startsWith(JcrRepository.CMIS_PREFIX) && !hasCmisPrefix) {
+                continue;
+            }
+            // properties are stored under their CMIS id
+            jcrNames.put(id, id);
+            definitions.put(id, pd);
+        }
+        allJcrNames = jcrNames.values().toArray(new String[jcrNames.size()]);
+    }
+
+    /**
+     * Return the definition of the property stored under a JCR name.
+     *
+     * @param jcrName JCR property name
+     * @return property definition, or <code>null</code>
+     */
+    public PropertyDefinition getDefinition(String jcrName) {
+        return definitions.get(jcrName);
+    }
+
+    /**
+     * Return the JCR names of some properties, to be used as name globs in
+     * {@link javax.jcr.Node#getProperties(String[])}.
+     *
+     * @param ids CMIS property ids, <code>null</code> for all
+     * @return JCR names of the properties that are stored
+     */
+    public String[] getJcrNames(Collection<String> ids) {
+        if (ids == null) {
+            return allJcrNames;
+        }
+        List<String> names = new ArrayList<String>(ids.size());
+        for (String id : ids) {
+            String name = jcrNames.get(id);
+            if (name != null) {
+                names.add(name);
+            }
+        }
+        return names.toArray(new String[names.size()]);
+    }
+}
@@ -18,8 +18,9 @@ package org.apache.chemistry.soap.server;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
 import java.io.Serializable;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
 import java.math.BigDecimal;
 import java.math.BigInteger;
 import java.net.URI;
@@ -35,7 +36,6 @@ import java.util.Set;
 import java.util.Map.Entry;
 
 import javax.activation.DataHandler;
-import javax.activation.DataSource;
 import javax.xml.datatype.DatatypeConfigurationException;
 import javax.xml.datatype.DatatypeFactory;
 import javax.xml.datatype.XMLGregorianCalendar;
@@ -376,6 +376,11 @@ public class ChemistryHelper {
     }
 
     public static CmisTypeDefinitionType convert(Type ct) {
+        return convert(ct, true);
+    }
+
+    public static CmisTypeDefinitionType convert(Type ct,
+            boolean includePropertyDefinitions) {
         CmisTypeDefinitionType t = factory.createCmisTypeDefinitionType();
         t.setId(ct.getId());
         t.setLocalName(ct.getLocalName());
@@ -393,9 +398,11 @@ public class ChemistryHelper {
         t.setIncludedInSupertypeQuery(ct.isIncludedInSuperTypeQuery());
         t.setControllablePolicy(ct.isControllablePolicy());
         t.setControllableACL(ct.isControllableACL());
-        List<CmisPropertyDefinitionType> pdl = t.getPropertyDefinition();
-        for (PropertyDefinition cpd : ct.getPropertyDefinitions()) {
-            pdl.add(convert(cpd));
+        if (includePropertyDefinitions) {
+            List<CmisPropertyDefinitionType> pdl = t.getPropertyDefinition();
+            for (PropertyDefinition cpd : ct.getPropertyDefinitions()) {
+                pdl.add(convert(cpd));
+            }
         }
         return t;
     }
@@ -442,10 +449,7 @@ public class ChemistryHelper {
             stream = null;
         } else {
             try {
-                // if (dh instanceof StreamingDataHandler) {
-                // stream = ((StreamingDataHandler) dh).readOnce();
-                // } else {
-                stream = contentStream.getStream().getInputStream();
+                stream = readOnce(dataHandler);
             } catch (IOException e) {
                 throw new RuntimeException("Could not get the stream: "
                         + e.getMessage(), e);
@@ -453,17 +457,53 @@ public class ChemistryHelper {
         }
         String mimeType = contentStream.getMimeType();
         String filename = contentStream.getFilename();
+        if (stream == null) {
+            return new SimpleContentStream(new byte[0], mimeType, filename);
+        }
+        BigInteger length = contentStream.getLength();
+        return new StreamingContentStream(stream, length == null ? -1
+                : length.longValue(), mimeType, filename);
+    }
+
+    /**
+     * Releases the resources of a content stream obtained from
+     * {@link #convert(CmisContentStreamType)}, at the end of the request.
+     */
+    public static void dispose(ContentStream cs) {
+        if (cs instanceof StreamingContentStream) {
+            ((StreamingContentStream) cs).dispose();
+        }
+    }
+
+    /**
+     * Gets the stream of an attachment, without letting the runtime buffer it
+     * for further reads when possible.
+     * <p>
+     * MTOM-aware runtimes (JAX-WS RI, CXF with streaming attachments) pass a
+     * data handler with a {@code readOnce()} method; it's called by
+     * reflection to avoid a compile-time dependency on a given runtime.
+     */
+    protected static InputStream readOnce(DataHandler dataHandler)
+            throws IOException {
         try {
-            return new SimpleContentStream(stream, mimeType, filename);
-        } catch (IOException e) {
-            throw new RuntimeException("Could not get the stream: "
-                    + e.getMessage(), e);
+            Method m = dataHandler.getClass().getMethod("readOnce");
+            return (InputStream) m.invoke(dataHandler);
+        } catch (NoSuchMethodException e) {
+            return dataHandler.getInputStream();
+        } catch (IllegalAccessException e) {
+            return dataHandler.getInputStream();
+        } catch (InvocationTargetException e) {
+            Throwable t = e.getCause();
+            if (t instanceof IOException) {
+                throw (IOException) t;
+            }
+            throw new RuntimeException(t);
         }
     }
 
     public static CmisObjectInFolderType convertInFolder(ObjectEntry entry) {
         CmisObjectInFolderType object = factory.createCmisObjectInFolderType();
-        object.getObject().setProperties(convertProperties(entry));
+        object.setObject(convert(entry));
         object.setPathSegment(entry.getPathSegment());
         return object;
     }
@@ -505,11 +545,48 @@ public class ChemistryHelper {
         return map;
     }
 
-    public static CmisObjectListType convert(ListPage<ObjectEntry> entries) {
-        CmisObjectListType list = factory.createCmisObjectListType();
-        for (ObjectEntry entry : entries) {
-            list.getObjects().add(convert(entry));
+    /*
+     * The lists of entries below are converted lazily, as the marshaller
+     * reaches each entry, so that large results never exist as a full JAXB
+     * object graph. The JAXB classes have no list setters, so subclasses set
+     * the lists directly; the JAXB runtime marshals them as their superclass.
+     */
+
+    protected static class LazyObjectListType extends CmisObjectListType {
+        public LazyObjectListType(List<ObjectEntry> entries) {
+            objects = new LazyConvertingList<ObjectEntry, CmisObjectType>(
+                    entries) {
+                @Override
+                protected CmisObjectType convert(ObjectEntry entry) {
+                    return ChemistryHelper.convert(entry);
+                }
+            };
+        }
+    }
+
+    protected static class LazyObjectInFolderListType extends
+            CmisObjectInFolderListType {
+        public LazyObjectInFolderListType(List<ObjectEntry> entries) {
+            objects = new LazyConvertingList<ObjectEntry, CmisObjectInFolderType>(
+                    entries) {
+                @Override
+                protected CmisObjectInFolderType convert(ObjectEntry entry) {
+                    return convertInFolder(entry);
+                }
+            };
         }
+    }
+
+    protected static class LazyObjectInFolderContainerType extends
+            CmisObjectInFolderContainerType {
+        public LazyObjectInFolderContainerType(Tree<ObjectEntry> tree) {
+            objectInFolder = convertInFolder(tree.getNode());
+            children = convertForest(tree);
+        }
+    }
+
+    public static CmisObjectListType convert(ListPage<ObjectEntry> entries) {
+        CmisObjectListType list = new LazyObjectListType(entries);
         list.setHasMoreItems(entries.getHasMoreItems());
         list.setNumItems(BigInteger.valueOf(entries.getNumItems()));
         return list;
@@ -517,10 +594,8 @@ public class ChemistryHelper {
 
     public static CmisObjectInFolderListType convertInFolder(
             ListPage<ObjectEntry> entries) {
-        CmisObjectInFolderListType list = factory.createCmisObjectInFolderListType();
-        for (ObjectEntry entry : entries) {
-            list.getObjects().add(convertInFolder(entry));
-        }
+        CmisObjectInFolderListType list = new LazyObjectInFolderListType(
+                entries);
         list.setHasMoreItems(entries.getHasMoreItems());
         list.setNumItems(BigInteger.valueOf(entries.getNumItems()));
         return list;
@@ -528,30 +603,23 @@ public class ChemistryHelper {
 
     public static List<CmisObjectInFolderContainerType> convertForest(
             Tree<ObjectEntry> tree) {
-        List<CmisObjectInFolderContainerType> list = new ArrayList<CmisObjectInFolderContainerType>(
-                tree.getChildren().size());
-        for (Tree<ObjectEntry> s : tree.getChildren()) {
-            list.add(convert(s));
-        }
-        return list;
+        return new LazyConvertingList<Tree<ObjectEntry>, CmisObjectInFolderContainerType>(
+                tree.getChildren()) {
+            @Override
+            protected CmisObjectInFolderContainerType convert(
+                    Tree<ObjectEntry> s) {
+                return ChemistryHelper.convert(s);
+            }
+        };
     }
 
     public static CmisObjectInFolderContainerType convert(Tree<ObjectEntry> s) {
-        CmisObjectInFolderContainerType object = factory.createCmisObjectInFolderContainerType();
-        object.setObjectInFolder(convertInFolder(s.getNode()));
-        object.getChildren().addAll(convertForest(s));
-        return object;
+        return new LazyObjectInFolderContainerType(s);
     }
 
     public static QueryResponse convertQuery(ListPage<ObjectEntry> entries) {
         QueryResponse response = factory.createQueryResponse();
-        CmisObjectListType objects = factory.createCmisObjectListType();
-        response.setObjects(objects);
-        for (ObjectEntry entry : entries) {
-            objects.getObjects().add(convert(entry));
-        }
-        objects.setHasMoreItems(entries.getHasMoreItems());
-        objects.setNumItems(BigInteger.valueOf(entries.getNumItems()));
+        response.setObjects(convert(entries));
         return response;
     }
 
@@ -563,23 +631,7 @@ public class ChemistryHelper {
         s.setMimeType(cs.getMimeType());
         s.setLength(BigInteger.valueOf(cs.getLength()));
         s.setFilename(cs.getFileName());
-        s.setStream(new DataHandler(new DataSource() {
-            public InputStream getInputStream() throws IOException {
-                return cs.getStream();
-            }
-
-            public OutputStream getOutputStream() {
-                return null;
-            }
-
-            public String getContentType() {
-                return cs.getMimeType();
-            }
-
-            public String getName() {
-                return cs.getFileName();
-            }
-        }));
+        s.setStream(new DataHandler(new ContentStreamDataSource(cs)));
         return s;
     }
 
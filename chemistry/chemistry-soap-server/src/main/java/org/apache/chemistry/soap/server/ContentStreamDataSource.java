@@ -0,0 +1,65 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.chemistry.soap.server;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import javax.activation.DataSource;
+
+import org.apache.chemistry.ContentStream;
+
+/**
+ * A {@link DataSource} sending a {@link ContentStream} as an attachment.
+ * <p>
+ * The backend stream is only opened when the SOAP runtime writes the
+ * attachment, and is copied from as it is read, so it is never held in
+ * memory. The length is known from the content stream.
+ */
+public class ContentStreamDataSource implements DataSource {
+
+    protected final ContentStream cs;
+
+    public ContentStreamDataSource(ContentStream cs) {
+        this.cs = cs;
+    }
+
+    public InputStream getInputStream() throws IOException {
+        return cs.getStream();
+    }
+
+    public OutputStream getOutputStream() throws IOException {
+        throw new IOException("Read-only data source");
+    }
+
+    public String getContentType() {
+        String mimeType = cs.getMimeType();
+        return mimeType == null ? "application/octet-stream" : mimeType;
+    }
+
+    public String getName() {
+        return cs.getFileName();
+    }
+
+    /**
+     * Gets the length of the data.
+     *
+     * @return the length, or {@code -1} if unknown
+     */
+    public long getLength() {
+        return cs.getLength();
+    }
+
+}
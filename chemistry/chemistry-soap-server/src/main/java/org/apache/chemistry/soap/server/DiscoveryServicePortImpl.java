@@ -32,7 +32,6 @@ import org.apache.chemistry.ObjectEntry;
 import org.apache.chemistry.Paging;
 import org.apache.chemistry.RelationshipDirection;
 import org.apache.chemistry.Repository;
-import org.apache.chemistry.RepositoryManager;
 import org.apache.chemistry.SPI;
 import org.apache.chemistry.ws.CmisException;
 import org.apache.chemistry.ws.CmisExtensionType;
@@ -57,7 +56,7 @@ public class DiscoveryServicePortImpl implements DiscoveryServicePort {
         try {
             // repository
             String repositoryId = parameters.getRepositoryId();
-            Repository repository = RepositoryManager.getInstance().getRepository(
+            Repository repository = RepositoryLookup.getRepository(
                     repositoryId);
             if (repository == null) {
                 String msg = "Unknown repository: " + repositoryId;
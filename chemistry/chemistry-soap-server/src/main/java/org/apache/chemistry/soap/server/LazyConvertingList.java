@@ -0,0 +1,56 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.chemistry.soap.server;
+
+import java.util.AbstractList;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * A read-only list converting the elements of a source list when they are
+ * accessed.
+ * <p>
+ * Converted elements are not kept: when set on a JAXB object, each element
+ * is converted as the marshaller reaches it and can be collected once
+ * written, so the full JAXB graph of a large result is never held in
+ * memory.
+ *
+ * @param <S> the source element type
+ * @param <T> the converted element type
+ */
+public abstract class LazyConvertingList<S, T> extends AbstractList<T>
+        implements RandomAccess {
+
+    protected final List<S> source;
+
+    public LazyConvertingList(List<S> source) {
+        this.source = source;
+    }
+
+    /**
+     * Converts one element.
+     */
+    protected abstract T convert(S element);
+
+    @Override
+    public T get(int index) {
+        return convert(source.get(index));
+    }
+
+    @Override
+    public int size() {
+        return source.size();
+    }
+
+}
@@ -32,7 +32,6 @@ import org.apache.chemistry.ObjectEntry;
 import org.apache.chemistry.Paging;
 import org.apache.chemistry.RelationshipDirection;
 import org.apache.chemistry.Repository;
-import org.apache.chemistry.RepositoryManager;
 import org.apache.chemistry.SPI;
 import org.apache.chemistry.Tree;
 import org.apache.chemistry.ws.CmisException;
@@ -63,7 +62,7 @@ public class NavigationServicePortImpl implements NavigationServicePort {
             CmisExtensionType extension) throws CmisException {
         SPI spi = null;
         try {
-            Repository repository = RepositoryManager.getInstance().getRepository(
+            Repository repository = RepositoryLookup.getRepository(
                     repositoryId);
             if (repository == null) {
                 String msg = "Unknown repository: " + repositoryId;
@@ -103,7 +102,7 @@ public class NavigationServicePortImpl implements NavigationServicePort {
             CmisExtensionType extension) throws CmisException {
         SPI spi = null;
         try {
-            Repository repository = RepositoryManager.getInstance().getRepository(
+            Repository repository = RepositoryLookup.getRepository(
                     repositoryId);
             if (repository == null) {
                 String msg = "Unknown repository: " + repositoryId;
@@ -143,7 +142,7 @@ public class NavigationServicePortImpl implements NavigationServicePort {
             CmisExtensionType extension) throws CmisException {
         SPI spi = null;
         try {
-            Repository repository = RepositoryManager.getInstance().getRepository(
+            Repository repository = RepositoryLookup.getRepository(
                     repositoryId);
             if (repository == null) {
                 String msg = "Unknown repository: " + repositoryId;
@@ -176,7 +175,7 @@ public class NavigationServicePortImpl implements NavigationServicePort {
             String filter, CmisExtensionType extension) throws CmisException {
         SPI spi = null;
         try {
-            Repository repository = RepositoryManager.getInstance().getRepository(
+            Repository repository = RepositoryLookup.getRepository(
                     repositoryId);
             if (repository == null) {
                 String msg = "Unknown repository: " + repositoryId;
@@ -206,7 +205,7 @@ public class NavigationServicePortImpl implements NavigationServicePort {
             CmisExtensionType extension) throws CmisException {
         SPI spi = null;
         try {
-            Repository repository = RepositoryManager.getInstance().getRepository(
+            Repository repository = RepositoryLookup.getRepository(
                     repositoryId);
             if (repository == null) {
                 String msg = "Unknown repository: " + repositoryId;
@@ -241,7 +240,7 @@ public class NavigationServicePortImpl implements NavigationServicePort {
             CmisExtensionType extension) throws CmisException {
         SPI spi = null;
         try {
-            Repository repository = RepositoryManager.getInstance().getRepository(
+            Repository repository = RepositoryLookup.getRepository(
                     repositoryId);
             if (repository == null) {
                 String msg = "Unknown repository: " + repositoryId;
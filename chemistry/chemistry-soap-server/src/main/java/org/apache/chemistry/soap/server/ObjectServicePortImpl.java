@@ -27,6 +27,7 @@ import javax.jws.WebService;
 import javax.xml.namespace.QName;
 import javax.xml.ws.Holder;
 import javax.xml.ws.WebServiceContext;
+import javax.xml.ws.soap.MTOM;
 
 import org.apache.chemistry.ContentStream;
 import org.apache.chemistry.Inclusion;
@@ -34,7 +35,6 @@ import org.apache.chemistry.ObjectEntry;
 import org.apache.chemistry.ObjectId;
 import org.apache.chemistry.RelationshipDirection;
 import org.apache.chemistry.Repository;
-import org.apache.chemistry.RepositoryManager;
 import org.apache.chemistry.SPI;
 import org.apache.chemistry.VersioningState;
 import org.apache.chemistry.ws.CmisAccessControlListType;
@@ -52,6 +52,7 @@ import org.apache.chemistry.ws.ObjectFactory;
 import org.apache.chemistry.ws.ObjectServicePort;
 import org.apache.chemistry.ws.DeleteTreeResponse.FailedToDelete;
 
+@MTOM
 @WebService(name = "ObjectServicePort", //
 targetNamespace = "http://docs.oasis-open.org/ns/cmis/ws/200908/", //
 serviceName = "ObjectService", //
@@ -73,8 +74,9 @@ public class ObjectServicePortImpl implements ObjectServicePort {
             Holder<CmisExtensionType> extension, Holder<String> objectId)
             throws CmisException {
         SPI spi = null;
+        ContentStream cs = null;
         try {
-            Repository repository = RepositoryManager.getInstance().getRepository(
+            Repository repository = RepositoryLookup.getRepository(
                     repositoryId);
             if (repository == null) {
                 String msg = "Unknown repository: " + repositoryId;
@@ -84,7 +86,7 @@ public class ObjectServicePortImpl implements ObjectServicePort {
             spi = repository.getSPI(params);
             Map<String, Serializable> props = ChemistryHelper.convert(
                     properties, repository);
-            ContentStream cs = ChemistryHelper.convert(contentStream);
+            cs = ChemistryHelper.convert(contentStream);
             VersioningState vs = ChemistryHelper.convert(versioningState);
 
             ObjectId id = spi.createDocument(props, spi.newObjectId(folderId),
@@ -94,6 +96,7 @@ public class ObjectServicePortImpl implements ObjectServicePort {
         } catch (Exception e) {
             throw ChemistryHelper.convert(e);
         } finally {
+            ChemistryHelper.dispose(cs);
             if (spi != null) {
                 spi.close();
             }
@@ -167,7 +170,7 @@ public class ObjectServicePortImpl implements ObjectServicePort {
             String objectId, CmisExtensionType extension) throws CmisException {
         SPI spi = null;
         try {
-            Repository repository = RepositoryManager.getInstance().getRepository(
+            Repository repository = RepositoryLookup.getRepository(
                     repositoryId);
             if (repository == null) {
                 String msg = "Unknown repository: " + repositoryId;
@@ -192,7 +195,7 @@ public class ObjectServicePortImpl implements ObjectServicePort {
             throws CmisException {
         SPI spi = null;
         try {
-            Repository repository = RepositoryManager.getInstance().getRepository(
+            Repository repository = RepositoryLookup.getRepository(
                     repositoryId);
             if (repository == null) {
                 String msg = "Unknown repository: " + repositoryId;
@@ -221,7 +224,7 @@ public class ObjectServicePortImpl implements ObjectServicePort {
             throws CmisException {
         SPI spi = null;
         try {
-            Repository repository = RepositoryManager.getInstance().getRepository(
+            Repository repository = RepositoryLookup.getRepository(
                     repositoryId);
             if (repository == null) {
                 String msg = "Unknown repository: " + repositoryId;
@@ -256,7 +259,7 @@ public class ObjectServicePortImpl implements ObjectServicePort {
             throws CmisException {
         SPI spi = null;
         try {
-            Repository repository = RepositoryManager.getInstance().getRepository(
+            Repository repository = RepositoryLookup.getRepository(
                     repositoryId);
             if (repository == null) {
                 String msg = "Unknown repository: " + repositoryId;
@@ -287,7 +290,7 @@ public class ObjectServicePortImpl implements ObjectServicePort {
             throws CmisException {
         SPI spi = null;
         try {
-            Repository repository = RepositoryManager.getInstance().getRepository(
+            Repository repository = RepositoryLookup.getRepository(
                     repositoryId);
             if (repository == null) {
                 String msg = "Unknown repository: " + repositoryId;
@@ -338,7 +341,7 @@ public class ObjectServicePortImpl implements ObjectServicePort {
             Holder<CmisExtensionType> extension) throws CmisException {
         SPI spi = null;
         try {
-            Repository repository = RepositoryManager.getInstance().getRepository(
+            Repository repository = RepositoryLookup.getRepository(
                     repositoryId);
             if (repository == null) {
                 String msg = "Unknown repository: " + repositoryId;
@@ -0,0 +1,66 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.chemistry.soap.server;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.chemistry.Repository;
+import org.apache.chemistry.RepositoryManager;
+import org.apache.chemistry.impl.metrics.InstrumentedRepository;
+
+/**
+ * Looks up the repositories served by the SOAP ports.
+ * <p>
+ * If the system property {@value #PROP_INSTRUMENT} is {@code true}, the
+ * repositories are wrapped to record metrics about each SPI call, exposed
+ * through JMX.
+ */
+public class RepositoryLookup {
+
+    public static final String PROP_INSTRUMENT = "org.apache.chemistry.soap.instrument";
+
+    private static final ConcurrentMap<Repository, InstrumentedRepository> instrumented = new ConcurrentHashMap<Repository, InstrumentedRepository>();
+
+    // Utility class
+    private RepositoryLookup() {
+    }
+
+    /**
+     * Gets a repository.
+     *
+     * @param repositoryId the repository id
+     * @return the repository, or {@code null} if not found
+     */
+    public static Repository getRepository(String repositoryId) {
+        Repository repository = RepositoryManager.getInstance().getRepository(
+                repositoryId);
+        if (repository == null || !Boolean.getBoolean(PROP_INSTRUMENT)) {
+            return repository;
+        }
+        InstrumentedRepository repo = instrumented.get(repository);
+        if (repo == null) {
+            repo = new InstrumentedRepository(repository);
+            InstrumentedRepository prev = instrumented.putIfAbsent(
+                    repository, repo);
+            if (prev == null) {
+                repo.registerMBeans();
+            } else {
+                repo = prev;
+            }
+        }
+        return repo;
+    }
+
+}
@@ -20,6 +20,8 @@ import java.math.BigInteger;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.jws.WebService;
 
@@ -49,6 +51,26 @@ public class RepositoryServicePortImpl implements RepositoryServicePort {
 
     private static final ObjectFactory factory = new ObjectFactory();
 
+    /**
+     * Repositories already looked up by this port, to avoid going through
+     * the synchronized repository manager on each call.
+     */
+    private final Map<String, Repository> repositories = new ConcurrentHashMap<String, Repository>();
+
+    protected Repository getRepository(String repositoryId)
+            throws CmisException {
+        Repository repo = repositories.get(repositoryId);
+        if (repo == null) {
+            repo = RepositoryLookup.getRepository(repositoryId);
+            if (repo == null) {
+                String msg = "Unknown repository: " + repositoryId;
+                throw new CmisException(msg, null, null);
+            }
+            repositories.put(repositoryId, repo);
+        }
+        return repo;
+    }
+
     public List<CmisRepositoryEntryType> getRepositories(
             CmisExtensionType extension) throws CmisException {
         try {
@@ -70,12 +92,7 @@ public class RepositoryServicePortImpl implements RepositoryServicePort {
     public CmisRepositoryInfoType getRepositoryInfo(String repositoryId,
             CmisExtensionType extension) throws CmisException {
         try {
-            Repository repo = RepositoryManager.getInstance().getRepository(
-                    repositoryId);
-            if (repo == null) {
-                String msg = "Unknown repository: " + repositoryId;
-                throw new CmisException(msg, null, null);
-            }
+            Repository repo = getRepository(repositoryId);
             RepositoryInfo info = repo.getInfo();
             return ChemistryHelper.convert(info);
         } catch (Exception e) {
@@ -86,14 +103,9 @@ public class RepositoryServicePortImpl implements RepositoryServicePort {
     public CmisTypeDefinitionType getTypeDefinition(String repositoryId,
             String typeId, CmisExtensionType extension) throws CmisException {
         try {
-            Repository repo = RepositoryManager.getInstance().getRepository(
-                    repositoryId);
-            if (repo == null) {
-                String msg = "Unknown repository: " + repositoryId;
-                throw new CmisException(msg, null, null);
-            }
-            Type type = repo.getType(typeId);
-            return ChemistryHelper.convert(type);
+            Repository repo = getRepository(repositoryId);
+            return TypeDefinitionCache.getInstance(repo).getTypeDefinition(
+                    typeId);
         } catch (Exception e) {
             throw ChemistryHelper.convert(e);
         }
@@ -104,18 +116,14 @@ public class RepositoryServicePortImpl implements RepositoryServicePort {
             BigInteger maxItems, BigInteger skipCount,
             CmisExtensionType extension) throws CmisException {
         try {
-            Repository repo = RepositoryManager.getInstance().getRepository(
-                    repositoryId);
-            if (repo == null) {
-                String msg = "Unknown repository: " + repositoryId;
-                throw new CmisException(msg, null, null);
-            }
+            Repository repo = getRepository(repositoryId);
             boolean ipd = Boolean.TRUE.equals(includePropertyDefinitions);
             int mi = maxItems == null ? -1 : maxItems.intValue();
             int sc = skipCount == null ? -1 : skipCount.intValue();
             Paging paging = new Paging(mi, sc);
             ListPage<Type> types = repo.getTypeChildren(typeId, ipd, paging);
-            return ChemistryHelper.convert(types);
+            return TypeDefinitionCache.getInstance(repo).getTypeList(types,
+                    ipd);
         } catch (Exception e) {
             throw ChemistryHelper.convert(e);
         }
@@ -126,16 +134,12 @@ public class RepositoryServicePortImpl implements RepositoryServicePort {
             Boolean includePropertyDefinitions, CmisExtensionType extension)
             throws CmisException {
         try {
-            Repository repo = RepositoryManager.getInstance().getRepository(
-                    repositoryId);
-            if (repo == null) {
-                String msg = "Unknown repository: " + repositoryId;
-                throw new CmisException(msg, null, null);
-            }
+            Repository repo = getRepository(repositoryId);
             boolean ipd = Boolean.TRUE.equals(includePropertyDefinitions);
             int d = depth == null ? -1 : depth.intValue();
             Collection<Type> ctl = repo.getTypeDescendants(typeId, d, ipd);
-            return ChemistryHelper.convert(ctl);
+            return TypeDefinitionCache.getInstance(repo).getTypeContainers(
+                    ctl, ipd);
         } catch (Exception e) {
             throw ChemistryHelper.convert(e);
         }
@@ -0,0 +1,180 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.chemistry.soap.server;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.apache.chemistry.ContentStream;
+
+/**
+ * A {@link ContentStream} reading directly from an incoming attachment
+ * stream, without buffering it in memory.
+ * <p>
+ * The stream can be fetched only once. If the length is asked for and was
+ * not provided by the client, the stream is first spilled to a temporary
+ * file, which is deleted when the returned stream is closed, or at the
+ * latest by {@link #dispose} at the end of the request.
+ */
+public class StreamingContentStream implements ContentStream {
+
+    private static final int BUFFER_SIZE = 8192;
+
+    protected final String mimeType;
+
+    protected final String filename;
+
+    protected InputStream stream;
+
+    protected long length;
+
+    protected File file;
+
+    /**
+     * The stream on the temporary file, once returned.
+     */
+    protected InputStream fileStream;
+
+    /**
+     * Constructs a streaming content stream.
+     *
+     * @param stream the incoming stream
+     * @param length the length, or {@code -1} if unknown
+     * @param mimeType the MIME type
+     * @param filename the file name
+     */
+    public StreamingContentStream(InputStream stream, long length,
+            String mimeType, String filename) {
+        this.stream = stream;
+        this.length = length;
+        this.mimeType = mimeType;
+        this.filename = filename;
+    }
+
+    public String getMimeType() {
+        return mimeType;
+    }
+
+    public String getFileName() {
+        return filename;
+    }
+
+    public synchronized long getLength() {
+        if (length < 0) {
+            try {
+                spill();
+            } catch (IOException e) {
+                throw new RuntimeException("Could not buffer the stream: "
+                        + e.getMessage(), e);
+            }
+        }
+        return length;
+    }
+
+    public synchronized InputStream getStream() throws IOException {
+        if (file != null) {
+            fileStream = new TempFileInputStream(file);
+            file = null;
+            return fileStream;
+        }
+        if (stream == null) {
+            throw new IOException("Stream already read");
+        }
+        InputStream in = stream;
+        stream = null;
+        return in;
+    }
+
+    /**
+     * Copies the stream to a temporary file to compute its length.
+     */
+    protected void spill() throws IOException {
+        if (stream == null) {
+            throw new IOException("Stream already read");
+        }
+        File tmp = File.createTempFile("chemistry-soap-", ".bin");
+        long n = 0;
+        boolean done = false;
+        OutputStream out = new FileOutputStream(tmp);
+        try {
+            byte[] buf = new byte[BUFFER_SIZE];
+            int r;
+            while ((r = stream.read(buf)) != -1) {
+                out.write(buf, 0, r);
+                n += r;
+            }
+            done = true;
+        } finally {
+            out.close();
+            stream.close();
+            stream = null;
+            if (!done) {
+                tmp.delete();
+            }
+        }
+        file = tmp;
+        length = n;
+    }
+
+    /**
+     * Releases the incoming stream and the temporary file, whether or not
+     * the stream was read or closed by the caller.
+     */
+    public synchronized void dispose() {
+        try {
+            if (stream != null) {
+                stream.close();
+            }
+            if (fileStream != null) {
+                fileStream.close();
+            }
+        } catch (IOException e) {
+            // ignore, nothing more can be done
+        } finally {
+            stream = null;
+            fileStream = null;
+            if (file != null) {
+                file.delete();
+                file = null;
+            }
+        }
+    }
+
+    /**
+     * Input stream on a temporary file that deletes it when closed.
+     */
+    protected static class TempFileInputStream extends FileInputStream {
+
+        protected final File file;
+
+        public TempFileInputStream(File file) throws IOException {
+            super(file);
+            this.file = file;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                file.delete();
+            }
+        }
+    }
+
+}
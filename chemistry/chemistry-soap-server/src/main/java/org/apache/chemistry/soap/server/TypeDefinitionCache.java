@@ -0,0 +1,184 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.chemistry.soap.server;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.chemistry.ListPage;
+import org.apache.chemistry.Repository;
+import org.apache.chemistry.Type;
+import org.apache.chemistry.impl.base.BaseRepository;
+import org.apache.chemistry.impl.base.DelegatingRepository;
+import org.apache.chemistry.ws.CmisTypeContainer;
+import org.apache.chemistry.ws.CmisTypeDefinitionListType;
+import org.apache.chemistry.ws.CmisTypeDefinitionType;
+import org.apache.chemistry.ws.ObjectFactory;
+
+/**
+ * Cache of the JAXB type definitions of a repository.
+ * <p>
+ * Converted definitions, with and without property definitions, are kept as
+ * long as the type system version of the repository doesn't change. The
+ * cached JAXB objects are shared between responses and must not be
+ * modified. Repositories that don't expose a type system version are not
+ * cached.
+ */
+public class TypeDefinitionCache {
+
+    private static final ObjectFactory factory = new ObjectFactory();
+
+    private static final ConcurrentMap<String, TypeDefinitionCache> caches = new ConcurrentHashMap<String, TypeDefinitionCache>();
+
+    protected final Repository repository;
+
+    /** The repository providing the types version, or {@code null}. */
+    protected final BaseRepository baseRepository;
+
+    protected long version;
+
+    protected final Map<String, CmisTypeDefinitionType> withProperties = new ConcurrentHashMap<String, CmisTypeDefinitionType>();
+
+    protected final Map<String, CmisTypeDefinitionType> withoutProperties = new ConcurrentHashMap<String, CmisTypeDefinitionType>();
+
+    protected TypeDefinitionCache(Repository repository) {
+        this.repository = repository;
+        Repository base = DelegatingRepository.unwrap(repository);
+        baseRepository = base instanceof BaseRepository ? (BaseRepository) base
+                : null;
+        version = getVersion();
+    }
+
+    /**
+     * Gets the type definition cache for a repository.
+     */
+    public static TypeDefinitionCache getInstance(Repository repository) {
+        String id = repository.getId();
+        TypeDefinitionCache cache = caches.get(id);
+        if (cache == null || cache.repository != repository) {
+            cache = new TypeDefinitionCache(repository);
+            caches.put(id, cache);
+        }
+        return cache;
+    }
+
+    protected long getVersion() {
+        return baseRepository == null ? -1
+                : baseRepository.getTypesVersion();
+    }
+
+    /**
+     * Clears the cache if the type system changed since it was filled.
+     */
+    protected synchronized void checkVersion() {
+        long v = getVersion();
+        if (v != version) {
+            withProperties.clear();
+            withoutProperties.clear();
+            version = v;
+        }
+    }
+
+    /**
+     * Gets the JAXB definition of a type.
+     *
+     * @param type the type
+     * @param includePropertyDefinitions {@code true} to include the property
+     *            definitions
+     * @return the JAXB type definition
+     */
+    public CmisTypeDefinitionType get(Type type,
+            boolean includePropertyDefinitions) {
+        if (baseRepository == null) {
+            return ChemistryHelper.convert(type, includePropertyDefinitions);
+        }
+        Map<String, CmisTypeDefinitionType> map = includePropertyDefinitions ? withProperties
+                : withoutProperties;
+        CmisTypeDefinitionType t = map.get(type.getId());
+        if (t == null) {
+            t = ChemistryHelper.convert(type, includePropertyDefinitions);
+            map.put(type.getId(), t);
+        }
+        return t;
+    }
+
+    /**
+     * Gets the JAXB definition of a type.
+     *
+     * @param typeId the type ID
+     * @return the JAXB type definition, with property definitions, or
+     *         {@code null} if the type doesn't exist
+     */
+    public CmisTypeDefinitionType getTypeDefinition(String typeId) {
+        checkVersion();
+        Type type = repository.getType(typeId);
+        return type == null ? null : get(type, true);
+    }
+
+    /**
+     * Converts a page of types.
+     */
+    public CmisTypeDefinitionListType getTypeList(ListPage<Type> types,
+            boolean includePropertyDefinitions) {
+        if (types == null) {
+            return null;
+        }
+        checkVersion();
+        CmisTypeDefinitionListType tl = factory.createCmisTypeDefinitionListType();
+        for (Type type : types) {
+            tl.getTypes().add(get(type, includePropertyDefinitions));
+        }
+        tl.setHasMoreItems(types.getHasMoreItems());
+        tl.setNumItems(BigInteger.valueOf(types.getNumItems()));
+        return tl;
+    }
+
+    /**
+     * Converts a collection of types into a forest of type containers,
+     * following the parent IDs of the types.
+     */
+    public List<CmisTypeContainer> getTypeContainers(Collection<Type> types,
+            boolean includePropertyDefinitions) {
+        if (types == null) {
+            return null;
+        }
+        checkVersion();
+        Map<String, CmisTypeContainer> containers = new HashMap<String, CmisTypeContainer>();
+        for (Type type : types) {
+            CmisTypeContainer container = factory.createCmisTypeContainer();
+            container.setType(get(type, includePropertyDefinitions));
+            containers.put(type.getId(), container);
+        }
+        List<CmisTypeContainer> roots = new ArrayList<CmisTypeContainer>();
+        for (Type type : types) {
+            CmisTypeContainer container = containers.get(type.getId());
+            String parentId = type.getParentId();
+            CmisTypeContainer parent = parentId == null ? null
+                    : containers.get(parentId);
+            if (parent == null) {
+                roots.add(container);
+            } else {
+                parent.getChildren().add(container);
+            }
+        }
+        return roots;
+    }
+
+}
@@ -22,6 +22,7 @@ import javax.annotation.Resource;
 import javax.jws.WebService;
 import javax.xml.ws.Holder;
 import javax.xml.ws.WebServiceContext;
+import javax.xml.ws.soap.MTOM;
 
 import org.apache.chemistry.ws.CmisAccessControlListType;
 import org.apache.chemistry.ws.CmisContentStreamType;
@@ -33,6 +34,7 @@ import org.apache.chemistry.ws.EnumIncludeRelationships;
 import org.apache.chemistry.ws.ObjectFactory;
 import org.apache.chemistry.ws.VersioningServicePort;
 
+@MTOM
 @WebService(name = "VersioningServicePort", //
 targetNamespace = "http://docs.oasis-open.org/ns/cmis/ws/200908/", //
 serviceName = "VersioningService", //
@@ -0,0 +1,94 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.chemistry.soap.server;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+
+import junit.framework.TestCase;
+
+import org.apache.chemistry.soap.server.StreamingContentStream.TempFileInputStream;
+
+public class TestStreamingContentStream extends TestCase {
+
+    private static final byte[] CONTENT = "Hello, streaming world".getBytes();
+
+    protected static byte[] read(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buf = new byte[5];
+        int n;
+        while ((n = in.read(buf)) != -1) {
+            out.write(buf, 0, n);
+        }
+        return out.toByteArray();
+    }
+
+    public void testKnownLength() throws Exception {
+        InputStream stream = new ByteArrayInputStream(CONTENT);
+        StreamingContentStream cs = new StreamingContentStream(stream,
+                CONTENT.length, "text/plain", "hello.txt");
+        assertEquals(CONTENT.length, cs.getLength());
+        assertNull(cs.file);
+        InputStream in = cs.getStream();
+        assertSame(stream, in);
+        try {
+            cs.getStream();
+            fail("stream can be fetched only once");
+        } catch (IOException e) {
+            // ok
+        }
+    }
+
+    public void testSpillRoundTrip() throws Exception {
+        StreamingContentStream cs = new StreamingContentStream(
+                new ByteArrayInputStream(CONTENT), -1, "text/plain",
+                "hello.txt");
+        assertEquals(CONTENT.length, cs.getLength());
+        File file = cs.file;
+        assertTrue(file.exists());
+        InputStream in = cs.getStream();
+        assertTrue(in instanceof TempFileInputStream);
+        assertEquals(new String(CONTENT), new String(read(in)));
+        in.close();
+        assertFalse(file.exists());
+        cs.dispose();
+    }
+
+    public void testDisposeUnread() throws Exception {
+        StreamingContentStream cs = new StreamingContentStream(
+                new ByteArrayInputStream(CONTENT), -1, "text/plain",
+                "hello.txt");
+        cs.getLength();
+        File file = cs.file;
+        assertTrue(file.exists());
+        cs.dispose();
+        assertFalse(file.exists());
+    }
+
+    public void testDisposeUnclosed() throws Exception {
+        StreamingContentStream cs = new StreamingContentStream(
+                new ByteArrayInputStream(CONTENT), -1, "text/plain",
+                "hello.txt");
+        cs.getLength();
+        File file = cs.file;
+        InputStream in = cs.getStream();
+        assertEquals(CONTENT[0], in.read());
+        cs.dispose();
+        assertFalse(file.exists());
+    }
+
+}
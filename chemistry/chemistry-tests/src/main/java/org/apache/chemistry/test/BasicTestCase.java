@@ -19,21 +19,25 @@ package org.apache.chemistry.test;
 
 import java.io.InputStream;
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TimeZone;
+import java.util.concurrent.Future;
 
 import javax.xml.namespace.QName;
 
 import junit.framework.TestCase;
 
 import org.apache.chemistry.AllowableAction;
+import org.apache.chemistry.AsyncSPI;
 import org.apache.chemistry.BaseType;
 import org.apache.chemistry.CMISObject;
 import org.apache.chemistry.CMISRuntimeException;
@@ -60,6 +64,7 @@ import org.apache.chemistry.SPI;
 import org.apache.chemistry.Tree;
 import org.apache.chemistry.Type;
 import org.apache.chemistry.atompub.client.APPObjectEntry;
+import org.apache.chemistry.impl.async.ExecutorAsyncSPI;
 import org.apache.chemistry.impl.simple.SimpleContentStream;
 import org.apache.chemistry.impl.simple.SimpleObjectId;
 import org.apache.chemistry.util.GregorianCalendar;
@@ -104,6 +109,8 @@ public abstract class BasicTestCase extends TestCase {
 
     public boolean expectedCapabilityHasUnfiling = false;
 
+    public CapabilityJoin expectedCapabilityJoin = CapabilityJoin.INNER_AND_OUTER;
+
     public String expectedRootTypeId = "chemistry:root"; // not in spec
 
     /**
@@ -185,7 +192,7 @@ public abstract class BasicTestCase extends TestCase {
         assertEquals(CapabilityRendition.NONE, cap.getRenditionCapability());
         assertEquals(expectedCapabilityHasUnfiling, cap.hasUnfiling());
         assertFalse(cap.hasVersionSpecificFiling());
-        assertEquals(CapabilityJoin.NONE, cap.getJoinCapability());
+        assertEquals(expectedCapabilityJoin, cap.getJoinCapability());
     }
 
     public void testBasic() {
@@ -639,7 +646,8 @@ public abstract class BasicTestCase extends TestCase {
 
     public void testDeleteTreeSPI() throws Exception {
         ObjectEntry fold2 = spi.getObjectByPath("/folder 1/folder 2", null);
-        spi.deleteTree(fold2, null, true);
+        Collection<ObjectId> failed = spi.deleteTree(fold2, null, true);
+        assertEquals(0, failed.size());
         ObjectEntry oe = spi.getObjectByPath("/folder 1/doc 1", null);
         assertNotNull(oe);
         oe = spi.getObjectByPath("/folder 1/folder 2", null);
@@ -737,6 +745,79 @@ public abstract class BasicTestCase extends TestCase {
         assertEquals("new descr", ob.getValue("description"));
     }
 
+    public void testBatchSPI() throws Exception {
+        ObjectEntry doc1 = spi.getObjectByPath("/folder 1/doc 1", null);
+        ObjectEntry doc2 = spi.getObjectByPath("/folder 1/folder 2/doc 2",
+                null);
+        List<ObjectEntry> entries = spi.getObjects(Arrays.asList(doc1,
+                spi.newObjectId("nosuchid"), doc2), null);
+        assertEquals(3, entries.size());
+        assertEquals(doc1.getId(), entries.get(0).getId());
+        assertNull(entries.get(1));
+        assertEquals(doc2.getId(), entries.get(2).getId());
+        assertEquals("doc 2 title", entries.get(2).getValue("title"));
+
+        // update both docs at once
+        Map<ObjectId, Map<String, Serializable>> updates = new LinkedHashMap<ObjectId, Map<String, Serializable>>();
+        Map<String, Serializable> properties = new HashMap<String, Serializable>();
+        properties.put("description", "new descr");
+        updates.put(spi.newObjectId(doc1.getId()), properties);
+        properties = new HashMap<String, Serializable>();
+        properties.put("title", "new title");
+        updates.put(spi.newObjectId(doc2.getId()), properties);
+        List<ObjectId> ids = spi.updateProperties(updates);
+        assertEquals(2, ids.size());
+        entries = spi.getObjects(ids, null);
+        assertEquals("doc 1 title", entries.get(0).getValue("title"));
+        assertEquals("new descr", entries.get(0).getValue("description"));
+        assertEquals("new title", entries.get(1).getValue("title"));
+        assertEquals("The doc 2 descr", entries.get(1).getValue("description"));
+
+        // delete a folder after its children
+        ObjectEntry folder2 = spi.getObjectByPath("/folder 1/folder 2", null);
+        List<ObjectId> delete = new ArrayList<ObjectId>();
+        for (ObjectEntry child : spi.getChildren(folder2, null, null, null)) {
+            delete.add(spi.newObjectId(child.getId()));
+        }
+        delete.add(spi.newObjectId(folder2.getId()));
+        spi.deleteObjects(delete, false);
+        assertNull(spi.getObjectByPath("/folder 1/folder 2", null));
+        assertNotNull(spi.getObjectByPath("/folder 1/doc 1", null));
+    }
+
+    public void testAsyncSPI() throws Exception {
+        AsyncSPI async = new ExecutorAsyncSPI(repository, null, 3, 10);
+        try {
+            List<String> paths = Arrays.asList("/folder 1", "/folder 1/doc 1",
+                    "/folder 1/folder 2", "/folder 1/folder 2/doc 2",
+                    "/folder 1/folder 2/doc 3", "/folder 1/nosuchdoc");
+            List<Future<ObjectEntry>> futures = new ArrayList<Future<ObjectEntry>>();
+            for (String path : paths) {
+                futures.add(async.getObjectByPath(path, null));
+            }
+            for (int i = 0; i < paths.size() - 1; i++) {
+                ObjectEntry entry = futures.get(i).get();
+                assertNotNull(paths.get(i), entry);
+                assertEquals(spi.getObjectByPath(paths.get(i), null).getId(),
+                        entry.getId());
+            }
+            assertNull(futures.get(paths.size() - 1).get());
+            ObjectEntry folder2 = futures.get(2).get();
+            assertEquals(3, async.getChildren(folder2, null, null, null).get().size());
+            // the content stays readable once its connection is reused
+            ContentStream cs = async.getContentStream(futures.get(4).get(),
+                    null).get();
+            for (int i = 0; i < 3; i++) {
+                async.getChildren(folder2, null, null, null).get();
+            }
+            assertEquals("doc3.txt", cs.getFileName());
+            assertEquals(BasicHelper.TEST_FILE_CONTENT, new String(
+                    IOUtils.toByteArray(cs.getStream()), "UTF-8"));
+        } finally {
+            async.close();
+        }
+    }
+
     public void testUpdate() throws Exception {
         // a non-text content type (-> base64)
         String string = "A file...\n";
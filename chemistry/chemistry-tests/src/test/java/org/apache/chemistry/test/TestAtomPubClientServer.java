@@ -16,17 +16,58 @@
  */
 package org.apache.chemistry.test;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
 import javax.servlet.Servlet;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
 
+import org.apache.chemistry.CMISRuntimeException;
+import org.apache.chemistry.ContentStream;
+import org.apache.chemistry.Folder;
+import org.apache.chemistry.ObjectEntry;
+import org.apache.chemistry.ObjectId;
+import org.apache.chemistry.Property;
 import org.apache.chemistry.Repository;
+import org.apache.chemistry.atompub.client.APPAsyncSPI;
+import org.apache.chemistry.atompub.client.APPRepository;
 import org.apache.chemistry.atompub.client.APPRepositoryService;
+import org.apache.chemistry.atompub.client.BulkExporter;
+import org.apache.chemistry.atompub.client.BulkImporter;
+import org.apache.chemistry.atompub.client.BulkItem;
+import org.apache.chemistry.atompub.client.BulkListener;
+import org.apache.chemistry.atompub.client.BulkResult;
+import org.apache.chemistry.atompub.client.transport.AbortHandle;
+import org.apache.chemistry.atompub.client.transport.TransportMetrics;
+import org.apache.chemistry.atompub.server.servlet.CMISJSONServlet;
 import org.apache.chemistry.atompub.server.servlet.CMISServlet;
+import org.apache.chemistry.impl.simple.SimpleContentStream;
+import org.apache.commons.io.FileUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.mortbay.jetty.Connector;
+import org.mortbay.jetty.Handler;
 import org.mortbay.jetty.Server;
 import org.mortbay.jetty.bio.SocketConnector;
 import org.mortbay.jetty.servlet.Context;
+import org.mortbay.jetty.servlet.FilterHolder;
 import org.mortbay.jetty.servlet.ServletHolder;
 
 /**
@@ -44,8 +85,12 @@ public class TestAtomPubClientServer extends BasicTestCase {
 
     public static final String CMIS_SERVICE = "/repository";
 
+    public static final String JSON_PATH = "/json";
+
     public Server server;
 
+    public HoldingFilter holdingFilter;
+
     public String startServer() throws Exception {
         Repository repository = BasicHelper.makeSimpleRepository(null);
         // populate repository from the server side
@@ -60,6 +105,11 @@ public class TestAtomPubClientServer extends BasicTestCase {
         ServletHolder servletHolder = new ServletHolder(servlet);
         Context context = new Context(server, SERVLET_PATH, Context.SESSIONS);
         context.addServlet(servletHolder, "/*");
+        context.addServlet(new ServletHolder(new CMISJSONServlet(repository)),
+                JSON_PATH + "/*");
+        holdingFilter = new HoldingFilter();
+        context.addFilter(new FilterHolder(holdingFilter), "/*",
+                Handler.DEFAULT);
         server.start();
         String serverUrl = "http://" + HOST + ':' + PORT + SERVLET_PATH
                 + CMIS_SERVICE;
@@ -98,4 +148,172 @@ public class TestAtomPubClientServer extends BasicTestCase {
         stopServer();
     }
 
+    public void testTransportMetrics() throws Exception {
+        conn.getRootFolder().getChildren();
+        TransportMetrics metrics = ((APPRepository) repository).getTransport(
+                null).getMetrics();
+        assertTrue(metrics.getRequestCount() > 0);
+        // all connections released to the pool
+        assertEquals(0, metrics.getInFlight());
+        assertTrue(metrics.getIdle() > 0);
+    }
+
+    public void testBatchUpdateDuplicateId() throws Exception {
+        ObjectEntry doc1 = spi.getObjectByPath("/folder 1/doc 1", null);
+        // an entry and a plain id do not compare equal, both are sent
+        Map<ObjectId, Map<String, Serializable>> updates = new LinkedHashMap<ObjectId, Map<String, Serializable>>();
+        Map<String, Serializable> properties = new HashMap<String, Serializable>();
+        properties.put("title", "first title");
+        updates.put(doc1, properties);
+        properties = new HashMap<String, Serializable>();
+        properties.put("title", "second title");
+        updates.put(spi.newObjectId(doc1.getId()), properties);
+        assertEquals(2, updates.size());
+        try {
+            spi.updateProperties(updates);
+            fail("duplicate id must be rejected");
+        } catch (CMISRuntimeException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("400"));
+        }
+        ObjectEntry entry = spi.getProperties(doc1, null);
+        assertEquals("doc 1 title", entry.getValue("title"));
+    }
+
+    public void testAsyncAbort() throws Exception {
+        APPAsyncSPI async = new APPAsyncSPI((APPRepository) repository, null,
+                2, 10);
+        try {
+            ObjectEntry folder1 = async.getObjectByPath("/folder 1", null).get();
+            assertEquals("folder 1", folder1.getValue(Property.NAME));
+        } finally {
+            async.close();
+        }
+        // requests made after an abort fail right away
+        AbortHandle abortHandle = new AbortHandle();
+        abortHandle.abort();
+        AbortHandle.setCurrent(abortHandle);
+        try {
+            spi.getObjectByPath("/folder 1", null);
+            fail();
+        } catch (CMISRuntimeException e) {
+            assertTrue(e.getCause() instanceof InterruptedIOException);
+        } finally {
+            AbortHandle.setCurrent(null);
+        }
+        assertNotNull(spi.getObjectByPath("/folder 1", null));
+    }
+
+    public void testAsyncCancel() throws Exception {
+        // a single thread, that the blocked request must give back
+        APPAsyncSPI async = new APPAsyncSPI((APPRepository) repository, null,
+                1, 10);
+        CountDownLatch resume = holdingFilter.hold();
+        try {
+            Future<ObjectEntry> future = async.getObjectByPath("/folder 1",
+                    null);
+            assertTrue(holdingFilter.entered.await(10, TimeUnit.SECONDS));
+            assertTrue(future.cancel(true));
+            try {
+                future.get();
+                fail();
+            } catch (CancellationException e) {
+                // ok
+            }
+            holdingFilter.release();
+            // the server still holds the first request
+            ObjectEntry folder1 = async.getObjectByPath("/folder 1", null).get(
+                    10, TimeUnit.SECONDS);
+            assertEquals("folder 1", folder1.getValue(Property.NAME));
+        } finally {
+            resume.countDown();
+            async.close();
+        }
+    }
+
+    public void testBulkImportExport() throws Exception {
+        APPRepository repo = (APPRepository) repository;
+        Folder root = conn.getRootFolder();
+        List<BulkItem> items = new ArrayList<BulkItem>();
+        for (int i = 0; i < 20; i++) {
+            Map<String, Serializable> props = new HashMap<String, Serializable>();
+            props.put(Property.TYPE_ID, "doc");
+            props.put(Property.NAME, "bulk" + i);
+            ContentStream cs = new SimpleContentStream(
+                    ("content " + i).getBytes("UTF-8"), "text/plain", "bulk"
+                            + i + ".txt");
+            items.add(new BulkItem(props, cs, root));
+        }
+        final List<BulkResult<BulkItem, ObjectId>> results = Collections.synchronizedList(new ArrayList<BulkResult<BulkItem, ObjectId>>());
+        BulkImporter importer = new BulkImporter(repo, null, 3, 5);
+        int failures = importer.run(items.iterator(),
+                new BulkListener<BulkItem, ObjectId>() {
+                    public void done(BulkResult<BulkItem, ObjectId> result) {
+                        results.add(result);
+                    }
+                });
+        assertEquals(0, failures);
+        assertEquals(20, results.size());
+        for (BulkResult<BulkItem, ObjectId> result : results) {
+            assertTrue(result.isSuccess());
+            assertEquals(1, result.attempts);
+            assertNotNull(spi.getProperties(result.result, null));
+        }
+
+        File dir = new File("target/test/bulk-export");
+        FileUtils.deleteDirectory(dir);
+        BulkExporter exporter = new BulkExporter(repo, null, 3, 5);
+        failures = exporter.export(root, dir, null);
+        assertEquals(0, failures);
+        assertEquals("content 7", FileUtils.readFileToString(new File(dir,
+                "bulk7.txt"), "UTF-8"));
+        assertEquals(BasicHelper.TEST_FILE_CONTENT,
+                FileUtils.readFileToString(new File(dir,
+                        "folder 1/folder 2/doc3.txt"), "UTF-8"));
+    }
+
+    /**
+     * Holds requests after {@link #hold} until the returned latch is
+     * counted down.
+     */
+    public static class HoldingFilter implements Filter {
+
+        protected volatile CountDownLatch resume;
+
+        protected volatile CountDownLatch entered;
+
+        public CountDownLatch hold() {
+            entered = new CountDownLatch(1);
+            resume = new CountDownLatch(1);
+            return resume;
+        }
+
+        /**
+         * Lets later requests through, without resuming held ones.
+         */
+        public void release() {
+            resume = null;
+        }
+
+        public void init(FilterConfig config) {
+        }
+
+        public void doFilter(ServletRequest request, ServletResponse response,
+                FilterChain chain) throws IOException, ServletException {
+            CountDownLatch latch = resume;
+            if (latch != null) {
+                entered.countDown();
+                try {
+                    latch.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new ServletException(e);
+                }
+            }
+            chain.doFilter(request, response);
+        }
+
+        public void destroy() {
+        }
+    }
+
 }
@@ -0,0 +1,85 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.chemistry.test;
+
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Serializable;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.chemistry.Folder;
+import org.apache.chemistry.Property;
+import org.apache.chemistry.atompub.JSONCMIS;
+import org.apache.chemistry.atompub.client.APPConnection;
+import org.apache.chemistry.json.JSONParser;
+
+/**
+ * Tests the AtomPub client reading through the JSON binding.
+ */
+public class TestAtomPubClientServerJSON extends TestAtomPubClientServer {
+
+    public static final String JSON_URL = "http://" + HOST + ':' + PORT
+            + SERVLET_PATH + JSON_PATH;
+
+    @Override
+    protected void openConn() {
+        Map<String, Serializable> params = new HashMap<String, Serializable>();
+        params.put(APPConnection.PARAM_JSON_URL, JSON_URL);
+        conn = repository.getConnection(params);
+        spi = conn.getSPI();
+    }
+
+    @Override
+    public void testTransportMetrics() {
+        // the connection doesn't use the default transport
+    }
+
+    @SuppressWarnings("unchecked")
+    protected static Map<String, Object> getJSON(String path)
+            throws Exception {
+        InputStream in = new URL(JSON_URL + path).openStream();
+        try {
+            return (Map<String, Object>) new JSONParser(new InputStreamReader(
+                    in, "UTF-8")).parse();
+        } finally {
+            in.close();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public void testJSONResources() throws Exception {
+        Folder root = conn.getRootFolder();
+        Map<String, Object> map = getJSON("/object/" + root.getId());
+        Map<String, Object> props = (Map<String, Object>) map.get(JSONCMIS.PROPERTIES);
+        assertEquals(root.getId(), props.get(Property.ID));
+
+        String folder1 = spi.getObjectByPath("/folder 1", null).getId();
+        map = getJSON("/children/" + folder1 + "?maxItems=1");
+        assertEquals(1, ((List<Object>) map.get(JSONCMIS.OBJECTS)).size());
+        assertEquals(Boolean.TRUE, map.get(JSONCMIS.HAS_MORE_ITEMS));
+
+        map = getJSON("/query?q=SELECT+*+FROM+doc");
+        assertFalse(((List<Object>) map.get(JSONCMIS.OBJECTS)).isEmpty());
+
+        map = getJSON("/type/doc");
+        assertEquals("doc", map.get(JSONCMIS.ID));
+        assertFalse(((List<Object>) map.get(JSONCMIS.PROPERTY_DEFINITIONS)).isEmpty());
+        map = getJSON("/typechildren");
+        assertFalse(((List<Object>) map.get(JSONCMIS.TYPES)).isEmpty());
+    }
+
+}
@@ -0,0 +1,158 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.chemistry.test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.Map;
+
+import org.apache.chemistry.Repository;
+import org.apache.chemistry.atompub.client.APPRepository;
+import org.apache.chemistry.atompub.client.APPRepositoryService;
+import org.apache.chemistry.atompub.client.transport.HttpRequest;
+import org.apache.chemistry.atompub.client.transport.HttpResponse;
+import org.apache.chemistry.atompub.client.transport.HttpTransport;
+import org.apache.chemistry.atompub.client.transport.RequestBody;
+import org.apache.chemistry.atompub.client.transport.TransportMetrics;
+import org.apache.chemistry.atompub.client.transport.URLConnectionHttpTransport;
+
+/**
+ * Tests the AtomPub client with the AtomPub server, using the JDK HTTP
+ * transport.
+ */
+public class TestAtomPubClientServerURLConnection extends
+        TestAtomPubClientServer {
+
+    @Override
+    public Repository makeRepository() throws Exception {
+        String serverUrl = startServer();
+        APPRepositoryService rs = new APPRepositoryService(serverUrl, null) {
+            @Override
+            protected HttpTransport newTransport(
+                    Map<String, Serializable> params) {
+                return new URLConnectionHttpTransport(params);
+            }
+        };
+        return rs.getDefaultRepository();
+    }
+
+    public void testTransportMetrics() throws Exception {
+        conn.getRootFolder().getChildren();
+        TransportMetrics metrics = ((APPRepository) repository).getTransport(
+                null).getMetrics();
+        assertTrue(metrics.getRequestCount() > 0);
+        assertEquals(metrics.getRequestCount(), metrics.getWaitCount());
+        // all connections released
+        assertEquals(0, metrics.getInFlight());
+    }
+
+    public void testRetryClosedConnection() throws Exception {
+        final ServerSocket serverSocket = new ServerSocket(0);
+        Thread thread = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    // closes the connections without answering, as a server
+                    // closing kept alive connections, except the third
+                    for (int i = 0; i < 5; i++) {
+                        Socket socket = serverSocket.accept();
+                        BufferedReader reader = new BufferedReader(
+                                new InputStreamReader(socket.getInputStream(),
+                                        "US-ASCII"));
+                        String line;
+                        do {
+                            line = reader.readLine();
+                        } while (line != null && line.length() != 0);
+                        reader.read(new char[4]);
+                        if (i == 2) {
+                            // answers the retry
+                            String status = "HTTP/1.1 204 No Content\r\n"
+                                    + "Connection: close\r\n\r\n";
+                            OutputStream out = socket.getOutputStream();
+                            out.write(status.getBytes("US-ASCII"));
+                            out.flush();
+                        }
+                        socket.close();
+                    }
+                } catch (IOException e) {
+                    // closed
+                }
+            }
+        };
+        thread.start();
+        HttpTransport transport = new URLConnectionHttpTransport(null);
+        String uri = "http://localhost:" + serverSocket.getLocalPort() + "/";
+        try {
+            HttpRequest request = new HttpRequest(HttpRequest.PUT, uri);
+            request.body = new TestBody(true);
+            HttpResponse response = transport.execute(request);
+            assertEquals(204, response.getStatus());
+            response.release();
+            request = new HttpRequest(HttpRequest.PUT, uri);
+            request.body = new TestBody(false);
+            try {
+                transport.execute(request);
+                fail("body is not repeatable");
+            } catch (SocketException e) {
+                // ok
+            }
+            // the server may have processed the request
+            request = new HttpRequest(HttpRequest.POST, uri);
+            request.body = new TestBody(true);
+            try {
+                transport.execute(request);
+                fail("POST is not idempotent");
+            } catch (SocketException e) {
+                // ok
+            }
+            assertEquals(0, transport.getMetrics().getInFlight());
+        } finally {
+            serverSocket.close();
+            thread.join();
+            transport.shutdown();
+        }
+    }
+
+    protected static class TestBody implements RequestBody {
+
+        protected final boolean repeatable;
+
+        public TestBody(boolean repeatable) {
+            this.repeatable = repeatable;
+        }
+
+        public String getContentType() {
+            return "text/plain";
+        }
+
+        public long getContentLength() {
+            return 4;
+        }
+
+        public boolean isRepeatable() {
+            return repeatable;
+        }
+
+        public void writeTo(OutputStream out) throws IOException {
+            out.write("test".getBytes("US-ASCII"));
+        }
+    }
+
+}
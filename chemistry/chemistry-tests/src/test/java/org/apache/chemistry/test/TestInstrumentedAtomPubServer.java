@@ -0,0 +1,118 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.chemistry.test;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import junit.framework.TestCase;
+
+import org.apache.chemistry.Connection;
+import org.apache.chemistry.Repository;
+import org.apache.chemistry.atompub.client.APPRepositoryService;
+import org.apache.chemistry.atompub.server.servlet.CMISServlet;
+import org.apache.chemistry.impl.metrics.MethodMetrics;
+import org.apache.chemistry.impl.metrics.RepositoryMetrics;
+import org.mortbay.jetty.Connector;
+import org.mortbay.jetty.Server;
+import org.mortbay.jetty.bio.SocketConnector;
+import org.mortbay.jetty.servlet.Context;
+import org.mortbay.jetty.servlet.ServletHolder;
+
+/**
+ * Tests the AtomPub server with the {@value CMISServlet#PARAM_INSTRUMENT}
+ * init parameter set.
+ */
+public class TestInstrumentedAtomPubServer extends TestCase {
+
+    public static final String HOST = "0.0.0.0";
+
+    public static final int PORT = 8286;
+
+    public static final String SERVLET_PATH = "/cmis";
+
+    public static final String OTHER_SERVLET_PATH = "/cmis2";
+
+    protected Server server;
+
+    protected CMISServlet servlet;
+
+    protected CMISServlet otherServlet;
+
+    @Override
+    public void setUp() throws Exception {
+        Repository repository = BasicHelper.makeSimpleRepository(null);
+        BasicHelper.populateRepository(repository);
+        server = new Server();
+        Connector connector = new SocketConnector();
+        connector.setHost(HOST);
+        connector.setPort(PORT);
+        server.setConnectors(new Connector[] { connector });
+        // two servlets exposing the same repository
+        servlet = new CMISServlet(repository);
+        otherServlet = new CMISServlet(repository);
+        addServlet(servlet, SERVLET_PATH);
+        addServlet(otherServlet, OTHER_SERVLET_PATH);
+        server.start();
+    }
+
+    protected void addServlet(CMISServlet servlet, String path) {
+        ServletHolder servletHolder = new ServletHolder(servlet);
+        servletHolder.setInitParameter(CMISServlet.PARAM_INSTRUMENT, "true");
+        servletHolder.setInitOrder(1);
+        Context context = new Context(server, path, Context.SESSIONS);
+        context.addServlet(servletHolder, "/*");
+    }
+
+    @Override
+    public void tearDown() throws Exception {
+        server.stop();
+    }
+
+    public void testInstrumentedServer() throws Exception {
+        String serverUrl = "http://" + HOST + ':' + PORT + SERVLET_PATH
+                + TestAtomPubClientServer.CMIS_SERVICE;
+        Repository repository = new APPRepositoryService(serverUrl, null).getDefaultRepository();
+        Connection conn = repository.getConnection(null);
+        try {
+            conn.getRootFolder().getChildren();
+        } finally {
+            conn.close();
+        }
+        RepositoryMetrics metrics = servlet.getInstrumentedRepository().getMetrics();
+        MethodMetrics m = metrics.get("getChildren");
+        assertTrue(m.getCalls() > 0);
+        assertTrue(m.getMaxResultSize() > 0);
+        assertEquals(0, otherServlet.getInstrumentedRepository().getMetrics().get(
+                "getChildren").getCalls());
+    }
+
+    public void testDistinctMBeans() throws Exception {
+        RepositoryMetrics metrics = servlet.getInstrumentedRepository().getMetrics();
+        RepositoryMetrics other = otherServlet.getInstrumentedRepository().getMetrics();
+        assertEquals(metrics.getRepositoryId(), other.getRepositoryId());
+        ObjectName name = metrics.getObjectName(null);
+        ObjectName otherName = other.getObjectName(null);
+        assertFalse(name.equals(otherName));
+        MBeanServer mbeanServer = ManagementFactory.getPlatformMBeanServer();
+        assertTrue(mbeanServer.isRegistered(name));
+        assertTrue(mbeanServer.isRegistered(otherName));
+        server.stop();
+        assertFalse(mbeanServer.isRegistered(name));
+        assertFalse(mbeanServer.isRegistered(otherName));
+    }
+
+}
@@ -21,8 +21,13 @@ package org.apache.chemistry.test;
 import java.io.File;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
 
+import javax.jcr.LoginException;
 import javax.jcr.Node;
 import javax.jcr.Session;
 import javax.jcr.SimpleCredentials;
@@ -30,16 +35,27 @@ import javax.jcr.Workspace;
 import javax.jcr.nodetype.NodeTypeManager;
 
 import org.apache.chemistry.BaseType;
+import org.apache.chemistry.CMISRuntimeException;
+import org.apache.chemistry.CapabilityJoin;
 import org.apache.chemistry.CapabilityQuery;
 import org.apache.chemistry.ContentStreamPresence;
+import org.apache.chemistry.Inclusion;
+import org.apache.chemistry.ListPage;
+import org.apache.chemistry.ObjectEntry;
+import org.apache.chemistry.Paging;
 import org.apache.chemistry.Property;
 import org.apache.chemistry.PropertyDefinition;
 import org.apache.chemistry.PropertyType;
 import org.apache.chemistry.Repository;
+import org.apache.chemistry.SPI;
+import org.apache.chemistry.Tree;
 import org.apache.chemistry.Updatability;
+import org.apache.chemistry.impl.cache.CachingRepository;
 import org.apache.chemistry.impl.simple.SimplePropertyDefinition;
 import org.apache.chemistry.impl.simple.SimpleType;
+import org.apache.chemistry.jcr.JcrQueryTranslator;
 import org.apache.chemistry.jcr.JcrRepository;
+import org.apache.chemistry.jcr.JcrSessionPool;
 import org.apache.commons.io.FileUtils;
 import org.apache.jackrabbit.JcrConstants;
 import org.apache.jackrabbit.api.JackrabbitRepository;
@@ -58,6 +74,9 @@ public class TestJcrRepository extends BasicTestCase {
 
     private static final String REPOSITORY_XML = "/repository.xml";
 
+    private static final String NOT_SYSTEM = "NOT ISSAMENODE(s, ['/jcr:system'])"
+            + " AND NOT ISDESCENDANTNODE(s, ['/jcr:system'])";
+
     protected JackrabbitRepository jackrabbitRepo;
 
     protected Session session;
@@ -103,11 +122,10 @@ public class TestJcrRepository extends BasicTestCase {
         expectedRepositoryVendor = "Apache Software Foundation";
         expectedRepositoryProductName = "Jackrabbit";
         expectedRepositoryProductVersion = "2.0.0";
-        expectedCapabilityHasGetDescendants = false;
-        expectedCapabilityHasGetFolderTree = false;
         expectedCapabilityHasMultifiling = true;
         expectedCapabilityQuery = CapabilityQuery.BOTH_SEPARATE;
         expectedCapabilityHasUnfiling = true;
+        expectedCapabilityJoin = CapabilityJoin.NONE;
         rootFolderName = "testroot";
 
         PropertyDefinition p1 = new SimplePropertyDefinition("title",
@@ -147,9 +165,204 @@ public class TestJcrRepository extends BasicTestCase {
         // not configure a search manager in our repository.xml
     }
 
+    public void testQueryTranslation() throws Exception {
+        JcrRepository repo = (JcrRepository) repository;
+        String rootId = repo.getInfo().getRootFolderId().getId();
+        JcrQueryTranslator translator = new JcrQueryTranslator(repo, session);
+        String sql2 = translator.translate("SELECT cmis:name, title FROM doc"
+                + " WHERE IN_TREE('" + rootId + "')"
+                + " AND (title LIKE 'a%' OR date IS NOT NULL)"
+                + " ORDER BY cmis:name DESC");
+        assertEquals("SELECT * FROM [nt:file] AS s"
+                + " WHERE " + NOT_SYSTEM
+                + " AND (s.[cmis:objectTypeId] = 'doc')"
+                + " AND (ISDESCENDANTNODE(s, ['/testroot'])"
+                + " AND (s.[title] LIKE 'a%' OR s.[date] IS NOT NULL))"
+                + " ORDER BY NAME(s) DESC", sql2);
+        assertEquals(Arrays.asList(Property.NAME, "title"), new ArrayList<String>(
+                translator.getSelectedColumns()));
+
+        sql2 = translator.translate("SELECT * FROM cmis:folder"
+                + " WHERE IN_FOLDER('" + rootId + "') AND cmis:objectId <> '"
+                + rootId + "'");
+        assertEquals("SELECT * FROM [nt:folder] AS s"
+                + " WHERE " + NOT_SYSTEM
+                + " AND (ISCHILDNODE(s, ['/testroot'])"
+                + " AND NOT ISSAMENODE(s, ['/testroot']))", sql2);
+        assertNull(translator.getSelectedColumns());
+
+        sql2 = translator.translateChildren("/testroot", "cmis:name DESC, title");
+        assertEquals("SELECT * FROM [nt:base] AS s"
+                + " WHERE ISCHILDNODE(s, ['/testroot'])"
+                + " AND " + NOT_SYSTEM
+                + " ORDER BY NAME(s) DESC, s.[title] ASC", sql2);
+
+        try {
+            translator.translate("SELECT * FROM [nt:base]");
+            fail("non CMIS-SQL statement should be rejected");
+        } catch (CMISRuntimeException e) {
+            // ok
+        }
+    }
+
+    public void testGetChildrenOrdered() {
+        // no search manager: children are sorted in memory, still paged
+        ObjectEntry folder2 = spi.getObjectByPath("/folder 1/folder 2", null);
+        String orderBy = Property.NAME + " DESC";
+        ListPage<ObjectEntry> page = spi.getChildren(folder2, null, orderBy,
+                new Paging(1, 0));
+        assertEquals(1, page.size());
+        assertEquals("dog.jpg", page.get(0).getValue(Property.NAME));
+        assertTrue(page.getHasMoreItems());
+        assertEquals(3, page.getNumItems());
+        page = spi.getChildren(folder2, null, orderBy, new Paging(5, 1));
+        assertEquals(2, page.size());
+        assertEquals("doc 3", page.get(0).getValue(Property.NAME));
+        assertEquals("doc 2", page.get(1).getValue(Property.NAME));
+        assertFalse(page.getHasMoreItems());
+        assertEquals(3, page.getNumItems());
+        page = spi.getChildren(folder2, null, Property.NAME + " ASC",
+                new Paging(5, 0));
+        assertEquals("doc 2", page.get(0).getValue(Property.NAME));
+        assertEquals("dog.jpg", page.get(2).getValue(Property.NAME));
+    }
+
+    public void testGetChildrenFiltered() {
+        ObjectEntry folder1 = spi.getObjectByPath("/folder 1", null);
+        Inclusion inclusion = new Inclusion(Property.NAME, null, null, false,
+                false, false);
+        ListPage<ObjectEntry> children = spi.getChildren(folder1, inclusion,
+                null, null);
+        assertEquals(2, children.size());
+        for (ObjectEntry child : children) {
+            Map<String, Serializable> values = child.getValues();
+            assertNotNull(values.get(Property.NAME));
+            assertNotNull(values.get(Property.ID));
+            assertFalse(values.containsKey("title"));
+            assertFalse(values.containsKey(Property.PATH));
+            // values outside the filter are still loaded on demand
+            assertNotNull(child.getValue("title"));
+        }
+    }
+
+    public void testGetPropertiesFiltered() {
+        Inclusion inclusion = new Inclusion(Property.NAME, null, null, false,
+                false, false);
+        ObjectEntry doc = spi.getObjectByPath("/folder 1/doc 1", inclusion);
+        Map<String, Serializable> values = doc.getValues();
+        assertEquals("doc 1", values.get(Property.NAME));
+        assertFalse(values.containsKey("title"));
+        doc = spi.getProperties(spi.newObjectId(doc.getId()), inclusion);
+        values = doc.getValues();
+        assertEquals("doc 1", values.get(Property.NAME));
+        assertNotNull(values.get(Property.ID));
+        assertFalse(values.containsKey("title"));
+        assertFalse(values.containsKey(Property.PATH));
+        // values outside the filter are still loaded on demand
+        assertEquals("doc 1 title", doc.getValue("title"));
+        // no filter
+        doc = spi.getProperties(spi.newObjectId(doc.getId()), null);
+        assertTrue(doc.getValues().containsKey("title"));
+        // batch read
+        List<ObjectEntry> entries = spi.getObjects(Arrays.asList(
+                spi.newObjectId(doc.getId()), spi.newObjectId("nosuchid")),
+                inclusion);
+        assertEquals(2, entries.size());
+        values = entries.get(0).getValues();
+        assertEquals("doc 1", values.get(Property.NAME));
+        assertFalse(values.containsKey("title"));
+        assertNull(entries.get(1));
+    }
+
+    public void testGetDescendantsOrdered() {
+        ObjectEntry folder2 = spi.getObjectByPath("/folder 1/folder 2", null);
+        // sort key not among the returned properties
+        Inclusion inclusion = new Inclusion(Property.ID, null, null, false,
+                false, false);
+        Tree<ObjectEntry> desc = spi.getDescendants(folder2, 1,
+                Property.NAME + " DESC", inclusion);
+        List<String> names = new ArrayList<String>();
+        for (Tree<ObjectEntry> child : desc.getChildren()) {
+            ObjectEntry entry = child.getNode();
+            assertFalse(entry.getValues().containsKey(Property.NAME));
+            names.add((String) entry.getValue(Property.NAME));
+        }
+        assertEquals(Arrays.asList("dog.jpg", "doc 3", "doc 2"), names);
+    }
+
+    public void testSessionPool() throws Exception {
+        JcrRepository repo = (JcrRepository) repository;
+        JcrSessionPool pool = repo.getSessionPools().iterator().next();
+        long logins = pool.getLoginCount();
+        for (int i = 0; i < 5; i++) {
+            closeConn();
+            openConn();
+        }
+        assertEquals(logins, pool.getLoginCount());
+        assertEquals(1, pool.getActiveCount());
+        // unsaved changes are discarded when the session is reused
+        SimpleCredentials admin = new SimpleCredentials("admin",
+                "admin".toCharArray());
+        Session s = pool.checkout(admin);
+        s.getRootNode().addNode("unsaved");
+        pool.release(s);
+        Session s2 = pool.checkout(admin);
+        assertFalse(s2.getRootNode().hasNode("unsaved"));
+        // the most recently returned session is reused first
+        assertSame(s, s2);
+        Session s3 = pool.checkout(admin);
+        pool.release(s3);
+        pool.release(s2);
+        assertSame(s2, pool.checkout(admin));
+        pool.release(s2);
+        // other credentials don't get the idle sessions
+        logins = pool.getLoginCount();
+        try {
+            pool.checkout(new SimpleCredentials("other", new char[0]));
+            fail();
+        } catch (LoginException e) {
+            // ok
+        }
+        assertEquals(logins, pool.getLoginCount());
+    }
+
+    public void testCacheObservation() throws Exception {
+        CachingRepository repo = new CachingRepository(repository, 100, 0);
+        SPI cspi = repo.getSPI(null);
+        try {
+            ObjectEntry folder1 = cspi.getObjectByPath("/folder 1", null);
+            assertSame(folder1, cspi.getObjectByPath("/folder 1", null));
+            int size = cspi.getChildren(folder1, null, null, null).size();
+
+            // change the node and add a child directly in JCR
+            Node node = session.getNode("/testroot/folder 1");
+            node.setProperty("title", "changed");
+            node.addNode("extra", JcrConstants.NT_FOLDER);
+            session.save();
+
+            // events are delivered asynchronously
+            long deadline = System.currentTimeMillis() + 10000;
+            ObjectEntry entry;
+            do {
+                entry = cspi.getObjectByPath("/folder 1", null);
+                if (entry != folder1) {
+                    break;
+                }
+                Thread.sleep(10);
+            } while (System.currentTimeMillis() < deadline);
+            assertEquals("changed", entry.getValue("title"));
+            assertEquals(size + 1, cspi.getChildren(folder1, null, null,
+                    null).size());
+        } finally {
+            cspi.close();
+            repo.dispose();
+        }
+    }
+
     @Override
     public void tearDown() throws Exception {
         super.tearDown();
+        ((JcrRepository) repository).closeSessions();
         session.logout();
         jackrabbitRepo.shutdown();
     }